@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.distmap.DistanceTransform5x5Float;
+import inra.ijpb.binary.distmap.EuclideanDistanceTransform;
+import inra.ijpb.binary.distmap.EuclideanDistanceTransform3D;
+
+/**
+ * Benchmarks the distance maps of binary images, using chamfer weights or
+ * exact euclidean distances.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class DistanceMapBenchmark
+{
+	/** The size of the 2D image in each direction. */
+	@Param({"512", "2048"})
+	public int size2d;
+	
+	/** The size of the 3D image in each direction. */
+	@Param({"64", "128"})
+	public int size3d;
+	
+	private ImageProcessor image2d;
+	private ImageStack image3d;
+	
+	/**
+	 * Creates the binary images.
+	 */
+	@Setup
+	public void setup()
+	{
+		image2d = SyntheticImages.disks(size2d, size2d, size2d / 8, SyntheticImages.SEED);
+		image3d = SyntheticImages.balls(size3d, size3d / 2, SyntheticImages.SEED);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the distance map
+	 */
+	@Benchmark
+	public ImageProcessor chamfer5x5(VoxelCounter counter)
+	{
+		counter.voxels += image2d.getPixelCount();
+		DistanceTransform5x5Float algo = new DistanceTransform5x5Float();
+		return algo.distanceMap(image2d);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the distance map
+	 */
+	@Benchmark
+	public ImageProcessor euclidean2d(VoxelCounter counter)
+	{
+		counter.voxels += image2d.getPixelCount();
+		return new EuclideanDistanceTransform().distanceMap(image2d);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the distance map
+	 */
+	@Benchmark
+	public ImageStack euclidean3d(VoxelCounter counter)
+	{
+		counter.voxels += (long) size3d * size3d * size3d;
+		return new EuclideanDistanceTransform3D().distanceMap(image3d);
+	}
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImageStack;
+import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling3D;
+import inra.ijpb.binary.conncomp.UnionFindComponentsLabeling3D;
+
+/**
+ * Benchmarks the connected components labeling of 3D binary images.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class LabelingBenchmark
+{
+	/** The size of the image in each direction. */
+	@Param({"64", "128", "256"})
+	public int size;
+	
+	/** The connectivity used for labeling. */
+	@Param({"6", "26"})
+	public int connectivity;
+	
+	/** The bit depth of the label image. */
+	@Param({"16", "32"})
+	public int bitDepth;
+	
+	/**
+	 * The content of the binary image: overlapping balls, or random voxels
+	 * with a density of 0.4, close to the percolation threshold.
+	 */
+	@Param({"balls", "random"})
+	public String pattern;
+	
+	private ImageStack image;
+	
+	/**
+	 * Creates the binary image.
+	 */
+	@Setup
+	public void setup()
+	{
+		if (pattern.equals("random"))
+			image = SyntheticImages.randomVoxels(size, 0.4, SyntheticImages.SEED);
+		else
+			image = SyntheticImages.balls(size, size, SyntheticImages.SEED);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the label image
+	 */
+	@Benchmark
+	public ImageStack floodFill(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return new FloodFillComponentsLabeling3D(connectivity, bitDepth).computeLabels(image);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the label image
+	 */
+	@Benchmark
+	public ImageStack unionFind(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return new UnionFindComponentsLabeling3D(connectivity, bitDepth).computeLabels(image);
+	}
+}
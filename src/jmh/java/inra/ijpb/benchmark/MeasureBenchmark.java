@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.measure.GeometricMeasures3D;
+import inra.ijpb.measure.IntensityMeasures;
+
+/**
+ * Benchmarks the geometric and intensity measurements of 3D label images.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class MeasureBenchmark
+{
+	/** The size of the image in each direction. */
+	@Param({"64", "128"})
+	public int size;
+	
+	/** The number of regions within the label image. */
+	@Param({"10", "200"})
+	public int nLabels;
+	
+	private ImageStack labelImage;
+	private ImageStack intensityImage;
+	private int[] labels;
+	private double[] resol = new double[] {1, 1, 1};
+	
+	/**
+	 * Creates the label image and the intensity image.
+	 */
+	@Setup
+	public void setup()
+	{
+		labelImage = SyntheticImages.labelBalls(size, nLabels, 16, SyntheticImages.SEED);
+		intensityImage = SyntheticImages.noise(size, 8, SyntheticImages.SEED);
+		labels = LabelImages.findAllLabels(labelImage);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the list of labels
+	 */
+	@Benchmark
+	public int[] findAllLabels(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return LabelImages.findAllLabels(labelImage);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the volume of each region
+	 */
+	@Benchmark
+	public double[] volume(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return GeometricMeasures3D.volume(labelImage, labels, resol);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the surface area of each region
+	 */
+	@Benchmark
+	public double[] surfaceArea(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return GeometricMeasures3D.surfaceAreaCrofton(labelImage, labels, resol, 13);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the Euler number of each region
+	 */
+	@Benchmark
+	public double[] eulerNumber(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		return GeometricMeasures3D.eulerNumber(labelImage, labels, 26);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the mean intensity of each region
+	 */
+	@Benchmark
+	public ResultsTable meanIntensity(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		IntensityMeasures measures = new IntensityMeasures(
+				new ImagePlus("intensity", intensityImage), 
+				new ImagePlus("labels", labelImage));
+		return measures.getMean();
+	}
+}
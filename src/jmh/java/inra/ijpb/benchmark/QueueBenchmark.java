@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImageStack;
+import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.LongRingBuffer;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray8;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
+
+/**
+ * Compares the queues used by the queue phase of hybrid geodesic
+ * reconstructions: the object-based ArrayDeque of Cursor3D used formerly, and
+ * the primitive LongRingBuffer of packed positions used now.
+ * 
+ * Both queue benchmarks perform the same breadth-first propagation with
+ * 6-adjacency within a serpentine mask, so that most voxels go through the
+ * queue. A third benchmark runs the full reconstruction on the same mask.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class QueueBenchmark
+{
+	/** The size of the 3D image in each direction. */
+	@Param({"64", "128"})
+	public int size;
+	
+	/** The serpentine mask, as one byte array per slice. */
+	private byte[][] mask;
+	
+	private ImageStack maskStack;
+	private ImageStack markerStack;
+	
+	/**
+	 * Creates a serpentine mask: walls parallel to the y-z plane every second
+	 * column, with an opening alternately at the top and at the bottom.
+	 */
+	@Setup
+	public void setup()
+	{
+		maskStack = ImageStack.create(size, size, size, 8);
+		for (int z = 0; z < size; z++)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				for (int x = 0; x < size; x++)
+				{
+					boolean wall = x % 2 == 1 && y != ((x / 2) % 2 == 0 ? size - 1 : 0);
+					maskStack.setVoxel(x, y, z, wall ? 0 : 255);
+				}
+			}
+		}
+		
+		mask = new byte[size][];
+		for (int z = 0; z < size; z++)
+		{
+			mask[z] = (byte[]) maskStack.getPixels(z + 1);
+		}
+		
+		markerStack = ImageStack.create(size, size, size, 8);
+		markerStack.setVoxel(0, 0, 0, 255);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the number of visited voxels
+	 */
+	@Benchmark
+	public int cursorDeque(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		boolean[][] visited = new boolean[size][size * size];
+		ArrayDeque<Cursor3D> queue = new ArrayDeque<Cursor3D>();
+		visited[0][0] = true;
+		queue.add(new Cursor3D(0, 0, 0));
+		
+		int count = 0;
+		while (!queue.isEmpty())
+		{
+			Cursor3D p = queue.removeFirst();
+			int x = p.getX();
+			int y = p.getY();
+			int z = p.getZ();
+			count++;
+			
+			if (x > 0)
+				visit(x - 1, y, z, visited, queue);
+			if (x < size - 1)
+				visit(x + 1, y, z, visited, queue);
+			if (y > 0)
+				visit(x, y - 1, z, visited, queue);
+			if (y < size - 1)
+				visit(x, y + 1, z, visited, queue);
+			if (z > 0)
+				visit(x, y, z - 1, visited, queue);
+			if (z < size - 1)
+				visit(x, y, z + 1, visited, queue);
+		}
+		return count;
+	}
+	
+	private void visit(int x, int y, int z, boolean[][] visited, ArrayDeque<Cursor3D> queue)
+	{
+		int index = y * size + x;
+		if (!visited[z][index] && mask[z][index] != 0)
+		{
+			visited[z][index] = true;
+			queue.add(new Cursor3D(x, y, z));
+		}
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the number of visited voxels
+	 */
+	@Benchmark
+	public int ringBuffer(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		boolean[][] visited = new boolean[size][size * size];
+		LongRingBuffer queue = new LongRingBuffer();
+		visited[0][0] = true;
+		queue.add(0L);
+		
+		int count = 0;
+		while (!queue.isEmpty())
+		{
+			long packed = queue.poll();
+			int z = (int) (packed >>> 32);
+			int index = (int) packed;
+			int y = index / size;
+			int x = index - y * size;
+			count++;
+			
+			if (x > 0)
+				visit(index - 1, z, visited, queue);
+			if (x < size - 1)
+				visit(index + 1, z, visited, queue);
+			if (y > 0)
+				visit(index - size, z, visited, queue);
+			if (y < size - 1)
+				visit(index + size, z, visited, queue);
+			if (z > 0)
+				visit(index, z - 1, visited, queue);
+			if (z < size - 1)
+				visit(index, z + 1, visited, queue);
+		}
+		return count;
+	}
+	
+	private void visit(int index, int z, boolean[][] visited, LongRingBuffer queue)
+	{
+		if (!visited[z][index] && mask[z][index] != 0)
+		{
+			visited[z][index] = true;
+			queue.add(((long) z << 32) | index);
+		}
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the result of the reconstruction
+	 */
+	@Benchmark
+	public ImageStack reconstruction(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		GeodesicReconstruction3DHybrid0Gray8 algo = new GeodesicReconstruction3DHybrid0Gray8(
+				GeodesicReconstructionType.BY_DILATION, 6);
+		algo.showStatus = false;
+		return algo.applyTo(markerStack, maskStack);
+	}
+}
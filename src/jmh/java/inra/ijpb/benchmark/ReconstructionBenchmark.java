@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Reconstruction3D;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionHybrid;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
+
+/**
+ * Benchmarks geodesic reconstruction by dilation, in 2D and in 3D. The mask
+ * is a blob image, and the marker is obtained by subtracting a constant from
+ * the mask, as done for computing extended maxima.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ReconstructionBenchmark
+{
+	/** The size of the 2D image in each direction. */
+	@Param({"512", "2048"})
+	public int size2d;
+	
+	/** The size of the 3D image in each direction. */
+	@Param({"64", "128"})
+	public int size3d;
+	
+	/** The bit depth of the images. */
+	@Param({"8", "16", "32"})
+	public int bitDepth;
+	
+	/** Whether the full connectivity (8 or 26) should be used. */
+	@Param({"false", "true"})
+	public boolean fullConnectivity;
+	
+	private ImageProcessor mask2d;
+	private ImageProcessor marker2d;
+	private ImageStack mask3d;
+	private ImageStack marker3d;
+	
+	/**
+	 * Creates the marker and mask images.
+	 */
+	@Setup
+	public void setup()
+	{
+		mask2d = SyntheticImages.blobs(size2d, size2d, bitDepth, size2d / 4, SyntheticImages.SEED);
+		marker2d = mask2d.duplicate();
+		marker2d.subtract(40);
+		
+		mask3d = SyntheticImages.blobs(size3d, bitDepth, size3d / 2, SyntheticImages.SEED);
+		marker3d = mask3d.duplicate();
+		for (int z = 1; z <= size3d; z++)
+		{
+			marker3d.getProcessor(z).subtract(40);
+		}
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the result of the reconstruction
+	 */
+	@Benchmark
+	public ImageProcessor reconstruction2d(VoxelCounter counter)
+	{
+		counter.voxels += mask2d.getPixelCount();
+		GeodesicReconstructionHybrid algo = new GeodesicReconstructionHybrid(
+				GeodesicReconstructionType.BY_DILATION, fullConnectivity ? 8 : 4);
+		return algo.applyTo(marker2d, mask2d);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the result of the reconstruction
+	 */
+	@Benchmark
+	public ImageStack reconstruction3d(VoxelCounter counter)
+	{
+		counter.voxels += (long) size3d * size3d * size3d;
+		return Reconstruction3D.reconstructByDilation(marker3d, mask3d, fullConnectivity ? 26 : 6);
+	}
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Strel;
+
+/**
+ * Benchmarks planar erosion and dilation for each structuring element shape.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class StrelBenchmark
+{
+	/** The shape of the structuring element (all shapes by default). */
+	@Param
+	public Strel.Shape shape;
+	
+	/** The radius of the structuring element. */
+	@Param({"2", "10"})
+	public int radius;
+	
+	/** The size of the image in each direction. */
+	@Param({"256", "1024"})
+	public int size;
+	
+	/** The bit depth of the image. */
+	@Param({"8", "16", "32"})
+	public int bitDepth;
+	
+	private ImageProcessor image;
+	private Strel strel;
+	
+	/**
+	 * Creates the input image and the structuring element.
+	 */
+	@Setup
+	public void setup()
+	{
+		image = SyntheticImages.noise(size, size, bitDepth, SyntheticImages.SEED);
+		strel = shape.fromRadius(radius);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the result of the erosion
+	 */
+	@Benchmark
+	public ImageProcessor erosion(VoxelCounter counter)
+	{
+		counter.voxels += image.getPixelCount();
+		return strel.erosion(image);
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the result of the dilation
+	 */
+	@Benchmark
+	public ImageProcessor dilation(VoxelCounter counter)
+	{
+		counter.voxels += image.getPixelCount();
+		return strel.dilation(image);
+	}
+}
@@ -0,0 +1,345 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Generates reproducible synthetic images used as input of the benchmarks.
+ * 
+ * All images are generated from a seeded random generator, so that two
+ * benchmark runs always process the same data. Grayscale images can be
+ * created with 8, 16 or 32 bits per pixel; values are always in the range
+ * [0, 255] so that results do not depend on the bit depth.
+ * 
+ * @author dlegland
+ */
+public class SyntheticImages
+{
+	/**
+	 * Default seed used by the benchmarks.
+	 */
+	public static final long SEED = 12345L;
+	
+	/**
+	 * Private constructor to prevent instantiation.
+	 */
+	private SyntheticImages()
+	{
+	}
+	
+	/**
+	 * Creates a 2D image filled with uniform noise in [0, 255].
+	 * 
+	 * @param sizeX
+	 *            the size of the image in the X direction
+	 * @param sizeY
+	 *            the size of the image in the Y direction
+	 * @param bitDepth
+	 *            the bit depth of the image (8, 16 or 32)
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new image filled with random values
+	 */
+	public static final ImageProcessor noise(int sizeX, int sizeY, int bitDepth, long seed)
+	{
+		ImageProcessor image = createProcessor(sizeX, sizeY, bitDepth);
+		Random random = new Random(seed);
+		for (int i = 0; i < sizeX * sizeY; i++)
+		{
+			image.setf(i, random.nextInt(256));
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 3D image filled with uniform noise in [0, 255].
+	 * 
+	 * @param size
+	 *            the size of the image in each direction
+	 * @param bitDepth
+	 *            the bit depth of the image (8, 16 or 32)
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new image filled with random values
+	 */
+	public static final ImageStack noise(int size, int bitDepth, long seed)
+	{
+		ImageStack image = ImageStack.create(size, size, size, bitDepth);
+		Random random = new Random(seed);
+		for (int z = 0; z < size; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			for (int i = 0; i < size * size; i++)
+			{
+				slice.setf(i, random.nextInt(256));
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 2D grayscale image obtained as the maximum of several
+	 * gaussian-shaped blobs with random positions and sizes. The result is a
+	 * smooth image containing many regional maxima.
+	 * 
+	 * @param sizeX
+	 *            the size of the image in the X direction
+	 * @param sizeY
+	 *            the size of the image in the Y direction
+	 * @param bitDepth
+	 *            the bit depth of the image (8, 16 or 32)
+	 * @param nBlobs
+	 *            the number of blobs
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new image containing blobs
+	 */
+	public static final ImageProcessor blobs(int sizeX, int sizeY, int bitDepth, int nBlobs, long seed)
+	{
+		ImageProcessor image = createProcessor(sizeX, sizeY, bitDepth);
+		Random random = new Random(seed);
+		double meanRadius = Math.sqrt(sizeX * sizeY / (Math.PI * nBlobs));
+		for (int b = 0; b < nBlobs; b++)
+		{
+			double xc = random.nextDouble() * sizeX;
+			double yc = random.nextDouble() * sizeY;
+			double sigma = meanRadius * (0.5 + random.nextDouble()) / 2;
+			int r = (int) Math.ceil(3 * sigma);
+			
+			for (int y = Math.max((int) yc - r, 0); y < Math.min((int) yc + r + 1, sizeY); y++)
+			{
+				for (int x = Math.max((int) xc - r, 0); x < Math.min((int) xc + r + 1, sizeX); x++)
+				{
+					double d2 = (x - xc) * (x - xc) + (y - yc) * (y - yc);
+					int value = (int) Math.round(255 * Math.exp(-d2 / (2 * sigma * sigma)));
+					if (value > image.getf(x, y))
+					{
+						image.setf(x, y, value);
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 3D grayscale image obtained as the maximum of several
+	 * gaussian-shaped blobs with random positions and sizes.
+	 * 
+	 * @param size
+	 *            the size of the image in each direction
+	 * @param bitDepth
+	 *            the bit depth of the image (8, 16 or 32)
+	 * @param nBlobs
+	 *            the number of blobs
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new image containing blobs
+	 */
+	public static final ImageStack blobs(int size, int bitDepth, int nBlobs, long seed)
+	{
+		ImageStack image = ImageStack.create(size, size, size, bitDepth);
+		Random random = new Random(seed);
+		double meanRadius = Math.cbrt(3.0 * size * size * size / (4 * Math.PI * nBlobs));
+		for (int b = 0; b < nBlobs; b++)
+		{
+			double xc = random.nextDouble() * size;
+			double yc = random.nextDouble() * size;
+			double zc = random.nextDouble() * size;
+			double sigma = meanRadius * (0.5 + random.nextDouble()) / 2;
+			int r = (int) Math.ceil(3 * sigma);
+			
+			for (int z = Math.max((int) zc - r, 0); z < Math.min((int) zc + r + 1, size); z++)
+			{
+				for (int y = Math.max((int) yc - r, 0); y < Math.min((int) yc + r + 1, size); y++)
+				{
+					for (int x = Math.max((int) xc - r, 0); x < Math.min((int) xc + r + 1, size); x++)
+					{
+						double d2 = (x - xc) * (x - xc) + (y - yc) * (y - yc) + (z - zc) * (z - zc);
+						int value = (int) Math.round(255 * Math.exp(-d2 / (2 * sigma * sigma)));
+						if (value > image.getVoxel(x, y, z))
+						{
+							image.setVoxel(x, y, z, value);
+						}
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 2D binary image containing disks with random positions and
+	 * radii. Disks may overlap or touch the image borders.
+	 * 
+	 * @param sizeX
+	 *            the size of the image in the X direction
+	 * @param sizeY
+	 *            the size of the image in the Y direction
+	 * @param nDisks
+	 *            the number of disks
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new binary image, with foreground pixels equal to 255
+	 */
+	public static final ImageProcessor disks(int sizeX, int sizeY, int nDisks, long seed)
+	{
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		Random random = new Random(seed);
+		double maxRadius = Math.sqrt(sizeX * sizeY / (Math.PI * nDisks));
+		for (int d = 0; d < nDisks; d++)
+		{
+			double xc = random.nextDouble() * sizeX;
+			double yc = random.nextDouble() * sizeY;
+			double radius = maxRadius * (0.2 + 0.6 * random.nextDouble());
+			int r = (int) Math.ceil(radius);
+			
+			for (int y = Math.max((int) yc - r, 0); y < Math.min((int) yc + r + 1, sizeY); y++)
+			{
+				for (int x = Math.max((int) xc - r, 0); x < Math.min((int) xc + r + 1, sizeX); x++)
+				{
+					if ((x - xc) * (x - xc) + (y - yc) * (y - yc) <= radius * radius)
+					{
+						image.set(x, y, 255);
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 3D binary image containing balls with random positions and
+	 * radii. Balls may overlap or touch the image borders.
+	 * 
+	 * @param size
+	 *            the size of the image in each direction
+	 * @param nBalls
+	 *            the number of balls
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new binary image, with foreground voxels equal to 255
+	 */
+	public static final ImageStack balls(int size, int nBalls, long seed)
+	{
+		return labelBalls(size, nBalls, 8, seed, true);
+	}
+	
+	/**
+	 * Creates a 3D binary image with random foreground voxels. A density
+	 * close to the percolation threshold results in connected components
+	 * with a wide range of sizes.
+	 * 
+	 * @param size
+	 *            the size of the image in each direction
+	 * @param density
+	 *            the probability for each voxel to belong to the foreground
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new binary image, with foreground voxels equal to 255
+	 */
+	public static final ImageStack randomVoxels(int size, double density, long seed)
+	{
+		ImageStack image = ImageStack.create(size, size, size, 8);
+		Random random = new Random(seed);
+		for (int z = 0; z < size; z++)
+		{
+			byte[] pixels = (byte[]) image.getPixels(z + 1);
+			for (int i = 0; i < pixels.length; i++)
+			{
+				pixels[i] = random.nextDouble() < density ? (byte) 255 : 0;
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a 3D label image containing balls with random positions and
+	 * radii. The label of each ball corresponds to its generation index,
+	 * starting from 1, and overlapping balls are overwritten by the last ones.
+	 * 
+	 * @param size
+	 *            the size of the image in each direction
+	 * @param nBalls
+	 *            the number of balls
+	 * @param bitDepth
+	 *            the bit depth of the label image (8, 16 or 32)
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new label image
+	 */
+	public static final ImageStack labelBalls(int size, int nBalls, int bitDepth, long seed)
+	{
+		return labelBalls(size, nBalls, bitDepth, seed, false);
+	}
+	
+	private static final ImageStack labelBalls(int size, int nBalls, int bitDepth, long seed, boolean binary)
+	{
+		ImageStack image = ImageStack.create(size, size, size, bitDepth);
+		Random random = new Random(seed);
+		double maxRadius = Math.cbrt(3.0 * size * size * size / (4 * Math.PI * nBalls));
+		for (int b = 0; b < nBalls; b++)
+		{
+			double xc = random.nextDouble() * size;
+			double yc = random.nextDouble() * size;
+			double zc = random.nextDouble() * size;
+			double radius = maxRadius * (0.2 + 0.6 * random.nextDouble());
+			int r = (int) Math.ceil(radius);
+			double value = binary ? 255 : b + 1;
+			
+			for (int z = Math.max((int) zc - r, 0); z < Math.min((int) zc + r + 1, size); z++)
+			{
+				for (int y = Math.max((int) yc - r, 0); y < Math.min((int) yc + r + 1, size); y++)
+				{
+					for (int x = Math.max((int) xc - r, 0); x < Math.min((int) xc + r + 1, size); x++)
+					{
+						double d2 = (x - xc) * (x - xc) + (y - yc) * (y - yc) + (z - zc) * (z - zc);
+						if (d2 <= radius * radius)
+						{
+							image.setVoxel(x, y, z, value);
+						}
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	private static final ImageProcessor createProcessor(int sizeX, int sizeY, int bitDepth)
+	{
+		switch (bitDepth)
+		{
+		case 8: return new ByteProcessor(sizeX, sizeY);
+		case 16: return new ShortProcessor(sizeX, sizeY);
+		case 32: return new FloatProcessor(sizeX, sizeY);
+		default:
+			throw new IllegalArgumentException("Bit depth should be 8, 16 or 32, not " + bitDepth);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Level;
+
+/**
+ * Counts the number of voxels processed by a benchmark method.
+ * 
+ * JMH reports the counter as a secondary result normalized by the output time
+ * unit of the benchmark. As all benchmarks of this package use microseconds,
+ * the "voxels" metric corresponds to the throughput in Mvoxels/s.
+ * 
+ * @author dlegland
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class VoxelCounter
+{
+	/**
+	 * The number of voxels processed since the beginning of the iteration.
+	 */
+	public long voxels;
+	
+	/**
+	 * Resets the counter before each iteration.
+	 */
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+		voxels = 0;
+	}
+}
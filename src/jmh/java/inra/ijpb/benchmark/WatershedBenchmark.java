@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import inra.ijpb.watershed.WatershedTransform3D;
+
+/**
+ * Benchmarks the 3D watershed transform without markers, applied on the
+ * inverted blob image so that each blob gives a catchment basin.
+ * 
+ * @author dlegland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class WatershedBenchmark
+{
+	/** The size of the image in each direction. */
+	@Param({"32", "64"})
+	public int size;
+	
+	/** The bit depth of the image. */
+	@Param({"8", "16", "32"})
+	public int bitDepth;
+	
+	/** The connectivity used for flooding. */
+	@Param({"6", "26"})
+	public int connectivity;
+	
+	private ImagePlus image;
+	
+	/**
+	 * Creates the input image.
+	 */
+	@Setup
+	public void setup()
+	{
+		image = new ImagePlus("blobs",
+				SyntheticImages.blobs(size, bitDepth, size / 2, SyntheticImages.SEED));
+		for (int z = 1; z <= size; z++)
+		{
+			image.getStack().getProcessor(z).invert();
+		}
+	}
+	
+	/**
+	 * @param counter
+	 *            the counter of processed voxels
+	 * @return the watershed labels
+	 */
+	@Benchmark
+	public ImagePlus watershed(VoxelCounter counter)
+	{
+		counter.voxels += (long) size * size * size;
+		WatershedTransform3D algo = new WatershedTransform3D(image, null, connectivity);
+		algo.setVerbose(false);
+		return algo.apply();
+	}
+}
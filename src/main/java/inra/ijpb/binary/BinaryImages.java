@@ -31,7 +31,7 @@ import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.conncomp.ConnectedComponentsLabeling;
 import inra.ijpb.binary.conncomp.ConnectedComponentsLabeling3D;
 import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling;
-import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling3D;
+import inra.ijpb.binary.conncomp.UnionFindComponentsLabeling3D;
 import inra.ijpb.binary.distmap.DistanceTransform;
 import inra.ijpb.binary.distmap.DistanceTransform3D;
 import inra.ijpb.binary.distmap.DistanceTransform3DFloat;
@@ -234,7 +234,8 @@ public class BinaryImages
 	 * Computes the labels of the connected components in the given 3D binary
 	 * image. The type of result is controlled by the bitDepth option.
 	 * 
-	 * Uses a Flood-fill type algorithm.
+	 * Slabs of slices are labeled in parallel, and labels are merged using a
+	 * union-find structure.
 	 * 
 	 * @param image
 	 *            contains the 3D binary image (any type is accepted)
@@ -254,7 +255,7 @@ public class BinaryImages
 	public final static ImageStack componentsLabeling(ImageStack image,
 			int conn, int bitDepth)
 	{
-		ConnectedComponentsLabeling3D algo = new FloodFillComponentsLabeling3D(conn, bitDepth);
+		ConnectedComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(conn, bitDepth);
 		DefaultAlgoListener.monitor(algo);
 		return algo.computeLabels(image);
 	}
@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import java.util.concurrent.ForkJoinPool;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoListener;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes the labels of the connected components in a binary image, by
+ * processing bands of rows in parallel.
+ * 
+ * The image is processed by the same algorithm as
+ * UnionFindComponentsLabeling3D, each row being considered as a plane. Final
+ * labels are ordered like the first pixel of each component in raster order,
+ * resulting in the same result as FloodFillComponentsLabeling. If the bit
+ * depth is not specified, the type of the result is chosen from the number of
+ * labels.
+ *
+ * @see FloodFillComponentsLabeling
+ * @see UnionFindComponentsLabeling3D
+ * 
+ * @author dlegland
+ */
+public class UnionFindComponentsLabeling extends AlgoStub implements
+		ConnectedComponentsLabeling, AlgoListener
+{
+	/** 
+	 * The connectivity of the components, either 4 (default) or 8.
+	 */
+	int connectivity = 4;
+
+	/**
+	 * The number of bits for representing the result label image. Can be 8,
+	 * 16, or 32, or 0 (default) for choosing the smallest type that can
+	 * represent all the labels.
+	 */
+	int bitDepth = 0;
+	
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * Constructor with default connectivity 4 and automatic output bitdepth.
+	 */
+	public UnionFindComponentsLabeling()
+	{
+		this(4, 0);
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and using automatic output
+	 * bitdepth.
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (4 or 8)
+	 */
+	public UnionFindComponentsLabeling(int connectivity)
+	{
+		this(connectivity, 0);
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and the bitdepth of result label
+	 * image
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (4 or 8)
+	 * @param bitDepth
+	 *            the bit depth of the result (8, 16, or 32), or 0 for
+	 *            automatic choice
+	 */
+	public UnionFindComponentsLabeling(int connectivity, int bitDepth)
+	{
+		this(connectivity, bitDepth, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Constructor specifying the connectivity, the bitdepth of result label
+	 * image, and the pool used to process the bands of rows.
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (4 or 8)
+	 * @param bitDepth
+	 *            the bit depth of the result (8, 16, or 32), or 0 for
+	 *            automatic choice
+	 * @param pool
+	 *            the pool used to process the bands of rows
+	 */
+	public UnionFindComponentsLabeling(int connectivity, int bitDepth, ForkJoinPool pool)
+	{
+		if (connectivity != 4 && connectivity != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be either 4 or 8");
+		}
+		if (bitDepth != 0 && bitDepth != 8 && bitDepth != 16 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Bit Depth should be 0, 8, 16 or 32.");
+		}
+		this.connectivity = connectivity;
+		this.bitDepth = bitDepth;
+		this.pool = pool;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.binary.conncomp.ConnectedComponentsLabeling#computeLabels(ij.process.ImageProcessor)
+	 */
+	@Override
+	public ImageProcessor computeLabels(ImageProcessor image)
+	{
+		// get image size
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		// consider each row as a plane, so that 4- and 8-connectivities
+		// correspond to 6- and 26-connectivities
+		ImageProcessor[] planes = new ImageProcessor[height];
+		int[] offsets = new int[height];
+		for (int y = 0; y < height; y++)
+		{
+			planes[y] = image;
+			offsets[y] = y * width;
+		}
+		
+		// compute labels
+		UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(
+				this.connectivity == 4 ? 6 : 26, this.bitDepth, this.pool);
+		algo.addAlgoListener(this);
+		int[][] rows = new int[height][];
+		int nLabels = algo.computeLabels(planes, offsets, width, 1, rows);
+		algo.removeAlgoListener(this);
+		
+		// Depending on bitDepth, create result image
+		ImageProcessor labels;
+		switch (UnionFindComponentsLabeling3D.chooseBitDepth(this.bitDepth, nLabels)) {
+		case 8: 
+			labels = new ByteProcessor(width, height);
+			break; 
+		case 16: 
+			labels = new ShortProcessor(width, height);
+			break;
+		default:
+			labels = new FloatProcessor(width, height);
+			break;
+		}
+		for (int y = 0; y < height; y++)
+		{
+			int[] row = rows[y];
+			int offset = y * width;
+			for (int x = 0; x < width; x++)
+			{
+				labels.setf(offset + x, row[x]);
+			}
+		}
+		
+		labels.setMinAndMax(0, nLabels);
+		return labels;
+	}
+	
+	/**
+	 * Propagates the event by changing the source.
+	 */
+	public void algoProgressChanged(AlgoEvent evt)
+	{
+		this.fireProgressChanged(this, evt.getCurrentProgress(), evt.getTotalProgress());
+	}
+	
+	/**
+	 * Propagates the event by changing the source.
+	 */
+	public void algoStatusChanged(AlgoEvent evt)
+	{
+		this.fireStatusChanged(this, evt.getStatus());
+	}
+}
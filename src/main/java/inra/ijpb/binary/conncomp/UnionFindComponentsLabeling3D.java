@@ -0,0 +1,560 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes the labels of the connected components in a 3D binary image, by
+ * processing slabs of slices in parallel.
+ * 
+ * <p>
+ * The image is split into slabs of consecutive slices. Within each slab,
+ * voxels are scanned in raster order and associated to provisional labels,
+ * whose equivalences are recorded in a union-find structure stored in a
+ * primitive int array. Equivalences between labels of adjacent slabs are
+ * then merged, and provisional labels are replaced by compact final labels.
+ * </p>
+ * 
+ * <p>
+ * Final labels are ordered like the first voxel of each component in raster
+ * order. The result is therefore identical to the result of
+ * FloodFillComponentsLabeling3D. If the bit depth is not specified, the type
+ * of the result is chosen from the number of labels.
+ * </p>
+ * 
+ * @see FloodFillComponentsLabeling3D
+ * @see UnionFindComponentsLabeling
+ * 
+ * @author dlegland
+ */
+public class UnionFindComponentsLabeling3D extends AlgoStub implements
+		ConnectedComponentsLabeling3D
+{
+	/** 
+	 * The connectivity of the components, either 6 (default) or 26.
+	 */
+	int connectivity = 6;
+	
+	/**
+	 * The number of bits for representing the result label image. Can be 8,
+	 * 16, or 32, or 0 (default) for choosing the smallest type that can
+	 * represent all the labels.
+	 */
+	int bitDepth = 0;
+
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * Constructor with default connectivity 6 and automatic output bitdepth.
+	 */
+	public UnionFindComponentsLabeling3D()
+	{
+		this(6, 0);
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and using automatic output
+	 * bitdepth.
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (6 or 26)
+	 */
+	public UnionFindComponentsLabeling3D(int connectivity)
+	{
+		this(connectivity, 0);
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and the bitdepth of result label
+	 * image
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (6 or 26)
+	 * @param bitDepth
+	 *            the bit depth of the result (8, 16, or 32), or 0 for
+	 *            automatic choice
+	 */
+	public UnionFindComponentsLabeling3D(int connectivity, int bitDepth)
+	{
+		this(connectivity, bitDepth, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor specifying the connectivity, the bitdepth of result label
+	 * image, and the pool used to process the slabs.
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (6 or 26)
+	 * @param bitDepth
+	 *            the bit depth of the result (8, 16, or 32), or 0 for
+	 *            automatic choice
+	 * @param pool
+	 *            the pool used to process the slabs
+	 */
+	public UnionFindComponentsLabeling3D(int connectivity, int bitDepth, ForkJoinPool pool)
+	{
+		if (connectivity != 6 && connectivity != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be either 6 or 26");
+		}
+		if (bitDepth != 0 && bitDepth != 8 && bitDepth != 16 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Bit Depth should be 0, 8, 16 or 32.");
+		}
+		this.connectivity = connectivity;
+		this.bitDepth = bitDepth;
+		this.pool = pool;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.binary.conncomp.ConnectedComponentsLabeling3D#computeLabels(ij.ImageStack)
+	 */
+	@Override
+	public ImageStack computeLabels(ImageStack image)
+	{
+		if ( Thread.currentThread().isInterrupted() )					
+			return null;
+		
+		// get image size
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+
+		// retrieve slices of input image
+		ImageProcessor[] planes = new ImageProcessor[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			planes[z] = image.getProcessor(z + 1);
+		}
+		
+		// compute final labels
+		int[][] labels = new int[sizeZ][];
+		int nLabels = computeLabels(planes, new int[sizeZ], sizeX, sizeY, labels);
+		
+		// convert to label image
+		fireStatusChanged(this, "Create label image...");
+		int bitDepth = chooseBitDepth(this.bitDepth, nLabels);
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = result.getProcessor(z + 1);
+			int[] planeLabels = labels[z];
+			for (int i = 0; i < planeLabels.length; i++)
+			{
+				slice.setf(i, planeLabels[i]);
+			}
+			// release memory as soon as possible
+			labels[z] = null;
+		}
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return result;
+	}
+
+	/**
+	 * Chooses the bit depth of the label image, and checks the number of
+	 * labels can be represented.
+	 * 
+	 * @param bitDepth
+	 *            the requested bit depth, or 0 for automatic choice
+	 * @param nLabels
+	 *            the number of labels
+	 * @return the bit depth of the label image
+	 */
+	static final int chooseBitDepth(int bitDepth, int nLabels)
+	{
+		if (bitDepth == 0)
+		{
+			bitDepth = nLabels <= 255 ? 8 : (nLabels <= 65535 ? 16 : 32);
+		}
+		
+		// identify the maximum label index
+		int maxLabel;
+		switch (bitDepth) {
+		case 8: 
+			maxLabel = 255;
+			break; 
+		case 16: 
+			maxLabel = 65535;
+			break;
+		case 32:
+			maxLabel = 0x01 << 23;
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Bit Depth should be 8, 16 or 32.");
+		}
+		
+		if (nLabels > maxLabel)
+		{
+			throw new RuntimeException("Max number of label reached (" + maxLabel + ")");
+		}
+		return bitDepth;
+	}
+
+	/**
+	 * Computes the labels of the connected components of an image given as a
+	 * collection of planes, each plane having sizeX*sizeY elements. Planar
+	 * images can be processed by considering each row as a plane with
+	 * sizeY=1, in which case 6- and 26-connectivities correspond to 4- and
+	 * 8-connectivities.
+	 * 
+	 * @param planes
+	 *            the processors containing the input values of each plane
+	 * @param offsets
+	 *            the index of the first element of each plane within its
+	 *            processor
+	 * @param sizeX
+	 *            the size of planes in the x direction
+	 * @param sizeY
+	 *            the size of planes in the y direction
+	 * @param labels
+	 *            an array with as many elements as the number of planes, that
+	 *            will contain the final label of each element
+	 * @return the number of labels
+	 */
+	int computeLabels(final ImageProcessor[] planes, final int[] offsets,
+			final int sizeX, final int sizeY, final int[][] labels)
+	{
+		final int sizeZ = planes.length;
+		int planeSize = sizeX * sizeY;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			labels[z] = new int[planeSize];
+		}
+		
+		// split planes into slabs
+		int nSlabs = Math.max(Math.min(pool.getParallelism(), sizeZ), 1);
+		final int[] slabStarts = new int[nSlabs + 1];
+		for (int s = 0; s <= nSlabs; s++)
+		{
+			slabStarts[s] = (int) ((long) sizeZ * s / nSlabs);
+		}
+
+		// compute provisional labels within each slab
+		fireStatusChanged(this, "Compute provisional labels...");
+		ArrayList<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(nSlabs);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			final int z0 = slabStarts[s];
+			final int z1 = slabStarts[s + 1];
+			tasks.add(new Callable<int[]>()
+			{
+				public int[] call()
+				{
+					return scanSlab(planes, offsets, sizeX, sizeY, z0, z1, labels);
+				}
+			});
+		}
+		ArrayList<int[]> slabParents = invokeAll(tasks);
+		fireProgressChanged(this, 1, 4);
+		
+		// concatenate the union-find structures of each slab
+		final int[] bases = new int[nSlabs];
+		long total = 0;
+		for (int s = 0; s < nSlabs; s++)
+		{
+			bases[s] = (int) total;
+			total += slabParents.get(s)[0];
+		}
+		if (total >= Integer.MAX_VALUE)
+		{
+			throw new RuntimeException("Too many provisional labels (" + total + ")");
+		}
+		int nProvLabels = (int) total;
+		int[] parent = new int[nProvLabels + 1];
+		for (int s = 0; s < nSlabs; s++)
+		{
+			int[] slabParent = slabParents.get(s);
+			int base = bases[s];
+			for (int i = 1; i <= slabParent[0]; i++)
+			{
+				parent[base + i] = base + slabParent[i];
+			}
+		}
+		slabParents = null;
+		
+		// merge equivalences across slab boundaries
+		fireStatusChanged(this, "Merge slabs...");
+		for (int s = 1; s < nSlabs; s++)
+		{
+			mergeSlabs(labels[slabStarts[s] - 1], labels[slabStarts[s]],
+					bases[s - 1], bases[s], sizeX, sizeY, parent);
+		}
+		fireProgressChanged(this, 2, 4);
+		
+		// Compute compact labels. As the parent of a label is always smaller
+		// than the label, roots are processed before their descendants, and
+		// the parent array can be updated in place.
+		fireStatusChanged(this, "Relabel...");
+		int nLabels = 0;
+		for (int i = 1; i <= nProvLabels; i++)
+		{
+			int p = parent[i];
+			parent[i] = p == i ? ++nLabels : parent[p];
+		}
+		final int[] lut = parent;
+		fireProgressChanged(this, 3, 4);
+		
+		// replace provisional labels by final labels
+		ArrayList<Callable<int[]>> relabelTasks = new ArrayList<Callable<int[]>>(nSlabs);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			final int z0 = slabStarts[s];
+			final int z1 = slabStarts[s + 1];
+			final int base = bases[s];
+			relabelTasks.add(new Callable<int[]>()
+			{
+				public int[] call()
+				{
+					for (int z = z0; z < z1; z++)
+					{
+						int[] planeLabels = labels[z];
+						for (int i = 0; i < planeLabels.length; i++)
+						{
+							int label = planeLabels[i];
+							if (label != 0)
+								planeLabels[i] = lut[base + label];
+						}
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(relabelTasks);
+		fireProgressChanged(this, 4, 4);
+		
+		return nLabels;
+	}
+	
+	/**
+	 * Computes provisional labels within a slab, and returns the union-find
+	 * structure of the slab. The first element of the returned array contains
+	 * the number of labels, and the following elements contain the parent of
+	 * each label, the parent of a label always being smaller or equal to the
+	 * label.
+	 */
+	private int[] scanSlab(ImageProcessor[] planes, int[] offsets, int sizeX,
+			int sizeY, int z0, int z1, int[][] labels)
+	{
+		int[] parent = new int[256];
+		int nLabels = 0;
+		boolean c26 = this.connectivity == 26;
+		
+		for (int z = z0; z < z1; z++)
+		{
+			if (Thread.currentThread().isInterrupted())
+				break;
+			
+			ImageProcessor plane = planes[z];
+			int offset = offsets[z];
+			int[] current = labels[z];
+			int[] previous = z > z0 ? labels[z - 1] : null;
+			
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int index = y * sizeX + x;
+					if (plane.getf(offset + index) == 0)
+						continue;
+					
+					// combine the labels of the neighbors already visited
+					int label = 0;
+					if (x > 0)
+						label = merge(parent, label, current[index - 1]);
+					if (y > 0)
+					{
+						label = merge(parent, label, current[index - sizeX]);
+						if (c26)
+						{
+							if (x > 0)
+								label = merge(parent, label, current[index - sizeX - 1]);
+							if (x < sizeX - 1)
+								label = merge(parent, label, current[index - sizeX + 1]);
+						}
+					}
+					if (previous != null)
+					{
+						if (c26)
+						{
+							for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, sizeY - 1); y2++)
+							{
+								for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, sizeX - 1); x2++)
+								{
+									label = merge(parent, label, previous[y2 * sizeX + x2]);
+								}
+							}
+						}
+						else
+						{
+							label = merge(parent, label, previous[index]);
+						}
+					}
+					
+					// create a new label if no neighbor was found
+					if (label == 0)
+					{
+						nLabels++;
+						if (nLabels == parent.length)
+						{
+							int[] tmp = new int[parent.length * 2];
+							System.arraycopy(parent, 0, tmp, 0, parent.length);
+							parent = tmp;
+						}
+						parent[nLabels] = nLabels;
+						label = nLabels;
+					}
+					current[index] = label;
+				}
+			}
+		}
+		
+		parent[0] = nLabels;
+		return parent;
+	}
+
+	/**
+	 * Merges the equivalences between the labels of two adjacent planes that
+	 * belong to different slabs.
+	 */
+	private void mergeSlabs(int[] previous, int[] current, int basePrevious,
+			int baseCurrent, int sizeX, int sizeY, int[] parent)
+	{
+		boolean c26 = this.connectivity == 26;
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int index = y * sizeX + x;
+				int label = current[index];
+				if (label == 0)
+					continue;
+				label += baseCurrent;
+				
+				if (c26)
+				{
+					for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, sizeY - 1); y2++)
+					{
+						for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, sizeX - 1); x2++)
+						{
+							int label2 = previous[y2 * sizeX + x2];
+							if (label2 != 0)
+								label = union(parent, label, label2 + basePrevious);
+						}
+					}
+				}
+				else
+				{
+					int label2 = previous[index];
+					if (label2 != 0)
+						union(parent, label, label2 + basePrevious);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Combines the current label with the label of a neighbor, and returns
+	 * the resulting label.
+	 */
+	private static final int merge(int[] parent, int label, int neighborLabel)
+	{
+		if (neighborLabel == 0)
+			return label;
+		if (label == 0)
+			return find(parent, neighborLabel);
+		return union(parent, label, neighborLabel);
+	}
+
+	/**
+	 * Returns the root of a label, and compresses the path to the root.
+	 */
+	private static final int find(int[] parent, int label)
+	{
+		while (parent[label] != label)
+		{
+			int p = parent[parent[label]];
+			parent[label] = p;
+			label = p;
+		}
+		return label;
+	}
+
+	/**
+	 * Merges the sets containing the two labels, using the smallest root as
+	 * the root of the union, and returns the root of the union.
+	 */
+	private static final int union(int[] parent, int label1, int label2)
+	{
+		int root1 = find(parent, label1);
+		int root2 = find(parent, label2);
+		if (root1 < root2)
+		{
+			parent[root2] = root1;
+			return root1;
+		}
+		parent[root1] = root2;
+		return root2;
+	}
+
+	/**
+	 * Runs the tasks on the pool, and returns the results.
+	 */
+	private <T> ArrayList<T> invokeAll(ArrayList<Callable<T>> tasks)
+	{
+		ArrayList<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks)
+		{
+			futures.add(pool.submit(task));
+		}
+		
+		ArrayList<T> results = new ArrayList<T>(tasks.size());
+		try
+		{
+			for (Future<T> future : futures)
+				results.add(future.get());
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes the exact Euclidean distance map of a binary image, using a
+ * separable algorithm with linear complexity.
+ * 
+ * <p>
+ * The squared distance is first computed along each row, then along each
+ * column, by computing the lower envelope of parabolas. Rows and columns are
+ * processed in parallel. The size of the pixels can be specified, resulting
+ * in distances expressed in calibrated units. The index of the nearest
+ * background pixel (the feature transform) can be computed as well.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	double[] spacing = new double[]{0.5, 1.2};
+ *	EuclideanDistanceTransform dt = new EuclideanDistanceTransform(spacing);
+ *	int[] features = new int[image.getWidth() * image.getHeight()];
+ *	ImageProcessor result = dt.distanceMap(image, features);
+ *}</pre>
+ * 
+ * @see SquaredDistanceEnvelope
+ * @see EuclideanDistanceTransform3D
+ * @see DistanceTransform3x3Float
+ * 
+ * @author David Legland
+ */
+public class EuclideanDistanceTransform extends AlgoStub implements
+		DistanceTransform
+{
+	// ==================================================
+	// Class variables
+
+	/**
+	 * The size of pixels in each direction.
+	 */
+	double[] spacing;
+
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new distance transform for images with unit pixel size, that
+	 * runs on the common fork-join pool.
+	 */
+	public EuclideanDistanceTransform()
+	{
+		this(new double[] { 1, 1 });
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified pixel
+	 * size, that runs on the common fork-join pool.
+	 * 
+	 * @param spacing
+	 *            the size of pixels in the x and y directions
+	 */
+	public EuclideanDistanceTransform(double[] spacing)
+	{
+		this(spacing, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified pixel
+	 * size, that runs on the specified pool.
+	 * 
+	 * @param spacing
+	 *            the size of pixels in the x and y directions
+	 * @param pool
+	 *            the pool used to process the rows and the columns
+	 */
+	public EuclideanDistanceTransform(double[] spacing, ForkJoinPool pool)
+	{
+		if (spacing.length != 2)
+		{
+			throw new IllegalArgumentException("Requires an array of two spacing values");
+		}
+		this.spacing = spacing;
+		this.pool = pool;
+	}
+
+	
+	// ==================================================
+	// Implementation of the DistanceTransform interface
+
+	/**
+	 * Computes the Euclidean distance map of the distance to the nearest
+	 * background pixel. If the image does not contain any background pixel,
+	 * the result is filled with positive infinity.
+	 * 
+	 * @param image
+	 *            a binary image with non-zero pixels as foreground
+	 * @return a new instance of FloatProcessor containing:
+	 *         <ul>
+	 *         <li>0 for each background pixel</li>
+	 *         <li>the distance to the nearest background pixel otherwise</li>
+	 *         </ul>
+	 */
+	public FloatProcessor distanceMap(ImageProcessor image)
+	{
+		return distanceMap(image, null);
+	}
+
+	
+	// ==================================================
+	// Computation methods
+
+	/**
+	 * Computes the feature transform of the binary image, that is the index of
+	 * the nearest background pixel for each pixel.
+	 * 
+	 * @param image
+	 *            a binary image with non-zero pixels as foreground
+	 * @return an array containing, for each pixel, the index
+	 *         <code>y * width + x</code> of the nearest background pixel, or
+	 *         -1 if the image does not contain any background pixel
+	 */
+	public int[] featureTransform(ImageProcessor image)
+	{
+		int[] features = new int[image.getPixelCount()];
+		distanceMap(image, features);
+		return features;
+	}
+
+	/**
+	 * Computes the Euclidean distance map of the distance to the nearest
+	 * background pixel, and optionally the feature transform.
+	 * 
+	 * @param image
+	 *            a binary image with non-zero pixels as foreground
+	 * @param features
+	 *            an array with as many elements as the number of pixels, that
+	 *            will contain the index <code>y * width + x</code> of the
+	 *            nearest background pixel (or -1 if the image does not contain
+	 *            any background pixel). Can be null.
+	 * @return a new instance of FloatProcessor containing the distance to the
+	 *         nearest background pixel
+	 */
+	public FloatProcessor distanceMap(ImageProcessor image, final int[] features)
+	{
+		// size of image
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		if (features != null && features.length != width * height)
+		{
+			throw new IllegalArgumentException("Feature array must have the same number of elements as the image");
+		}
+
+		this.fireStatusChanged(new AlgoEvent(this, "Initialization"));
+
+		// initialize squared distance with either 0 (background) or Inf
+		// (foreground)
+		FloatProcessor result = new FloatProcessor(width, height);
+		final float[] buffer = (float[]) result.getPixels();
+		for (int i = 0; i < width * height; i++)
+		{
+			boolean bg = image.getf(i) == 0;
+			buffer[i] = bg ? 0 : Float.POSITIVE_INFINITY;
+			if (features != null)
+			{
+				features[i] = bg ? i : -1;
+			}
+		}
+
+		// transform each row
+		this.fireStatusChanged(new AlgoEvent(this, "Process rows"));
+		final double sx = spacing[0];
+		processBlocks(height, width, new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int start, int end)
+			{
+				for (int y = start; y < end; y++)
+				{
+					int offset = y * width;
+					env.processLine(buffer, offset, 1, width, sx, features, offset);
+				}
+			}
+		});
+		this.fireProgressChanged(this, 1, 3);
+
+		// transform each column
+		this.fireStatusChanged(new AlgoEvent(this, "Process columns"));
+		final double sy = spacing[1];
+		processBlocks(width, height, new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int start, int end)
+			{
+				for (int x = start; x < end; x++)
+				{
+					env.processLine(buffer, x, width, height, sy, features, x);
+				}
+			}
+		});
+		this.fireProgressChanged(this, 2, 3);
+
+		// convert squared distances to distances
+		for (int i = 0; i < width * height; i++)
+		{
+			buffer[i] = (float) Math.sqrt(buffer[i]);
+		}
+		this.fireProgressChanged(this, 3, 3);
+
+		return result;
+	}
+
+	/**
+	 * Splits the range of lines into blocks, and processes each block in
+	 * parallel with its own buffers.
+	 */
+	private void processBlocks(int nLines, final int lineLength, final BlockProcessor processor)
+	{
+		int nBlocks = Math.max(Math.min(pool.getParallelism(), nLines), 1);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nBlocks);
+		for (int b = 0; b < nBlocks; b++)
+		{
+			final int start = (int) ((long) nLines * b / nBlocks);
+			final int end = (int) ((long) nLines * (b + 1) / nBlocks);
+			futures.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					processor.process(new SquaredDistanceEnvelope(lineLength), start, end);
+				}
+			}));
+		}
+
+		try
+		{
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Processes a contiguous range of lines.
+	 */
+	private interface BlockProcessor
+	{
+		public void process(SquaredDistanceEnvelope env, int start, int end);
+	}
+}
@@ -0,0 +1,336 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes the exact Euclidean distance map of a 3D binary image, using a
+ * separable algorithm with linear complexity.
+ * 
+ * <p>
+ * The squared distance is first computed along the x and y directions within
+ * each slice, with slices processed in parallel. It is then computed along
+ * the z direction, with blocks of rows processed in parallel. The size of
+ * voxels can be specified, resulting in distances expressed in calibrated
+ * units. The index of the nearest background voxel (the feature transform)
+ * can be computed as well.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	double[] spacing = new double[]{0.5, 0.5, 2.0};
+ *	EuclideanDistanceTransform3D dt = new EuclideanDistanceTransform3D(spacing);
+ *	ImageStack result = dt.distanceMap(image);
+ *}</pre>
+ * 
+ * @see SquaredDistanceEnvelope
+ * @see EuclideanDistanceTransform
+ * @see DistanceTransform3DFloat
+ * 
+ * @author David Legland
+ */
+public class EuclideanDistanceTransform3D extends AlgoStub implements
+		DistanceTransform3D
+{
+	// ==================================================
+	// Class variables
+
+	/**
+	 * The size of voxels in each direction.
+	 */
+	double[] spacing;
+
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new distance transform for images with unit voxel size, that
+	 * runs on the common fork-join pool.
+	 */
+	public EuclideanDistanceTransform3D()
+	{
+		this(new double[] { 1, 1, 1 });
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified voxel
+	 * size, that runs on the common fork-join pool.
+	 * 
+	 * @param spacing
+	 *            the size of voxels in the x, y and z directions
+	 */
+	public EuclideanDistanceTransform3D(double[] spacing)
+	{
+		this(spacing, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified voxel
+	 * size, that runs on the specified pool.
+	 * 
+	 * @param spacing
+	 *            the size of voxels in the x, y and z directions
+	 * @param pool
+	 *            the pool used to process the slices and the rows
+	 */
+	public EuclideanDistanceTransform3D(double[] spacing, ForkJoinPool pool)
+	{
+		if (spacing.length != 3)
+		{
+			throw new IllegalArgumentException("Requires an array of three spacing values");
+		}
+		this.spacing = spacing;
+		this.pool = pool;
+	}
+
+	
+	// ==================================================
+	// Implementation of the DistanceTransform3D interface
+
+	/**
+	 * Computes the Euclidean distance map of the distance to the nearest
+	 * background voxel. If the image does not contain any background voxel,
+	 * the result is filled with positive infinity.
+	 * 
+	 * @param image
+	 *            a 3D binary image with non-zero voxels as foreground
+	 * @return a new 32-bit 3D image containing:
+	 *         <ul>
+	 *         <li>0 for each background voxel</li>
+	 *         <li>the distance to the nearest background voxel otherwise</li>
+	 *         </ul>
+	 */
+	public ImageStack distanceMap(ImageStack image)
+	{
+		return distanceMap(image, null);
+	}
+
+	
+	// ==================================================
+	// Computation methods
+
+	/**
+	 * Computes the feature transform of the 3D binary image, that is the index
+	 * of the nearest background voxel for each voxel.
+	 * 
+	 * @param image
+	 *            a 3D binary image with non-zero voxels as foreground
+	 * @return an array containing, for each voxel, the index
+	 *         <code>(z * height + y) * width + x</code> of the nearest
+	 *         background voxel, or -1 if the image does not contain any
+	 *         background voxel
+	 */
+	public int[] featureTransform(ImageStack image)
+	{
+		long nVoxels = (long) image.getWidth() * image.getHeight() * image.getSize();
+		if (nVoxels > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Image is too large for computing feature transform");
+		}
+		int[] features = new int[(int) nVoxels];
+		distanceMap(image, features);
+		return features;
+	}
+
+	/**
+	 * Computes the Euclidean distance map of the distance to the nearest
+	 * background voxel, and optionally the feature transform.
+	 * 
+	 * @param image
+	 *            a 3D binary image with non-zero voxels as foreground
+	 * @param features
+	 *            an array with as many elements as the number of voxels, that
+	 *            will contain the index <code>(z * height + y) * width + x</code>
+	 *            of the nearest background voxel (or -1 if the image does not
+	 *            contain any background voxel). Can be null.
+	 * @return a new 32-bit 3D image containing the distance to the nearest
+	 *         background voxel
+	 */
+	public ImageStack distanceMap(ImageStack image, final int[] features)
+	{
+		// size of image
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+		final int sliceSize = sizeX * sizeY;
+		if (features != null && features.length != (long) sliceSize * sizeZ)
+		{
+			throw new IllegalArgumentException("Feature array must have the same number of elements as the image");
+		}
+
+		this.fireStatusChanged(new AlgoEvent(this, "Initialization"));
+
+		// initialize squared distance with either 0 (background) or Inf
+		// (foreground)
+		final ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		final float[][] slices = new float[sizeZ][];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			float[] buffer = (float[]) result.getPixels(z + 1);
+			int offset = z * sliceSize;
+			for (int i = 0; i < sliceSize; i++)
+			{
+				boolean bg = slice.getf(i) == 0;
+				buffer[i] = bg ? 0 : Float.POSITIVE_INFINITY;
+				if (features != null)
+				{
+					features[offset + i] = bg ? offset + i : -1;
+				}
+			}
+			slices[z] = buffer;
+		}
+
+		// transform each row and each column within slices
+		this.fireStatusChanged(new AlgoEvent(this, "Process slices"));
+		final double sx = spacing[0];
+		final double sy = spacing[1];
+		processBlocks(sizeZ, Math.max(sizeX, sizeY), new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int start, int end)
+			{
+				for (int z = start; z < end; z++)
+				{
+					float[] buffer = slices[z];
+					int offset = z * sliceSize;
+					for (int y = 0; y < sizeY; y++)
+					{
+						int index = y * sizeX;
+						env.processLine(buffer, index, 1, sizeX, sx, features, offset + index);
+					}
+					for (int x = 0; x < sizeX; x++)
+					{
+						env.processLine(buffer, x, sizeX, sizeY, sy, features, offset + x);
+					}
+				}
+			}
+		});
+		this.fireProgressChanged(this, 1, 3);
+
+		// transform along the z direction
+		this.fireStatusChanged(new AlgoEvent(this, "Process z-direction"));
+		final double sz = spacing[2];
+		processBlocks(sizeY, sizeZ, new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int start, int end)
+			{
+				double[] values = env.values;
+				double[] dist = env.dist;
+				int[] arg = env.arg;
+				int[] lineFeatures = env.features;
+				
+				for (int index = start * sizeX; index < end * sizeX; index++)
+				{
+					for (int z = 0; z < sizeZ; z++)
+					{
+						values[z] = slices[z][index];
+					}
+					if (features != null)
+					{
+						for (int z = 0; z < sizeZ; z++)
+						{
+							lineFeatures[z] = features[z * sliceSize + index];
+						}
+					}
+
+					if (!env.transform(sizeZ, sz))
+						continue;
+
+					for (int z = 0; z < sizeZ; z++)
+					{
+						slices[z][index] = (float) Math.sqrt(dist[z]);
+					}
+					if (features != null)
+					{
+						for (int z = 0; z < sizeZ; z++)
+						{
+							features[z * sliceSize + index] = lineFeatures[arg[z]];
+						}
+					}
+				}
+			}
+		});
+		this.fireProgressChanged(this, 3, 3);
+
+		return result;
+	}
+
+	/**
+	 * Splits the range of slices or rows into blocks, and processes each block in
+	 * parallel with its own buffers.
+	 */
+	private void processBlocks(int nLines, final int lineLength, final BlockProcessor processor)
+	{
+		int nBlocks = Math.max(Math.min(pool.getParallelism(), nLines), 1);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nBlocks);
+		for (int b = 0; b < nBlocks; b++)
+		{
+			final int start = (int) ((long) nLines * b / nBlocks);
+			final int end = (int) ((long) nLines * (b + 1) / nBlocks);
+			futures.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					processor.process(new SquaredDistanceEnvelope(lineLength), start, end);
+				}
+			}));
+		}
+
+		try
+		{
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Processes a contiguous range of slices or rows.
+	 */
+	private interface BlockProcessor
+	{
+		public void process(SquaredDistanceEnvelope env, int start, int end);
+	}
+}
@@ -0,0 +1,509 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * Computes the exact Euclidean distance map of a 2D or 3D label image, that
+ * is, for each pixel or voxel of a region, the distance to the nearest pixel
+ * or voxel with a different label. Contrary to the distance map of the
+ * binarized image, regions that touch each other are processed separately.
+ * The border of the image is not considered as a boundary of the regions.
+ * 
+ * <p>
+ * The separable algorithm of EuclideanDistanceTransform3D is used, with the
+ * transform along each line applied independently to each run of elements
+ * with the same label, the elements around a run being at distance zero. As
+ * the nearest element with a different label is either within the run or
+ * beyond one of the boundaries of the run, the result is exact.
+ * </p>
+ * 
+ * <p>
+ * The largest distance within each region, and its position, can be
+ * computed during the last pass of the transform, providing the center and
+ * the radius of the maximum inscribed circle or sphere of each region.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	double[] spacing = new double[]{0.5, 0.5, 2.0};
+ *	LabelEuclideanDistanceTransform dt = new LabelEuclideanDistanceTransform(spacing);
+ *	int[] labels = LabelImages.findAllLabels(image);
+ *	double[][] spheres = dt.inscribedBalls(image, labels);
+ *}</pre>
+ * 
+ * @see EuclideanDistanceTransform3D
+ * @see SquaredDistanceEnvelope
+ * 
+ * @author David Legland
+ */
+public class LabelEuclideanDistanceTransform extends AlgoStub
+{
+	// ==================================================
+	// Class variables
+
+	/**
+	 * The size of elements in each direction.
+	 */
+	double[] spacing;
+
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new distance transform for images with unit element size,
+	 * that runs on the common fork-join pool.
+	 */
+	public LabelEuclideanDistanceTransform()
+	{
+		this(new double[] { 1, 1, 1 });
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified element
+	 * size, that runs on the common fork-join pool.
+	 * 
+	 * @param spacing
+	 *            the size of pixels or voxels in each direction, as an array
+	 *            of two or three values
+	 */
+	public LabelEuclideanDistanceTransform(double[] spacing)
+	{
+		this(spacing, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new distance transform for images with the specified element
+	 * size, that runs on the specified pool.
+	 * 
+	 * @param spacing
+	 *            the size of pixels or voxels in each direction, as an array
+	 *            of two or three values
+	 * @param pool
+	 *            the pool used to process the slices and the rows
+	 */
+	public LabelEuclideanDistanceTransform(double[] spacing, ForkJoinPool pool)
+	{
+		if (spacing.length != 2 && spacing.length != 3)
+		{
+			throw new IllegalArgumentException("Requires an array of two or three spacing values");
+		}
+		this.spacing = new double[] { spacing[0], spacing[1], spacing.length > 2 ? spacing[2] : 1 };
+		this.pool = pool;
+	}
+
+	
+	// ==================================================
+	// Computation methods
+
+	/**
+	 * Computes the distance of each pixel of a region to the nearest pixel
+	 * with a different label.
+	 * 
+	 * @param labelImage
+	 *            a 2D label image
+	 * @return a new 32-bit image containing 0 for background pixels, and the
+	 *         distance to the nearest pixel with a different label otherwise.
+	 *         Regions that do not touch any other region nor the background
+	 *         have infinite distance.
+	 */
+	public FloatProcessor distanceMap(ImageProcessor labelImage)
+	{
+		float[][] slices = transform(new ImageProcessor[] { labelImage }, null, null);
+		return new FloatProcessor(labelImage.getWidth(), labelImage.getHeight(), slices[0]);
+	}
+
+	/**
+	 * Computes the distance of each voxel of a region to the nearest voxel
+	 * with a different label.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image
+	 * @return a new 32-bit 3D image containing 0 for background voxels, and
+	 *         the distance to the nearest voxel with a different label
+	 *         otherwise. Regions that do not touch any other region nor the
+	 *         background have infinite distance.
+	 */
+	public ImageStack distanceMap(ImageStack labelImage)
+	{
+		float[][] slices = transform(planes(labelImage), null, null);
+		ImageStack result = new ImageStack(labelImage.getWidth(), labelImage.getHeight());
+		for (float[] slice : slices)
+		{
+			result.addSlice(new FloatProcessor(labelImage.getWidth(), labelImage.getHeight(), slice));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the maximum inscribed circle of each region of a 2D label
+	 * image. When several pixels reach the maximal distance, the first one
+	 * in raster order is retained.
+	 * 
+	 * @param labelImage
+	 *            a 2D label image
+	 * @param labels
+	 *            the labels of the regions to process
+	 * @return an array with one row per label, containing the calibrated
+	 *         coordinates of the center and the radius of the circle. Labels
+	 *         not present within the image have NaN values.
+	 */
+	public double[][] inscribedBalls(ImageProcessor labelImage, int[] labels)
+	{
+		double[][] balls = inscribedBalls(new ImageProcessor[] { labelImage }, labels);
+		double[][] res = new double[labels.length][];
+		for (int i = 0; i < labels.length; i++)
+		{
+			res[i] = new double[] { balls[i][0], balls[i][1], balls[i][3] };
+		}
+		return res;
+	}
+
+	/**
+	 * Computes the maximum inscribed sphere of each region of a 3D label
+	 * image. When several voxels reach the maximal distance, the first one
+	 * in raster order is retained.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image
+	 * @param labels
+	 *            the labels of the regions to process
+	 * @return an array with one row per label, containing the calibrated
+	 *         coordinates of the center and the radius of the sphere. Labels
+	 *         not present within the image have NaN values.
+	 */
+	public double[][] inscribedBalls(ImageStack labelImage, int[] labels)
+	{
+		return inscribedBalls(planes(labelImage), labels);
+	}
+
+	private double[][] inscribedBalls(ImageProcessor[] labelPlanes, int[] labels)
+	{
+		int sizeX = labelPlanes[0].getWidth();
+		int sliceSize = sizeX * labelPlanes[0].getHeight();
+		
+		int nLabels = labels.length;
+		Maxima maxima = new Maxima(nLabels);
+		transform(labelPlanes, new LabelIndex(labels), maxima);
+		
+		double[][] res = new double[nLabels][4];
+		for (int i = 0; i < nLabels; i++)
+		{
+			long index = maxima.indices[i];
+			if (index < 0)
+			{
+				res[i] = new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+				continue;
+			}
+			int z = (int) (index / sliceSize);
+			int offset = (int) (index % sliceSize);
+			int y = offset / sizeX;
+			int x = offset % sizeX;
+			res[i][0] = x * spacing[0];
+			res[i][1] = y * spacing[1];
+			res[i][2] = z * spacing[2];
+			res[i][3] = Math.sqrt(maxima.values[i]);
+		}
+		return res;
+	}
+	
+	private static final ImageProcessor[] planes(ImageStack image)
+	{
+		ImageProcessor[] planes = new ImageProcessor[image.getSize()];
+		for (int z = 0; z < planes.length; z++)
+		{
+			planes[z] = image.getProcessor(z + 1);
+		}
+		return planes;
+	}
+	
+	/**
+	 * Computes the distance map, and the largest squared distance within
+	 * each region if the label index is not null.
+	 */
+	private float[][] transform(final ImageProcessor[] labelPlanes, final LabelIndex labelIndex, Maxima maxima)
+	{
+		// size of image
+		final int sizeX = labelPlanes[0].getWidth();
+		final int sizeY = labelPlanes[0].getHeight();
+		final int sizeZ = labelPlanes.length;
+		final int sliceSize = sizeX * sizeY;
+
+		this.fireStatusChanged(new AlgoEvent(this, "Initialization"));
+		
+		// initialize squared distance with either 0 (background) or Inf
+		final float[][] slices = new float[sizeZ][sliceSize];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor plane = labelPlanes[z];
+			float[] buffer = slices[z];
+			for (int i = 0; i < sliceSize; i++)
+			{
+				buffer[i] = plane.getf(i) == 0 ? 0 : Float.POSITIVE_INFINITY;
+			}
+		}
+
+		// transform each row and each column within slices
+		this.fireStatusChanged(new AlgoEvent(this, "Process slices"));
+		final double sx = spacing[0];
+		final double sy = spacing[1];
+		final boolean lastPass = sizeZ == 1;
+		Maxima sliceMaxima = processBlocks(sizeZ, Math.max(sizeX, sizeY), 
+				lastPass ? labelIndex : null, new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int[] lineLabels,
+					int start, int end, Maxima maxima)
+			{
+				for (int z = start; z < end; z++)
+				{
+					float[] buffer = slices[z];
+					ImageProcessor plane = labelPlanes[z];
+					for (int y = 0; y < sizeY; y++)
+					{
+						processLine(env, lineLabels, buffer, plane, y * sizeX, 1, sizeX, sx);
+					}
+					for (int x = 0; x < sizeX; x++)
+					{
+						processLine(env, lineLabels, buffer, plane, x, sizeX, sizeY, sy);
+					}
+					if (lastPass)
+					{
+						finalizeSlice(buffer, plane, (long) z * sliceSize, labelIndex, maxima);
+					}
+				}
+			}
+		});
+		this.fireProgressChanged(this, 1, 3);
+		if (lastPass)
+		{
+			if (maxima != null)
+				maxima.merge(sliceMaxima);
+			return slices;
+		}
+
+		// transform along the z direction
+		this.fireStatusChanged(new AlgoEvent(this, "Process z-direction"));
+		final double sz = spacing[2];
+		Maxima zMaxima = processBlocks(sizeY, sizeZ, labelIndex, new BlockProcessor()
+		{
+			public void process(SquaredDistanceEnvelope env, int[] lineLabels,
+					int start, int end, Maxima maxima)
+			{
+				double[] values = env.values;
+				double[] dist = env.dist;
+				
+				for (int index = start * sizeX; index < end * sizeX; index++)
+				{
+					for (int z = 0; z < sizeZ; z++)
+					{
+						values[z] = slices[z][index];
+						lineLabels[z] = (int) labelPlanes[z].getf(index);
+					}
+					
+					env.transformRuns(sizeZ, sz, lineLabels);
+					
+					for (int z = 0; z < sizeZ; z++)
+					{
+						slices[z][index] = (float) Math.sqrt(dist[z]);
+					}
+					if (maxima != null)
+					{
+						for (int z = 0; z < sizeZ; z++)
+						{
+							int label = lineLabels[z];
+							if (label != 0)
+							{
+								maxima.update(labelIndex.indexOf(label), dist[z], (long) z * sliceSize + index);
+							}
+						}
+					}
+				}
+			}
+		});
+		this.fireProgressChanged(this, 3, 3);
+		
+		if (maxima != null)
+			maxima.merge(zMaxima);
+		return slices;
+	}
+	
+	/**
+	 * Transforms a line of a slice, updating the squared distances in place.
+	 */
+	private static final void processLine(SquaredDistanceEnvelope env, int[] lineLabels, 
+			float[] buffer, ImageProcessor plane, int start, int stride, int n, double spacing)
+	{
+		double[] values = env.values;
+		for (int i = 0, index = start; i < n; i++, index += stride)
+		{
+			values[i] = buffer[index];
+			lineLabels[i] = (int) plane.getf(index);
+		}
+		
+		env.transformRuns(n, spacing, lineLabels);
+		
+		double[] dist = env.dist;
+		for (int i = 0, index = start; i < n; i++, index += stride)
+		{
+			buffer[index] = (float) dist[i];
+		}
+	}
+	
+	/**
+	 * Converts the squared distances of a slice into distances, and updates
+	 * the maxima.
+	 */
+	private static final void finalizeSlice(float[] buffer, ImageProcessor plane, 
+			long offset, LabelIndex labelIndex, Maxima maxima)
+	{
+		for (int i = 0; i < buffer.length; i++)
+		{
+			if (maxima != null)
+			{
+				int label = (int) plane.getf(i);
+				if (label != 0)
+				{
+					maxima.update(labelIndex.indexOf(label), buffer[i], offset + i);
+				}
+			}
+			buffer[i] = (float) Math.sqrt(buffer[i]);
+		}
+	}
+
+	/**
+	 * Splits the range of slices or rows into blocks, and processes each
+	 * block in parallel with its own buffers. Returns the merged maxima of
+	 * the blocks, or null if no label index is given.
+	 */
+	private Maxima processBlocks(int nLines, final int lineLength, 
+			final LabelIndex labelIndex, final BlockProcessor processor)
+	{
+		int nBlocks = Math.max(Math.min(pool.getParallelism(), nLines), 1);
+		ArrayList<Future<Maxima>> futures = new ArrayList<Future<Maxima>>(nBlocks);
+		for (int b = 0; b < nBlocks; b++)
+		{
+			final int start = (int) ((long) nLines * b / nBlocks);
+			final int end = (int) ((long) nLines * (b + 1) / nBlocks);
+			futures.add(pool.submit(new Callable<Maxima>()
+			{
+				public Maxima call()
+				{
+					Maxima maxima = labelIndex != null ? new Maxima(labelIndex.size()) : null;
+					processor.process(new SquaredDistanceEnvelope(lineLength),
+							new int[lineLength], start, end, maxima);
+					return maxima;
+				}
+			}));
+		}
+
+		Maxima maxima = labelIndex != null ? new Maxima(labelIndex.size()) : null;
+		try
+		{
+			for (Future<Maxima> future : futures)
+			{
+				Maxima blockMaxima = future.get();
+				if (maxima != null)
+					maxima.merge(blockMaxima);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		return maxima;
+	}
+
+	/**
+	 * Processes a contiguous range of slices or rows.
+	 */
+	private interface BlockProcessor
+	{
+		public void process(SquaredDistanceEnvelope env, int[] lineLabels,
+				int start, int end, Maxima maxima);
+	}
+	
+	/**
+	 * The largest squared distance within each region, and the linear index
+	 * of the corresponding element. Ties are resolved by keeping the smallest
+	 * index, making the result independent of the processing order. Indices
+	 * are stored as long, as 3D images may contain more than 2^31 elements.
+	 */
+	private static final class Maxima
+	{
+		double[] values;
+		long[] indices;
+		
+		Maxima(int nLabels)
+		{
+			this.values = new double[nLabels];
+			this.indices = new long[nLabels];
+			for (int i = 0; i < nLabels; i++)
+			{
+				this.values[i] = -1;
+				this.indices[i] = -1;
+			}
+		}
+		
+		void update(int labelIndex, double value, long index)
+		{
+			if (labelIndex < 0)
+				return;
+			if (value > values[labelIndex] || (value == values[labelIndex] && index < indices[labelIndex]))
+			{
+				values[labelIndex] = value;
+				indices[labelIndex] = index;
+			}
+		}
+		
+		void merge(Maxima maxima)
+		{
+			for (int i = 0; i < values.length; i++)
+			{
+				if (maxima.indices[i] >= 0)
+					update(i, maxima.values[i], maxima.indices[i]);
+			}
+		}
+	}
+}
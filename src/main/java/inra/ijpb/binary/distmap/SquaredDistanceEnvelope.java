@@ -0,0 +1,305 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+/**
+ * One-dimensional squared Euclidean distance transform, computed as the lower
+ * envelope of parabolas rooted at each sample, following the algorithm of
+ * Felzenszwalb and Huttenlocher.
+ * 
+ * Given a sampled function f, computes for each position p the value
+ * <code>min_q ((p-q)*spacing)^2 + f(q)</code>, as well as the position q that
+ * realizes the minimum. Applying the transform successively along each
+ * dimension of an image initialized with 0 on background and infinity on
+ * foreground results in the exact squared Euclidean distance map.
+ * 
+ * Instances keep the buffers used for computation, and are therefore not
+ * thread-safe.
+ * 
+ * References:
+ * <ul>
+ * <li>Felzenszwalb, P. F., &amp; Huttenlocher, D. P. (2012). Distance
+ * transforms of sampled functions. Theory of Computing, 8(1), 415-428.</li>
+ * <li>Meijster, A., Roerdink, J. B., &amp; Hesselink, W. H. (2000). A general
+ * algorithm for computing distance transforms in linear time. Mathematical
+ * Morphology and its applications to image and signal processing, 331-340.</li>
+ * </ul>
+ * 
+ * @see EuclideanDistanceTransform
+ * @see EuclideanDistanceTransform3D
+ * 
+ * @author David Legland
+ */
+class SquaredDistanceEnvelope
+{
+	/**
+	 * The input values of the sampled function.
+	 */
+	final double[] values;
+
+	/**
+	 * The result of the transform.
+	 */
+	final double[] dist;
+
+	/**
+	 * For each position, the position of the sample that realizes the
+	 * minimum.
+	 */
+	final int[] arg;
+
+	/**
+	 * The feature values associated to the samples of the current line.
+	 */
+	final int[] features;
+
+	/**
+	 * The positions of the parabolas within the lower envelope.
+	 */
+	final int[] v;
+
+	/**
+	 * The boundaries between consecutive parabolas of the lower envelope.
+	 */
+	final double[] z;
+
+	/**
+	 * Creates a new transform for lines with at most the specified length.
+	 * 
+	 * @param maxLength
+	 *            the maximum number of samples within a line
+	 */
+	SquaredDistanceEnvelope(int maxLength)
+	{
+		this.values = new double[maxLength];
+		this.dist = new double[maxLength];
+		this.arg = new int[maxLength];
+		this.features = new int[maxLength];
+		this.v = new int[maxLength];
+		this.z = new double[maxLength + 1];
+	}
+
+	/**
+	 * Computes the transform of the first n samples stored within the
+	 * <code>values</code> array, and stores the result within the
+	 * <code>dist</code> and <code>arg</code> arrays.
+	 * 
+	 * @param n
+	 *            the number of samples
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 * @return false if all values are infinite. In that case, the result
+	 *         arrays are not updated.
+	 */
+	boolean transform(int n, double spacing)
+	{
+		return transform(0, n, 0, n, spacing);
+	}
+
+	/**
+	 * Computes the lower envelope of the samples stored between the
+	 * <code>start</code> and <code>end</code> indices of the
+	 * <code>values</code> array, and stores the result within the
+	 * <code>dist</code> and <code>arg</code> arrays, only between the
+	 * <code>resultStart</code> and <code>resultEnd</code> indices.
+	 * 
+	 * @param start
+	 *            the index of the first sample (inclusive)
+	 * @param end
+	 *            the index of the last sample (exclusive)
+	 * @param resultStart
+	 *            the index of the first result to compute (inclusive)
+	 * @param resultEnd
+	 *            the index of the last result to compute (exclusive)
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 * @return false if all values are infinite. In that case, the result
+	 *         arrays are not updated.
+	 */
+	boolean transform(int start, int end, int resultStart, int resultEnd, double spacing)
+	{
+		double s2 = spacing * spacing;
+
+		// compute lower envelope, ignoring samples with infinite value
+		int k = -1;
+		for (int q = start; q < end; q++)
+		{
+			double fq = values[q];
+			if (fq == Double.POSITIVE_INFINITY)
+				continue;
+
+			// intersection with the last parabola of the envelope
+			double s = Double.NEGATIVE_INFINITY;
+			while (k >= 0)
+			{
+				int vk = v[k];
+				s = ((fq + s2 * q * q) - (values[vk] + s2 * vk * vk)) / (2 * s2 * (q - vk));
+				if (s > z[k])
+					break;
+				k--;
+			}
+			if (k < 0)
+				s = Double.NEGATIVE_INFINITY;
+
+			k++;
+			v[k] = q;
+			z[k] = s;
+		}
+
+		// case of a line containing only infinite values
+		if (k < 0)
+			return false;
+		z[k + 1] = Double.POSITIVE_INFINITY;
+
+		// fill result arrays from the lower envelope
+		int j = 0;
+		for (int p = resultStart; p < resultEnd; p++)
+		{
+			while (z[j + 1] < p)
+				j++;
+			int q = v[j];
+			double dp = p - q;
+			dist[p] = s2 * dp * dp + values[q];
+			arg[p] = q;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the transform independently for each run of consecutive
+	 * samples with the same label, considering that the samples located
+	 * just before and just after each run (that have a different label) are
+	 * at distance zero. Samples with label 0 have a distance equal to zero.
+	 * 
+	 * The input values are read from the first n elements of the
+	 * <code>values</code> array, and the results are stored within the
+	 * <code>dist</code> array. The results of runs containing only infinite
+	 * values are set to infinity.
+	 * 
+	 * @param n
+	 *            the number of samples
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 * @param labels
+	 *            the label of each sample
+	 */
+	void transformRuns(int n, double spacing, int[] labels)
+	{
+		int a = 0;
+		while (a < n)
+		{
+			// find the end of the current run
+			int label = labels[a];
+			int b = a + 1;
+			while (b < n && labels[b] == label)
+				b++;
+			
+			if (label == 0)
+			{
+				for (int p = a; p < b; p++)
+					dist[p] = 0;
+				a = b;
+				continue;
+			}
+			
+			// use neighbor samples as boundaries of the run
+			int start = a, end = b;
+			double before = 0, after = 0;
+			if (a > 0)
+			{
+				start = a - 1;
+				before = values[start];
+				values[start] = 0;
+			}
+			if (b < n)
+			{
+				end = b + 1;
+				after = values[b];
+				values[b] = 0;
+			}
+			
+			if (!transform(start, end, a, b, spacing))
+			{
+				for (int p = a; p < b; p++)
+					dist[p] = Double.POSITIVE_INFINITY;
+			}
+			
+			// restore the values of the neighbor runs
+			if (start < a)
+				values[start] = before;
+			if (end > b)
+				values[b] = after;
+			a = b;
+		}
+	}
+
+	/**
+	 * Applies the transform to a line of values stored within an array, and
+	 * updates the optional feature array.
+	 * 
+	 * @param array
+	 *            the array containing squared distances, updated in place
+	 * @param start
+	 *            the index of the first sample of the line within the array
+	 * @param stride
+	 *            the difference of index between two consecutive samples
+	 * @param n
+	 *            the number of samples within the line
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 * @param featureArray
+	 *            the array of nearest background indices, updated in place. Can
+	 *            be null.
+	 * @param featureStart
+	 *            the index of the first sample within the feature array
+	 */
+	void processLine(float[] array, int start, int stride, int n,
+			double spacing, int[] featureArray, int featureStart)
+	{
+		for (int i = 0, index = start; i < n; i++, index += stride)
+		{
+			values[i] = array[index];
+		}
+		if (featureArray != null)
+		{
+			for (int i = 0, index = featureStart; i < n; i++, index += stride)
+			{
+				features[i] = featureArray[index];
+			}
+		}
+
+		if (!transform(n, spacing))
+			return;
+
+		for (int i = 0, index = start; i < n; i++, index += stride)
+		{
+			array[index] = (float) dist[i];
+		}
+		if (featureArray != null)
+		{
+			for (int i = 0, index = featureStart; i < n; i++, index += stride)
+			{
+				featureArray[index] = features[arg[i]];
+			}
+		}
+	}
+}
@@ -26,6 +26,10 @@
  * <p>Contains implementations for computation using shorts or float values, 
  * for 3x3 and 5x5 neighborhoods.</p>
  * 
+ * <p>Exact Euclidean distance maps, with optional feature transform and
+ * anisotropic spacing, are computed by the EuclideanDistanceTransform and
+ * EuclideanDistanceTransform3D classes.</p>
+ * 
  * <p>
  * Example of use:
  * <pre><code>
@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+/**
+ * A circular array of buckets of element indices, used as priority queue for
+ * propagating integer distances (Dial's algorithm). Each bucket contains the
+ * elements queued with the same distance modulo the number of buckets. As
+ * long as the number of buckets is greater than the largest weight, the
+ * queued distances always fit within a single turn of the array.
+ * 
+ * Entries are never removed when the distance of an element decreases, so
+ * callers must skip entries whose distance does not match the distance of
+ * the bucket being processed.
+ * 
+ * @author dlegland
+ *
+ */
+final class BucketQueue
+{
+	int[][] buckets;
+	int[] sizes;
+	int size = 0;
+	
+	BucketQueue(int nBuckets)
+	{
+		buckets = new int[nBuckets][16];
+		sizes = new int[nBuckets];
+	}
+	
+	void add(int index, int dist)
+	{
+		int b = dist % buckets.length;
+		if (sizes[b] == buckets[b].length)
+		{
+			int[] tmp = new int[sizes[b] * 2];
+			System.arraycopy(buckets[b], 0, tmp, 0, sizes[b]);
+			buckets[b] = tmp;
+		}
+		buckets[b][sizes[b]++] = index;
+		size++;
+	}
+}
@@ -0,0 +1,211 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.binary.ChamferWeights3D;
+
+/**
+ * Computation of geodesic distance transform of 3D binary images using a
+ * priority queue, so that each voxel is processed only once, instead of
+ * iterating forward and backward scans until stability.
+ * 
+ * Distances are either propagated using the first three chamfer weights
+ * within the 26-neighborhood, with the same results as
+ * {@link GeodesicDistanceTransform3DFloat}, or using the fast marching
+ * method, resulting in a closer approximation of the euclidean geodesic
+ * distance.
+ * 
+ * @see GeodesicDistanceTransformQueue
+ * @author dlegland
+ *
+ */
+public class GeodesicDistanceTransform3DQueue extends AlgoStub implements GeodesicDistanceTransform3D
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The weights for orthogonal, square-diagonal and cube-diagonal neighbors
+	 */
+	float[] weights;
+	
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	boolean normalizeMap = true;
+	
+	/**
+	 * Flag for using the fast marching method instead of chamfer weights.
+	 */
+	boolean fastMarching = false;
+	
+	/** 
+	 * The value assigned to result voxels that do not belong to the mask, or
+	 * that cannot be reached from the marker. Default is
+	 * Float.POSITIVE_INFINITY.
+	 */
+	float backgroundValue = Float.POSITIVE_INFINITY;
+
+	
+	// ==================================================
+	// Constructors 
+	
+	/**
+	 * Creates a new operator.
+	 * 
+	 * @param weights
+	 *            the weights for orthogonal, square-diagonal and
+	 *            cube-diagonal neighbors
+	 * @param normalizeMap
+	 *            the flag for dividing the distance map by the first weight
+	 */
+	public GeodesicDistanceTransform3DQueue(float[] weights, boolean normalizeMap)
+	{
+		this.weights = weights;
+		this.normalizeMap = normalizeMap;
+	}
+
+	/**
+	 * Creates a new operator.
+	 * 
+	 * @param weights
+	 *            the chamfer weights
+	 * @param normalizeMap
+	 *            the flag for dividing the distance map by the first weight
+	 */
+	public GeodesicDistanceTransform3DQueue(ChamferWeights3D weights, boolean normalizeMap)
+	{
+		this(weights.getFloatWeights(), normalizeMap);
+	}
+
+	
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return the backgroundValue
+	 */
+	public float getBackgroundValue() 
+	{
+		return backgroundValue;
+	}
+
+	/**
+	 * @param backgroundValue the backgroundValue to set
+	 */
+	public void setBackgroundValue(float backgroundValue) 
+	{
+		this.backgroundValue = backgroundValue;
+	}
+
+	/**
+	 * @return true if the fast marching method is used
+	 */
+	public boolean isFastMarching()
+	{
+		return fastMarching;
+	}
+
+	/**
+	 * Chooses between chamfer distances and fast marching. The fast marching
+	 * method ignores the weights, and computes distances in voxel units.
+	 * 
+	 * @param fastMarching
+	 *            true to use the fast marching method
+	 */
+	public void setFastMarching(boolean fastMarching)
+	{
+		this.fastMarching = fastMarching;
+	}
+
+	
+	// ==================================================
+	// Implementation of GeodesicDistanceTransform3D interface
+	
+	/**
+	 * Computes the geodesic distance function for each voxel in mask, using
+	 * the given mask. Mask and marker should be ImageStack the same size,
+	 * with non-zero values for marker and mask voxels.
+	 * The function returns a new 32-bits ImageStack the same size as the
+	 * input, with values greater or equal to zero. 
+	 */
+	@Override
+	public ImageStack geodesicDistanceMap(ImageStack marker, ImageStack mask)
+	{
+		int sizeX = mask.getWidth();
+		int sizeY = mask.getHeight();
+		int sizeZ = mask.getSize();
+		int sizeXY = sizeX * sizeY;
+		int n = sizeXY * sizeZ;
+		
+		fireStatusChanged(this, "Initialization..."); 
+		
+		// initialize distances with either 0 (marker) or Inf (background)
+		float[] dist = new float[n];
+		boolean[] inside = new boolean[n];
+		int[] seeds = new int[n];
+		int nSeeds = 0;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor markerSlice = marker.getProcessor(z + 1);
+			ImageProcessor maskSlice = mask.getProcessor(z + 1);
+			for (int i = 0, index = z * sizeXY; i < sizeXY; i++, index++)
+			{
+				inside[index] = maskSlice.getf(i) != 0;
+				if (markerSlice.getf(i) != 0)
+				{
+					seeds[nSeeds++] = index;
+				}
+				else
+				{
+					dist[index] = Float.POSITIVE_INFINITY;
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "Propagate distances..."); 
+		GeodesicPropagator propagator = new GeodesicPropagator(sizeX, sizeY, sizeZ, inside, weights, false);
+		if (fastMarching)
+			propagator.propagateFastMarching(dist, seeds, nSeeds);
+		else
+			propagator.propagateChamfer(dist, seeds, nSeeds);
+		
+		// Normalize values by the first weight value
+		fireStatusChanged(this, "Normalize map"); 
+		float w0 = normalizeMap && !fastMarching ? weights[0] : 1;
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			float[] pixels = (float[]) result.getPixels(z + 1);
+			for (int i = 0, index = z * sizeXY; i < sizeXY; i++, index++)
+			{
+				float d = dist[index];
+				pixels[i] = d < Float.POSITIVE_INFINITY ? d / w0 : backgroundValue;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,460 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import java.util.Arrays;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.binary.ChamferWeights;
+
+/**
+ * Computation of geodesic distance transform of planar binary images using a
+ * priority queue, so that each pixel is processed only once, instead of
+ * iterating forward and backward scans until stability.
+ * 
+ * Distances are either propagated using chamfer weights, with the same
+ * results as {@link GeodesicDistanceTransformFloat} and
+ * {@link GeodesicDistanceTransformFloat5x5}, or using the fast marching
+ * method, resulting in a closer approximation of the euclidean geodesic
+ * distance. When the weights are given as short values, the result is a
+ * ShortProcessor with the same values as
+ * {@link GeodesicDistanceTransformShort} and
+ * {@link GeodesicDistanceTransformShort5x5}.
+ * 
+ * The {@link #updateDistanceMap(ImageProcessor, ImageProcessor)} method keeps
+ * the distance map between calls, and only propagates the changes due to
+ * the markers added or removed since the previous call.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	GeodesicDistanceTransformQueue algo = new GeodesicDistanceTransformQueue(ChamferWeights.CHESSKNIGHT, true);
+ *	algo.setFastMarching(true);
+ *	ImageProcessor distMap = algo.geodesicDistanceMap(marker, mask);
+ *}</pre>
+ *
+ * @author dlegland
+ *
+ */
+public class GeodesicDistanceTransformQueue extends AlgoStub implements GeodesicDistanceTransform
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The weights for orthogonal, diagonal, and eventually chess-knight moves
+	 * neighbors
+	 */
+	float[] weights;
+	
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	boolean normalizeMap = true;
+	
+	/**
+	 * Flag for computing the result as a ShortProcessor.
+	 */
+	boolean shortResult = false;
+	
+	/**
+	 * Flag for using the fast marching method instead of chamfer weights.
+	 */
+	boolean fastMarching = false;
+	
+	/** 
+	 * The value assigned to result pixels that do not belong to the mask, or
+	 * that cannot be reached from the marker. Default is
+	 * Float.POSITIVE_INFINITY. Short results use Short.MAX_VALUE.
+	 */
+	float backgroundValue = Float.POSITIVE_INFINITY;
+	
+	/**
+	 * The state kept between incremental updates: the non normalized
+	 * distances, the index of the marker pixel each distance was propagated
+	 * from, the marker and mask pixels, and the propagator.
+	 */
+	float[] distances = null;
+	int[] origins;
+	boolean[] markers;
+	boolean[] inside;
+	GeodesicPropagator propagator;
+	int width;
+	int height;
+	
+	
+	// ==================================================
+	// Constructors 
+	
+	/**
+	 * Creates a new operator computing a floating point distance map.
+	 * 
+	 * @param weights
+	 *            the weights for orthogonal, diagonal, and eventually
+	 *            chess-knight moves neighbors
+	 * @param normalizeMap
+	 *            the flag for dividing the distance map by the first weight
+	 */
+	public GeodesicDistanceTransformQueue(float[] weights, boolean normalizeMap)
+	{
+		this.weights = weights;
+		this.normalizeMap = normalizeMap;
+	}
+
+	/**
+	 * Creates a new operator computing a floating point distance map.
+	 * 
+	 * @param weights
+	 *            the chamfer weights
+	 * @param normalizeMap
+	 *            the flag for dividing the distance map by the first weight
+	 */
+	public GeodesicDistanceTransformQueue(ChamferWeights weights, boolean normalizeMap)
+	{
+		this(weights.getFloatWeights(), normalizeMap);
+	}
+
+	/**
+	 * Creates a new operator computing a 16-bits distance map.
+	 * 
+	 * @param weights
+	 *            the integer weights for orthogonal, diagonal, and eventually
+	 *            chess-knight moves neighbors
+	 * @param normalizeMap
+	 *            the flag for dividing the distance map by the first weight
+	 */
+	public GeodesicDistanceTransformQueue(short[] weights, boolean normalizeMap)
+	{
+		this.weights = new float[weights.length];
+		for (int i = 0; i < weights.length; i++)
+		{
+			this.weights[i] = weights[i];
+		}
+		this.normalizeMap = normalizeMap;
+		this.shortResult = true;
+	}
+
+	
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return the backgroundValue
+	 */
+	public float getBackgroundValue() 
+	{
+		return backgroundValue;
+	}
+
+	/**
+	 * @param backgroundValue the backgroundValue to set
+	 */
+	public void setBackgroundValue(float backgroundValue) 
+	{
+		this.backgroundValue = backgroundValue;
+	}
+
+	/**
+	 * @return true if the fast marching method is used
+	 */
+	public boolean isFastMarching()
+	{
+		return fastMarching;
+	}
+
+	/**
+	 * Chooses between chamfer distances and fast marching. The fast marching
+	 * method ignores the weights, and computes distances in pixel units.
+	 * 
+	 * @param fastMarching
+	 *            true to use the fast marching method
+	 */
+	public void setFastMarching(boolean fastMarching)
+	{
+		this.fastMarching = fastMarching;
+	}
+
+	
+	// ==================================================
+	// Implementation of GeodesicDistanceTransform interface
+	
+	/**
+	 * Computes the geodesic distance function for each pixel in mask, using
+	 * the given mask. Mask and marker should be ImageProcessor the same size,
+	 * with non-zero values for marker and mask pixels.
+	 * The function returns a new FloatProcessor or ShortProcessor the same 
+	 * size as the input, with values greater or equal to zero. 
+	 */
+	@Override
+	public ImageProcessor geodesicDistanceMap(ImageProcessor marker,
+			ImageProcessor mask)
+	{
+		// size of image
+		int width = mask.getWidth();
+		int height = mask.getHeight();
+		int n = width * height;
+		
+		fireStatusChanged(this, "Initialization..."); 
+		
+		// initialize distances with either 0 (marker) or Inf (background)
+		float[] dist = new float[n];
+		boolean[] inside = new boolean[n];
+		int[] seeds = new int[n];
+		int nSeeds = 0;
+		for (int i = 0; i < n; i++)
+		{
+			inside[i] = mask.getf(i) != 0;
+			if (marker.getf(i) != 0)
+			{
+				seeds[nSeeds++] = i;
+			}
+			else
+			{
+				dist[i] = Float.POSITIVE_INFINITY;
+			}
+		}
+		
+		fireStatusChanged(this, "Propagate distances..."); 
+		GeodesicPropagator propagator = new GeodesicPropagator(width, height, 1, inside, weights, true);
+		if (fastMarching)
+			propagator.propagateFastMarching(dist, seeds, nSeeds);
+		else
+			propagator.propagateChamfer(dist, seeds, nSeeds);
+		
+		fireStatusChanged(this, "Normalize map"); 
+		return createResult(dist, width, height);
+	}
+	
+	/**
+	 * Updates the geodesic distance map computed by the previous call to this
+	 * method, using a new marker image and the same mask.
+	 * 
+	 * Distances are propagated only from the marker pixels added since the
+	 * previous call. When marker pixels have been removed, only the pixels
+	 * whose distance was propagated from removed markers are reset, and
+	 * recomputed from the boundary of the region they form. The whole map is
+	 * computed if the method is called for the first time, if the mask has
+	 * changed, or if the fast marching method is used.
+	 * 
+	 * @param marker
+	 *            the binary image of marker
+	 * @param mask
+	 *            the binary image of mask
+	 * @return the geodesic distance map in a new ImageProcessor
+	 */
+	public ImageProcessor updateDistanceMap(ImageProcessor marker, ImageProcessor mask)
+	{
+		if (!isSameMask(mask) || fastMarching)
+		{
+			initDistanceMap(marker, mask);
+			return createResult(distances, width, height);
+		}
+		
+		fireStatusChanged(this, "Update markers..."); 
+		
+		// identify removed markers, and added ones that are seeds
+		int n = width * height;
+		boolean[] removed = null;
+		int[] seeds = new int[16];
+		int nSeeds = 0;
+		for (int i = 0; i < n; i++)
+		{
+			boolean isMarker = marker.getf(i) != 0;
+			if (isMarker == markers[i])
+				continue;
+			
+			markers[i] = isMarker;
+			if (isMarker)
+			{
+				distances[i] = 0;
+				origins[i] = i;
+				if (nSeeds == seeds.length)
+					seeds = Arrays.copyOf(seeds, nSeeds * 2);
+				seeds[nSeeds++] = i;
+			}
+			else
+			{
+				if (removed == null)
+					removed = new boolean[n];
+				removed[i] = true;
+			}
+		}
+		
+		if (removed != null)
+		{
+			// reset the pixels reached from a removed marker
+			boolean[] reset = new boolean[n];
+			for (int i = 0; i < n; i++)
+			{
+				if (origins[i] >= 0 && removed[origins[i]] && !markers[i])
+				{
+					reset[i] = true;
+					distances[i] = Float.POSITIVE_INFINITY;
+					origins[i] = -1;
+				}
+			}
+			
+			// use the remaining neighbors of the reset region as seeds
+			boolean[] isSeed = new boolean[n];
+			for (int i = 0; i < n; i++)
+			{
+				if (!reset[i])
+					continue;
+				
+				int x = i % width;
+				int y = i / width;
+				for (int[] shift : propagator.shifts)
+				{
+					int x2 = x + shift[0];
+					int y2 = y + shift[1];
+					if (x2 < 0 || y2 < 0 || x2 >= width || y2 >= height)
+						continue;
+					
+					int i2 = y2 * width + x2;
+					if (reset[i2] || isSeed[i2] || distances[i2] == Float.POSITIVE_INFINITY)
+						continue;
+					
+					isSeed[i2] = true;
+					if (nSeeds == seeds.length)
+						seeds = Arrays.copyOf(seeds, nSeeds * 2);
+					seeds[nSeeds++] = i2;
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "Propagate distances..."); 
+		propagator.propagateChamfer(distances, seeds, nSeeds);
+		
+		fireStatusChanged(this, "Normalize map"); 
+		return createResult(distances, width, height);
+	}
+	
+	private boolean isSameMask(ImageProcessor mask)
+	{
+		if (distances == null || mask.getWidth() != width || mask.getHeight() != height)
+			return false;
+		
+		for (int i = 0; i < inside.length; i++)
+		{
+			if (inside[i] != (mask.getf(i) != 0))
+				return false;
+		}
+		return true;
+	}
+	
+	private void initDistanceMap(ImageProcessor marker, ImageProcessor mask)
+	{
+		width = mask.getWidth();
+		height = mask.getHeight();
+		int n = width * height;
+		
+		fireStatusChanged(this, "Initialization..."); 
+		distances = new float[n];
+		origins = new int[n];
+		markers = new boolean[n];
+		inside = new boolean[n];
+		int[] seeds = new int[n];
+		int nSeeds = 0;
+		for (int i = 0; i < n; i++)
+		{
+			inside[i] = mask.getf(i) != 0;
+			markers[i] = marker.getf(i) != 0;
+			if (markers[i])
+			{
+				seeds[nSeeds++] = i;
+				origins[i] = i;
+			}
+			else
+			{
+				distances[i] = Float.POSITIVE_INFINITY;
+				origins[i] = -1;
+			}
+		}
+		
+		fireStatusChanged(this, "Propagate distances..."); 
+		propagator = new GeodesicPropagator(width, height, 1, inside, weights, true);
+		propagator.origins = origins;
+		if (fastMarching)
+			propagator.propagateFastMarching(distances, seeds, nSeeds);
+		else
+			propagator.propagateChamfer(distances, seeds, nSeeds);
+	}
+	
+	/**
+	 * Converts the array of distances into a FloatProcessor or a
+	 * ShortProcessor, normalizing values if necessary.
+	 */
+	ImageProcessor createResult(float[] dist, int width, int height)
+	{
+		// chamfer distances are normalized by the orthogonal weight
+		float w0 = normalizeMap && !fastMarching ? weights[0] : 1;
+		
+		ImageProcessor result;
+		float maxVal = 0;
+		if (shortResult)
+		{
+			short[] pixels = new short[dist.length];
+			for (int i = 0; i < dist.length; i++)
+			{
+				float d = dist[i];
+				int val = Short.MAX_VALUE;
+				if (d < Float.POSITIVE_INFINITY)
+				{
+					val = fastMarching ? Math.round(d) : (int) d / (int) w0;
+					val = Math.min(val, Short.MAX_VALUE - 1);
+					maxVal = Math.max(maxVal, val);
+				}
+				pixels[i] = (short) val;
+			}
+			result = new ShortProcessor(width, height, pixels, null);
+		}
+		else
+		{
+			float[] pixels = new float[dist.length];
+			for (int i = 0; i < dist.length; i++)
+			{
+				float d = dist[i];
+				if (d < Float.POSITIVE_INFINITY)
+				{
+					pixels[i] = d / w0;
+					maxVal = Math.max(maxVal, pixels[i]);
+				}
+				else
+				{
+					pixels[i] = backgroundValue;
+				}
+			}
+			result = new FloatProcessor(width, height, pixels);
+		}
+		
+		// update and return resulting Image processor
+		result.setMinAndMax(0, maxVal);
+		// Forces the display to non-inverted LUT
+		if (result.isInvertedLut())
+			result.invertLut();
+		return result;
+	}
+}
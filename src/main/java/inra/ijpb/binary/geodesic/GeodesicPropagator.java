@@ -0,0 +1,466 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import java.util.Arrays;
+
+/**
+ * Propagates geodesic distances within a 2D or 3D mask stored as a linear
+ * array, using a priority queue so that each element is finalized only once.
+ * 
+ * Chamfer distances use a bucket queue when all weights are integers, and a
+ * binary heap otherwise. Fast-marching distances solve the eikonal equation
+ * using the 4- or 6-neighborhood, and approximate the euclidean geodesic
+ * distance.
+ * 
+ * Distances are read from and written into the given array. Elements given
+ * as seeds are considered as sources, with their current distance, and only
+ * elements within the mask are updated. As distances are only decreased,
+ * propagating from new seeds within an existing distance map updates it
+ * incrementally.
+ * 
+ * @author dlegland
+ *
+ */
+final class GeodesicPropagator
+{
+	final int sizeX;
+	final int sizeY;
+	final int sizeZ;
+	
+	/**
+	 * The elements that distances can be propagated to.
+	 */
+	final boolean[] mask;
+	
+	/**
+	 * The shifts of the chamfer mask, as triplets (dx, dy, dz), and their
+	 * weights.
+	 */
+	int[][] shifts;
+	float[] shiftWeights;
+	
+	/**
+	 * The shifts of the orthogonal neighbors, used for fast marching.
+	 */
+	int[][] orthoShifts;
+	
+	/**
+	 * The size and the index increment along each dimension.
+	 */
+	final int[] sizes;
+	final int[] strides;
+	
+	/**
+	 * If not null, the index of the source each element was reached from,
+	 * updated during chamfer propagation.
+	 */
+	int[] origins = null;
+	
+	/**
+	 * If not null, the index of the element each element was reached from,
+	 * updated during chamfer propagation.
+	 */
+	int[] predecessors = null;
+	
+	/**
+	 * Creates a new propagator. Planar propagators use the 8-neighborhood,
+	 * completed by chess-knight moves when three weights are given. Other
+	 * propagators use the 26-neighborhood, with the first three weights.
+	 */
+	GeodesicPropagator(int sizeX, int sizeY, int sizeZ, boolean[] mask, float[] weights, boolean planar)
+	{
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.mask = mask;
+		this.sizes = new int[] {sizeX, sizeY, sizeZ};
+		this.strides = new int[] {1, sizeX, sizeX * sizeY};
+		
+		if (planar)
+		{
+			// 8-neighborhood, completed by chess-knight moves for three weights
+			int n = weights.length > 2 ? 16 : 8;
+			shifts = new int[n][];
+			shiftWeights = new float[n];
+			int k = 0;
+			for (int dy = -2; dy <= 2; dy++)
+			{
+				for (int dx = -2; dx <= 2; dx++)
+				{
+					int adx = Math.abs(dx), ady = Math.abs(dy);
+					float w;
+					if (adx + ady == 3)
+						w = weights.length > 2 ? weights[2] : 0;
+					else if (adx < 2 && ady < 2 && adx + ady > 0)
+						w = weights[adx + ady - 1];
+					else
+						w = 0;
+					
+					if (w > 0)
+					{
+						shifts[k] = new int[] {dx, dy, 0};
+						shiftWeights[k++] = w;
+					}
+				}
+			}
+			
+			orthoShifts = new int[][] {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}};
+		}
+		else
+		{
+			// 26-neighborhood, weighted by number of non-zero shift components
+			shifts = new int[26][];
+			shiftWeights = new float[26];
+			int k = 0;
+			for (int dz = -1; dz <= 1; dz++)
+			{
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dx = -1; dx <= 1; dx++)
+					{
+						int n = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+						if (n == 0)
+							continue;
+						shifts[k] = new int[] {dx, dy, dz};
+						shiftWeights[k++] = weights[Math.min(n, weights.length) - 1];
+					}
+				}
+			}
+			
+			orthoShifts = new int[][] {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0},
+					{0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+		}
+	}
+	
+	/**
+	 * Propagates chamfer distances from the seed elements.
+	 * 
+	 * @param dist
+	 *            the array of distances, updated in place
+	 * @param seeds
+	 *            the indices of the source elements, with finite distances
+	 * @param nSeeds
+	 *            the number of source elements
+	 */
+	void propagateChamfer(float[] dist, int[] seeds, int nSeeds)
+	{
+		boolean integer = true;
+		int maxWeight = 0;
+		for (float w : shiftWeights)
+		{
+			integer = integer && w == Math.rint(w);
+			maxWeight = Math.max(maxWeight, (int) Math.ceil(w));
+		}
+		for (int i = 0; i < nSeeds && integer; i++)
+		{
+			float d = dist[seeds[i]];
+			integer = d == Math.rint(d);
+		}
+		
+		if (integer)
+		{
+			propagateChamferBuckets(dist, seeds, nSeeds, maxWeight);
+		}
+		else
+		{
+			propagateChamferHeap(dist, seeds, nSeeds);
+		}
+	}
+	
+	/**
+	 * Dial's algorithm. Seeds are sorted by distance, and inserted into the
+	 * queue when the current distance reaches their own distance.
+	 */
+	private void propagateChamferBuckets(float[] dist, int[] seeds, int nSeeds, int maxWeight)
+	{
+		// sort seeds by increasing distance
+		long[] sorted = new long[nSeeds];
+		for (int i = 0; i < nSeeds; i++)
+		{
+			sorted[i] = (((long) dist[seeds[i]]) << 32) | seeds[i];
+		}
+		Arrays.sort(sorted);
+		
+		BucketQueue queue = new BucketQueue(maxWeight + 1);
+		int nBuckets = maxWeight + 1;
+		int s = 0;
+		long d = nSeeds > 0 ? sorted[0] >>> 32 : 0;
+		while (queue.size > 0 || s < nSeeds)
+		{
+			// when queue is empty, jump to the distance of the next seed
+			if (queue.size == 0)
+			{
+				d = sorted[s] >>> 32;
+			}
+			
+			// insert the seeds with current distance
+			while (s < nSeeds && (sorted[s] >>> 32) == d)
+			{
+				int index = (int) sorted[s++];
+				if (dist[index] == d)
+					queue.add(index, (int) d);
+			}
+			
+			int b = (int) (d % nBuckets);
+			int count = queue.sizes[b];
+			if (count > 0)
+			{
+				// new elements are always pushed into other buckets
+				int[] bucket = queue.buckets[b];
+				for (int j = 0; j < count; j++)
+				{
+					int index = bucket[j];
+					
+					// skip obsolete entries
+					if (dist[index] != d)
+						continue;
+					
+					relaxNeighbors(dist, index, queue, null);
+				}
+				queue.sizes[b] = 0;
+				queue.size -= count;
+			}
+			d++;
+		}
+	}
+	
+	private void propagateChamferHeap(float[] dist, int[] seeds, int nSeeds)
+	{
+		MinHeap heap = new MinHeap(Math.max(nSeeds, 16));
+		for (int i = 0; i < nSeeds; i++)
+		{
+			heap.add(seeds[i], dist[seeds[i]]);
+		}
+		
+		while (heap.size > 0)
+		{
+			float d = heap.keys[0];
+			int index = heap.poll();
+			
+			// skip obsolete entries
+			if (dist[index] != d)
+				continue;
+			
+			relaxNeighbors(dist, index, null, heap);
+		}
+	}
+	
+	/**
+	 * Updates the distance of the neighbors of the given element within the
+	 * mask, and push them into either the bucket queue or the heap.
+	 */
+	private void relaxNeighbors(float[] dist, int index, BucketQueue queue, MinHeap heap)
+	{
+		int x = index % sizeX;
+		int y = (index / sizeX) % sizeY;
+		int z = index / (sizeX * sizeY);
+		float d = dist[index];
+		
+		for (int k = 0; k < shifts.length; k++)
+		{
+			int x2 = x + shifts[k][0];
+			int y2 = y + shifts[k][1];
+			int z2 = z + shifts[k][2];
+			if (x2 < 0 || y2 < 0 || z2 < 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+				continue;
+			
+			int index2 = (z2 * sizeY + y2) * sizeX + x2;
+			if (!mask[index2])
+				continue;
+			
+			float d2 = d + shiftWeights[k];
+			if (d2 < dist[index2])
+			{
+				dist[index2] = d2;
+				if (origins != null)
+					origins[index2] = origins[index];
+				if (predecessors != null)
+					predecessors[index2] = index;
+				if (queue != null)
+					queue.add(index2, (int) d2);
+				else
+					heap.add(index2, d2);
+			}
+		}
+	}
+	
+	/**
+	 * Propagates fast-marching distances from the seed elements, in pixel
+	 * units.
+	 * 
+	 * @param dist
+	 *            the array of distances, updated in place
+	 * @param seeds
+	 *            the indices of the source elements
+	 * @param nSeeds
+	 *            the number of source elements
+	 */
+	void propagateFastMarching(float[] dist, int[] seeds, int nSeeds)
+	{
+		boolean[] frozen = new boolean[dist.length];
+		MinHeap heap = new MinHeap(Math.max(nSeeds, 16));
+		for (int i = 0; i < nSeeds; i++)
+		{
+			heap.add(seeds[i], dist[seeds[i]]);
+		}
+		
+		double[] values = new double[3];
+		while (heap.size > 0)
+		{
+			float d = heap.keys[0];
+			int index = heap.poll();
+			if (frozen[index] || dist[index] != d)
+				continue;
+			frozen[index] = true;
+			
+			int x = index % sizeX;
+			int y = (index / sizeX) % sizeY;
+			int z = index / (sizeX * sizeY);
+			for (int[] shift : orthoShifts)
+			{
+				int x2 = x + shift[0];
+				int y2 = y + shift[1];
+				int z2 = z + shift[2];
+				if (x2 < 0 || y2 < 0 || z2 < 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+					continue;
+				
+				int index2 = (z2 * sizeY + y2) * sizeX + x2;
+				if (!mask[index2] || frozen[index2])
+					continue;
+				
+				float d2 = (float) solveEikonal(dist, frozen, x2, y2, z2, values);
+				if (d2 < dist[index2])
+				{
+					dist[index2] = d2;
+					heap.add(index2, d2);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes the arrival time of the given element from the frozen values
+	 * of its orthogonal neighbors, using a unit speed.
+	 */
+	private double solveEikonal(float[] dist, boolean[] frozen, int x, int y, int z, double[] values)
+	{
+		int nd = sizeZ == 1 ? 2 : 3;
+		int index = (z * sizeY + y) * sizeX + x;
+		
+		// smallest frozen value along each axis
+		int n = 0;
+		for (int d = 0; d < nd; d++)
+		{
+			int coord = d == 0 ? x : (d == 1 ? y : z);
+			double v = Double.POSITIVE_INFINITY;
+			if (coord > 0 && frozen[index - strides[d]])
+				v = dist[index - strides[d]];
+			if (coord < sizes[d] - 1 && frozen[index + strides[d]])
+				v = Math.min(v, dist[index + strides[d]]);
+			if (v < Double.POSITIVE_INFINITY)
+				values[n++] = v;
+		}
+		Arrays.sort(values, 0, n);
+		
+		// add axes by increasing value, while the solution is larger than the
+		// value of the next axis
+		double sum = 0, sum2 = 0;
+		double t = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < n; k++)
+		{
+			if (t <= values[k])
+				break;
+			sum += values[k];
+			sum2 += values[k] * values[k];
+			int m = k + 1;
+			double delta = sum * sum - m * (sum2 - 1);
+			t = (sum + Math.sqrt(Math.max(delta, 0))) / m;
+		}
+		return t;
+	}
+	
+	/**
+	 * A binary min-heap of element indices with float keys.
+	 */
+	private static final class MinHeap
+	{
+		float[] keys;
+		int[] values;
+		int size = 0;
+		
+		MinHeap(int capacity)
+		{
+			keys = new float[capacity];
+			values = new int[capacity];
+		}
+		
+		void add(int value, float key)
+		{
+			if (size == keys.length)
+			{
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			
+			// sift up
+			int i = size++;
+			while (i > 0)
+			{
+				int parent = (i - 1) >> 1;
+				if (keys[parent] <= key)
+					break;
+				keys[i] = keys[parent];
+				values[i] = values[parent];
+				i = parent;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+		
+		int poll()
+		{
+			int result = values[0];
+			size--;
+			float key = keys[size];
+			int value = values[size];
+			
+			// sift down
+			int i = 0;
+			int half = size >> 1;
+			while (i < half)
+			{
+				int child = 2 * i + 1;
+				if (child + 1 < size && keys[child + 1] < keys[child])
+					child++;
+				if (key <= keys[child])
+					break;
+				keys[i] = keys[child];
+				values[i] = values[child];
+				i = child;
+			}
+			keys[i] = key;
+			values[i] = value;
+			return result;
+		}
+	}
+}
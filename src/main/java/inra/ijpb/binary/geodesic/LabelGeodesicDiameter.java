@@ -0,0 +1,759 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.binary.ChamferWeights;
+import inra.ijpb.binary.ChamferWeights3D;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * Computes the geodesic diameter of each region of a 2D or 3D label image, by
+ * processing the regions independently and concurrently.
+ * 
+ * Each region is cropped to its bounding box, and geodesic distances are
+ * propagated within the region using Dijkstra's algorithm, with a bucket
+ * queue when all chamfer weights are integers, and a binary heap otherwise
+ * (for example for the (1, 1.41) quasi-euclidean weights). Three
+ * propagations are performed for each region: from the region boundary to
+ * find a geodesic center and the radius of the largest inscribed ball, then
+ * from the center to find a first geodesic extremity, and finally from this
+ * extremity to find the second one, the distance between both extremities
+ * being the geodesic diameter. Each propagation visits every pixel of the region only
+ * once, whereas the full-image propagations of
+ * {@link GeodesicDiameterFloat} iterate until convergence.
+ * 
+ * In 2D, chamfer masks with two weights use the 8-neighborhood, and masks
+ * with three weights also use chess-knight moves. In 3D, the first three
+ * weights are used for the 26-neighborhood.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	LabelGeodesicDiameter algo = new LabelGeodesicDiameter(ChamferWeights.CHESSKNIGHT);
+ *	algo.setComputePaths(true);
+ *	LabelGeodesicDiameter.Result res = algo.process(labelImage);
+ *	res.createTable().show("Geodesic Diameter");
+ *}</pre>
+ *
+ * @see inra.ijpb.binary.geodesic.GeodesicDiameterFloat
+ * @see inra.ijpb.binary.geodesic.GeodesicDiameter3DFloat
+ * @author dlegland
+ *
+ */
+public class LabelGeodesicDiameter extends AlgoStub
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The weights for orthogonal, diagonal, and eventually chess-knight or
+	 * cube-diagonal moves.
+	 */
+	float[] weights;
+	
+	/**
+	 * The pool used for processing regions concurrently.
+	 */
+	ForkJoinPool pool;
+	
+	/**
+	 * Whether the geodesic path between extremities is computed.
+	 */
+	boolean computePaths = false;
+	
+	
+	// ==================================================
+	// Constructors 
+	
+	/**
+	 * Creates a new geodesic diameter operator for planar images.
+	 * 
+	 * @param chamferWeights
+	 *            an instance of ChamferWeights, which provides the float
+	 *            weights used for propagating distances
+	 */
+	public LabelGeodesicDiameter(ChamferWeights chamferWeights)
+	{
+		this(chamferWeights.getFloatWeights());
+	}
+	
+	/**
+	 * Creates a new geodesic diameter operator for 3D images.
+	 * 
+	 * @param chamferWeights
+	 *            an instance of ChamferWeights3D, which provides the float
+	 *            weights used for propagating distances
+	 */
+	public LabelGeodesicDiameter(ChamferWeights3D chamferWeights)
+	{
+		this(chamferWeights.getFloatWeights());
+	}
+	
+	/**
+	 * Creates a new geodesic diameter operator using the common pool.
+	 * 
+	 * @param weights
+	 *            the positive integer weights for orthogonal, diagonal, and
+	 *            eventually chess-knight (2D) or cube-diagonal (3D) moves
+	 */
+	public LabelGeodesicDiameter(short[] weights)
+	{
+		this(weights, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new geodesic diameter operator.
+	 * 
+	 * @param weights
+	 *            the positive integer weights for orthogonal, diagonal, and
+	 *            eventually chess-knight (2D) or cube-diagonal (3D) moves
+	 * @param pool
+	 *            the pool used for processing regions concurrently
+	 */
+	public LabelGeodesicDiameter(short[] weights, ForkJoinPool pool)
+	{
+		this(toFloatArray(weights), pool);
+	}
+	
+	/**
+	 * Creates a new geodesic diameter operator using the common pool.
+	 * 
+	 * @param weights
+	 *            the positive weights for orthogonal, diagonal, and eventually
+	 *            chess-knight (2D) or cube-diagonal (3D) moves
+	 */
+	public LabelGeodesicDiameter(float[] weights)
+	{
+		this(weights, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new geodesic diameter operator.
+	 * 
+	 * @param weights
+	 *            the positive weights for orthogonal, diagonal, and eventually
+	 *            chess-knight (2D) or cube-diagonal (3D) moves
+	 * @param pool
+	 *            the pool used for processing regions concurrently
+	 */
+	public LabelGeodesicDiameter(float[] weights, ForkJoinPool pool)
+	{
+		if (weights.length < 2)
+		{
+			throw new IllegalArgumentException("Requires at least two weights");
+		}
+		for (float w : weights)
+		{
+			if (!(w > 0))
+			{
+				throw new IllegalArgumentException("Weights must be positive");
+			}
+		}
+		this.weights = weights;
+		this.pool = pool;
+	}
+	
+	private static final float[] toFloatArray(short[] weights)
+	{
+		float[] res = new float[weights.length];
+		for (int i = 0; i < weights.length; i++)
+		{
+			res[i] = weights[i];
+		}
+		return res;
+	}
+	
+	
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return true if the geodesic paths are computed
+	 */
+	public boolean isComputePaths()
+	{
+		return computePaths;
+	}
+
+	/**
+	 * @param computePaths
+	 *            true to compute the geodesic path between the extremities of
+	 *            each region
+	 */
+	public void setComputePaths(boolean computePaths)
+	{
+		this.computePaths = computePaths;
+	}
+	
+	
+	// ==================================================
+	// Processing methods
+
+	/**
+	 * Computes the geodesic diameter of each region within a planar label
+	 * image.
+	 * 
+	 * @param labelImage
+	 *            a label image, containing either the label of a region, or
+	 *            zero for background
+	 * @return the geodesic diameter, center and extremities of each region
+	 */
+	public Result process(ImageProcessor labelImage)
+	{
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int[] array = new int[sizeX * sizeY];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = (int) labelImage.getf(i);
+		}
+		
+		int[] labels = LabelImages.findAllLabels(labelImage);
+		return process(array, sizeX, sizeY, 1, labels, true);
+	}
+	
+	/**
+	 * Computes the geodesic diameter of each region within a 3D label image.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image, containing either the label of a region,
+	 *            or zero for background
+	 * @return the geodesic diameter, center and extremities of each region
+	 */
+	public Result process(ImageStack labelImage)
+	{
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int sizeZ = labelImage.getSize();
+		int sizeXY = sizeX * sizeY;
+		int[] array = new int[sizeXY * sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = labelImage.getProcessor(z + 1);
+			for (int i = 0; i < sizeXY; i++)
+			{
+				array[z * sizeXY + i] = (int) slice.getf(i);
+			}
+		}
+		
+		int[] labels = LabelImages.findAllLabels(labelImage);
+		return process(array, sizeX, sizeY, sizeZ, labels, false);
+	}
+
+	private Result process(final int[] array, final int sizeX, final int sizeY,
+			final int sizeZ, final int[] labels, final boolean planar)
+	{
+		this.fireStatusChanged(this, "Compute bounding boxes");
+		
+		// compute the bounding box of each label
+		final int nLabels = labels.length;
+		LabelIndex index = new LabelIndex(labels);
+		final int[][] boxes = new int[nLabels][];
+		for (int i = 0; i < nLabels; i++)
+		{
+			boxes[i] = new int[] {sizeX, -1, sizeY, -1, sizeZ, -1};
+		}
+		for (int z = 0, i = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++, i++)
+				{
+					int label = array[i];
+					if (label == 0)
+						continue;
+					int[] box = boxes[index.indexOf(label)];
+					box[0] = Math.min(box[0], x);
+					box[1] = Math.max(box[1], x);
+					box[2] = Math.min(box[2], y);
+					box[3] = Math.max(box[3], y);
+					box[4] = Math.min(box[4], z);
+					box[5] = Math.max(box[5], z);
+				}
+			}
+		}
+		
+		this.fireStatusChanged(this, "Compute geodesic diameters");
+		
+		// process each region in its own task
+		List<Future<RegionResult>> futures = new ArrayList<Future<RegionResult>>(nLabels);
+		for (int i = 0; i < nLabels; i++)
+		{
+			final int label = labels[i];
+			final int[] box = boxes[i];
+			futures.add(pool.submit(new Callable<RegionResult>()
+			{
+				public RegionResult call()
+				{
+					return new RegionProcessor(array, sizeX, sizeY, sizeZ, 
+							planar, label, box).process();
+				}
+			}));
+		}
+		
+		// collect results in label order
+		final int nd = sizeZ == 1 ? 2 : 3;
+		Result result = new Result(labels, nd);
+		for (int i = 0; i < nLabels; i++)
+		{
+			this.fireProgressChanged(this, i, nLabels);
+			RegionResult res;
+			try
+			{
+				res = futures.get(i).get();
+			}
+			catch (InterruptedException ex)
+			{
+				throw new RuntimeException("Parallel processing was interrupted", ex);
+			}
+			catch (ExecutionException ex)
+			{
+				throw new RuntimeException(ex.getCause());
+			}
+			
+			result.radii[i] = res.radius / weights[0];
+			result.diameters[i] = res.diameter / weights[0];
+			result.centers[i] = coordinates(res.center, sizeX, sizeY, nd);
+			result.ends1[i] = coordinates(res.end1, sizeX, sizeY, nd);
+			result.ends2[i] = coordinates(res.end2, sizeX, sizeY, nd);
+			if (computePaths && res.path != null)
+			{
+				int[][] path = new int[res.path.length][];
+				for (int j = 0; j < path.length; j++)
+				{
+					path[j] = coordinates(res.path[j], sizeX, sizeY, nd);
+				}
+				result.paths[i] = path;
+			}
+		}
+		this.fireProgressChanged(this, 1, 1);
+		
+		return result;
+	}
+	
+	private static final int[] coordinates(int index, int sizeX, int sizeY, int nd)
+	{
+		int x = index % sizeX;
+		int y = (index / sizeX) % sizeY;
+		if (nd == 2)
+			return new int[] {x, y};
+		return new int[] {x, y, index / (sizeX * sizeY)};
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * The result of the computation for a single region, with positions given
+	 * as linear indices within the whole image.
+	 */
+	private static final class RegionResult
+	{
+		float radius;
+		float diameter;
+		int center;
+		int end1;
+		int end2;
+		int[] path;
+	}
+	
+	/**
+	 * Propagates geodesic distances within a single region, restricted to its
+	 * bounding box.
+	 */
+	private final class RegionProcessor
+	{
+		final int[] array;
+		final int sizeX, sizeY, sizeZ;
+		final int label;
+		
+		// bounds and size of the box
+		final int x0, y0, z0;
+		final int boxX, boxY, boxZ;
+		
+		// the distance of each box element, and the element it was reached from
+		final float[] dist;
+		final int[] pred;
+		final boolean[] inside;
+		
+		// the propagator restricted to the box, and its sources
+		final GeodesicPropagator propagator;
+		final int[] seeds;
+		
+		RegionProcessor(int[] array, int sizeX, int sizeY, int sizeZ,
+				boolean planar, int label, int[] box)
+		{
+			this.array = array;
+			this.sizeX = sizeX;
+			this.sizeY = sizeY;
+			this.sizeZ = sizeZ;
+			this.label = label;
+			
+			this.x0 = box[0];
+			this.y0 = box[2];
+			this.z0 = box[4];
+			this.boxX = box[1] - box[0] + 1;
+			this.boxY = box[3] - box[2] + 1;
+			this.boxZ = box[5] - box[4] + 1;
+			
+			int n = boxX * boxY * boxZ;
+			this.dist = new float[n];
+			this.pred = computePaths ? new int[n] : null;
+			this.inside = new boolean[n];
+			for (int z = 0, i = 0; z < boxZ; z++)
+			{
+				for (int y = 0; y < boxY; y++)
+				{
+					int offset = ((z + z0) * sizeY + y + y0) * sizeX + x0;
+					for (int x = 0; x < boxX; x++, i++)
+					{
+						inside[i] = array[offset + x] == label;
+					}
+				}
+			}
+			
+			this.propagator = new GeodesicPropagator(boxX, boxY, boxZ, inside, weights, planar);
+			this.propagator.predecessors = pred;
+			this.seeds = new int[n];
+		}
+		
+		RegionResult process()
+		{
+			RegionResult res = new RegionResult();
+			
+			// propagate from region boundary to find the geodesic center
+			clearDistances();
+			int nSeeds = initBoundary();
+			if (nSeeds > 0)
+			{
+				propagator.propagateChamfer(dist, seeds, nSeeds);
+				res.center = argMax();
+				res.radius = dist[res.center];
+			}
+			else
+			{
+				// region fills the whole image, and has no boundary
+				res.center = firstElement();
+				res.radius = Float.POSITIVE_INFINITY;
+			}
+			
+			// propagate from center to find a first extremity
+			clearDistances();
+			propagateFrom(res.center);
+			res.end1 = argMax();
+			boolean connected = isConnected();
+			
+			// propagate from first extremity to find the second one
+			clearDistances();
+			propagateFrom(res.end1);
+			res.end2 = argMax();
+			res.diameter = connected ? dist[res.end2] : Float.POSITIVE_INFINITY;
+			
+			// backtrack the path from second extremity to the first one
+			if (computePaths && connected)
+			{
+				int n = 1;
+				for (int i = res.end2; i != res.end1; i = pred[i])
+				{
+					n++;
+				}
+				res.path = new int[n];
+				for (int i = res.end2, k = 0; k < n; i = pred[i], k++)
+				{
+					res.path[k] = globalIndex(i);
+				}
+			}
+			
+			// convert positions to global indices
+			res.center = globalIndex(res.center);
+			res.end1 = globalIndex(res.end1);
+			res.end2 = globalIndex(res.end2);
+			return res;
+		}
+		
+		private void clearDistances()
+		{
+			for (int i = 0; i < dist.length; i++)
+			{
+				dist[i] = Float.POSITIVE_INFINITY;
+			}
+		}
+		
+		/**
+		 * Initializes the region elements adjacent to a non-region element
+		 * of the image with the weight of the smallest move that reaches it,
+		 * and stores them as seeds. Returns the number of boundary elements.
+		 */
+		private int initBoundary()
+		{
+			int[][] shifts = propagator.shifts;
+			float[] shiftWeights = propagator.shiftWeights;
+			int nSeeds = 0;
+			for (int z = 0, i = 0; z < boxZ; z++)
+			{
+				for (int y = 0; y < boxY; y++)
+				{
+					for (int x = 0; x < boxX; x++, i++)
+					{
+						if (!inside[i])
+							continue;
+						
+						float d = Float.POSITIVE_INFINITY;
+						for (int k = 0; k < shifts.length; k++)
+						{
+							int x2 = x + x0 + shifts[k][0];
+							int y2 = y + y0 + shifts[k][1];
+							int z2 = z + z0 + shifts[k][2];
+							if (x2 < 0 || y2 < 0 || z2 < 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+								continue;
+							if (array[(z2 * sizeY + y2) * sizeX + x2] != label)
+								d = Math.min(d, shiftWeights[k]);
+						}
+						
+						if (d < Float.POSITIVE_INFINITY)
+						{
+							dist[i] = d;
+							if (pred != null)
+								pred[i] = i;
+							seeds[nSeeds++] = i;
+						}
+					}
+				}
+			}
+			return nSeeds;
+		}
+		
+		private void propagateFrom(int index)
+		{
+			dist[index] = 0;
+			if (pred != null)
+				pred[index] = index;
+			seeds[0] = index;
+			propagator.propagateChamfer(dist, seeds, 1);
+		}
+
+		/**
+		 * Returns the index of the first region element with the largest
+		 * finite distance.
+		 */
+		private int argMax()
+		{
+			int indMax = -1;
+			float maxDist = -1;
+			for (int i = 0; i < dist.length; i++)
+			{
+				if (inside[i] && dist[i] != Float.POSITIVE_INFINITY && dist[i] > maxDist)
+				{
+					maxDist = dist[i];
+					indMax = i;
+				}
+			}
+			return indMax;
+		}
+		
+		private boolean isConnected()
+		{
+			for (int i = 0; i < dist.length; i++)
+			{
+				if (inside[i] && dist[i] == Float.POSITIVE_INFINITY)
+					return false;
+			}
+			return true;
+		}
+		
+		private int firstElement()
+		{
+			for (int i = 0; i < inside.length; i++)
+			{
+				if (inside[i])
+					return i;
+			}
+			return -1;
+		}
+		
+		private int globalIndex(int i)
+		{
+			int z = i / (boxX * boxY);
+			int y = (i / boxX) % boxY;
+			int x = i % boxX;
+			return ((z + z0) * sizeY + y + y0) * sizeX + x + x0;
+		}
+	}
+	
+	/**
+	 * The geodesic diameter, center and extremities of each region of a
+	 * label image. Distances are normalized by the orthogonal weight, and
+	 * positions are given in pixel or voxel coordinates.
+	 */
+	public static final class Result
+	{
+		final int[] labels;
+		final int nd;
+		final double[] diameters;
+		final double[] radii;
+		final int[][] centers;
+		final int[][] ends1;
+		final int[][] ends2;
+		final int[][][] paths;
+		
+		Result(int[] labels, int nd)
+		{
+			int n = labels.length;
+			this.labels = labels;
+			this.nd = nd;
+			this.diameters = new double[n];
+			this.radii = new double[n];
+			this.centers = new int[n][];
+			this.ends1 = new int[n][];
+			this.ends2 = new int[n][];
+			this.paths = new int[n][][];
+		}
+		
+		/**
+		 * @return the labels of the regions
+		 */
+		public int[] getLabels()
+		{
+			return labels;
+		}
+
+		/**
+		 * @return the geodesic diameter of each region, or infinity for
+		 *         regions that are not connected
+		 */
+		public double[] getDiameters()
+		{
+			return diameters;
+		}
+
+		/**
+		 * @return the radius of the largest inscribed ball of each region
+		 */
+		public double[] getRadii()
+		{
+			return radii;
+		}
+
+		/**
+		 * @return the geodesic center of each region
+		 */
+		public int[][] getCenters()
+		{
+			return centers;
+		}
+
+		/**
+		 * @return the first geodesic extremity of each region
+		 */
+		public int[][] getFirstExtremities()
+		{
+			return ends1;
+		}
+
+		/**
+		 * @return the second geodesic extremity of each region
+		 */
+		public int[][] getSecondExtremities()
+		{
+			return ends2;
+		}
+
+		/**
+		 * Returns the geodesic path of each region, as the polyline of
+		 * positions from the second extremity to the first one. Paths are
+		 * null when they were not computed, or when the region is not
+		 * connected.
+		 * 
+		 * @return the geodesic path of each region
+		 */
+		public int[][][] getPaths()
+		{
+			return paths;
+		}
+		
+		/**
+		 * Converts the planar geodesic paths into lists of points.
+		 * 
+		 * @return A map that associate to each integer label the list of
+		 *         positions that constitutes the geodesic path
+		 */
+		public Map<Integer, List<Point>> getPathMap()
+		{
+			Map<Integer, List<Point>> map = new TreeMap<Integer, List<Point>>();
+			for (int i = 0; i < labels.length; i++)
+			{
+				if (paths[i] == null)
+					continue;
+				List<Point> path = new ArrayList<Point>(paths[i].length);
+				for (int[] pos : paths[i])
+				{
+					path.add(new Point(pos[0], pos[1]));
+				}
+				map.put(labels[i], path);
+			}
+			return map;
+		}
+		
+		/**
+		 * Creates a results table with the same columns as the tables of
+		 * {@link GeodesicDiameterFloat} or {@link GeodesicDiameter3DFloat}.
+		 * 
+		 * @return a new ResultsTable with one row per region
+		 */
+		public ResultsTable createTable()
+		{
+			ResultsTable table = new ResultsTable();
+			String[] coords = nd == 2 ? new String[] {"x", "y"} : new String[] {"x", "y", "z"};
+			for (int i = 0; i < labels.length; i++)
+			{
+				table.incrementCounter();
+				table.addValue("Label", labels[i]);
+				table.addValue(nd == 2 ? "Geod. Diam" : "Geod. Diam.", diameters[i]);
+				table.addValue("Radius", radii[i]);
+				table.addValue("Geod. Elong.", Math.max(diameters[i] / (radii[i] * 2), 1.0));
+				for (int d = 0; d < nd; d++)
+					table.addValue(coords[d] + "i", centers[i][d]);
+				for (int d = 0; d < nd; d++)
+					table.addValue(coords[d] + "1", ends1[i][d]);
+				for (int d = 0; d < nd; d++)
+					table.addValue(coords[d] + "2", ends2[i][d]);
+			}
+			return table;
+		}
+	}
+}
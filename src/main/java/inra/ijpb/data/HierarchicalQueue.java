@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical queue for integer values, made of one FIFO queue per gray
+ * level. Each level stores linear indices within a growable circular buffer
+ * of primitive longs, so that adding or polling an element is done in
+ * constant time. This queue is well suited to 8-bit and 16-bit images.
+ * 
+ * Values are expected to be integers between 0 and the number of levels
+ * minus one.
+ * 
+ * @see PackedLongHeap
+ */
+public class HierarchicalQueue implements IndexPriorityQueue
+{
+	/** initial capacity of the buffer of a level */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the circular buffers, one per level, allocated when first used */
+	private final long[][] buffers;
+
+	/** the index of the first element of each level */
+	private final int[] heads;
+
+	/** the number of elements of each level */
+	private final int[] counts;
+
+	/** the lowest level that may contain elements */
+	private int currentLevel;
+
+	/** the total number of elements within the queue */
+	private long size = 0;
+
+	/**
+	 * Creates a new hierarchical queue for values between 0 and
+	 * (nLevels-1).
+	 * 
+	 * @param nLevels
+	 *            the number of levels (256 for 8-bit images, 65536 for 16-bit
+	 *            images)
+	 */
+	public HierarchicalQueue(int nLevels)
+	{
+		this.buffers = new long[nLevels][];
+		this.heads = new int[nLevels];
+		this.counts = new int[nLevels];
+		this.currentLevel = nLevels;
+	}
+
+	@Override
+	public void add(long index, double value)
+	{
+		final int level = (int) value;
+		if (level < 0 || level >= buffers.length)
+		{
+			throw new IllegalArgumentException("Value " + value
+					+ " is outside of the range of the queue levels");
+		}
+
+		long[] buffer = buffers[level];
+		final int count = counts[level];
+		if (buffer == null)
+		{
+			buffer = new long[INITIAL_CAPACITY];
+			buffers[level] = buffer;
+		}
+		else if (count == buffer.length)
+		{
+			// grow the buffer, and move elements to the beginning
+			final int head = heads[level];
+			long[] newBuffer = Arrays.copyOf(buffer, Math.max(count * 2, INITIAL_CAPACITY));
+			if (head > 0)
+			{
+				System.arraycopy(buffer, head, newBuffer, 0, count - head);
+				System.arraycopy(buffer, 0, newBuffer, count - head, head);
+			}
+			buffer = newBuffer;
+			buffers[level] = buffer;
+			heads[level] = 0;
+		}
+
+		int pos = heads[level] + count;
+		if (pos >= buffer.length)
+			pos -= buffer.length;
+		buffer[pos] = index;
+		counts[level] = count + 1;
+		size++;
+
+		if (level < currentLevel)
+			currentLevel = level;
+	}
+
+	@Override
+	public long poll()
+	{
+		if (size == 0)
+		{
+			throw new IllegalStateException("Can not poll an empty queue");
+		}
+
+		// find the first non empty level
+		while (counts[currentLevel] == 0)
+			currentLevel++;
+
+		final long[] buffer = buffers[currentLevel];
+		int head = heads[currentLevel];
+		final long index = buffer[head];
+		head++;
+		heads[currentLevel] = head == buffer.length ? 0 : head;
+		counts[currentLevel]--;
+		size--;
+
+		return index;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+}
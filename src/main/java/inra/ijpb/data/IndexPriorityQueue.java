@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+/**
+ * Priority queue of linear pixel or voxel indices, ordered by increasing
+ * value. Elements with the same value are returned in the order they were
+ * added (first in, first out), which reproduces the ordering of a
+ * <code>PriorityQueue</code> of <code>PixelRecord</code> or
+ * <code>VoxelRecord</code> without allocating one object per element.
+ * 
+ * @see HierarchicalQueue
+ * @see PackedLongHeap
+ */
+public interface IndexPriorityQueue
+{
+	/**
+	 * Adds a new element to the queue.
+	 * 
+	 * @param index
+	 *            the linear index of the pixel or voxel
+	 * @param value
+	 *            the value used to order the element within the queue
+	 */
+	public void add(long index, double value);
+
+	/**
+	 * Removes the element with the lowest value from the queue. If several
+	 * elements share the lowest value, the oldest one is returned.
+	 * 
+	 * @return the linear index of the removed element
+	 */
+	public long poll();
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * @return the number of elements within the queue
+	 */
+	public long size();
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.Arrays;
+
+/**
+ * First-in first-out queue of primitive long values, stored within a growable
+ * circular buffer. Adding or polling an element is done in constant time,
+ * without allocating any object per element. This makes it well suited to
+ * queues of linear indices or packed positions within images.
+ * 
+ * @see HierarchicalQueue
+ */
+public class LongRingBuffer
+{
+	/** initial capacity of the buffer */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** the circular buffer */
+	private long[] buffer;
+
+	/** the index of the first element */
+	private int head = 0;
+
+	/** the number of elements within the queue */
+	private int size = 0;
+
+	/**
+	 * Creates a new empty queue with default capacity.
+	 */
+	public LongRingBuffer()
+	{
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty queue with the specified initial capacity.
+	 * 
+	 * @param capacity
+	 *            the initial number of elements the buffer can contain
+	 */
+	public LongRingBuffer(int capacity)
+	{
+		this.buffer = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Adds a value at the end of the queue.
+	 * 
+	 * @param value
+	 *            the value to add
+	 */
+	public void add(long value)
+	{
+		if (size == buffer.length)
+		{
+			// grow the buffer, and move elements to the beginning
+			long[] newBuffer = Arrays.copyOf(buffer, Math.max(size * 2, INITIAL_CAPACITY));
+			if (head > 0)
+			{
+				System.arraycopy(buffer, head, newBuffer, 0, size - head);
+				System.arraycopy(buffer, 0, newBuffer, size - head, head);
+			}
+			buffer = newBuffer;
+			head = 0;
+		}
+
+		int pos = head + size;
+		if (pos >= buffer.length)
+			pos -= buffer.length;
+		buffer[pos] = value;
+		size++;
+	}
+
+	/**
+	 * Removes and returns the value at the beginning of the queue.
+	 * 
+	 * @return the first value of the queue
+	 */
+	public long poll()
+	{
+		if (size == 0)
+		{
+			throw new IllegalStateException("Can not poll an empty queue");
+		}
+
+		final long value = buffer[head];
+		head++;
+		if (head == buffer.length)
+			head = 0;
+		size--;
+		return value;
+	}
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return the number of elements within the queue
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Removes all the elements of the queue, keeping the allocated buffer.
+	 */
+	public void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+}
@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of linear indices ordered by floating point values. The
+ * ordering key of each element is packed into a single primitive long: the
+ * high 32 bits contain the value transformed into an integer with the same
+ * ordering, and the low 32 bits contain an insertion counter, ensuring that
+ * elements with the same value are returned in the order they were added.
+ * 
+ * This queue can store any value that can be represented as a float, and
+ * supports up to 2^32 insertions.
+ * 
+ * @see HierarchicalQueue
+ */
+public class PackedLongHeap implements IndexPriorityQueue
+{
+	/** initial capacity of the heap */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** the packed keys of the elements, organized as a binary heap */
+	private long[] keys;
+
+	/** the linear indices associated to each key */
+	private long[] indices;
+
+	/** the number of elements within the heap */
+	private int size = 0;
+
+	/** the number of insertions done so far */
+	private long counter = 0;
+
+	/**
+	 * Creates a new empty heap.
+	 */
+	public PackedLongHeap()
+	{
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty heap with the specified initial capacity.
+	 * 
+	 * @param capacity
+	 *            the initial number of elements the heap can contain
+	 */
+	public PackedLongHeap(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		this.keys = new long[capacity];
+		this.indices = new long[capacity];
+	}
+
+	/**
+	 * Converts a float value into an integer such that the comparison of the
+	 * integers gives the same result as the comparison of the floats (NaN
+	 * values are considered as the greatest values).
+	 * 
+	 * @param value
+	 *            a float value
+	 * @return an integer with the same order than the float value
+	 */
+	private static final int sortableInt(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		return bits >= 0 ? bits : bits ^ 0x7FFFFFFF;
+	}
+
+	@Override
+	public void add(long index, double value)
+	{
+		if (counter > 0xFFFFFFFFL)
+		{
+			throw new IllegalStateException("Maximum number of insertions reached");
+		}
+		if (size == keys.length)
+		{
+			int newCapacity = keys.length * 2;
+			if (newCapacity < 0)
+				newCapacity = Integer.MAX_VALUE - 8;
+			keys = Arrays.copyOf(keys, newCapacity);
+			indices = Arrays.copyOf(indices, newCapacity);
+		}
+
+		// the sign bit of the sortable value must be flipped so that
+		// unsigned order of the high bits matches the signed order of values
+		final long high = (long) (sortableInt((float) value) ^ 0x80000000) & 0xFFFFFFFFL;
+		final long key = (high << 32) | counter++;
+
+		// sift up
+		int pos = size++;
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >>> 1;
+			if (Long.compareUnsigned(keys[parent], key) <= 0)
+				break;
+			keys[pos] = keys[parent];
+			indices[pos] = indices[parent];
+			pos = parent;
+		}
+		keys[pos] = key;
+		indices[pos] = index;
+	}
+
+	@Override
+	public long poll()
+	{
+		if (size == 0)
+		{
+			throw new IllegalStateException("Can not poll an empty queue");
+		}
+
+		final long result = indices[0];
+		size--;
+		if (size == 0)
+			return result;
+
+		// move the last element to the root, and sift it down
+		final long key = keys[size];
+		final long index = indices[size];
+		int pos = 0;
+		int half = size >>> 1;
+		while (pos < half)
+		{
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < size && Long.compareUnsigned(keys[right], keys[child]) < 0)
+				child = right;
+			if (Long.compareUnsigned(key, keys[child]) <= 0)
+				break;
+			keys[pos] = keys[child];
+			indices[pos] = indices[child];
+			pos = child;
+		}
+		keys[pos] = key;
+		indices[pos] = index;
+
+		return result;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+}
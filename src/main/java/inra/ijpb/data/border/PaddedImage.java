@@ -0,0 +1,282 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.border;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * <p>
+ * A planar image extended by a border whose values are computed once by a
+ * BorderManager, and stored into a larger image of the same type.
+ * </p>
+ * 
+ * <p>
+ * Filters can access the neighbors of any pixel of the original image
+ * through a linear index and precomputed offsets, without checking bounds
+ * nor calling the border manager for each access.
+ * </p>
+ * 
+ * <pre><code>
+ * ImageProcessor image = ...
+ * int[][] shifts = strel.getShifts();
+ * PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), shifts);
+ * int[] offsets = padded.offsets(shifts);
+ * int index = padded.index(x, y);
+ * float sum = 0;
+ * for (int i = 0; i &lt; offsets.length; i++)
+ *     sum += padded.getf(index + offsets[i]);
+ * </code></pre>
+ * 
+ * @see BorderManager
+ * @see PaddedImage3D
+ * @author David Legland
+ *
+ */
+public class PaddedImage
+{
+	/** The image extended by the border */
+	ImageProcessor padded;
+	
+	/** The number of columns added on the left of the original image */
+	int left;
+	
+	/** The number of rows added on top of the original image */
+	int top;
+	
+	/** The width of the padded image, used to compute linear indices */
+	int stride;
+	
+	/**
+	 * Creates a new padded image, with the specified number of pixels added
+	 * on each side of the original image.
+	 * 
+	 * @param image
+	 *            the original image
+	 * @param border
+	 *            the border manager that computes the values of the added
+	 *            pixels
+	 * @param left
+	 *            the number of pixels to add to the left of the image
+	 * @param right
+	 *            the number of pixels to add to the right of the image
+	 * @param top
+	 *            the number of pixels to add on top of the image
+	 * @param bottom
+	 *            the number of pixels to add at the bottom of the image
+	 */
+	public PaddedImage(ImageProcessor image, BorderManager border, int left,
+			int right, int top, int bottom)
+	{
+		this.padded = extend(image, left, right, top, bottom, border);
+		this.left = left;
+		this.top = top;
+		this.stride = this.padded.getWidth();
+	}
+	
+	/**
+	 * Creates a new padded image, with a border large enough to contain all
+	 * the neighbors given by the specified shifts.
+	 * 
+	 * @param image
+	 *            the original image
+	 * @param border
+	 *            the border manager that computes the values of the added
+	 *            pixels
+	 * @param shifts
+	 *            the shifts of the neighbors, as an array of (dx, dy) pairs,
+	 *            for example the shifts of a structuring element
+	 */
+	public PaddedImage(ImageProcessor image, BorderManager border, int[][] shifts)
+	{
+		this(image, border, 
+				Math.max(-min(shifts, 0), 0), Math.max(max(shifts, 0), 0),
+				Math.max(-min(shifts, 1), 0), Math.max(max(shifts, 1), 0));
+	}
+	
+	
+	// =======================================================================
+	// Static methods
+	
+	/**
+	 * Adds the specified number of pixels around the input image, and returns
+	 * the resulting image. The pixels of the original image are copied row by
+	 * row, and the border manager is only called for the added pixels.
+	 * 
+	 * @param image
+	 *            the input image
+	 * @param left
+	 *            the number of pixels to add to the left of the image
+	 * @param right
+	 *            the number of pixels to add to the right of the image
+	 * @param top
+	 *            the number of pixels to add on top of the image
+	 * @param bottom
+	 *            the number of pixels to add at the bottom of the image
+	 * @param border
+	 *            an instance of BorderManager that specifies the value of
+	 *            pixels to be added
+	 * @return a new image with extended borders, with the same type as the
+	 *         input image
+	 */
+	public static final ImageProcessor extend(ImageProcessor image, 
+			int left, int right, int top, int bottom, BorderManager border)
+	{
+		// get image dimensions
+		int width = image.getWidth(); 
+		int height = image.getHeight(); 
+		
+		// compute result dimensions
+		int width2 = width + left + right;
+		int height2 = height + top + bottom;
+		ImageProcessor result = image.createProcessor(width2, height2);
+		
+		// floating point values must not be converted to integers
+		boolean isFloat = image instanceof FloatProcessor;
+		
+		// rows can be copied only if the image is not cropped
+		boolean copyRows = left >= 0 && right >= 0;
+		
+		Object pixels = image.getPixels();
+		Object pixels2 = result.getPixels();
+		for (int y2 = 0; y2 < height2; y2++)
+		{
+			int y = y2 - top;
+			int offset = y2 * width2;
+			
+			// process the columns that need the border manager
+			for (int x2 = 0; x2 < width2; x2++)
+			{
+				int x = x2 - left;
+				if (copyRows && y >= 0 && y < height && x == 0)
+				{
+					// copy the row of the original image, and skip it
+					System.arraycopy(pixels, y * width, pixels2, offset + left, width);
+					x2 += width - 1;
+					continue;
+				}
+				
+				if (isFloat)
+					result.setf(offset + x2, border.getf(x, y));
+				else
+					result.set(offset + x2, border.get(x, y));
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the minimum value of the specified coordinate over the shifts. 
+	 */
+	private static final int min(int[][] shifts, int coord)
+	{
+		int res = Integer.MAX_VALUE;
+		for (int[] shift : shifts)
+			res = Math.min(res, shift[coord]);
+		return res;
+	}
+
+	/**
+	 * Returns the maximum value of the specified coordinate over the shifts. 
+	 */
+	private static final int max(int[][] shifts, int coord)
+	{
+		int res = Integer.MIN_VALUE;
+		for (int[] shift : shifts)
+			res = Math.max(res, shift[coord]);
+		return res;
+	}
+	
+	
+	// =======================================================================
+	// Methods
+	
+	/**
+	 * Returns the linear index of a position within the padded image. The
+	 * position is given in the coordinates of the original image, and may lie
+	 * within the border.
+	 * 
+	 * @param x
+	 *            column index within the original image
+	 * @param y
+	 *            row index within the original image
+	 * @return the linear index of the position within the padded image
+	 */
+	public int index(int x, int y)
+	{
+		return (y + this.top) * this.stride + x + this.left;
+	}
+	
+	/**
+	 * Converts the specified shifts into offsets between linear indices of
+	 * the padded image.
+	 * 
+	 * @param shifts
+	 *            the shifts, as an array of (dx, dy) pairs
+	 * @return the offsets corresponding to the shifts
+	 */
+	public int[] offsets(int[][] shifts)
+	{
+		int[] offsets = new int[shifts.length];
+		for (int i = 0; i < shifts.length; i++)
+		{
+			offsets[i] = shifts[i][1] * this.stride + shifts[i][0];
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Returns the value at the specified linear index of the padded image.
+	 * 
+	 * @param index
+	 *            the linear index, as computed by the {@link #index(int, int)}
+	 *            method
+	 * @return the value stored at the index
+	 */
+	public int get(int index)
+	{
+		return this.padded.get(index);
+	}
+	
+	/**
+	 * Returns the floating point value at the specified linear index of the
+	 * padded image.
+	 * 
+	 * @param index
+	 *            the linear index, as computed by the {@link #index(int, int)}
+	 *            method
+	 * @return the value stored at the index
+	 */
+	public float getf(int index)
+	{
+		return this.padded.getf(index);
+	}
+	
+	/**
+	 * @return the image extended by the border
+	 */
+	public ImageProcessor getProcessor()
+	{
+		return this.padded;
+	}
+}
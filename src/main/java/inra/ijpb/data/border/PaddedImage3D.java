@@ -0,0 +1,298 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.border;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * <p>
+ * A slab of slices of a 3D image, extended by a border whose values are
+ * computed once by a BorderManager3D, and stored into larger slices of the
+ * same type.
+ * </p>
+ * 
+ * <p>
+ * Only the slices between two z bounds (plus the border) are materialized,
+ * so large stacks can be processed slab by slab with bounded memory. Within a
+ * slice, values are accessed through a linear index and precomputed offsets,
+ * as with {@link PaddedImage}.
+ * </p>
+ * 
+ * <pre><code>
+ * ImageStack image = ...
+ * BorderManager3D border = new ReplicatedBorder3D(image);
+ * // process the slices 10 to 19, with a border of 2 voxels in each direction
+ * PaddedImage3D slab = new PaddedImage3D(image, border, 10, 20, 2, 2, 2);
+ * float value = slab.getf(9, slab.index(-1, 5));
+ * </code></pre>
+ * 
+ * @see BorderManager3D
+ * @see PaddedImage
+ * @author David Legland
+ *
+ */
+public class PaddedImage3D
+{
+	/** The slices of the slab, extended by the border */
+	ImageStack padded;
+	
+	/** The index of the first slice of the padded slab, in original image coordinates */
+	int zOrigin;
+	
+	/** The number of columns added on the left of the original slices */
+	int left;
+	
+	/** The number of rows added on top of the original slices */
+	int top;
+	
+	/** The width of the padded slices, used to compute linear indices */
+	int stride;
+	
+	/**
+	 * Creates a new padded slab, containing the slices between z0 (inclusive)
+	 * and z1 (exclusive), with the same border size on each side of the slab.
+	 * 
+	 * @param image
+	 *            the original image
+	 * @param border
+	 *            the border manager that computes the values of the added
+	 *            voxels
+	 * @param z0
+	 *            the index of the first slice of the slab
+	 * @param z1
+	 *            the index of the slice after the last slice of the slab
+	 * @param padX
+	 *            the number of voxels to add on each side in the x direction
+	 * @param padY
+	 *            the number of voxels to add on each side in the y direction
+	 * @param padZ
+	 *            the number of slices to add on each side of the slab
+	 */
+	public PaddedImage3D(ImageStack image, BorderManager3D border, int z0,
+			int z1, int padX, int padY, int padZ)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		
+		this.zOrigin = z0 - padZ;
+		this.left = padX;
+		this.top = padY;
+		this.stride = width + 2 * padX;
+		
+		int depth2 = z1 - z0 + 2 * padZ;
+		this.padded = ImageStack.create(this.stride, height + 2 * padY, depth2, image.getBitDepth());
+		for (int z2 = 0; z2 < depth2; z2++)
+		{
+			extendSlice(image, z2 + this.zOrigin, padX, padX, padY, padY, border, this.padded, z2);
+		}
+	}
+	
+	/**
+	 * Creates a new padded image containing all the slices of the original
+	 * image, with the same border size on each side.
+	 * 
+	 * @param image
+	 *            the original image
+	 * @param border
+	 *            the border manager that computes the values of the added
+	 *            voxels
+	 * @param padX
+	 *            the number of voxels to add on each side in the x direction
+	 * @param padY
+	 *            the number of voxels to add on each side in the y direction
+	 * @param padZ
+	 *            the number of slices to add on each side of the image
+	 */
+	public PaddedImage3D(ImageStack image, BorderManager3D border, int padX,
+			int padY, int padZ)
+	{
+		this(image, border, 0, image.getSize(), padX, padY, padZ);
+	}
+	
+	
+	// =======================================================================
+	// Static methods
+	
+	/**
+	 * Adds the specified number of voxels around the input image, and returns
+	 * the resulting image. The rows of the original image are copied
+	 * directly, and the border manager is only called for the added voxels.
+	 * The result is computed slice by slice, so that no intermediate image is
+	 * allocated.
+	 * 
+	 * @param image
+	 *            the input image stack 
+	 * @param left
+	 *            the number of voxels to add to the left
+	 * @param right
+	 *            the number of voxels to add to the right
+	 * @param top
+	 *            the number of voxels to add on top of the stack
+	 * @param bottom
+	 *            the number of voxels to add at the bottom of the stack
+	 * @param front
+	 *            the number of slices to add in front of the stack
+	 * @param back
+	 *            the number of slices to add behind the stack
+	 * @param border
+	 *            an instance of BorderManager3D that specifies the value of
+	 *            voxels to be added
+	 * @return a new image with extended borders
+	 */
+	public static final ImageStack extend(ImageStack image, int left, int right,
+			int top, int bottom, int front, int back, BorderManager3D border)
+	{
+		// compute result dimensions
+		int width2 = image.getWidth() + left + right;
+		int height2 = image.getHeight() + top + bottom;
+		int depth2 = image.getSize() + front + back;
+		ImageStack result = ImageStack.create(width2, height2, depth2, image.getBitDepth());
+		
+		// fill result image
+		for (int z2 = 0; z2 < depth2; z2++)
+		{
+			extendSlice(image, z2 - front, left, right, top, bottom, border, result, z2);
+		}
+		return result;
+	}
+	
+	/**
+	 * Fills a slice of the result with the extension of the slice z of the
+	 * image. If the slice is within the image, its rows are copied directly.
+	 */
+	private static final void extendSlice(ImageStack image, int z, int left,
+			int right, int top, int bottom, BorderManager3D border,
+			ImageStack result, int z2)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int width2 = width + left + right;
+		int height2 = height + top + bottom;
+		
+		// rows can be copied only if the image is not cropped
+		boolean copyRows = left >= 0 && right >= 0 && z >= 0 && z < image.getSize();
+		Object pixels = copyRows ? image.getPixels(z + 1) : null;
+		Object pixels2 = result.getPixels(z2 + 1);
+		
+		for (int y2 = 0; y2 < height2; y2++)
+		{
+			int y = y2 - top;
+			for (int x2 = 0; x2 < width2; x2++)
+			{
+				int x = x2 - left;
+				if (copyRows && y >= 0 && y < height && x == 0)
+				{
+					// copy the row of the original image, and skip it
+					System.arraycopy(pixels, y * width, pixels2, y2 * width2 + left, width);
+					x2 += width - 1;
+					continue;
+				}
+				
+				result.setVoxel(x2, y2, z2, border.get(x, y, z));
+			}
+		}
+	}
+	
+	
+	// =======================================================================
+	// Methods
+	
+	/**
+	 * Returns the linear index of a position within the padded slices. The
+	 * position is given in the coordinates of the original image, and may lie
+	 * within the border.
+	 * 
+	 * @param x
+	 *            column index within the original image
+	 * @param y
+	 *            row index within the original image
+	 * @return the linear index of the position within the padded slices
+	 */
+	public int index(int x, int y)
+	{
+		return (y + this.top) * this.stride + x + this.left;
+	}
+	
+	/**
+	 * Converts the in-plane components of the specified shifts into offsets
+	 * between linear indices of the padded slices.
+	 * 
+	 * @param shifts
+	 *            the shifts, as an array of (dx, dy, dz) triplets
+	 * @return the in-plane offsets corresponding to the shifts
+	 */
+	public int[] offsets(int[][] shifts)
+	{
+		int[] offsets = new int[shifts.length];
+		for (int i = 0; i < shifts.length; i++)
+		{
+			offsets[i] = shifts[i][1] * this.stride + shifts[i][0];
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Returns the slice with the specified index in the original image,
+	 * extended by the border. 
+	 * 
+	 * @param z
+	 *            the slice index in the original image, that may lie within
+	 *            the border
+	 * @return the padded slice
+	 */
+	public ImageProcessor getSlice(int z)
+	{
+		return this.padded.getProcessor(z - this.zOrigin + 1);
+	}
+	
+	/**
+	 * Returns the floating point value at the specified position.
+	 * 
+	 * @param z
+	 *            the slice index in the original image, that may lie within
+	 *            the border
+	 * @param index
+	 *            the linear index within the slice, as computed by the
+	 *            {@link #index(int, int)} method
+	 * @return the value stored at the position
+	 */
+	public float getf(int z, int index)
+	{
+		Object pixels = this.padded.getPixels(z - this.zOrigin + 1);
+		if (pixels instanceof byte[])
+			return ((byte[]) pixels)[index] & 0x00FF;
+		if (pixels instanceof short[])
+			return ((short[]) pixels)[index] & 0x00FFFF;
+		if (pixels instanceof float[])
+			return ((float[]) pixels)[index];
+		return ((int[]) pixels)[index] & 0x00FFFFFF;
+	}
+	
+	/**
+	 * @return the slices of the slab, extended by the border
+	 */
+	public ImageStack getStack()
+	{
+		return this.padded;
+	}
+}
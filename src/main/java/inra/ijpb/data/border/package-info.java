@@ -29,6 +29,13 @@
  * <p> 
  * The global behavior is defined by the {@link inra.ijpb.data.border.BorderManager} interface. 
  * Implementations manage replication, mirroring, constant borders... 
+ * </p>
+ * <p>
+ * The classes {@link inra.ijpb.data.border.PaddedImage} and 
+ * {@link inra.ijpb.data.border.PaddedImage3D} compute the border values once,
+ * into a larger image, so that filters can access neighbors without bounds 
+ * checking.
+ * </p>
  */
 package inra.ijpb.data.border;
 
@@ -23,6 +23,8 @@ package inra.ijpb.data.image;
 
 import ij.ImageStack;
 import inra.ijpb.data.Cursor3D;
+import static java.lang.Math.min;
+import static java.lang.Math.max;
 
 /**
  * Access the data of a 3D image containing gray8 values stored as bytes.
@@ -42,7 +44,7 @@ import inra.ijpb.data.Cursor3D;
  * @author David Legland
  *
  */
-public class ByteStackWrapper implements Image3D 
+public final class ByteStackWrapper implements Image3D 
 {
 	byte[][] slices;
 	
@@ -140,4 +142,113 @@ public class ByteStackWrapper implements Image3D
 	{
 		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
 	}
+
+	// ==================================================
+	// Fast access methods
+	
+	/**
+	 * Returns the inner array of a slice.
+	 * 
+	 * @param z
+	 *            the index of the slice (0-indexed)
+	 * @return the reference to the array of gray8 values of the slice
+	 */
+	public byte[] getSlice(int z)
+	{
+		return slices[z];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getByIndex(long)
+	 */
+	@Override
+	public double getByIndex(long index)
+	{
+		long sliceSize = ((long) sizeX) * sizeY;
+		int z = (int) (index / sliceSize);
+		return (double) (slices[z][(int) (index - z * sliceSize)] & 0x00FF);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setByIndex(long, double)
+	 */
+	@Override
+	public void setByIndex(long index, double value)
+	{
+		long sliceSize = ((long) sizeX) * sizeY;
+		int z = (int) (index / sliceSize);
+		slices[z][(int) (index - z * sliceSize)] = (byte) (min(max(value, 0), 255) + .5);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getRow(int, int, double[])
+	 */
+	@Override
+	public void getRow(int y, int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = (double) (slice[offset + x] & 0x00FF);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setRow(int, int, double[])
+	 */
+	@Override
+	public void setRow(int y, int z, double[] values)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = values[x];
+			slice[offset + x] = (byte) (min(max(value, 0), 255) + .5);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#fillRow(int, int, int, int, double)
+	 */
+	@Override
+	public void fillRow(int x1, int x2, int y, int z, double value)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = x1; x <= x2; x++)
+		{
+			slice[offset + x] = (byte) (min(max(value, 0), 255) + .5);
+		}
+	}
+
+	/**
+	 * Copies all the values of another image with the same size into this
+	 * image. If the source image is also a ByteStackWrapper, the slice arrays are
+	 * copied directly.
+	 * 
+	 * @param source
+	 *            the image to copy values from
+	 */
+	@Override
+	public void copyFrom(Image3D source)
+	{
+		if (!(source instanceof ByteStackWrapper))
+		{
+			Image3D.super.copyFrom(source);
+			return;
+		}
+		
+		ByteStackWrapper source2 = (ByteStackWrapper) source;
+		if (source2.sizeX != sizeX || source2.sizeY != sizeY || source2.sizeZ != sizeZ)
+		{
+			throw new IllegalArgumentException("Both images must have the same size");
+		}
+		int sliceSize = sizeX * sizeY;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			System.arraycopy(source2.slices[z], 0, slices[z], 0, sliceSize);
+		}
+	}
 }
@@ -29,6 +29,13 @@ import inra.ijpb.data.Cursor3D;
  * bounds. Data can be accessed either as integer or as double. 
  * 
  * <p>
+ * Values can also be accessed by linear index, or row by row. The default
+ * implementations of these methods rely on the coordinate-based methods,
+ * and are overridden by the stack wrappers to work directly on the slice
+ * arrays.
+ * </p>
+ * 
+ * <p>
  * Example of use:
  *<pre>{@code
  *	ImageStack stack = IJ.getImage().getStack();
@@ -109,4 +116,139 @@ public interface Image3D
 	public void setValue(int x, int y, int z, double value);
 	
 	public void setValue(Cursor3D pos, double  value);
+	
+	
+	// ==================================================
+	// Fast access methods
+	
+	/**
+	 * Returns the value at the specified linear index, as a double. The linear
+	 * index of voxel (x,y,z) is given by
+	 * <code>(z * sizeY + y) * sizeX + x</code>.
+	 * 
+	 * Default implementation computes the coordinates and calls the
+	 * {@link #getValue(int, int, int)} method. 
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public default double getByIndex(long index)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int offset = (int) (index - z * sliceSize);
+		return getValue(offset % sizeX, offset / sizeX, z);
+	}
+
+	/**
+	 * Changes the value at the specified linear index, using a double to
+	 * specify the new value.
+	 * 
+	 * @see #getByIndex(long)
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public default void setByIndex(long index, double value)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int offset = (int) (index - z * sliceSize);
+		setValue(offset % sizeX, offset / sizeX, z, value);
+	}
+	
+	/**
+	 * Copies the values of a row into a buffer, as doubles.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row (0-indexed)
+	 * @param z
+	 *            the z-coordinate of the row (0-indexed)
+	 * @param buffer
+	 *            the array that will contain the values of the row, with at
+	 *            least as many elements as the image width
+	 */
+	public default void getRow(int y, int z, double[] buffer)
+	{
+		int sizeX = getSize(0);
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = getValue(x, y, z);
+		}
+	}
+
+	/**
+	 * Changes the values of a row, using doubles to specify the new values.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row (0-indexed)
+	 * @param z
+	 *            the z-coordinate of the row (0-indexed)
+	 * @param values
+	 *            the new values of the row, with at least as many elements as
+	 *            the image width
+	 */
+	public default void setRow(int y, int z, double[] values)
+	{
+		int sizeX = getSize(0);
+		for (int x = 0; x < sizeX; x++)
+		{
+			setValue(x, y, z, values[x]);
+		}
+	}
+
+	/**
+	 * Sets the same value to a span of voxels within a row.
+	 * 
+	 * @param x1
+	 *            the x-coordinate of the first voxel of the span (inclusive)
+	 * @param x2
+	 *            the x-coordinate of the last voxel of the span (inclusive)
+	 * @param y
+	 *            the y-coordinate of the row (0-indexed)
+	 * @param z
+	 *            the z-coordinate of the row (0-indexed)
+	 * @param value
+	 *            the new value of the voxels within the span
+	 */
+	public default void fillRow(int x1, int x2, int y, int z, double value)
+	{
+		for (int x = x1; x <= x2; x++)
+		{
+			setValue(x, y, z, value);
+		}
+	}
+
+	/**
+	 * Copies all the values of another image with the same size into this
+	 * image.
+	 * 
+	 * @param source
+	 *            the image to copy values from
+	 */
+	public default void copyFrom(Image3D source)
+	{
+		int sizeX = getSize(0);
+		int sizeY = getSize(1);
+		int sizeZ = getSize(2);
+		if (source.getSize(0) != sizeX || source.getSize(1) != sizeY || source.getSize(2) != sizeZ)
+		{
+			throw new IllegalArgumentException("Both images must have the same size");
+		}
+		
+		double[] buffer = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				source.getRow(y, z, buffer);
+				setRow(y, z, buffer);
+			}
+		}
+	}
 }
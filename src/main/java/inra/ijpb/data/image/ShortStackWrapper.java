@@ -44,7 +44,7 @@ import static java.lang.Math.max;
  * @author David Legland
  *
  */
-public class ShortStackWrapper implements Image3D
+public final class ShortStackWrapper implements Image3D
 {
 	short[][] slices;
 	
@@ -135,4 +135,112 @@ public class ShortStackWrapper implements Image3D
 		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
 	}
 
+	// ==================================================
+	// Fast access methods
+	
+	/**
+	 * Returns the inner array of a slice.
+	 * 
+	 * @param z
+	 *            the index of the slice (0-indexed)
+	 * @return the reference to the array of gray16 values of the slice
+	 */
+	public short[] getSlice(int z)
+	{
+		return slices[z];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getByIndex(long)
+	 */
+	@Override
+	public double getByIndex(long index)
+	{
+		long sliceSize = ((long) sizeX) * sizeY;
+		int z = (int) (index / sliceSize);
+		return (double) (slices[z][(int) (index - z * sliceSize)] & 0x00FFFF);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setByIndex(long, double)
+	 */
+	@Override
+	public void setByIndex(long index, double value)
+	{
+		long sliceSize = ((long) sizeX) * sizeY;
+		int z = (int) (index / sliceSize);
+		slices[z][(int) (index - z * sliceSize)] = (short) max(min(value, 65535), 0);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getRow(int, int, double[])
+	 */
+	@Override
+	public void getRow(int y, int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = (double) (slice[offset + x] & 0x00FFFF);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setRow(int, int, double[])
+	 */
+	@Override
+	public void setRow(int y, int z, double[] values)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = values[x];
+			slice[offset + x] = (short) max(min(value, 65535), 0);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#fillRow(int, int, int, int, double)
+	 */
+	@Override
+	public void fillRow(int x1, int x2, int y, int z, double value)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = x1; x <= x2; x++)
+		{
+			slice[offset + x] = (short) max(min(value, 65535), 0);
+		}
+	}
+
+	/**
+	 * Copies all the values of another image with the same size into this
+	 * image. If the source image is also a ShortStackWrapper, the slice arrays are
+	 * copied directly.
+	 * 
+	 * @param source
+	 *            the image to copy values from
+	 */
+	@Override
+	public void copyFrom(Image3D source)
+	{
+		if (!(source instanceof ShortStackWrapper))
+		{
+			Image3D.super.copyFrom(source);
+			return;
+		}
+		
+		ShortStackWrapper source2 = (ShortStackWrapper) source;
+		if (source2.sizeX != sizeX || source2.sizeY != sizeY || source2.sizeZ != sizeZ)
+		{
+			throw new IllegalArgumentException("Both images must have the same size");
+		}
+		int sliceSize = sizeX * sizeY;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			System.arraycopy(source2.slices[z], 0, slices[z], 0, sliceSize);
+		}
+	}
 }
@@ -42,6 +42,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Utility methods for label images (stored as 8-, 16- or 32-bits).
@@ -1068,7 +1072,7 @@ public class LabelImages
 	    int height 	= image.getHeight();
 	
         // create associative array to identify the index of each label
-	    HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+	    LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -1082,7 +1086,7 @@ public class LabelImages
 	        	int label = (int) image.getf(x, y);
 	        	if (label == 0)
 					continue;
-				int labelIndex = labelIndices.get(label);
+				int labelIndex = labelIndices.indexOf(label);
 				counts[labelIndex]++;
 	        }
 	    }	
@@ -1104,32 +1108,26 @@ public class LabelImages
 	public final static int[] voxelCount(ImageStack image, int[] labels) 
 	{
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+		LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
 		int[] counts = new int[nLabels];
 
-		// size of image
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
 		// iterate on image voxels
+		int sizeZ = image.getSize();
 		for (int z = 0; z < sizeZ; z++) 
         {
         	IJ.showProgress(z, sizeZ);
-        	for (int y = 0; y < sizeY; y++)
+        	ImageProcessor plane = image.getProcessor(z + 1);
+        	int nPixels = plane.getPixelCount();
+        	for (int i = 0; i < nPixels; i++)
         	{
-        		for (int x = 0; x < sizeX; x++)
-        		{
-        			int label = (int) image.getVoxel(x, y, z);
-					// do not consider background
-					if (label == 0)
-						continue;
-					int labelIndex = labelIndices.get(label);
-					counts[labelIndex]++;
-        		}
+        		int label = (int) plane.getf(i);
+        		// do not consider background
+        		if (label == 0)
+        			continue;
+        		counts[labelIndices.indexOf(label)]++;
         	}
         }
         
@@ -1172,37 +1170,54 @@ public class LabelImages
 	 *            a 3D label image
 	 * @return the list of unique labels present in image (without background)
      */
-    public final static int[] findAllLabels(ImageStack image) 
+    public final static int[] findAllLabels(final ImageStack image) 
     {
-        int sizeX = image.getWidth();
-        int sizeY = image.getHeight();
-        int sizeZ = image.getSize();
-        
-        TreeSet<Integer> labels = new TreeSet<Integer> ();
+        final int sizeZ = image.getSize();
         
-        // iterate on image pixels
-        for (int z = 0; z < sizeZ; z++) 
+        // collect the labels of each slab of planes in parallel
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int nSlabs = Math.max(Math.min(pool.getParallelism(), sizeZ), 1);
+        ArrayList<Future<LabelSet>> futures = new ArrayList<Future<LabelSet>>(nSlabs);
+        for (int s = 0; s < nSlabs; s++)
         {
-        	for (int y = 0; y < sizeY; y++)  
+        	final int z0 = (int) ((long) sizeZ * s / nSlabs);
+        	final int z1 = (int) ((long) sizeZ * (s + 1) / nSlabs);
+        	futures.add(pool.submit(new Callable<LabelSet>()
         	{
-        		for (int x = 0; x < sizeX; x++)
+        		public LabelSet call()
         		{
-        			labels.add((int) image.getVoxel(x, y, z));
+        			LabelSet set = new LabelSet();
+        			for (int z = z0; z < z1; z++)
+        			{
+        				addLabels(image.getProcessor(z + 1), set);
+        			}
+        			return set;
         		}
-        	}
+        	}));
         }
         
-        // remove 0 if it exists
-        if (labels.contains(0))
-            labels.remove(0);
-        
-        // convert to array of integers
-        int[] array = new int[labels.size()];
-        Iterator<Integer> iterator = labels.iterator();
-        for (int i = 0; i < labels.size(); i++) 
-            array[i] = iterator.next();
+        // merge the label sets
+        LabelSet labels = null;
+        try
+        {
+        	for (Future<LabelSet> future : futures)
+        	{
+        		if (labels == null)
+        			labels = future.get();
+        		else
+        			labels.addAll(future.get());
+        	}
+        }
+        catch (InterruptedException ex)
+        {
+        	throw new RuntimeException("Parallel processing was interrupted", ex);
+        }
+        catch (ExecutionException ex)
+        {
+        	throw new RuntimeException(ex.getCause());
+        }
         
-        return array;
+        return labels == null ? new int[0] : labels.toSortedArray();
     }
 
     /**
@@ -1215,42 +1230,44 @@ public class LabelImages
      */
     public final static int[] findAllLabels(ImageProcessor image)
     {
-        int sizeX = image.getWidth();
-        int sizeY = image.getHeight();
-        
-        TreeSet<Integer> labels = new TreeSet<Integer> ();
-        
-        // iterate on image pixels
-        if (image instanceof FloatProcessor) 
-        {
-        	// For float processor, use explicit case to int from float value  
-        	for (int y = 0; y < sizeY; y++) 
-        	{
-        		for (int x = 0; x < sizeX; x++) 
-        			labels.add((int) image.getf(x, y));
-        	}
-        } 
-        else
-        {
-        	// for integer-based images, simply use integer result
-        	for (int y = 0; y < sizeY; y++) 
-        	{
-        		for (int x = 0; x < sizeX; x++) 
-        			labels.add(image.get(x, y));
-        	}
-        }
-        
-        // remove 0 if it exists
-        if (labels.contains(0))
-            labels.remove(0);
-        
-        // convert to array of integers
-        int[] array = new int[labels.size()];
-        Iterator<Integer> iterator = labels.iterator();
-        for (int i = 0; i < labels.size(); i++) 
-            array[i] = iterator.next();
-        
-        return array;
+    	LabelSet labels = new LabelSet();
+    	addLabels(image, labels);
+    	return labels.toSortedArray();
+    }
+
+    /**
+     * Adds the labels of a planar image to a set of labels.
+     */
+    private static final void addLabels(ImageProcessor image, LabelSet labels)
+    {
+    	int nPixels = image.getPixelCount();
+    	int lastLabel = 0;
+    	if (image instanceof FloatProcessor) 
+    	{
+    		// For float processor, use explicit case to int from float value  
+    		for (int i = 0; i < nPixels; i++)
+    		{
+    			int label = (int) image.getf(i);
+    			if (label != lastLabel)
+    			{
+    				labels.add(label);
+    				lastLabel = label;
+    			}
+    		}
+    	} 
+    	else
+    	{
+    		// for integer-based images, simply use integer result
+    		for (int i = 0; i < nPixels; i++)
+    		{
+    			int label = image.get(i);
+    			if (label != lastLabel)
+    			{
+    				labels.add(label);
+    				lastLabel = label;
+    			}
+    		}
+    	}
     }
 
 	/**
@@ -1569,7 +1586,7 @@ public class LabelImages
         int[] labels = LabelImages.findAllLabels(labelImage);
         
         // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		for (int y = 0; y < height; y++) 
 		{
@@ -1582,7 +1599,7 @@ public class LabelImages
 					continue;
 				}
 				
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
 				
 				if (index >= values.length) {
 					throw new RuntimeException("Try to access index " + index + 
@@ -1620,7 +1637,7 @@ public class LabelImages
         int[] labels = LabelImages.findAllLabels(labelImage);
         
         // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
         // Iterate over voxels to change their color
         for (int z = 0; z < sizeZ; z++) 
@@ -1636,7 +1653,7 @@ public class LabelImages
 						continue;
 					}
 
-					int index = labelIndices.get(label);
+					int index = labelIndices.indexOf(label);
 					
 					if (index >= values.length) 
 					{
@@ -1660,6 +1677,8 @@ public class LabelImages
 	 *            an array of labels
 	 * @return a HashMap instance with each label as key, and the index of the
 	 *         label in array as value.
+
+	 * @see LabelIndex
 	 */
 	public static final HashMap<Integer, Integer> mapLabelIndices(int[] labels)
 	{
@@ -0,0 +1,253 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import java.util.Arrays;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * Associates to each label of a label image its index within an array of
+ * labels, without boxing. 
+ * 
+ * When the range of label values is not too large compared to the number of
+ * labels, the index is retrieved from a look-up table indexed by label
+ * values. Otherwise (as for sparse labels stored in float images), an
+ * open-addressing hash table is used.
+ * 
+ * A typical usage is to create the index once for a given label image, and
+ * to share it between all the measurements performed on this image:
+ * <pre><code>
+ * LabelIndex index = LabelIndex.fromImage(labelImage);
+ * int[] counts = new int[index.size()];
+ * for (int i = 0; i &lt; image.getPixelCount(); i++)
+ * {
+ *     int labelIndex = index.indexOf((int) image.getf(i));
+ *     if (labelIndex &gt;= 0)
+ *         counts[labelIndex]++;
+ * }
+ * </code></pre>
+ * 
+ * @see LabelImages#findAllLabels(ImageStack)
+ * 
+ * @author dlegland
+ */
+public final class LabelIndex
+{
+	// ==================================================
+	// Static methods
+	
+	/**
+	 * Creates the index of the labels contained in a label image.
+	 * 
+	 * @param image
+	 *            a 2D or 3D label image
+	 * @return the index of the labels within the image, background excluded
+	 */
+	public static final LabelIndex fromImage(ImagePlus image)
+	{
+		return new LabelIndex(LabelImages.findAllLabels(image));
+	}
+
+	/**
+	 * Creates the index of the labels contained in a 2D label image.
+	 * 
+	 * @param image
+	 *            a 2D label image
+	 * @return the index of the labels within the image, background excluded
+	 */
+	public static final LabelIndex fromImage(ImageProcessor image)
+	{
+		return new LabelIndex(LabelImages.findAllLabels(image));
+	}
+
+	/**
+	 * Creates the index of the labels contained in a 3D label image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @return the index of the labels within the image, background excluded
+	 */
+	public static final LabelIndex fromImage(ImageStack image)
+	{
+		return new LabelIndex(LabelImages.findAllLabels(image));
+	}
+	
+	/**
+	 * Mixes the bits of an integer value, for computing hash table positions.
+	 */
+	static final int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The ratio between the range of label values and the number of labels
+	 * below which a look-up table is used.
+	 */
+	static final int DENSE_RATIO = 4;
+	
+	/**
+	 * The maximum range of label values for which a look-up table is always
+	 * used.
+	 */
+	static final int DENSE_RANGE = 0x10000;
+	
+	/** The array of labels */
+	final int[] labels;
+	
+	/** The smallest label, used as offset within the look-up table */
+	int minLabel;
+	
+	/** The look-up table, or null if a hash table is used */
+	int[] lut;
+	
+	/** The keys of the hash table */
+	int[] keys;
+	
+	/** The values of the hash table, with -1 for empty slots */
+	int[] values;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates an index for the specified array of labels.
+	 * 
+	 * @param labels
+	 *            an array of labels, each label occurring at most once
+	 */
+	public LabelIndex(int[] labels)
+	{
+		this.labels = labels;
+		int n = labels.length;
+		if (n == 0)
+		{
+			this.lut = new int[0];
+			return;
+		}
+		
+		int maxLabel = labels[0];
+		this.minLabel = labels[0];
+		for (int label : labels)
+		{
+			if (label < this.minLabel)
+				this.minLabel = label;
+			if (label > maxLabel)
+				maxLabel = label;
+		}
+		
+		long range = (long) maxLabel - this.minLabel + 1;
+		if (range <= DENSE_RANGE || range <= (long) DENSE_RATIO * n)
+		{
+			// use a look-up table
+			this.lut = new int[(int) range];
+			Arrays.fill(this.lut, -1);
+			for (int i = 0; i < n; i++)
+			{
+				this.lut[labels[i] - this.minLabel] = i;
+			}
+		}
+		else
+		{
+			// use a hash table with a load factor of at most 0.5
+			int capacity = Integer.highestOneBit(n) * 4;
+			this.keys = new int[capacity];
+			this.values = new int[capacity];
+			Arrays.fill(this.values, -1);
+			int mask = capacity - 1;
+			for (int i = 0; i < n; i++)
+			{
+				int pos = hash(labels[i]) & mask;
+				while (this.values[pos] != -1)
+				{
+					pos = (pos + 1) & mask;
+				}
+				this.keys[pos] = labels[i];
+				this.values[pos] = i;
+			}
+		}
+	}
+	
+	
+	// ==================================================
+	// Methods
+	
+	/**
+	 * Returns the index of the specified label within the array of labels.
+	 * 
+	 * @param label
+	 *            the label value
+	 * @return the index of the label, or -1 if the label is not indexed
+	 */
+	public int indexOf(int label)
+	{
+		if (lut != null)
+		{
+			int pos = label - minLabel;
+			return pos >= 0 && pos < lut.length ? lut[pos] : -1;
+		}
+		
+		int mask = keys.length - 1;
+		int pos = hash(label) & mask;
+		int index;
+		while ((index = values[pos]) != -1)
+		{
+			if (keys[pos] == label)
+				return index;
+			pos = (pos + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return true if the index of the labels is stored in a look-up table
+	 */
+	public boolean isDense()
+	{
+		return lut != null;
+	}
+	
+	/**
+	 * @return the number of labels
+	 */
+	public int size()
+	{
+		return labels.length;
+	}
+	
+	/**
+	 * @return the array of labels
+	 */
+	public int[] getLabels()
+	{
+		return labels;
+	}
+}
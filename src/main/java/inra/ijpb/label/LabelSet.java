@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import java.util.Arrays;
+
+/**
+ * A set of integer labels without boxing, used for collecting the labels of
+ * an image. Labels between 0 and 65535 are stored as flags in an array, other
+ * labels are stored within an open-addressing hash table.
+ * 
+ * @author dlegland
+ */
+class LabelSet
+{
+	/** The flags of the labels between 0 and 65535 */
+	boolean[] flags = new boolean[0x10000];
+	
+	/** The labels outside of the flag range, with 0 for empty slots */
+	int[] keys = new int[16];
+	
+	/** The number of labels stored in the hash table */
+	int hashSize = 0;
+	
+	/**
+	 * Adds a label to the set.
+	 * 
+	 * @param label
+	 *            the label to add
+	 */
+	void add(int label)
+	{
+		if ((label & 0xFFFF0000) == 0)
+		{
+			flags[label] = true;
+			return;
+		}
+		
+		int mask = keys.length - 1;
+		int pos = LabelIndex.hash(label) & mask;
+		while (keys[pos] != 0)
+		{
+			if (keys[pos] == label)
+				return;
+			pos = (pos + 1) & mask;
+		}
+		keys[pos] = label;
+		hashSize++;
+		if (2 * hashSize > keys.length)
+			grow();
+	}
+	
+	/**
+	 * Adds all the labels of another set to this set.
+	 * 
+	 * @param set
+	 *            the set of labels to add
+	 */
+	void addAll(LabelSet set)
+	{
+		for (int i = 0; i < 0x10000; i++)
+		{
+			flags[i] |= set.flags[i];
+		}
+		for (int key : set.keys)
+		{
+			if (key != 0)
+				add(key);
+		}
+	}
+	
+	private void grow()
+	{
+		int[] oldKeys = keys;
+		keys = new int[oldKeys.length * 2];
+		hashSize = 0;
+		for (int key : oldKeys)
+		{
+			if (key != 0)
+				add(key);
+		}
+	}
+
+	/**
+	 * Returns the labels of the set in increasing order, excluding the
+	 * background label 0.
+	 * 
+	 * @return the sorted array of labels
+	 */
+	int[] toSortedArray()
+	{
+		int n = hashSize;
+		for (int i = 1; i < 0x10000; i++)
+		{
+			if (flags[i])
+				n++;
+		}
+		
+		int[] labels = new int[n];
+		int k = 0;
+		for (int i = 1; i < 0x10000; i++)
+		{
+			if (flags[i])
+				labels[k++] = i;
+		}
+		for (int key : keys)
+		{
+			if (key != 0)
+				labels[k++] = key;
+		}
+		Arrays.sort(labels);
+		return labels;
+	}
+}
@@ -0,0 +1,305 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * Computes, for each region of a 3D label image, the histogram of the binary
+ * configurations of 2-by-2-by-2 voxels that contain the region.
+ * 
+ * Each configuration is identified by an index between 0 and 255, obtained by
+ * summing the values 1, 2, 4, ..., 128 of the voxels of the configuration
+ * that belong to the region, in the order (x,y,z), (x+1,y,z), (x,y+1,z),
+ * (x+1,y+1,z), (x,y,z+1), (x+1,y,z+1), (x,y+1,z+1), (x+1,y+1,z+1).
+ * Intrinsic volumes such as surface area or Euler number are then obtained
+ * by applying a look-up table to the histograms.
+ * 
+ * All configurations are visited once, whatever the number of labels. The
+ * image is split into slabs of consecutive planes processed in parallel, and
+ * the partial histograms of each slab are merged at the end. Histograms are
+ * allocated only for the labels present within a slab.
+ * 
+ * @see GeometricMeasures3D#surfaceAreaCrofton(ImageStack, int[], double[], int)
+ * @see GeometricMeasures3D#eulerNumber(ImageStack, int[], int)
+ * 
+ * @author dlegland
+ */
+public class BinaryConfigurationsHistogram3D extends AlgoStub
+{
+	// ==================================================
+	// Static methods
+	
+	/**
+	 * Applies a look-up table to each histogram of configurations.
+	 * 
+	 * @param histograms
+	 *            the histogram of configurations of each region, as computed
+	 *            by the process method. A null histogram is considered as
+	 *            empty.
+	 * @param lut
+	 *            the contribution of each of the 256 configurations
+	 * @return the sum of contributions for each region
+	 */
+	public static final double[] applyLut(long[][] histograms, double[] lut)
+	{
+		double[] res = new double[histograms.length];
+		for (int i = 0; i < histograms.length; i++)
+		{
+			if (histograms[i] == null)
+				continue;
+			double sum = 0;
+			for (int k = 0; k < 256; k++)
+			{
+				sum += histograms[i][k] * lut[k];
+			}
+			res[i] = sum;
+		}
+		return res;
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+	
+	
+	// ==================================================
+	// Constructors
+	
+	/**
+	 * Creates a new algorithm using the common fork-join pool.
+	 */
+	public BinaryConfigurationsHistogram3D()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new algorithm using the specified fork-join pool.
+	 * 
+	 * @param pool
+	 *            the pool used to process the slabs of the image
+	 */
+	public BinaryConfigurationsHistogram3D(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	
+	// ==================================================
+	// Computation methods
+	
+	/**
+	 * Computes the histogram of binary configurations of each region.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @param labels
+	 *            the labels of the regions to process
+	 * @return an array with one row of 256 counts for each label
+	 */
+	public long[][] process(final ImageStack image, int[] labels)
+	{
+		final LabelIndex labelIndex = new LabelIndex(labels);
+		final int nLabels = labels.length;
+		
+		// split the planes of configurations into slabs
+		final int nConfigPlanes = Math.max(image.getSize() - 1, 0);
+		int nSlabs = Math.max(Math.min(pool.getParallelism(), nConfigPlanes), 1);
+		ArrayList<Future<long[][]>> futures = new ArrayList<Future<long[][]>>(nSlabs);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			final int z0 = (int) ((long) nConfigPlanes * s / nSlabs);
+			final int z1 = (int) ((long) nConfigPlanes * (s + 1) / nSlabs);
+			futures.add(pool.submit(new Callable<long[][]>()
+			{
+				public long[][] call()
+				{
+					long[][] histos = new long[nLabels][];
+					for (int z = z0; z < z1; z++)
+					{
+						addConfigurations(image.getProcessor(z + 1),
+								image.getProcessor(z + 2), labelIndex, histos);
+					}
+					return histos;
+				}
+			}));
+		}
+		
+		// merge the histograms of each slab
+		fireStatusChanged(this, "Count configurations...");
+		long[][] histograms = new long[nLabels][];
+		try
+		{
+			for (int s = 0; s < nSlabs; s++)
+			{
+				long[][] slabHistos = futures.get(s).get();
+				for (int i = 0; i < nLabels; i++)
+				{
+					long[] histo = slabHistos[i];
+					if (histo == null)
+						continue;
+					if (histograms[i] == null)
+					{
+						histograms[i] = histo;
+						continue;
+					}
+					for (int k = 0; k < 256; k++)
+					{
+						histograms[i][k] += histo[k];
+					}
+				}
+				fireProgressChanged(this, s + 1, nSlabs);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		
+		// labels that do not appear within image have empty histograms 
+		for (int i = 0; i < nLabels; i++)
+		{
+			if (histograms[i] == null)
+				histograms[i] = new long[256];
+		}
+		return histograms;
+	}
+	
+	/**
+	 * Updates the histograms with the configurations located between two
+	 * consecutive planes. Histograms are allocated for the labels found
+	 * within the configurations.
+	 * 
+	 * @param plane
+	 *            the plane containing the first four voxels of each
+	 *            configuration
+	 * @param nextPlane
+	 *            the plane containing the last four voxels of each
+	 *            configuration
+	 * @param labelIndex
+	 *            the index of the labels to process
+	 * @param histos
+	 *            the histograms of configurations of each label, or null
+	 *            for the labels not found yet
+	 */
+	static final void addConfigurations(ImageProcessor plane, 
+			ImageProcessor nextPlane, LabelIndex labelIndex, long[][] histos)
+	{
+		int sizeX = plane.getWidth();
+		int sizeY = plane.getHeight();
+		int[] local = new int[8];
+		
+		for (int y = 0; y < sizeY - 1; y++)
+		{
+			int offset = y * sizeX;
+			
+			// initialize the right column of the configuration
+			local[1] = (int) plane.getf(offset);
+			local[3] = (int) plane.getf(offset + sizeX);
+			local[5] = (int) nextPlane.getf(offset);
+			local[7] = (int) nextPlane.getf(offset + sizeX);
+			
+			for (int x = 0; x < sizeX - 1; x++)
+			{
+				// shift the configuration by one voxel
+				int i = offset + x + 1;
+				local[0] = local[1];
+				local[2] = local[3];
+				local[4] = local[5];
+				local[6] = local[7];
+				local[1] = (int) plane.getf(i);
+				local[3] = (int) plane.getf(i + sizeX);
+				local[5] = (int) nextPlane.getf(i);
+				local[7] = (int) nextPlane.getf(i + sizeX);
+				
+				addConfiguration(local, labelIndex, histos);
+			}
+		}
+	}
+	
+	/**
+	 * Updates the histograms of the labels within a single configuration,
+	 * given by the labels of its eight voxels.
+	 */
+	private static final void addConfiguration(int[] local, 
+			LabelIndex labelIndex, long[][] histos)
+	{
+		for (int k = 0; k < 8; k++)
+		{
+			int label = local[k];
+			if (label == 0)
+				continue;
+			
+			// process each label only once
+			boolean seen = false;
+			for (int k2 = 0; k2 < k; k2++)
+			{
+				if (local[k2] == label)
+				{
+					seen = true;
+					break;
+				}
+			}
+			if (seen)
+				continue;
+			
+			int index = labelIndex.indexOf(label);
+			if (index < 0)
+				continue;
+			
+			// compute the index of the binary configuration
+			int configIndex = 1 << k;
+			for (int k2 = k + 1; k2 < 8; k2++)
+			{
+				if (local[k2] == label)
+					configIndex |= 1 << k2;
+			}
+			
+			long[] histo = histos[index];
+			if (histo == null)
+			{
+				histo = new long[256];
+				histos[index] = histo;
+			}
+			histo[configIndex]++;
+		}
+	}
+}
@@ -27,12 +27,11 @@ import static java.lang.Math.sqrt;
 import ij.IJ;
 import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
-import inra.ijpb.binary.BinaryImages;
+import inra.ijpb.binary.distmap.LabelEuclideanDistanceTransform;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
-import java.awt.Point;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Locale;
 
 /**
@@ -171,7 +170,7 @@ public class GeometricMeasures2D
 	public final static double[][] boundingBox(ImageProcessor labelImage, int[] labels)
 	{
         // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -199,7 +198,7 @@ public class GeometricMeasures2D
 				// do not consider background
 				if (label == 0)
 					continue;
-				int labelIndex = labelIndices.get(label);
+				int labelIndex = labelIndices.indexOf(label);
 
 				// update bounding box of current label
 				boxes[labelIndex][0] = min(boxes[labelIndex][0], x);
@@ -352,7 +351,7 @@ public class GeometricMeasures2D
 	{
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// pre-compute LUT corresponding to resolution and number of directions
 		IJ.showStatus("Compute LUT...");
@@ -408,7 +407,7 @@ public class GeometricMeasures2D
 					index += (int) image.getf(x + 1, y + 1) == label ? 8 : 0;
 
 					// retriev label index from label value
-					int labelIndex = labelIndices.get(label);
+					int labelIndex = labelIndices.indexOf(label);
 
 					// update measure for current label
 					perimeters[labelIndex] += lut[index];
@@ -1024,7 +1023,7 @@ public class GeometricMeasures2D
 	{
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -1042,10 +1041,9 @@ public class GeometricMeasures2D
 					continue;
 
 				// do not process labels that are not in the input list 
-				if (!labelIndices.containsKey(label))
+				int index = labelIndices.indexOf(label);
+				if (index < 0)
 					continue;
-				
-				int index = labelIndices.get(label);
 				centroids[index][0] += x;
 				centroids[index][1] += y;
 				counts[index]++;
@@ -1085,7 +1083,7 @@ public class GeometricMeasures2D
 		int nLabels = labels.length;
 
 		// create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -1104,7 +1102,7 @@ public class GeometricMeasures2D
 				if (label == 0)
 					continue;
 
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
 				cx[index] += x;
 				cy[index] += y;
 				counts[index]++;
@@ -1127,7 +1125,7 @@ public class GeometricMeasures2D
 				if (label == 0)
 					continue;
 
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
 				double x2 = x - cx[index];
 				double y2 = y - cy[index];
 				Ixx[index] += x2 * x2;
@@ -1178,7 +1176,9 @@ public class GeometricMeasures2D
 
 	/**
 	 * Computes radius and center of maximum inscribed disk of each particle. 
-	 * Particles must be disjoint.
+	 * The radius is the exact Euclidean distance from the center to the
+	 * nearest pixel with a different label, so that touching particles are
+	 * processed separately.
 	 * 
 	 * @param labelImage
 	 *            the input image containing label of particles
@@ -1191,14 +1191,16 @@ public class GeometricMeasures2D
     }
     
 	/**
-	 * Radius of maximum inscribed disk of each particle. Particles must be
-	 * disjoint.
+	 * Radius of maximum inscribed disk of each particle. The radius is the
+	 * exact Euclidean distance from the center to the nearest pixel with a
+	 * different label, so that touching particles are processed separately.
 	 * 
 	 * @param labelImage
 	 *            the input image containing label of particles
 	 * @param resol an array containing the size of the pixel in each direction
 	 * @return a ResultsTable with as many rows as the number of unique labels
 	 *         in label image, and columns "Label", "xi", "yi" and "Radius".
+	 * @see inra.ijpb.binary.distmap.LabelEuclideanDistanceTransform
 	 */
     public final static ResultsTable maximumInscribedCircle(ImageProcessor labelImage, 
     		double[] resol)
@@ -1207,16 +1209,9 @@ public class GeometricMeasures2D
     	int[] labels = LabelImages.findAllLabels(labelImage);
     	int nbLabels = labels.length;
     	
-		// Initialize mask as binarisation of labels
-		ImageProcessor mask = BinaryImages.binarize(labelImage);
-
-		// first distance propagation to find an arbitrary center
-		ImageProcessor distanceMap = BinaryImages.distanceMap(mask);
-		
-		// Extract position of maxima
-		Point[] posCenter;
-		posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		float[] radii = getValues(distanceMap, posCenter);
+		// compute distance map and maxima in a single transform
+		LabelEuclideanDistanceTransform algo = new LabelEuclideanDistanceTransform(resol);
+		double[][] circles = algo.inscribedBalls(labelImage, labels);
 
 		// Create result data table
 		ResultsTable table = new ResultsTable();
@@ -1225,101 +1220,11 @@ public class GeometricMeasures2D
 			// add an entry to the resulting data table
 			table.incrementCounter();
 			table.addValue("Label", labels[i]);
-			table.addValue("xi", posCenter[i].x * resol[0]);
-			table.addValue("yi", posCenter[i].y * resol[1]);
-			table.addValue("Radius", radii[i] * resol[0]);
+			table.addValue("xi", circles[i][0]);
+			table.addValue("yi", circles[i][1]);
+			table.addValue("Radius", circles[i][2]);
 		}
 
 		return table;
     }
-    
-	/**
-	 * Find one position of maximum value within each label.
-	 * 
-	 * @param image
-	 *            the input image containing the value (for example a distance 
-	 *            map)
-	 * @param labelImage
-	 *            the input image containing label of particles
-	 * @param labels
-	 *            the set of labels contained in the label image
-	 *            
-	 */
-	private final static Point[] findPositionOfMaxValues(ImageProcessor image,
-			ImageProcessor labelImage, int[] labels)
-	{
-		int width 	= labelImage.getWidth();
-		int height 	= labelImage.getHeight();
-		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-		{
-			maxLabel = Math.max(maxLabel, labels[i]);
-		}
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-		{
-			labelIndex[labels[i]] = i;
-		}
-		
-		// Init Position and value of maximum for each label
-		Point[] posMax 	= new Point[nbLabel];
-		int[] maxValues = new int[nbLabel];
-		for (int i = 0; i < nbLabel; i++) 
-		{
-			maxValues[i] = -1;
-			posMax[i] = new Point(-1, -1);
-		}
-		
-		// store current value
-		int value;
-		int index;
-		
-		// iterate on image pixels
-		for (int y = 0; y < height; y++) 
-		{
-			for (int x = 0; x < width; x++) 
-			{
-				int label = (int) labelImage.getf(x, y);
-				
-				// do not process pixels that do not belong to particle
-				if (label==0)
-					continue;
-
-				index = labelIndex[label];
-				
-				// update values and positions
-				value = image.get(x, y);
-				if (value > maxValues[index])
-				{
-					posMax[index].setLocation(x, y);
-					maxValues[index] = value;
-				}
-			}
-		}
-				
-		return posMax;
-	}
-	
-	/**
-	 * Get values in input image for each specified position.
-	 */
-	private final static float[] getValues(ImageProcessor image, 
-			Point[] positions) 
-	{
-		float[] values = new float[positions.length];
-		
-		// iterate on positions
-		for (int i = 0; i < positions.length; i++) 
-		{
-			values[i] = image.getf(positions[i].x, positions[i].y);
-		}
-				
-		return values;
-	}
 }
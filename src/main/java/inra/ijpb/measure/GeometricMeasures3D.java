@@ -30,12 +30,10 @@ import static java.lang.Math.toDegrees;
 import ij.IJ;
 import ij.ImageStack;
 import ij.measure.ResultsTable;
-import inra.ijpb.binary.BinaryImages;
-import inra.ijpb.data.Cursor3D;
+import inra.ijpb.binary.distmap.LabelEuclideanDistanceTransform;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 
 import Jama.Matrix;
 import Jama.SingularValueDecomposition;
@@ -122,7 +120,7 @@ public class GeometricMeasures3D
 	public final static double[][] boundingBox(ImageStack labelImage, int[] labels) 
 	{
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+		LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -158,11 +156,9 @@ public class GeometricMeasures3D
 						continue;
 					
 					// do not processes labels not in the list
-					if (!labelIndices.containsKey(label))
+					int labelIndex = labelIndices.indexOf(label);
+					if (labelIndex < 0)
 						continue;
-
-					// update bounding box of current label
-					int labelIndex = labelIndices.get(label);
 					boxes[labelIndex][0] = min(boxes[labelIndex][0], x);
 					boxes[labelIndex][1] = max(boxes[labelIndex][1], x);
 					boxes[labelIndex][2] = min(boxes[labelIndex][2], y);
@@ -343,10 +339,12 @@ public class GeometricMeasures3D
 		IJ.showStatus("Compute LUT...");
 		double[] surfLut = computeSurfaceAreaLut(resol, nDirs);
 
-		// Compute index of each 2x2x2 binary voxel configuration, associate LUT
-		// contribution, and sum up for each label
+		// Compute the histogram of 2x2x2 binary voxel configurations of each
+		// label, and apply the LUT
 		IJ.showStatus("Surface Area...");
-        return sumOfLutContributions(image, labels, surfLut);
+		long[][] histograms = new BinaryConfigurationsHistogram3D().process(image, labels);
+		IJ.showStatus("");
+        return BinaryConfigurationsHistogram3D.applyLut(histograms, surfLut);
 	}
 	
 	/**
@@ -371,45 +369,16 @@ public class GeometricMeasures3D
     	// pre-compute LUT corresponding to resolution and number of directions
 		double[] surfLut = computeSurfaceAreaLut(resol, nDirs);
 
-		// initialize result
-		double surf = 0;
-
-		// size of image
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
-		// iterate on image voxel configurations
-        for (int z = 0; z < sizeZ - 1; z++) 
-        {
-        	for (int y = 0; y < sizeY - 1; y++) 
-        	{
-        		for (int x = 0; x < sizeX - 1; x++) 
-        		{
-        			// Compute index of local configuration
-        			int index = 0;
-        			index += image.getVoxel(x, y, z) == label ? 1 : 0;
-        			index += image.getVoxel(x + 1, y, z) == label ? 2 : 0;
-        			index += image.getVoxel(x, y + 1, z) == label ? 4 : 0;
-        			index += image.getVoxel(x + 1, y + 1, z) == label ? 8 : 0;
-        			index += image.getVoxel(x, y, z + 1) == label ? 16 : 0;
-        			index += image.getVoxel(x + 1, y, z + 1) == label ? 32 : 0;
-        			index += image.getVoxel(x, y + 1, z + 1) == label ? 64 : 0;
-        			index += image.getVoxel(x + 1, y + 1, z + 1) == label ? 128 : 0;
-        			
-        			// update lut
-        			surf += surfLut[index];
-        		}
-        	}
-        }
-        
-        return surf;
+		// Compute the histogram of 2x2x2 binary voxel configurations of the
+		// label, and apply the LUT
+		long[][] histograms = new BinaryConfigurationsHistogram3D().process(image, new int[]{label});
+		return BinaryConfigurationsHistogram3D.applyLut(histograms, surfLut)[0];
 	}
 	
 	/**
 	 * Computes the Look-up table that is used to compute surface area.
 	 */
-	private final static double[] computeSurfaceAreaLut(double[] resol, int nDirs) 
+	final static double[] computeSurfaceAreaLut(double[] resol, int nDirs) 
 	{
 		// distances between a voxel and its neighbors.
 		// di refer to orthogonal neighbors
@@ -768,10 +737,12 @@ public class GeometricMeasures3D
         // pre-compute LUT corresponding to resolution and number of directions
 		double[] eulerLut = computeEulerNumberLut(conn);
 
-		// Compute index of each 2x2x2 binary voxel configuration, associate LUT
-		// contribution, and sum up for each label
+		// Compute the histogram of 2x2x2 binary voxel configurations of each
+		// label, and apply the LUT
 		IJ.showStatus("Euler Number...");
-		return sumOfLutContributions(image, labels, eulerLut);
+		long[][] histograms = new BinaryConfigurationsHistogram3D().process(image, labels);
+		IJ.showStatus("");
+		return BinaryConfigurationsHistogram3D.applyLut(histograms, eulerLut);
 	}
 	
 	/**
@@ -786,7 +757,7 @@ public class GeometricMeasures3D
 	 *            the 3D connectivity, either 6 or 26
 	 * @return a look-up-table with 256 entries
 	 */
-	private static final double[] computeEulerNumberLut(int conn)
+	static final double[] computeEulerNumberLut(int conn)
 	{
 		if (conn == 6)
 		{
@@ -874,109 +845,6 @@ public class GeometricMeasures3D
 		return lut;
 	}
 
-	/**
-	 * Applies a look-up-table for each of the 2x2x2 voxel configuration, and
-	 * returns the sum of contributions for each label.
-	 * This method is used for computing Euler number and surface area.
-	 * 
-	 * @param image
-	 *            the input 3D image of labels
-	 * @param labels
-	 *            the set of labels to process
-	 * @param lut
-	 *            the look-up-table containing the measure contribution for each
-	 *            of the 256 configuration of 8 voxels
-	 * @return the sum of measure contributions for each label
-	 * 
-	 * @see #surfaceAreaCrofton(ImageStack, int[], double[], int)
-	 * @see #eulerNumber(ImageStack, int[], int)
-	 */
-	private final static double[] sumOfLutContributions(ImageStack image, int[] labels, 
-			double[] lut)
-	{   
-		// Algorithm:
-		// iterate on configurations of 2-by-2-by-2 voxels within 3D image. 
-		// For each configuration, identify the labels within the configuration.
-		// For each label, compute the equivalent binary configuration index, 
-		// and adds is contribution to the measure associated to the label. 
-		
-        // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
-
-		// initialize the result array containing one measure for each label
-		int nLabels = labels.length;
-        double[] measures = new double[nLabels];
-
-		// size of image
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
-		// for each configuration of 2x2x2 voxels, we identify the labels
-		ArrayList<Integer> localLabels = new ArrayList<Integer>(8);
-		
-        for (int z = 0; z < sizeZ - 1; z++) 
-        {
-        	IJ.showProgress(z, sizeZ);
-        	for (int y = 0; y < sizeY - 1; y++) 
-        	{
-        		for (int x = 0; x < sizeX - 1; x++) 
-        		{
-        			// identify labels in current config
-        			localLabels.clear();
-					for (int z2 = z; z2 <= z + 1; z2++) 
-					{
-						for (int y2 = y; y2 <= y + 1; y2++) 
-						{
-							for (int x2 = x; x2 <= x + 1; x2++) 
-							{
-								int label = (int) image.getVoxel(x2, y2, z2);
-								// do not consider background
-								if (label == 0)
-									continue;
-								// keep only one instance of each label
-								if (!localLabels.contains(label))
-									localLabels.add(label);
-                			}
-            			}
-        			}
-
-					// if there is no label in the local configuration then the
-					// contribution is zero
-					if (localLabels.size() == 0) 
-					{
-						continue;
-					}
-					
-					// For each label, compute binary confi
-					for (int label : localLabels) 
-					{
-	        			// Compute index of local configuration
-	        			int index = 0;
-	        			index += image.getVoxel(x, y, z) 			== label ? 1 : 0;
-	        			index += image.getVoxel(x + 1, y, z) 		== label ? 2 : 0;
-	        			index += image.getVoxel(x, y + 1, z) 		== label ? 4 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z) 	== label ? 8 : 0;
-	        			index += image.getVoxel(x, y, z + 1) 		== label ? 16 : 0;
-	        			index += image.getVoxel(x + 1, y, z + 1) 	== label ? 32 : 0;
-	        			index += image.getVoxel(x, y + 1, z + 1) 	== label ? 64 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z + 1) == label ? 128 : 0;
-
-						// add the contribution of the configuration to the
-						// accumulator for the label
-	        			int labelIndex = labelIndices.get(label);
-	        			measures[labelIndex] += lut[index];
-					}
-        		}
-        	}
-        }
-        
-        // reset progress display
-		IJ.showStatus("");
-    	IJ.showProgress(1);
-        return measures;
-	}
-	
 	/**
 	 * Computes centroid of each label in input stack and returns the result
 	 * as an array of double for each label.
@@ -990,7 +858,7 @@ public class GeometricMeasures3D
 	{
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -1011,11 +879,9 @@ public class GeometricMeasures3D
 						continue;
 
 					// do not process labels that are not in the input list 
-					if (!labelIndices.containsKey(label))
+					int index = labelIndices.indexOf(label);
+					if (index < 0)
 						continue;
-					
-					// increment centroid and count for current label
-					int index = labelIndices.get(label);
 					centroids[index][0] += x;
 					centroids[index][1] += y;
 					centroids[index][2] += z;
@@ -1157,7 +1023,7 @@ public class GeometricMeasures3D
         int sizeZ = image.getSize();
         
     	// create associative array to know index of each label
-    	HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+    	LabelIndex labelIndices = new LabelIndex(labels);
 
         // ensure valid resolution
         if (resol == null)
@@ -1191,7 +1057,7 @@ public class GeometricMeasures3D
     					continue;
 
     				// convert label to its index
-    				int index = labelIndices.get(label);
+    				int index = labelIndices.indexOf(label);
 
     				// update sum coordinates, taking into account the spatial calibration 
     				cx[index] += x * resol[0];
@@ -1223,7 +1089,7 @@ public class GeometricMeasures3D
     					continue;
 
     				// convert label to its index
-    				int index = labelIndices.get(label);
+    				int index = labelIndices.indexOf(label);
 
     				// convert coordinates relative to centroid 
     				double x2 = x * resol[0] - cx[index];
@@ -1253,67 +1119,104 @@ public class GeometricMeasures3D
     	}
 
     	// Create result array
-    	double[][] res = new double[nLabels][9];
+    	double[][] res = new double[nLabels][];
 
     	// compute ellipsoid parameters for each region
-    	Matrix matrix = new Matrix(3, 3);
     	for (int i = 0; i < nLabels; i++) 
     	{
-    		// fill up the 3x3 inertia matrix
-    		matrix.set(0, 0, Ixx[i]);
-    		matrix.set(0, 1, Ixy[i]);
-    		matrix.set(0, 2, Ixz[i]);
-    		matrix.set(1, 0, Ixy[i]);
-    		matrix.set(1, 1, Iyy[i]);
-    		matrix.set(1, 2, Iyz[i]);
-    		matrix.set(2, 0, Ixz[i]);
-    		matrix.set(2, 1, Iyz[i]);
-    		matrix.set(2, 2, Izz[i]);
-
-    		// Extract singular values
-    		SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
-    		Matrix values = svd.getS();
-
-    		// convert singular values to ellipsoid radii 
-    		double r1 = sqrt(5) * sqrt(values.get(0, 0));
-    		double r2 = sqrt(5) * sqrt(values.get(1, 1));
-    		double r3 = sqrt(5) * sqrt(values.get(2, 2));
-
-    		// extract |cos(theta)| 
-    		Matrix mat = svd.getU();
-    		double tmp = hypot(mat.get(1, 1), mat.get(2, 1));
-    		double phi, theta, psi;
-
-    		// avoid dividing by 0
-    		if (tmp > 16 * Double.MIN_VALUE) 
-    		{
-    			// normal case: theta <> 0
-    			psi     = atan2( mat.get(2, 1), mat.get(2, 2));
-    			theta   = atan2(-mat.get(2, 0), tmp);
-    			phi     = atan2( mat.get(1, 0), mat.get(0, 0));
-    		}
-    		else 
-    		{
-    			// theta is around 0 
-    			psi     = atan2(-mat.get(1, 2), mat.get(1,1));
-    			theta   = atan2(-mat.get(2, 0), tmp);
-    			phi     = 0;
-    		}
+    		res[i] = ellipsoidFromMoments(cx[i], cy[i], cz[i], 
+    				Ixx[i], Iyy[i], Izz[i], Ixy[i], Ixz[i], Iyz[i], resol);
+    	}
 
-    		// add coordinates of origin pixel (IJ coordinate system) 
-    		res[i][0] = cx[i] + .5 * resol[0];
-    		res[i][1] = cy[i] + .5 * resol[1];
-    		res[i][2] = cz[i] + .5 * resol[2];
-    		// add scaling parameters 
-    		res[i][3] = r1;
-    		res[i][4] = r2;
-    		res[i][5] = r3;
-    		// add orientation info
-    		res[i][6] = toDegrees(phi);
-    		res[i][7] = toDegrees(theta);
-    		res[i][8] = toDegrees(psi);
+    	return res;
+    }
+    
+    /**
+	 * Computes the parameters of the inertia ellipsoid of a region from its
+	 * centroid and its normalized, centered, second order moments.
+	 * 
+	 * @param cx
+	 *            the x-coordinate of the centroid, in calibrated units
+	 * @param cy
+	 *            the y-coordinate of the centroid, in calibrated units
+	 * @param cz
+	 *            the z-coordinate of the centroid, in calibrated units
+	 * @param Ixx
+	 *            the second order moment along the x axis
+	 * @param Iyy
+	 *            the second order moment along the y axis
+	 * @param Izz
+	 *            the second order moment along the z axis
+	 * @param Ixy
+	 *            the cross moment of the x and y axes
+	 * @param Ixz
+	 *            the cross moment of the x and z axes
+	 * @param Iyz
+	 *            the cross moment of the y and z axes
+	 * @param resol
+	 *            the spatial resolution, as an array of length 3.
+	 * @return the nine parameters of the ellipsoid: center, radii and
+	 *         orientation angles
+	 */
+    static final double[] ellipsoidFromMoments(double cx, double cy, double cz, 
+    		double Ixx, double Iyy, double Izz, double Ixy, double Ixz, double Iyz,
+    		double[] resol)
+    {
+    	// fill up the 3x3 inertia matrix
+    	Matrix matrix = new Matrix(3, 3);
+    	matrix.set(0, 0, Ixx);
+    	matrix.set(0, 1, Ixy);
+    	matrix.set(0, 2, Ixz);
+    	matrix.set(1, 0, Ixy);
+    	matrix.set(1, 1, Iyy);
+    	matrix.set(1, 2, Iyz);
+    	matrix.set(2, 0, Ixz);
+    	matrix.set(2, 1, Iyz);
+    	matrix.set(2, 2, Izz);
+
+    	// Extract singular values
+    	SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
+    	Matrix values = svd.getS();
+
+    	// convert singular values to ellipsoid radii 
+    	double r1 = sqrt(5) * sqrt(values.get(0, 0));
+    	double r2 = sqrt(5) * sqrt(values.get(1, 1));
+    	double r3 = sqrt(5) * sqrt(values.get(2, 2));
+
+    	// extract |cos(theta)| 
+    	Matrix mat = svd.getU();
+    	double tmp = hypot(mat.get(1, 1), mat.get(2, 1));
+    	double phi, theta, psi;
+
+    	// avoid dividing by 0
+    	if (tmp > 16 * Double.MIN_VALUE) 
+    	{
+    		// normal case: theta <> 0
+    		psi     = atan2( mat.get(2, 1), mat.get(2, 2));
+    		theta   = atan2(-mat.get(2, 0), tmp);
+    		phi     = atan2( mat.get(1, 0), mat.get(0, 0));
+    	}
+    	else 
+    	{
+    		// theta is around 0 
+    		psi     = atan2(-mat.get(1, 2), mat.get(1,1));
+    		theta   = atan2(-mat.get(2, 0), tmp);
+    		phi     = 0;
     	}
 
+    	double[] res = new double[9];
+    	// add coordinates of origin pixel (IJ coordinate system) 
+    	res[0] = cx + .5 * resol[0];
+    	res[1] = cy + .5 * resol[1];
+    	res[2] = cz + .5 * resol[2];
+    	// add scaling parameters 
+    	res[3] = r1;
+    	res[4] = r2;
+    	res[5] = r3;
+    	// add orientation info
+    	res[6] = toDegrees(phi);
+    	res[7] = toDegrees(theta);
+    	res[8] = toDegrees(psi);
     	return res;
     }
     
@@ -1360,6 +1263,9 @@ public class GeometricMeasures3D
     
     /**
 	 * Radius of maximum inscribed sphere of each particle within a label image.
+	 * The radius is the exact Euclidean distance from the center to the
+	 * nearest voxel with a different label, so that touching particles are
+	 * processed separately.
 	 * 
 	 * @param labelImage
 	 *            input image containing label of each particle
@@ -1375,16 +1281,7 @@ public class GeometricMeasures3D
     	int[] labels = LabelImages.findAllLabels(labelImage);
     	int nbLabels = labels.length;
 
-    	// Initialize mask as binarisation of labels
-    	ImageStack mask = BinaryImages.binarize(labelImage);
-
-    	// first distance propagation to find an arbitrary center
-    	ImageStack distanceMap = BinaryImages.distanceMap(mask);
-
-    	// Extract position of maxima
-    	Cursor3D[] posCenter;
-    	posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-    	float[] radii = getValues(distanceMap, posCenter);
+    	double[][] spheres = maximumInscribedSphere(labelImage, labels, resol);
 
     	// Create result data table
     	ResultsTable table = new ResultsTable();
@@ -1393,10 +1290,10 @@ public class GeometricMeasures3D
     		// add an entry to the resulting data table
     		table.incrementCounter();
     		table.addValue("Label", labels[i]);
-    		table.addValue("xi", posCenter[i].getX() * resol[0]);
-    		table.addValue("yi", posCenter[i].getY() * resol[1]);
-    		table.addValue("zi", posCenter[i].getZ() * resol[2]);
-    		table.addValue("Radius", radii[i] * resol[0]);
+    		table.addValue("xi", spheres[i][0]);
+    		table.addValue("yi", spheres[i][1]);
+    		table.addValue("zi", spheres[i][2]);
+    		table.addValue("Radius", spheres[i][3]);
     	}
 
     	return table;
@@ -1404,6 +1301,9 @@ public class GeometricMeasures3D
 
 	/**
 	 * Radius of maximum inscribed sphere of each particle within a label image.
+	 * The radius is the exact Euclidean distance from the center to the
+	 * nearest voxel with a different label, so that touching particles are
+	 * processed separately.
 	 * 
 	 * @param labelImage
 	 *            input image containing label of each particle
@@ -1414,129 +1314,12 @@ public class GeometricMeasures3D
 	 *            the spatial resolution, as an array of length 3.
 	 * @return an array with as many rows as the number of labels, and 4 columns
 	 *         (xi, yi, zi, radius)
+	 * @see inra.ijpb.binary.distmap.LabelEuclideanDistanceTransform
 	 */
     public final static double[][] maximumInscribedSphere(ImageStack labelImage, 
     		int[] labels, double[] resol)
     {
-    	// compute max label within image
-    	int nbLabels = labels.length;
-    	
-    	// Initialize mask as binarisation of labels
-		ImageStack mask = BinaryImages.binarize(labelImage);
-
-		// first distance propagation to find an arbitrary center
-		ImageStack distanceMap = BinaryImages.distanceMap(mask);
-		
-		// Extract position of maxima
-		Cursor3D[] posCenter;
-		posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		float[] radii = getValues(distanceMap, posCenter);
-
-		// Create result data table
-		double[][] res = new double[nbLabels][4];
-		for (int i = 0; i < nbLabels; i++) 
-		{
-			res[i][0] = posCenter[i].getX() * resol[0];
-			res[i][1] = posCenter[i].getY() * resol[1];
-			res[i][2] = posCenter[i].getZ() * resol[2];
-			res[i][3] = radii[i] * resol[0];
-		}
-
-		return res;
+    	LabelEuclideanDistanceTransform algo = new LabelEuclideanDistanceTransform(resol);
+    	return algo.inscribedBalls(labelImage, labels);
     }
-
-	/**
-	 * Finds one position of maximum value within each label.
-	 * 
-	 * @param image
-	 *            the input image containing the value (for example a distance 
-	 *            map)
-	 * @param labelImage
-	 *            the input image containing label of particles
-	 * @param labels
-	 *            the set of labels contained in the label image
-	 *            
-	 */
-	private final static Cursor3D[] findPositionOfMaxValues(ImageStack image,
-			ImageStack labelImage, int[] labels)
-	{
-		int width 	= labelImage.getWidth();
-		int height 	= labelImage.getHeight();
-		int depth 	= labelImage.getSize(); 
-		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-		{
-			maxLabel = Math.max(maxLabel, labels[i]);
-		}
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-		{
-			labelIndex[labels[i]] = i;
-		}
-		
-		// Init Position and value of maximum for each label
-		Cursor3D[] posMax 	= new Cursor3D[nbLabel];
-		double[] maxValues = new double[nbLabel];
-		for (int i = 0; i < nbLabel; i++) 
-		{
-			maxValues[i] = -1;
-			posMax[i] = new Cursor3D(-1, -1, -1);
-		}
-		
-		// store current value
-		double value;
-		int index;
-		
-		// iterate on image pixels
-		for (int z = 0; z < depth; z++) 
-		{
-			for (int y = 0; y < height; y++) 
-			{
-				for (int x = 0; x < width; x++) 
-				{
-					int label = (int) labelImage.getVoxel(x, y, z);
-
-					// do not process pixels that do not belong to particle
-					if (label==0)
-						continue;
-
-					index = labelIndex[label];
-
-					// update values and positions
-					value = image.getVoxel(x, y, z);
-					if (value > maxValues[index])
-					{
-						posMax[index].set(x, y, z);
-						maxValues[index] = value;
-					}
-				}
-			}
-		}
-
-		return posMax;
-	}
-	
-	/**
-	 * Get values in input image for each specified position.
-	 */
-	private final static float[] getValues(ImageStack image, 
-			Cursor3D[] positions) 
-	{
-		float[] values = new float[positions.length];
-		
-		// iterate on positions
-		for (int i = 0; i < positions.length; i++) 
-		{
-			values[i] = (float) image.getVoxel((int) positions[i].getX(),
-					(int) positions[i].getY(), (int) positions[i].getZ());
-		}
-				
-		return values;
-	}
 }
@@ -0,0 +1,383 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import ij.measure.ResultsTable;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * <p>
+ * A compact representation of the adjacency graph of the regions within a
+ * label image, as computed by the RegionAdjacencyGraphBuilder class.</p>
+ * 
+ * <p>
+ * Nodes correspond to the labels of the image, sorted by increasing values,
+ * and are identified by their index. Edges are sorted by increasing pairs of
+ * labels, the first node of an edge always having the lowest label.</p>
+ * 
+ * <p>
+ * The neighbors of each node are stored in compressed sparse row format: the
+ * neighbors of the node with index <code>i</code> are found between positions
+ * <code>getNeighborStart(i)</code> (inclusive) and
+ * <code>getNeighborStart(i + 1)</code> (exclusive).
+ * <pre><code>
+ * for (int k = graph.getNeighborStart(i); k &lt; graph.getNeighborStart(i + 1); k++)
+ * {
+ *     int neighbor = graph.getNeighbor(k);
+ *     double area = graph.getContactArea(graph.getNeighborEdge(k));
+ * }
+ * </code></pre>
+ * 
+ * <p>
+ * Each edge is associated with the size of the contact between the two
+ * regions, and optionally with the mean and the minimum value of a companion
+ * intensity image along the boundary.</p>
+ * 
+ * @see RegionAdjacencyGraphBuilder
+ * 
+ * @author dlegland
+ */
+public class LabelAdjacencyGraph
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The labels associated to the nodes, in increasing order.
+	 */
+	int[] labels;
+
+	/**
+	 * The index of the first and second node of each edge.
+	 */
+	int[] edgeNodes1;
+	int[] edgeNodes2;
+	
+	/**
+	 * The number of neighbor pairs along the boundary of each edge.
+	 */
+	int[] contactAreas;
+	
+	/**
+	 * The mean and min boundary intensity of each edge, or null if no
+	 * intensity image was specified.
+	 */
+	double[] meanIntensities;
+	double[] minIntensities;
+	
+	/**
+	 * The position of the first neighbor of each node, with one additional
+	 * element for the end of the last node.
+	 */
+	int[] neighborStarts;
+	
+	/**
+	 * The index of the neighbor node, and of the corresponding edge.
+	 */
+	int[] neighbors;
+	int[] neighborEdges;
+	
+	/**
+	 * The index of the labels, created when first needed.
+	 */
+	LabelIndex labelIndex = null;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new graph from the list of its edges, and computes the
+	 * neighbor arrays.
+	 * 
+	 * @param labels
+	 *            the labels of the nodes, in increasing order
+	 * @param edgeNodes1
+	 *            the index of the first node of each edge
+	 * @param edgeNodes2
+	 *            the index of the second node of each edge
+	 * @param contactAreas
+	 *            the contact area of each edge
+	 * @param meanIntensities
+	 *            the mean boundary intensity of each edge, or null
+	 * @param minIntensities
+	 *            the min boundary intensity of each edge, or null
+	 */
+	LabelAdjacencyGraph(int[] labels, int[] edgeNodes1, int[] edgeNodes2,
+			int[] contactAreas, double[] meanIntensities, double[] minIntensities)
+	{
+		this.labels = labels;
+		this.edgeNodes1 = edgeNodes1;
+		this.edgeNodes2 = edgeNodes2;
+		this.contactAreas = contactAreas;
+		this.meanIntensities = meanIntensities;
+		this.minIntensities = minIntensities;
+		
+		// count the number of neighbors of each node
+		int nNodes = labels.length;
+		int nEdges = edgeNodes1.length;
+		this.neighborStarts = new int[nNodes + 1];
+		for (int e = 0; e < nEdges; e++)
+		{
+			this.neighborStarts[edgeNodes1[e] + 1]++;
+			this.neighborStarts[edgeNodes2[e] + 1]++;
+		}
+		for (int i = 0; i < nNodes; i++)
+		{
+			this.neighborStarts[i + 1] += this.neighborStarts[i];
+		}
+		
+		// fill neighbor arrays, in the order of the edges
+		this.neighbors = new int[2 * nEdges];
+		this.neighborEdges = new int[2 * nEdges];
+		int[] pos = new int[nNodes];
+		System.arraycopy(this.neighborStarts, 0, pos, 0, nNodes);
+		for (int e = 0; e < nEdges; e++)
+		{
+			int i1 = edgeNodes1[e];
+			int i2 = edgeNodes2[e];
+			this.neighbors[pos[i1]] = i2;
+			this.neighborEdges[pos[i1]++] = e;
+			this.neighbors[pos[i2]] = i1;
+			this.neighborEdges[pos[i2]++] = e;
+		}
+	}
+	
+	
+	// ==================================================
+	// Accessors for nodes
+	
+	/**
+	 * @return the number of nodes, that is the number of labels
+	 */
+	public int nodeCount()
+	{
+		return this.labels.length;
+	}
+	
+	/**
+	 * @return the labels associated to the nodes, in increasing order
+	 */
+	public int[] getLabels()
+	{
+		return this.labels;
+	}
+	
+	/**
+	 * Returns the label of a node.
+	 * 
+	 * @param node
+	 *            the index of the node
+	 * @return the label of the node
+	 */
+	public int getLabel(int node)
+	{
+		return this.labels[node];
+	}
+	
+	/**
+	 * Returns the index of the node associated to a label.
+	 * 
+	 * @param label
+	 *            the label of a region
+	 * @return the index of the node, or -1 if the label does not belong to
+	 *         the graph
+	 */
+	public int nodeIndex(int label)
+	{
+		if (this.labelIndex == null)
+		{
+			this.labelIndex = new LabelIndex(this.labels);
+		}
+		return this.labelIndex.indexOf(label);
+	}
+	
+	/**
+	 * Returns the position of the first neighbor of a node within the
+	 * neighbor arrays. The neighbors of the node are found up to the
+	 * position of the first neighbor of the next node.
+	 * 
+	 * @param node
+	 *            the index of the node, between 0 and the number of nodes
+	 *            (inclusive)
+	 * @return the position of the first neighbor of the node
+	 */
+	public int getNeighborStart(int node)
+	{
+		return this.neighborStarts[node];
+	}
+	
+	/**
+	 * Returns the index of the neighbor node at a given position.
+	 * 
+	 * @param pos
+	 *            the position within the neighbor arrays
+	 * @return the index of the neighbor node
+	 */
+	public int getNeighbor(int pos)
+	{
+		return this.neighbors[pos];
+	}
+	
+	/**
+	 * Returns the index of the edge at a given position.
+	 * 
+	 * @param pos
+	 *            the position within the neighbor arrays
+	 * @return the index of the edge between the node and its neighbor
+	 */
+	public int getNeighborEdge(int pos)
+	{
+		return this.neighborEdges[pos];
+	}
+
+	/**
+	 * Returns the number of neighbors of a node.
+	 * 
+	 * @param node
+	 *            the index of the node
+	 * @return the number of neighbors of the node
+	 */
+	public int degree(int node)
+	{
+		return this.neighborStarts[node + 1] - this.neighborStarts[node];
+	}
+	
+	
+	// ==================================================
+	// Accessors for edges
+	
+	/**
+	 * @return the number of edges, that is the number of pairs of adjacent
+	 *         regions
+	 */
+	public int edgeCount()
+	{
+		return this.edgeNodes1.length;
+	}
+	
+	/**
+	 * Returns the index of the first node of an edge, corresponding to the
+	 * lowest label.
+	 * 
+	 * @param edge
+	 *            the index of the edge
+	 * @return the index of the first node of the edge
+	 */
+	public int getEdgeNode1(int edge)
+	{
+		return this.edgeNodes1[edge];
+	}
+	
+	/**
+	 * Returns the index of the second node of an edge, corresponding to the
+	 * highest label.
+	 * 
+	 * @param edge
+	 *            the index of the edge
+	 * @return the index of the second node of the edge
+	 */
+	public int getEdgeNode2(int edge)
+	{
+		return this.edgeNodes2[edge];
+	}
+	
+	/**
+	 * Returns the size of the contact between the two regions of an edge,
+	 * given as the number of pairs of neighbor elements along the boundary.
+	 * 
+	 * @param edge
+	 *            the index of the edge
+	 * @return the contact area of the edge
+	 */
+	public int getContactArea(int edge)
+	{
+		return this.contactAreas[edge];
+	}
+	
+	/**
+	 * @return true if intensity values were computed for edges
+	 */
+	public boolean hasIntensities()
+	{
+		return this.meanIntensities != null;
+	}
+	
+	/**
+	 * Returns the mean value of the intensity image along the boundary
+	 * between the two regions of an edge.
+	 * 
+	 * @param edge
+	 *            the index of the edge
+	 * @return the mean boundary intensity, or NaN if no intensity image was
+	 *         specified
+	 */
+	public double getMeanIntensity(int edge)
+	{
+		return this.meanIntensities != null ? this.meanIntensities[edge] : Double.NaN;
+	}
+	
+	/**
+	 * Returns the minimum value of the intensity image along the boundary
+	 * between the two regions of an edge.
+	 * 
+	 * @param edge
+	 *            the index of the edge
+	 * @return the minimum boundary intensity, or NaN if no intensity image
+	 *         was specified
+	 */
+	public double getMinIntensity(int edge)
+	{
+		return this.minIntensities != null ? this.minIntensities[edge] : Double.NaN;
+	}
+	
+	
+	// ==================================================
+	// Conversion methods
+	
+	/**
+	 * Creates a results table with one row for each edge, containing the
+	 * labels of the two regions, the contact area, and the boundary
+	 * intensities if they were computed.
+	 * 
+	 * @return a new results table
+	 */
+	public ResultsTable createTable()
+	{
+		ResultsTable table = new ResultsTable();
+		
+		for (int e = 0; e < this.edgeNodes1.length; e++)
+		{
+			table.incrementCounter();
+			table.addValue("Label 1", this.labels[this.edgeNodes1[e]]);
+			table.addValue("Label 2", this.labels[this.edgeNodes2[e]]);
+			table.addValue("Contact Area", this.contactAreas[e]);
+			if (this.meanIntensities != null)
+			{
+				table.addValue("Mean Intensity", this.meanIntensities[e]);
+				table.addValue("Min Intensity", this.minIntensities[e]);
+			}
+		}
+		
+		return table;
+	}
+}
@@ -0,0 +1,666 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * Computes intensity statistics of the regions of a label image, by using a
+ * single pass over the voxels of the images.
+ * 
+ * Instead of storing the values of the voxels of each region, the algorithm
+ * updates primitive accumulators for each label: the number of voxels, the
+ * mean, the sums of the powers two to four of the deviations from the mean
+ * (central moments), and the extreme values. Central moments are updated
+ * incrementally (Welford's algorithm), so that they remain accurate for
+ * values far from zero. The image is split into slabs of consecutive slices
+ * that are processed in parallel, and the accumulators of each slab are
+ * merged at the end with the pairwise update formulas of Pebay.
+ * 
+ * Median and mode values are obtained from a histogram of the values of each
+ * region. Histograms are stored as sparse hash tables, so that their size is
+ * bounded by the number of distinct values within each region (at most 256
+ * or 65536 for 8-bits or 16-bits images). The computation of histograms can
+ * be disabled when only moments and extreme values are required.
+ * 
+ * @see LabeledVoxelsMeasure
+ * @see IntensityMeasures
+ * 
+ * @author dlegland
+ */
+public class LabeledIntensityStatistics extends AlgoStub
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * Specifies whether histograms of values should be computed, for
+	 * obtaining median and mode values.
+	 */
+	boolean computeHistograms = true;
+	
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+	
+	
+	// ==================================================
+	// Constructors
+	
+	/**
+	 * Creates a new algorithm for computing intensity statistics using the
+	 * common fork-join pool.
+	 */
+	public LabeledIntensityStatistics()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new algorithm for computing intensity statistics using the
+	 * specified fork-join pool.
+	 * 
+	 * @param pool
+	 *            the pool used to process the slabs of the image
+	 */
+	public LabeledIntensityStatistics(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return true if histograms are computed together with the moments
+	 */
+	public boolean getComputeHistograms()
+	{
+		return computeHistograms;
+	}
+	
+	/**
+	 * Chooses whether the histogram of each region should be computed. Median
+	 * and mode values are not available when histograms are not computed.
+	 * 
+	 * @param b
+	 *            the new value of the flag
+	 */
+	public void setComputeHistograms(boolean b)
+	{
+		this.computeHistograms = b;
+	}
+	
+
+	// ==================================================
+	// Computation methods
+	
+	/**
+	 * Computes the statistics of the values of the intensity image within
+	 * each region of the label image.
+	 * 
+	 * @param image
+	 *            the intensity image
+	 * @param labelImage
+	 *            the label image, with the same size as the intensity image
+	 * @param labels
+	 *            the labels of the regions to consider. Voxels with other
+	 *            labels are ignored.
+	 * @return the statistics of each region, in the same order as the labels
+	 */
+	public Result process(ImageStack image, ImageStack labelImage, int[] labels)
+	{
+		return process(image, labelImage, new LabelIndex(labels));
+	}
+	
+	/**
+	 * Computes the statistics of the values of the intensity image within
+	 * each region of the label image, using a pre-computed index of labels.
+	 * 
+	 * @param image
+	 *            the intensity image
+	 * @param labelImage
+	 *            the label image, with the same size as the intensity image
+	 * @param labelIndex
+	 *            the index of the labels of the regions to consider. Voxels
+	 *            with other labels are ignored.
+	 * @return the statistics of each region, in the same order as the
+	 *         labels of the index
+	 */
+	public Result process(final ImageStack image, final ImageStack labelImage, final LabelIndex labelIndex)
+	{
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+		if (sizeX != labelImage.getWidth() || sizeY != labelImage.getHeight()
+				|| sizeZ != labelImage.getSize())
+		{
+			throw new IllegalArgumentException("Input and label images must have the same size");
+		}
+		final boolean floatValues = image.getBitDepth() == 32;
+		
+		// split planes into slabs
+		int nSlabs = Math.max(Math.min(pool.getParallelism(), sizeZ), 1);
+		ArrayList<Callable<Result>> tasks = new ArrayList<Callable<Result>>(nSlabs);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			final int z0 = (int) ((long) sizeZ * s / nSlabs);
+			final int z1 = (int) ((long) sizeZ * (s + 1) / nSlabs);
+			tasks.add(new Callable<Result>()
+			{
+				public Result call()
+				{
+					Result res = new Result(labelIndex, floatValues, computeHistograms);
+					for (int z = z0; z < z1; z++)
+					{
+						res.addPlane(image.getProcessor(z + 1), labelImage.getProcessor(z + 1), labelIndex);
+					}
+					return res;
+				}
+			});
+		}
+
+		// merge results of each slab
+		fireStatusChanged(this, "Compute intensity statistics...");
+		ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>(nSlabs);
+		for (Callable<Result> task : tasks)
+		{
+			futures.add(pool.submit(task));
+		}
+		Result result = null;
+		try
+		{
+			for (int s = 0; s < nSlabs; s++)
+			{
+				Result res = futures.get(s).get();
+				if (result == null)
+					result = res;
+				else
+					result.merge(res);
+				fireProgressChanged(this, s + 1, nSlabs);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		
+		return result;
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * The statistics of the intensity values within each region of a label
+	 * image.
+	 */
+	public static final class Result
+	{
+		/** The labels of the regions. */
+		final int[] labels;
+		
+		/** Specifies whether histogram keys are float bits or integer values */
+		final boolean floatValues;
+		
+		/** The number of voxels of each region */
+		final long[] counts;
+		/** The mean of the values of each region */
+		final double[] means;
+		/** The sum of the squared deviations from the mean, for each region */
+		final double[] m2;
+		/** The sum of the cubed deviations from the mean, for each region */
+		final double[] m3;
+		/** The sum of the deviations from the mean raised to the fourth power, for each region */
+		final double[] m4;
+		/** The minimum value of each region */
+		final double[] mins;
+		/** The maximum value of each region */
+		final double[] maxs;
+		/** The histogram of each region, or null if not computed */
+		final ValueHistogram[] histograms;
+
+		Result(LabelIndex labelIndex, boolean floatValues, boolean computeHistograms)
+		{
+			int n = labelIndex.size();
+			this.labels = labelIndex.getLabels();
+			this.floatValues = floatValues;
+			this.counts = new long[n];
+			this.means = new double[n];
+			this.m2 = new double[n];
+			this.m3 = new double[n];
+			this.m4 = new double[n];
+			this.mins = new double[n];
+			this.maxs = new double[n];
+			Arrays.fill(this.mins, Double.POSITIVE_INFINITY);
+			Arrays.fill(this.maxs, Double.NEGATIVE_INFINITY);
+			this.histograms = computeHistograms ? new ValueHistogram[n] : null;
+		}
+		
+		/**
+		 * Updates the accumulators with the values of a plane.
+		 */
+		private void addPlane(ImageProcessor plane, ImageProcessor labelPlane, LabelIndex labelIndex)
+		{
+			int nPixels = plane.getPixelCount();
+			for (int i = 0; i < nPixels; i++)
+			{
+				int label = (int) labelPlane.getf(i);
+				if (label == 0)
+					continue;
+				
+				int index = labelIndex.indexOf(label);
+				if (index < 0)
+					continue;
+				
+				float value = plane.getf(i);
+				double v = value;
+				
+				// update central moments, starting from the highest order
+				double n1 = counts[index];
+				double n = n1 + 1;
+				double delta = v - means[index];
+				double deltaN = delta / n;
+				double deltaN2 = deltaN * deltaN;
+				double term1 = delta * deltaN * n1;
+				counts[index]++;
+				means[index] += deltaN;
+				m4[index] += term1 * deltaN2 * (n * n - 3 * n + 3) 
+						+ 6 * deltaN2 * m2[index] - 4 * deltaN * m3[index];
+				m3[index] += term1 * deltaN * (n - 2) - 3 * deltaN * m2[index];
+				m2[index] += term1;
+				
+				if (v < mins[index])
+					mins[index] = v;
+				if (v > maxs[index])
+					maxs[index] = v;
+				
+				if (histograms != null)
+				{
+					ValueHistogram histo = histograms[index];
+					if (histo == null)
+					{
+						histo = new ValueHistogram();
+						histograms[index] = histo;
+					}
+					histo.add(floatValues ? Float.floatToIntBits(value) : (int) value, 1);
+				}
+			}
+		}
+		
+		/**
+		 * Merges the accumulators of another result computed for the same
+		 * labels into this result.
+		 */
+		private void merge(Result other)
+		{
+			for (int i = 0; i < labels.length; i++)
+			{
+				mergeMoments(i, other);
+				if (other.mins[i] < mins[i])
+					mins[i] = other.mins[i];
+				if (other.maxs[i] > maxs[i])
+					maxs[i] = other.maxs[i];
+				
+				if (histograms != null && other.histograms[i] != null)
+				{
+					if (histograms[i] == null)
+						histograms[i] = other.histograms[i];
+					else
+						histograms[i].addAll(other.histograms[i]);
+				}
+			}
+		}
+		
+		/**
+		 * Merges the count, mean and central moments of the region with the
+		 * specified index in another result into this result.
+		 */
+		private void mergeMoments(int i, Result other)
+		{
+			long nB = other.counts[i];
+			if (nB == 0)
+				return;
+			long nA = counts[i];
+			if (nA == 0)
+			{
+				counts[i] = nB;
+				means[i] = other.means[i];
+				m2[i] = other.m2[i];
+				m3[i] = other.m3[i];
+				m4[i] = other.m4[i];
+				return;
+			}
+			
+			double na = nA;
+			double nb = nB;
+			double n = na + nb;
+			double delta = other.means[i] - means[i];
+			double delta2 = delta * delta;
+			
+			// update from highest order, as lower orders are used by higher ones
+			m4[i] += other.m4[i] 
+					+ delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb) / (n * n * n)
+					+ 6 * delta2 * (na * na * other.m2[i] + nb * nb * m2[i]) / (n * n)
+					+ 4 * delta * (na * other.m3[i] - nb * m3[i]) / n;
+			m3[i] += other.m3[i] 
+					+ delta2 * delta * na * nb * (na - nb) / (n * n)
+					+ 3 * delta * (na * other.m2[i] - nb * m2[i]) / n;
+			m2[i] += other.m2[i] + delta2 * na * nb / n;
+			means[i] += delta * nb / n;
+			counts[i] = nA + nB;
+		}
+		
+		/**
+		 * @return the labels of the regions
+		 */
+		public int[] getLabels()
+		{
+			return labels;
+		}
+		
+		/**
+		 * @return the number of voxels of each region
+		 */
+		public long[] getVoxelCount()
+		{
+			return counts.clone();
+		}
+
+		/**
+		 * @return the mean value of each region
+		 */
+		public double[] getMean()
+		{
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				res[i] = counts[i] > 0 ? means[i] : Double.NaN;
+			}
+			return res;
+		}
+
+		/**
+		 * Computes the standard deviation of the values of each region, using
+		 * the number of voxels as normalization factor.
+		 * 
+		 * @return the standard deviation of the values of each region
+		 */
+		public double[] getStdDev()
+		{
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				double variance = m2[i] / counts[i];
+				res[i] = Math.sqrt(Math.max(variance, 0));
+			}
+			return res;
+		}
+
+		/**
+		 * @return the skewness of the values of each region
+		 */
+		public double[] getSkewness()
+		{
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				double n = counts[i];
+				double variance = Math.max(m2[i] / n, 0);
+				res[i] = (m3[i] / n) / (variance * Math.sqrt(variance));
+			}
+			return res;
+		}
+
+		/**
+		 * @return the excess kurtosis of the values of each region
+		 */
+		public double[] getKurtosis()
+		{
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				double n = counts[i];
+				double variance = Math.max(m2[i] / n, 0);
+				res[i] = (m4[i] / n) / (variance * variance) - 3.0;
+			}
+			return res;
+		}
+
+		/**
+		 * @return the minimum value within each region
+		 */
+		public double[] getMin()
+		{
+			return mins.clone();
+		}
+
+		/**
+		 * @return the maximum value within each region
+		 */
+		public double[] getMax()
+		{
+			return maxs.clone();
+		}
+		
+		/**
+		 * Computes the median value of each region. For regions with an even
+		 * number of voxels, the upper median is returned.
+		 * 
+		 * @return the median value of each region
+		 * @throws IllegalStateException
+		 *             if the histograms were not computed
+		 */
+		public double[] getMedian()
+		{
+			checkHistograms();
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				if (histograms[i] == null)
+				{
+					res[i] = Double.NaN;
+					continue;
+				}
+				double[] values = histograms[i].sortedValues(floatValues);
+				int[] valueCounts = histograms[i].countsOf(values, floatValues);
+				
+				// find the first value whose cumulative count exceeds half the count
+				long rank = counts[i] / 2;
+				long cumSum = 0;
+				for (int k = 0; k < values.length; k++)
+				{
+					cumSum += valueCounts[k];
+					if (cumSum > rank)
+					{
+						res[i] = values[k];
+						break;
+					}
+				}
+			}
+			return res;
+		}
+		
+		/**
+		 * Computes the most frequent value within each region. When several
+		 * values have the same frequency, the smallest one is returned.
+		 * 
+		 * @return the mode of each region
+		 * @throws IllegalStateException
+		 *             if the histograms were not computed
+		 */
+		public double[] getMode()
+		{
+			checkHistograms();
+			double[] res = new double[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				if (histograms[i] == null)
+				{
+					res[i] = Double.NaN;
+					continue;
+				}
+				double[] values = histograms[i].sortedValues(floatValues);
+				int[] valueCounts = histograms[i].countsOf(values, floatValues);
+				int maxCount = 0;
+				for (int k = 0; k < values.length; k++)
+				{
+					if (valueCounts[k] > maxCount)
+					{
+						maxCount = valueCounts[k];
+						res[i] = values[k];
+					}
+				}
+			}
+			return res;
+		}
+		
+		private void checkHistograms()
+		{
+			if (histograms == null)
+			{
+				throw new IllegalStateException("Histograms of values were not computed");
+			}
+		}
+	}
+	
+	/**
+	 * A sparse histogram of the values within a region, implemented as an
+	 * open-addressing hash table mapping integer keys to counts. Keys are
+	 * either the integer values of the voxels, or the bits of the float
+	 * values. Empty slots are identified by a null count.
+	 */
+	static final class ValueHistogram
+	{
+		int[] keys = new int[16];
+		int[] counts = new int[16];
+		int size = 0;
+		
+		void add(int key, int count)
+		{
+			int mask = keys.length - 1;
+			int pos = hash(key) & mask;
+			while (counts[pos] != 0)
+			{
+				if (keys[pos] == key)
+				{
+					counts[pos] += count;
+					return;
+				}
+				pos = (pos + 1) & mask;
+			}
+			keys[pos] = key;
+			counts[pos] = count;
+			size++;
+			if (2 * size > keys.length)
+				grow();
+		}
+		
+		void addAll(ValueHistogram other)
+		{
+			for (int i = 0; i < other.keys.length; i++)
+			{
+				if (other.counts[i] != 0)
+					add(other.keys[i], other.counts[i]);
+			}
+		}
+		
+		int count(int key)
+		{
+			int mask = keys.length - 1;
+			int pos = hash(key) & mask;
+			while (counts[pos] != 0)
+			{
+				if (keys[pos] == key)
+					return counts[pos];
+				pos = (pos + 1) & mask;
+			}
+			return 0;
+		}
+		
+		private static int hash(int key)
+		{
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+		
+		private void grow()
+		{
+			int[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new int[oldKeys.length * 2];
+			counts = new int[oldKeys.length * 2];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldCounts[i] != 0)
+					add(oldKeys[i], oldCounts[i]);
+			}
+		}
+		
+		/**
+		 * Returns the distinct values of the histogram, in increasing order.
+		 */
+		double[] sortedValues(boolean floatValues)
+		{
+			double[] values = new double[size];
+			int k = 0;
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (counts[i] != 0)
+					values[k++] = floatValues ? Float.intBitsToFloat(keys[i]) : keys[i];
+			}
+			Arrays.sort(values);
+			return values;
+		}
+		
+		/**
+		 * Returns the counts associated to the given values.
+		 */
+		int[] countsOf(double[] values, boolean floatValues)
+		{
+			int[] res = new int[values.length];
+			for (int k = 0; k < values.length; k++)
+			{
+				res[k] = count(floatValues ? Float.floatToIntBits((float) values[k]) : (int) values[k]);
+			}
+			return res;
+		}
+	}
+}
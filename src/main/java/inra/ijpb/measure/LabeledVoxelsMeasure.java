@@ -25,22 +25,24 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.measure.Calibration;
 import ij.measure.ResultsTable;
-import ij.process.ImageProcessor;
+import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.label.LabelImages;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 /**
  * Mother class to extract measures from pairs of grayscale and 
- * labeled images.
+ * labeled images. 
+ * 
+ * Statistics of the voxel values within each label are computed by a single
+ * pass over the images, without storing the voxel values.
+ * 
+ * @see LabeledIntensityStatistics
  * @author Ignacio Arganda-Carreras
  *
  */
 public class LabeledVoxelsMeasure {
 
-	/** list of voxels grouped by label */
-	ArrayList<Double>[] objectVoxels;
+	/** statistics of voxel values for each label */
+	LabeledIntensityStatistics.Result statistics;
 	/** list of unique labels */
 	int[] labels;
 	/** calibration of input image */
@@ -53,7 +55,6 @@ public class LabeledVoxelsMeasure {
 	 * @param inputImage input (grayscale) image
 	 * @param labelImage label image (labels are positive integer values)
 	 */
-	@SuppressWarnings("unchecked")
 	public LabeledVoxelsMeasure(
 			ImagePlus inputImage,
 			ImagePlus labelImage )
@@ -67,47 +68,16 @@ public class LabeledVoxelsMeasure {
 		this.calibration = inputImage.getCalibration();
 
 		this.labels = LabelImages.findAllLabels( labelImage.getImageStack() );
-		int numLabels = labels.length;
-		
-		// create associative hash table to know the index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < numLabels; i++) {
-        	labelIndices.put( labels[i], i );
-        }
-
-		// initialize lists of voxels per object
-        // unchecked cast
-		objectVoxels = (ArrayList<Double>[]) new ArrayList[ numLabels ];
-
-		for( int i=0; i<numLabels; i++ )
-			objectVoxels[ i ] = new ArrayList<Double>();
-		
-		//final long start = System.currentTimeMillis();		
 		
 		IJ.showStatus( "Extracting voxel information..." );
 		
-		// read voxel intensities for each object
-		final int numSlices = inputImage.getImageStackSize();
-		for( int z=1; z <= numSlices; z++ )
-		{
-			final ImageProcessor grayIP = inputImage.getImageStack().getProcessor( z );
-			final ImageProcessor labelsIP = labelImage.getImageStack().getProcessor( z );
-
-			for( int x = 0; x<width; x++ )
-				for( int y = 0; y<height; y++ )
-				{
-					int labelValue = (int) labelsIP.getf( x, y );
-					if( labelValue != 0)
-						objectVoxels[ labelIndices.get( labelValue ) ].add( (double) grayIP.getf(x, y) );
-				}
-			
-			IJ.showProgress( z, numSlices );
-		}
+		// accumulate voxel intensities for each object
+		LabeledIntensityStatistics algo = new LabeledIntensityStatistics();
+		DefaultAlgoListener.monitor( algo );
+		this.statistics = algo.process( inputImage.getImageStack(), 
+				labelImage.getImageStack(), labels );
 		
 		IJ.showProgress( 1.0 );
-		
-		//final long end = System.currentTimeMillis();
-		//IJ.log("Reading voxels took " + (end-start) + " ms.");
 	}
 	
 	/**
@@ -116,14 +86,15 @@ public class LabeledVoxelsMeasure {
 	 */
 	public ResultsTable getNumberOfVoxels()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
+		final long[] counts = statistics.getVoxelCount();
 				
 		// create data table
 		ResultsTable table = new ResultsTable();
 		for (int i = 0; i < numLabels; i++) {
 			table.incrementCounter();
 			table.addLabel(Integer.toString( labels[i] ));
-			table.addValue("NumberOfVoxels", objectVoxels[ i ].size() );
+			table.addValue("NumberOfVoxels", counts[ i ] );
 		}
 
 		return table;
@@ -137,7 +108,8 @@ public class LabeledVoxelsMeasure {
 	 */
 	public ResultsTable getVolume()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
+		final long[] counts = statistics.getVoxelCount();
 		
 		double volumePerVoxel = calibration.pixelWidth * calibration.pixelHeight * calibration.pixelDepth;
 		
@@ -146,7 +118,7 @@ public class LabeledVoxelsMeasure {
 		for (int i = 0; i < numLabels; i++) {
 			table.incrementCounter();
 			table.addLabel(Integer.toString( labels[i] ));
-			table.addValue( "Volume", objectVoxels[ i ].size() * volumePerVoxel );
+			table.addValue( "Volume", counts[ i ] * volumePerVoxel );
 		}
 
 		return table;
@@ -0,0 +1,612 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * <p>
+ * Computes the adjacency graph of the regions within a 2D or 3D label image,
+ * together with the contact area between adjacent regions, and optionally
+ * the mean and minimum values of an intensity image along their boundary.</p>
+ * 
+ * <p>
+ * Two regions are adjacent if they contain two neighbor elements, according
+ * to the chosen connectivity (4 or 8 for planar images, 6 or 26 for 3D
+ * images). When the regions are separated by watershed lines (elements with
+ * value 0 between the regions), the watershed lines option also considers
+ * the elements located two steps away in the same direction, as in the
+ * methods of the RegionAdjacencyGraph class.</p>
+ * 
+ * <p>
+ * The contact area of an edge is the number of pairs of elements along the
+ * boundary. The intensity associated to a pair is the value of the
+ * intensity image on the watershed line element between them, or the
+ * maximum of the two values for regions in direct contact. The minimum
+ * boundary intensity therefore corresponds to the lowest pass between the
+ * two regions.</p>
+ * 
+ * <p>
+ * The image is split into slabs of rows processed in parallel. Each edge is
+ * identified by the pair of its labels packed into a long key, stored
+ * within a primitive hash table of each slab. Tables are merged at the end,
+ * and the result is returned as a LabelAdjacencyGraph.</p>
+ * 
+ * <pre><code>
+ * RegionAdjacencyGraphBuilder builder = new RegionAdjacencyGraphBuilder(6);
+ * builder.setWatershedLines(true);
+ * LabelAdjacencyGraph graph = builder.process(labelImage, gradientImage);
+ * graph.createTable().show("RAG");
+ * </code></pre>
+ * 
+ * @see LabelAdjacencyGraph
+ * @see RegionAdjacencyGraph
+ * 
+ * @author dlegland
+ */
+public class RegionAdjacencyGraphBuilder extends AlgoStub
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The connectivity used to define neighbor elements: 4 or 8 for planar
+	 * images, 6 or 26 for 3D images.
+	 */
+	int connectivity;
+	
+	/**
+	 * If true, also consider elements on the other side of a watershed line.
+	 */
+	boolean watershedLines = false;
+	
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+	
+	
+	// ==================================================
+	// Constructors
+	
+	/**
+	 * Creates a new builder using the specified connectivity and the common
+	 * fork-join pool.
+	 * 
+	 * @param connectivity
+	 *            the connectivity, either 4 or 8 for planar images, 6 or 26
+	 *            for 3D images
+	 */
+	public RegionAdjacencyGraphBuilder(int connectivity)
+	{
+		this(connectivity, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a new builder using the specified connectivity and fork-join
+	 * pool.
+	 * 
+	 * @param connectivity
+	 *            the connectivity, either 4 or 8 for planar images, 6 or 26
+	 *            for 3D images
+	 * @param pool
+	 *            the pool used to process the slabs of the image
+	 */
+	public RegionAdjacencyGraphBuilder(int connectivity, ForkJoinPool pool)
+	{
+		setConnectivity(connectivity);
+		this.pool = pool;
+	}
+	
+	
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return the connectivity used to define neighbor elements
+	 */
+	public int getConnectivity()
+	{
+		return this.connectivity;
+	}
+	
+	/**
+	 * @param connectivity
+	 *            the connectivity, either 4 or 8 for planar images, 6 or 26
+	 *            for 3D images
+	 */
+	public void setConnectivity(int connectivity)
+	{
+		if (connectivity != 4 && connectivity != 8 && connectivity != 6 && connectivity != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be 4, 8, 6 or 26, not " + connectivity);
+		}
+		this.connectivity = connectivity;
+	}
+	
+	/**
+	 * @return true if regions separated by watershed lines are considered as
+	 *         adjacent
+	 */
+	public boolean getWatershedLines()
+	{
+		return this.watershedLines;
+	}
+
+	/**
+	 * @param watershedLines
+	 *            if true, two regions separated by a line of elements with
+	 *            value zero are also considered as adjacent
+	 */
+	public void setWatershedLines(boolean watershedLines)
+	{
+		this.watershedLines = watershedLines;
+	}
+	
+	
+	// ==================================================
+	// Computation methods
+	
+	/**
+	 * Computes the adjacency graph of a 2D or 3D label image.
+	 * 
+	 * @param labelImage
+	 *            an ImagePlus containing a 2D or 3D label image
+	 * @param intensityImage
+	 *            an ImagePlus with the same size containing intensity
+	 *            values, or null
+	 * @return the adjacency graph of the regions
+	 */
+	public LabelAdjacencyGraph process(ImagePlus labelImage, ImagePlus intensityImage)
+	{
+		if (labelImage.getStackSize() == 1)
+		{
+			return process(labelImage.getProcessor(), 
+					intensityImage != null ? intensityImage.getProcessor() : null);
+		}
+		return process(labelImage.getStack(), 
+				intensityImage != null ? intensityImage.getStack() : null);
+	}
+	
+	/**
+	 * Computes the adjacency graph of a planar label image.
+	 * 
+	 * @param labelImage
+	 *            a planar label image
+	 * @return the adjacency graph of the regions
+	 */
+	public LabelAdjacencyGraph process(ImageProcessor labelImage)
+	{
+		return process(labelImage, null);
+	}
+	
+	/**
+	 * Computes the adjacency graph of a planar label image, and the boundary
+	 * intensities of each edge.
+	 * 
+	 * @param labelImage
+	 *            a planar label image
+	 * @param intensityImage
+	 *            an image with the same size containing intensity values, or
+	 *            null
+	 * @return the adjacency graph of the regions
+	 */
+	public LabelAdjacencyGraph process(ImageProcessor labelImage, ImageProcessor intensityImage)
+	{
+		if (this.connectivity != 4 && this.connectivity != 8)
+		{
+			throw new IllegalArgumentException("Connectivity for planar images must be 4 or 8");
+		}
+		
+		int[] labels = LabelImages.findAllLabels(labelImage);
+		ImageProcessor[] intensityPlanes = null;
+		if (intensityImage != null)
+		{
+			checkSize(labelImage.getWidth(), labelImage.getHeight(), 1, intensityImage.getWidth(), intensityImage.getHeight(), 1);
+			intensityPlanes = new ImageProcessor[]{intensityImage};
+		}
+		return process(new ImageProcessor[]{labelImage}, intensityPlanes, labels);
+	}
+	
+	/**
+	 * Computes the adjacency graph of a 3D label image.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image
+	 * @return the adjacency graph of the regions
+	 */
+	public LabelAdjacencyGraph process(ImageStack labelImage)
+	{
+		return process(labelImage, null);
+	}
+	
+	/**
+	 * Computes the adjacency graph of a 3D label image, and the boundary
+	 * intensities of each edge. When the connectivity is 4 or 8, only
+	 * adjacencies within the planes of the image are considered.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image
+	 * @param intensityImage
+	 *            an image with the same size containing intensity values, or
+	 *            null
+	 * @return the adjacency graph of the regions
+	 */
+	public LabelAdjacencyGraph process(ImageStack labelImage, ImageStack intensityImage)
+	{
+		int sizeZ = labelImage.getSize();
+		
+		int[] labels = LabelImages.findAllLabels(labelImage);
+		ImageProcessor[] labelPlanes = new ImageProcessor[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			labelPlanes[z] = labelImage.getProcessor(z + 1);
+		}
+		
+		ImageProcessor[] intensityPlanes = null;
+		if (intensityImage != null)
+		{
+			checkSize(labelImage.getWidth(), labelImage.getHeight(), sizeZ,
+					intensityImage.getWidth(), intensityImage.getHeight(), intensityImage.getSize());
+			intensityPlanes = new ImageProcessor[sizeZ];
+			for (int z = 0; z < sizeZ; z++)
+			{
+				intensityPlanes[z] = intensityImage.getProcessor(z + 1);
+			}
+		}
+		return process(labelPlanes, intensityPlanes, labels);
+	}
+	
+	private static final void checkSize(int sizeX, int sizeY, int sizeZ, int sizeX2, int sizeY2, int sizeZ2)
+	{
+		if (sizeX != sizeX2 || sizeY != sizeY2 || sizeZ != sizeZ2)
+		{
+			throw new IllegalArgumentException("Label and intensity images must have the same size");
+		}
+	}
+	
+	private LabelAdjacencyGraph process(final ImageProcessor[] labelPlanes,
+			final ImageProcessor[] intensityPlanes, int[] labels)
+	{
+		final int sizeY = labelPlanes[0].getHeight();
+		final int nRows = sizeY * labelPlanes.length;
+		final int[][] offsets = forwardOffsets(this.connectivity);
+		
+		// split the rows of the image into slabs, and compute the edges of each slab
+		fireStatusChanged(this, "Compute adjacencies...");
+		int nSlabs = Math.max(Math.min(pool.getParallelism(), nRows), 1);
+		ArrayList<Future<EdgeTable>> futures = new ArrayList<Future<EdgeTable>>(nSlabs);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			final int r0 = (int) ((long) nRows * s / nSlabs);
+			final int r1 = (int) ((long) nRows * (s + 1) / nSlabs);
+			futures.add(pool.submit(new Callable<EdgeTable>()
+			{
+				public EdgeTable call()
+				{
+					EdgeTable table = new EdgeTable();
+					for (int r = r0; r < r1; r++)
+					{
+						addRowEdges(labelPlanes, intensityPlanes, r % sizeY, r / sizeY, offsets, table);
+					}
+					return table;
+				}
+			}));
+		}
+		
+		// merge the tables of each slab
+		EdgeTable edges = null;
+		try
+		{
+			for (int s = 0; s < nSlabs; s++)
+			{
+				EdgeTable table = futures.get(s).get();
+				if (edges == null)
+					edges = table;
+				else
+					edges.addAll(table);
+				fireProgressChanged(this, s + 1, nSlabs);
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		
+		return createGraph(labels, edges, intensityPlanes != null);
+	}
+	
+	/**
+	 * Adds the edges between the elements of a row and their forward
+	 * neighbors.
+	 */
+	private final void addRowEdges(ImageProcessor[] labelPlanes, ImageProcessor[] intensityPlanes, 
+			int y, int z, int[][] offsets, EdgeTable table)
+	{
+		int sizeX = labelPlanes[0].getWidth();
+		int sizeY = labelPlanes[0].getHeight();
+		int sizeZ = labelPlanes.length;
+		boolean useIntensity = intensityPlanes != null;
+		
+		ImageProcessor plane = labelPlanes[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			int label = (int) plane.getf(offset + x);
+			if (label == 0)
+				continue;
+			
+			for (int[] shift : offsets)
+			{
+				int dx = shift[0], dy = shift[1], dz = shift[2];
+				int x2 = x + dx, y2 = y + dy, z2 = z + dz;
+				if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 >= sizeZ)
+					continue;
+				
+				int index2 = y2 * sizeX + x2;
+				int label2 = (int) labelPlanes[z2].getf(index2);
+				if (label2 == label)
+					continue;
+				
+				if (label2 != 0)
+				{
+					// direct contact between the two regions
+					double value = 0;
+					if (useIntensity)
+					{
+						value = Math.max(intensityPlanes[z].getf(offset + x), intensityPlanes[z2].getf(index2));
+					}
+					table.add(edgeKey(label, label2), value);
+					continue;
+				}
+				
+				if (!this.watershedLines)
+					continue;
+				
+				// look for a region on the other side of the watershed line
+				int x3 = x2 + dx, y3 = y2 + dy, z3 = z2 + dz;
+				if (x3 < 0 || x3 >= sizeX || y3 < 0 || y3 >= sizeY || z3 >= sizeZ)
+					continue;
+				int label3 = (int) labelPlanes[z3].getf(y3 * sizeX + x3);
+				if (label3 == 0 || label3 == label)
+					continue;
+				
+				double value = useIntensity ? intensityPlanes[z2].getf(index2) : 0;
+				table.add(edgeKey(label, label3), value);
+			}
+		}
+	}
+
+	/**
+	 * Converts the table of edges into a graph whose edges are sorted by
+	 * increasing label pairs.
+	 */
+	private static final LabelAdjacencyGraph createGraph(int[] labels, EdgeTable edges, boolean useIntensity)
+	{
+		LabelIndex labelIndex = new LabelIndex(labels);
+		
+		long[] keys = edges.keys();
+		Arrays.sort(keys);
+		
+		int nEdges = keys.length;
+		int[] nodes1 = new int[nEdges];
+		int[] nodes2 = new int[nEdges];
+		int[] contactAreas = new int[nEdges];
+		double[] meanIntensities = useIntensity ? new double[nEdges] : null;
+		double[] minIntensities = useIntensity ? new double[nEdges] : null;
+		
+		for (int e = 0; e < nEdges; e++)
+		{
+			long key = keys[e];
+			nodes1[e] = labelIndex.indexOf((int) (key >>> 32));
+			nodes2[e] = labelIndex.indexOf((int) key);
+			
+			int slot = edges.slot(key);
+			contactAreas[e] = edges.counts[slot];
+			if (useIntensity)
+			{
+				meanIntensities[e] = edges.sums[slot] / edges.counts[slot];
+				minIntensities[e] = edges.mins[slot];
+			}
+		}
+		
+		return new LabelAdjacencyGraph(labels, nodes1, nodes2, contactAreas, meanIntensities, minIntensities);
+	}
+	
+	/**
+	 * Packs a pair of labels into a long, the lowest label in the upper
+	 * bits.
+	 */
+	private static final long edgeKey(int label1, int label2)
+	{
+		if (label1 > label2)
+		{
+			int tmp = label1;
+			label1 = label2;
+			label2 = tmp;
+		}
+		return ((long) label1 << 32) | (label2 & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Returns the shifts to the neighbors located after the current element,
+	 * so that each pair of neighbors is visited only once.
+	 */
+	private static final int[][] forwardOffsets(int connectivity)
+	{
+		switch (connectivity)
+		{
+		case 4:
+			return new int[][] { { 1, 0, 0 }, { 0, 1, 0 } };
+		case 8:
+			return new int[][] { { 1, 0, 0 }, { -1, 1, 0 }, { 0, 1, 0 }, { 1, 1, 0 } };
+		case 6:
+			return new int[][] { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 } };
+		case 26:
+			int[][] offsets = new int[13][];
+			int k = 0;
+			for (int dz = 0; dz <= 1; dz++)
+			{
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dx = -1; dx <= 1; dx++)
+					{
+						if (dz > 0 || dy > 0 || (dy == 0 && dx > 0))
+						{
+							offsets[k++] = new int[] { dx, dy, dz };
+						}
+					}
+				}
+			}
+			return offsets;
+		default:
+			throw new IllegalArgumentException("Connectivity must be 4, 8, 6 or 26, not " + connectivity);
+		}
+	}
+	
+	
+	// ==================================================
+	// Inner class
+	
+	/**
+	 * An open-addressing hash table associating to each edge key the number
+	 * of contacts, and the sum and the minimum of boundary intensities.
+	 */
+	private static final class EdgeTable
+	{
+		/**
+		 * The keys of the edges. As labels are not zero, the value zero
+		 * identifies empty slots.
+		 */
+		long[] keys = new long[64];
+		int[] counts = new int[64];
+		double[] sums = new double[64];
+		double[] mins = new double[64];
+		
+		int size = 0;
+		
+		/**
+		 * Returns the slot containing the key, or the empty slot where the
+		 * key should be inserted.
+		 */
+		int slot(long key)
+		{
+			int mask = keys.length - 1;
+			long h = key * 0x9E3779B97F4A7C15L;
+			int slot = (int) (h ^ (h >>> 32)) & mask;
+			while (keys[slot] != 0 && keys[slot] != key)
+			{
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		void add(long key, double value)
+		{
+			add(key, 1, value, value);
+		}
+		
+		void add(long key, int count, double sum, double min)
+		{
+			int slot = slot(key);
+			if (keys[slot] == 0)
+			{
+				keys[slot] = key;
+				counts[slot] = count;
+				sums[slot] = sum;
+				mins[slot] = min;
+				if (++size * 2 > keys.length)
+					grow();
+				return;
+			}
+			
+			counts[slot] += count;
+			sums[slot] += sum;
+			if (min < mins[slot])
+				mins[slot] = min;
+		}
+		
+		void addAll(EdgeTable table)
+		{
+			for (int i = 0; i < table.keys.length; i++)
+			{
+				if (table.keys[i] != 0)
+					add(table.keys[i], table.counts[i], table.sums[i], table.mins[i]);
+			}
+		}
+		
+		/**
+		 * Returns the keys of the table, in arbitrary order.
+		 */
+		long[] keys()
+		{
+			long[] res = new long[size];
+			int k = 0;
+			for (long key : keys)
+			{
+				if (key != 0)
+					res[k++] = key;
+			}
+			return res;
+		}
+		
+		private void grow()
+		{
+			long[] oldKeys = keys;
+			int[] oldCounts = counts;
+			double[] oldSums = sums;
+			double[] oldMins = mins;
+			
+			int n = oldKeys.length * 2;
+			keys = new long[n];
+			counts = new int[n];
+			sums = new double[n];
+			mins = new double[n];
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldKeys[i] == 0)
+					continue;
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+				sums[slot] = oldSums[i];
+				mins[slot] = oldMins[i];
+			}
+		}
+	}
+}
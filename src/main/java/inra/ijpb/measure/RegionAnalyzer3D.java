@@ -0,0 +1,670 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.EnumSet;
+
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * Computes several morphometric features of the regions of a 3D label image
+ * by a single scan of the image.
+ * 
+ * The features to compute are chosen at construction. During the scan, each
+ * voxel updates the voxel count, the extent and the first and second order
+ * moments of its region, and each configuration of 2-by-2-by-2 voxels is
+ * counted in the configuration histogram of the regions it contains, as in
+ * {@link BinaryConfigurationsHistogram3D}. Surface area and Euler number are
+ * obtained by applying a look-up table to these histograms. All the
+ * requested features are then derived from these accumulators. Only the
+ * maximum inscribed sphere requires an additional computation, based on a
+ * distance map.
+ * 
+ * <pre><code>
+ * RegionAnalyzer3D analyzer = new RegionAnalyzer3D(EnumSet.of(
+ *         RegionAnalyzer3D.Feature.VOLUME, 
+ *         RegionAnalyzer3D.Feature.SURFACE_AREA));
+ * RegionAnalyzer3D.Result result = analyzer.analyze(labelImage, resol);
+ * double[] volumes = result.getVolumes();
+ * double[] surfaces = result.getSurfaceAreas();
+ * </code></pre>
+ * 
+ * @see GeometricMeasures3D
+ * 
+ * @author dlegland
+ */
+public class RegionAnalyzer3D extends AlgoStub
+{
+	// ==================================================
+	// Inner enumeration
+	
+	/**
+	 * The features that can be computed by the analyzer.
+	 */
+	public enum Feature
+	{
+		/** The volume of each region */
+		VOLUME, 
+		/** The surface area of each region, estimated with Crofton formula */
+		SURFACE_AREA, 
+		/** The sphericity, computed from volume and surface area */
+		SPHERICITY, 
+		/** The Euler number of each region */
+		EULER_NUMBER, 
+		/** The bounding box of each region, in voxel coordinates */
+		BOUNDING_BOX, 
+		/** The centroid of each region, in voxel coordinates */
+		CENTROID, 
+		/** The inertia ellipsoid of each region */
+		INERTIA_ELLIPSOID, 
+		/** The elongation factors of the inertia ellipsoid */
+		ELLIPSOID_ELONGATIONS, 
+		/** The maximum inscribed sphere of each region */
+		INSCRIBED_SPHERE;
+	}
+
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The set of features to compute.
+	 */
+	EnumSet<Feature> features;
+	
+	/**
+	 * The number of directions used for computing surface area, either 3 or
+	 * 13.
+	 */
+	int surfaceAreaDirs = 13;
+	
+	/**
+	 * The connectivity used for computing Euler number, either 6 or 26.
+	 */
+	int connectivity = 6;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new analyzer for the specified set of features.
+	 * 
+	 * @param features
+	 *            the features to compute
+	 */
+	public RegionAnalyzer3D(EnumSet<Feature> features)
+	{
+		this.features = EnumSet.copyOf(features);
+	}
+	
+
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return the number of directions used for computing surface area
+	 */
+	public int getSurfaceAreaDirs()
+	{
+		return surfaceAreaDirs;
+	}
+
+	/**
+	 * @param nDirs
+	 *            the number of directions used for computing surface area,
+	 *            either 3 or 13
+	 */
+	public void setSurfaceAreaDirs(int nDirs)
+	{
+		if (nDirs != 3 && nDirs != 13)
+		{
+			throw new IllegalArgumentException("Number of directions must be either 3 or 13");
+		}
+		this.surfaceAreaDirs = nDirs;
+	}
+
+	/**
+	 * @return the connectivity used for computing Euler number
+	 */
+	public int getConnectivity()
+	{
+		return connectivity;
+	}
+
+	/**
+	 * @param conn
+	 *            the connectivity used for computing Euler number, either 6
+	 *            or 26
+	 */
+	public void setConnectivity(int conn)
+	{
+		if (conn != 6 && conn != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be either 6 or 26");
+		}
+		this.connectivity = conn;
+	}
+	
+	
+	// ==================================================
+	// Computation methods
+	
+	/**
+	 * Computes the features of all the regions within the label image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @param resol
+	 *            the spatial resolution of the image, as an array of length 3
+	 * @return the features of each region
+	 */
+	public Result analyze(ImageStack image, double[] resol)
+	{
+		fireStatusChanged(this, "Find labels...");
+		return analyze(image, LabelImages.findAllLabels(image), resol);
+	}
+	
+	/**
+	 * Computes the features of the specified regions within the label image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @param labels
+	 *            the labels of the regions to analyze
+	 * @param resol
+	 *            the spatial resolution of the image, as an array of length 3
+	 * @return the features of each region, in the order of the labels
+	 */
+	public Result analyze(ImageStack image, int[] labels, double[] resol)
+	{
+		if (resol == null || resol.length < 3) 
+		{
+			throw new IllegalArgumentException("Resolution must be a double array of length 3");
+		}
+		
+		// identify the accumulators to update
+		boolean surf = features.contains(Feature.SURFACE_AREA) || features.contains(Feature.SPHERICITY);
+		boolean euler = features.contains(Feature.EULER_NUMBER);
+		boolean ellipsoid = features.contains(Feature.INERTIA_ELLIPSOID) 
+				|| features.contains(Feature.ELLIPSOID_ELONGATIONS);
+		boolean box = features.contains(Feature.BOUNDING_BOX);
+		boolean moments1 = ellipsoid || features.contains(Feature.CENTROID);
+		
+		Accumulator acc = new Accumulator(new LabelIndex(labels), box, moments1, 
+				ellipsoid, surf || euler);
+		
+		// scan the image
+		fireStatusChanged(this, "Analyze regions...");
+		int sizeZ = image.getSize();
+		for (int z = 0; z < sizeZ; z++)
+		{
+			fireProgressChanged(this, z, sizeZ);
+			ImageProcessor plane = image.getProcessor(z + 1);
+			ImageProcessor nextPlane = z < sizeZ - 1 ? image.getProcessor(z + 2) : null;
+			acc.addPlane(plane, nextPlane, z);
+		}
+		fireProgressChanged(this, 1, 1);
+
+		// compute the features from the accumulators
+		Result res = new Result(labels);
+		int nLabels = labels.length;
+		if (features.contains(Feature.VOLUME) || features.contains(Feature.SPHERICITY))
+		{
+			double voxelVolume = resol[0] * resol[1] * resol[2];
+			res.volumes = new double[nLabels];
+			for (int i = 0; i < nLabels; i++)
+			{
+				res.volumes[i] = acc.counts[i] * voxelVolume;
+			}
+		}
+		if (surf)
+		{
+			double[] lut = GeometricMeasures3D.computeSurfaceAreaLut(resol, surfaceAreaDirs);
+			res.surfaceAreas = BinaryConfigurationsHistogram3D.applyLut(acc.configHistos, lut);
+		}
+		if (features.contains(Feature.SPHERICITY))
+		{
+			res.sphericities = GeometricMeasures3D.computeSphericity(res.volumes, res.surfaceAreas);
+		}
+		if (euler)
+		{
+			double[] lut = GeometricMeasures3D.computeEulerNumberLut(connectivity);
+			res.eulerNumbers = BinaryConfigurationsHistogram3D.applyLut(acc.configHistos, lut);
+		}
+		if (box)
+		{
+			res.boxes = new double[nLabels][6];
+			for (int i = 0; i < nLabels; i++)
+			{
+				for (int k = 0; k < 6; k++)
+				{
+					res.boxes[i][k] = acc.counts[i] > 0 ? acc.boxes[6 * i + k] 
+							: (k % 2 == 0 ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY);
+				}
+			}
+		}
+		if (features.contains(Feature.CENTROID))
+		{
+			res.centroids = new double[nLabels][];
+			for (int i = 0; i < nLabels; i++)
+			{
+				res.centroids[i] = acc.centroid(i);
+			}
+		}
+		if (ellipsoid)
+		{
+			res.ellipsoids = new double[nLabels][];
+			for (int i = 0; i < nLabels; i++)
+			{
+				res.ellipsoids[i] = acc.ellipsoid(i, resol);
+			}
+		}
+		if (features.contains(Feature.ELLIPSOID_ELONGATIONS))
+		{
+			res.elongations = GeometricMeasures3D.computeEllipsoidElongations(res.ellipsoids);
+		}
+		if (features.contains(Feature.INSCRIBED_SPHERE))
+		{
+			fireStatusChanged(this, "Inscribed spheres...");
+			res.inscribedSpheres = GeometricMeasures3D.maximumInscribedSphere(image, labels, resol);
+		}
+		fireStatusChanged(this, "");
+		
+		// remove intermediate results that were not requested
+		if (!features.contains(Feature.VOLUME))
+			res.volumes = null;
+		if (!features.contains(Feature.SURFACE_AREA))
+			res.surfaceAreas = null;
+		if (!features.contains(Feature.INERTIA_ELLIPSOID))
+			res.ellipsoids = null;
+		
+		return res;
+	}
+
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * Accumulates the information of each region during the scan of the
+	 * image.
+	 */
+	static final class Accumulator
+	{
+		final LabelIndex labelIndex;
+
+		/** The number of voxels of each region */
+		final long[] counts;
+		
+		/**
+		 * The extent of each region, stored as six consecutive values, or null
+		 * if not computed
+		 */
+		final int[] boxes;
+		
+		/**
+		 * The coordinates of the first voxel of each region, used as
+		 * reference for moments. Null if moments are not computed.
+		 */
+		final int[] refs;
+		
+		/**
+		 * The sums of the coordinates relative to the reference voxel, stored
+		 * as three consecutive values for each region.
+		 */
+		final long[] sums;
+		
+		/**
+		 * The sums of the products of coordinates relative to the reference
+		 * voxel, stored as six consecutive values for each region, in the
+		 * order xx, yy, zz, xy, xz, yz. Null if not computed.
+		 */
+		final long[] sums2;
+		
+		/**
+		 * The histogram of 2x2x2 binary configurations of each region, with
+		 * null rows for regions not found yet. Null if not computed.
+		 */
+		final long[][] configHistos;
+		
+		Accumulator(LabelIndex labelIndex, boolean box, boolean moments1, 
+				boolean moments2, boolean configs)
+		{
+			this.labelIndex = labelIndex;
+			int n = labelIndex.size();
+			this.counts = new long[n];
+			this.boxes = box ? new int[6 * n] : null;
+			this.refs = moments1 ? new int[3 * n] : null;
+			this.sums = moments1 ? new long[3 * n] : null;
+			this.sums2 = moments2 ? new long[6 * n] : null;
+			this.configHistos = configs ? new long[n][] : null;
+		}
+		
+		/**
+		 * Updates the accumulators with the voxels of a plane, and with the
+		 * configurations between this plane and the next one.
+		 */
+		void addPlane(ImageProcessor plane, ImageProcessor nextPlane, int z)
+		{
+			int sizeX = plane.getWidth();
+			int sizeY = plane.getHeight();
+			for (int y = 0; y < sizeY; y++)
+			{
+				int offset = y * sizeX;
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = (int) plane.getf(offset + x);
+					if (label != 0)
+					{
+						int index = labelIndex.indexOf(label);
+						if (index >= 0)
+							addVoxel(index, x, y, z);
+					}
+				}
+			}
+			
+			if (configHistos != null && nextPlane != null)
+			{
+				BinaryConfigurationsHistogram3D.addConfigurations(plane,
+						nextPlane, labelIndex, configHistos);
+			}
+		}
+		
+		private void addVoxel(int index, int x, int y, int z)
+		{
+			long count = counts[index]++;
+			if (boxes != null)
+			{
+				int k = 6 * index;
+				if (count == 0)
+				{
+					boxes[k] = x; boxes[k + 1] = x;
+					boxes[k + 2] = y; boxes[k + 3] = y;
+					boxes[k + 4] = z; boxes[k + 5] = z;
+				}
+				else
+				{
+					if (x < boxes[k]) boxes[k] = x;
+					if (x > boxes[k + 1]) boxes[k + 1] = x;
+					if (y < boxes[k + 2]) boxes[k + 2] = y;
+					if (y > boxes[k + 3]) boxes[k + 3] = y;
+					// voxels are scanned by increasing z
+					boxes[k + 5] = z;
+				}
+			}
+			if (refs != null)
+			{
+				int k = 3 * index;
+				if (count == 0)
+				{
+					refs[k] = x;
+					refs[k + 1] = y;
+					refs[k + 2] = z;
+				}
+				long dx = x - refs[k];
+				long dy = y - refs[k + 1];
+				long dz = z - refs[k + 2];
+				sums[k] += dx;
+				sums[k + 1] += dy;
+				sums[k + 2] += dz;
+				if (sums2 != null)
+				{
+					int k2 = 6 * index;
+					sums2[k2] += dx * dx;
+					sums2[k2 + 1] += dy * dy;
+					sums2[k2 + 2] += dz * dz;
+					sums2[k2 + 3] += dx * dy;
+					sums2[k2 + 4] += dx * dz;
+					sums2[k2 + 5] += dy * dz;
+				}
+			}
+		}
+		
+		/**
+		 * Returns the centroid of a region, in voxel coordinates.
+		 */
+		double[] centroid(int index)
+		{
+			int k = 3 * index;
+			double n = counts[index];
+			return new double[] {
+					refs[k] + sums[k] / n, 
+					refs[k + 1] + sums[k + 1] / n, 
+					refs[k + 2] + sums[k + 2] / n};
+		}
+		
+		/**
+		 * Returns the parameters of the inertia ellipsoid of a region.
+		 */
+		double[] ellipsoid(int index, double[] resol)
+		{
+			int k = 3 * index;
+			int k2 = 6 * index;
+			double n = counts[index];
+			double mx = sums[k] / n;
+			double my = sums[k + 1] / n;
+			double mz = sums[k + 2] / n;
+			
+			// centered moments, in calibrated units
+			double Ixx = (sums2[k2] / n - mx * mx) * resol[0] * resol[0];
+			double Iyy = (sums2[k2 + 1] / n - my * my) * resol[1] * resol[1];
+			double Izz = (sums2[k2 + 2] / n - mz * mz) * resol[2] * resol[2];
+			double Ixy = (sums2[k2 + 3] / n - mx * my) * resol[0] * resol[1];
+			double Ixz = (sums2[k2 + 4] / n - mx * mz) * resol[0] * resol[2];
+			double Iyz = (sums2[k2 + 5] / n - my * mz) * resol[1] * resol[2];
+			
+			return GeometricMeasures3D.ellipsoidFromMoments(
+					(refs[k] + mx) * resol[0], 
+					(refs[k + 1] + my) * resol[1], 
+					(refs[k + 2] + mz) * resol[2], 
+					Ixx, Iyy, Izz, Ixy, Ixz, Iyz, resol);
+		}
+	}
+	
+	/**
+	 * The features computed for each region of a label image. Features that
+	 * were not requested are null.
+	 */
+	public static final class Result
+	{
+		final int[] labels;
+		double[] volumes;
+		double[] surfaceAreas;
+		double[] sphericities;
+		double[] eulerNumbers;
+		double[][] boxes;
+		double[][] centroids;
+		double[][] ellipsoids;
+		double[][] elongations;
+		double[][] inscribedSpheres;
+		
+		Result(int[] labels)
+		{
+			this.labels = labels;
+		}
+		
+		/**
+		 * @return the labels of the regions
+		 */
+		public int[] getLabels()
+		{
+			return labels;
+		}
+
+		/**
+		 * @return the volume of each region
+		 */
+		public double[] getVolumes()
+		{
+			return volumes;
+		}
+
+		/**
+		 * @return the surface area of each region
+		 */
+		public double[] getSurfaceAreas()
+		{
+			return surfaceAreas;
+		}
+
+		/**
+		 * @return the sphericity of each region
+		 */
+		public double[] getSphericities()
+		{
+			return sphericities;
+		}
+
+		/**
+		 * @return the Euler number of each region
+		 */
+		public double[] getEulerNumbers()
+		{
+			return eulerNumbers;
+		}
+
+		/**
+		 * @return the bounding box of each region, as xmin, xmax, ymin, ymax,
+		 *         zmin, zmax
+		 * @see GeometricMeasures3D#boundingBox(ImageStack, int[])
+		 */
+		public double[][] getBoundingBoxes()
+		{
+			return boxes;
+		}
+
+		/**
+		 * @return the centroid of each region, in voxel coordinates
+		 * @see GeometricMeasures3D#centroids(ImageStack, int[])
+		 */
+		public double[][] getCentroids()
+		{
+			return centroids;
+		}
+
+		/**
+		 * @return the inertia ellipsoid of each region
+		 * @see GeometricMeasures3D#inertiaEllipsoid(ImageStack, int[], double[])
+		 */
+		public double[][] getInertiaEllipsoids()
+		{
+			return ellipsoids;
+		}
+
+		/**
+		 * @return the three elongation factors of the inertia ellipsoid of each
+		 *         region
+		 * @see GeometricMeasures3D#computeEllipsoidElongations(double[][])
+		 */
+		public double[][] getEllipsoidElongations()
+		{
+			return elongations;
+		}
+
+		/**
+		 * @return the center and the radius of the maximum inscribed sphere of
+		 *         each region
+		 * @see GeometricMeasures3D#maximumInscribedSphere(ImageStack, int[], double[])
+		 */
+		public double[][] getInscribedSpheres()
+		{
+			return inscribedSpheres;
+		}
+		
+		/**
+		 * Converts the computed features into a results table, with one row
+		 * per region.
+		 * 
+		 * @return a new ResultsTable
+		 */
+		public ResultsTable createTable()
+		{
+			ResultsTable table = new ResultsTable();
+			for (int i = 0; i < labels.length; i++) 
+			{
+				table.incrementCounter();
+				table.addLabel(Integer.toString(labels[i]));
+
+				// geometrical quantities
+				if (volumes != null)
+					table.addValue("Volume", volumes[i]);
+				if (surfaceAreas != null)
+					table.addValue("SurfaceArea", surfaceAreas[i]);
+				if (sphericities != null)
+					table.addValue("Sphericity", sphericities[i]);
+				if (eulerNumbers != null)
+					table.addValue("EulerNumber", eulerNumbers[i]);
+
+				if (boxes != null)
+				{
+					table.addValue("XMin", boxes[i][0]);
+					table.addValue("XMax", boxes[i][1]);
+					table.addValue("YMin", boxes[i][2]);
+					table.addValue("YMax", boxes[i][3]);
+					table.addValue("ZMin", boxes[i][4]);
+					table.addValue("ZMax", boxes[i][5]);
+				}
+				if (centroids != null)
+				{
+					table.addValue("Centroid.X", centroids[i][0]);
+					table.addValue("Centroid.Y", centroids[i][1]);
+					table.addValue("Centroid.Z", centroids[i][2]);
+				}
+				
+				// inertia ellipsoids
+				if (ellipsoids != null)
+				{
+					table.addValue("Elli.Center.X", ellipsoids[i][0]);
+					table.addValue("Elli.Center.Y", ellipsoids[i][1]);
+					table.addValue("Elli.Center.Z", ellipsoids[i][2]);
+					table.addValue("Elli.R1", ellipsoids[i][3]);
+					table.addValue("Elli.R2", ellipsoids[i][4]);
+					table.addValue("Elli.R3", ellipsoids[i][5]);
+					table.addValue("Elli.Azim", ellipsoids[i][6]);
+					table.addValue("Elli.Elev", ellipsoids[i][7]);
+					table.addValue("Elli.Roll", ellipsoids[i][8]);
+				}
+				if (elongations != null)
+				{
+					table.addValue("Elli.R1/R2", elongations[i][0]);
+					table.addValue("Elli.R1/R3", elongations[i][1]);
+					table.addValue("Elli.R2/R3", elongations[i][2]);            	
+				}
+
+				if (inscribedSpheres != null)
+				{
+					table.addValue("InscrBall.Center.X", inscribedSpheres[i][0]);
+					table.addValue("InscrBall.Center.Y", inscribedSpheres[i][1]);
+					table.addValue("InscrBall.Center.Z", inscribedSpheres[i][2]);
+					table.addValue("InscrBall.Radius", inscribedSpheres[i][3]);
+				}
+			}
+			return table;
+		}
+	}
+}
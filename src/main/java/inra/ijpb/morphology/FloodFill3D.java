@@ -1497,8 +1497,7 @@ public class FloodFill3D
 	private final static void fillLineFloat(Image3D image, int x1, int x2,
 			int y, int z, double value)
 	{
-		for (int x = x1; x <= x2; x++)
-			image.setValue(x, y, z, value);
+		image.fillRow(x1, x2, y, z, value);
 	}
 
 	/**
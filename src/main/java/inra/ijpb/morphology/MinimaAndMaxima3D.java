@@ -543,14 +543,17 @@ public class MinimaAndMaxima3D
 		Image3D image2 = Images3D.createWrapper(image);
 		Image3D result2 = Images3D.createWrapper(result);
 
+		double[] row = new double[sizeX];
 		for (int z = 0; z < sizeZ; z++) 
 		{
 			for (int y = 0; y < sizeY; y++) 
 			{
+				image2.getRow(y, z, row);
 				for (int x = 0; x < sizeX; x++) 
 				{
-					result2.setValue(x, y, z, image2.getValue(x, y, z) + value);
+					row[x] += value;
 				}
+				result2.setRow(y, z, row);
 			}
 		}
 		
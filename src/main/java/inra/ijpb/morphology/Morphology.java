@@ -28,10 +28,12 @@ import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import inra.ijpb.data.image.ColorImages;
+import inra.ijpb.morphology.strel.ParallelStrelFilter;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>
@@ -375,6 +377,122 @@ public class Morphology
 		return strel.erosion(image);
 	}
 
+	/**
+	 * Performs morphological dilation on the input image, by processing bands
+	 * of rows in parallel on the specified pool. The result is the same as
+	 * the one obtained with the {@link #dilation(ImageProcessor, Strel)}
+	 * method.
+	 * 
+	 * @param image
+	 *            the input image to process (grayscale or RGB)
+	 * @param strel
+	 *            the structuring element used for dilation
+	 * @param pool
+	 *            the pool used to process the bands of the image
+	 * @return the result of the dilation
+	 * 
+	 * @see ParallelStrelFilter
+	 */
+	public static ImageProcessor dilation(ImageProcessor image, Strel strel,
+			ForkJoinPool pool)
+	{
+		checkImageType(image);
+		ParallelStrelFilter filter = new ParallelStrelFilter(pool);
+		if (!(image instanceof ColorProcessor))
+			return filter.dilation(image, strel);
+
+		// Process each channel individually
+		Map<String, ByteProcessor> channels = ColorImages.mapChannels(image);
+		Collection<ImageProcessor> res = new ArrayList<ImageProcessor>(channels.size());
+		for (String name : new String[]{"red", "green", "blue"}) 
+		{
+			strel.setChannelName(name);
+			res.add(filter.dilation(channels.get(name), strel));
+		}
+		return ColorImages.mergeChannels(res);
+	}
+
+	/**
+	 * Performs morphological erosion on the input image, by processing bands
+	 * of rows in parallel on the specified pool. The result is the same as
+	 * the one obtained with the {@link #erosion(ImageProcessor, Strel)}
+	 * method.
+	 * 
+	 * @param image
+	 *            the input image to process (grayscale or RGB)
+	 * @param strel
+	 *            the structuring element used for erosion
+	 * @param pool
+	 *            the pool used to process the bands of the image
+	 * @return the result of the erosion
+	 * 
+	 * @see ParallelStrelFilter
+	 */
+	public static ImageProcessor erosion(ImageProcessor image, Strel strel,
+			ForkJoinPool pool)
+	{
+		checkImageType(image);
+		ParallelStrelFilter filter = new ParallelStrelFilter(pool);
+		if (!(image instanceof ColorProcessor))
+			return filter.erosion(image, strel);
+
+		// Process each channel individually
+		Map<String, ByteProcessor> channels = ColorImages.mapChannels(image);
+		Collection<ImageProcessor> res = new ArrayList<ImageProcessor>(channels.size());
+		for (String name : new String[]{"red", "green", "blue"}) 
+		{
+			strel.setChannelName(name);
+			res.add(filter.erosion(channels.get(name), strel));
+		}
+		return ColorImages.mergeChannels(res);
+	}
+
+	/**
+	 * Performs morphological dilation on the input 3D image, by processing
+	 * slabs of slices in parallel on the specified pool. The result is the
+	 * same as the one obtained with the
+	 * {@link #dilation(ImageStack, Strel3D)} method.
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element used for dilation
+	 * @param pool
+	 *            the pool used to process the slabs of the image
+	 * @return the result of the dilation
+	 * 
+	 * @see ParallelStrelFilter
+	 */
+	public static ImageStack dilation(ImageStack image, Strel3D strel,
+			ForkJoinPool pool)
+	{
+		checkImageType(image);
+		return new ParallelStrelFilter(pool).dilation(image, strel);
+	}
+
+	/**
+	 * Performs morphological erosion on the input 3D image, by processing
+	 * slabs of slices in parallel on the specified pool. The result is the
+	 * same as the one obtained with the
+	 * {@link #erosion(ImageStack, Strel3D)} method.
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element used for erosion
+	 * @param pool
+	 *            the pool used to process the slabs of the image
+	 * @return the result of the erosion
+	 * 
+	 * @see ParallelStrelFilter
+	 */
+	public static ImageStack erosion(ImageStack image, Strel3D strel,
+			ForkJoinPool pool)
+	{
+		checkImageType(image);
+		return new ParallelStrelFilter(pool).erosion(image, strel);
+	}
+
 	/**
 	 * Performs morphological opening on the input image.
 	 * 
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+/**
+ * The length of the diagonal of the bounding box of the components of a
+ * component tree. The box is computed from the element coordinates, such that
+ * a component with a single element has a diagonal equal to zero.
+ * 
+ * @see ComponentTree
+ * @see BoxDiagonalOpeningQueue
+ * 
+ * @author dlegland
+ */
+public class BoxDiagonalAttribute implements ComponentTreeAttribute
+{
+	int[] xmin;
+	int[] xmax;
+	int[] ymin;
+	int[] ymax;
+	int[] zmin;
+	int[] zmax;
+	
+	@Override
+	public void initialize(ComponentTree tree)
+	{
+		int sizeX = tree.getSizeX();
+		int sizeY = tree.getSizeY();
+		int sizeZ = tree.getSizeZ();
+		int n = tree.getElementNumber();
+		
+		xmin = new int[n];
+		xmax = new int[n];
+		ymin = new int[n];
+		ymax = new int[n];
+		zmin = new int[n];
+		zmax = new int[n];
+		
+		int index = 0;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					xmin[index] = x;
+					xmax[index] = x;
+					ymin[index] = y;
+					ymax[index] = y;
+					zmin[index] = z;
+					zmax[index] = z;
+					index++;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void merge(int parent, int child)
+	{
+		xmin[parent] = Math.min(xmin[parent], xmin[child]);
+		xmax[parent] = Math.max(xmax[parent], xmax[child]);
+		ymin[parent] = Math.min(ymin[parent], ymin[child]);
+		ymax[parent] = Math.max(ymax[parent], ymax[child]);
+		zmin[parent] = Math.min(zmin[parent], zmin[child]);
+		zmax[parent] = Math.max(zmax[parent], zmax[child]);
+	}
+
+	@Override
+	public double getValue(int node)
+	{
+		double dx = xmax[node] - xmin[node];
+		double dy = ymax[node] - ymin[node];
+		double dz = zmax[node] - zmin[node];
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+	
+	@Override
+	public String getKey()
+	{
+		return "boxDiagonal";
+	}
+}
@@ -0,0 +1,584 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import java.util.Arrays;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * <p>
+ * Component tree (max-tree or min-tree) of a 2D or 3D grayscale image.
+ * </p>
+ * 
+ * <p>
+ * Each node of a max-tree corresponds to a connected component of a threshold
+ * set of the image, the parent of a node being the component of the next
+ * lower threshold set that contains it. Nodes of a min-tree correspond to the
+ * connected components of the lower threshold sets. Attribute openings
+ * (respectively closings) are obtained by filtering the nodes of the max-tree
+ * (respectively min-tree), in a single pass over the elements of the image.
+ * </p>
+ * 
+ * <p>
+ * The tree is built in quasi-linear time using the union-find algorithm
+ * described by Najman and Couprie, in the variant proposed by Berger et al.
+ * The tree is stored in primitive arrays: each element of the image (pixel or
+ * voxel) stores the index of its parent, and the node corresponding to a
+ * component is represented by one of its elements at the level of the
+ * component (the canonical element). Elements are also sorted such that each
+ * element appears before its parent, making it possible to compute attributes
+ * and to filter the tree with simple loops.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+ *	float[] values = tree.filter(new SizeAttribute(), 100);
+ *}</pre>
+ * 
+ * References:
+ * <ul>
+ * <li>Najman, L., &amp; Couprie, M. (2006). Building the component tree in
+ * quasi-linear time. IEEE Transactions on Image Processing, 15(11),
+ * 3531-3539.</li>
+ * <li>Berger, C., Geraud, T., Levillain, R., Widynski, N., Baillard, A.,
+ * &amp; Bertin, E. (2007). Effective component tree computation with
+ * application to pattern recognition in astronomical imaging. ICIP 2007,
+ * IV-41.</li>
+ * </ul>
+ * 
+ * @see ComponentTreeAttribute
+ * @see ComponentTreeFiltering
+ * 
+ * @author dlegland
+ */
+public class ComponentTree
+{
+	// ==================================================
+	// Inner types
+
+	/**
+	 * The type of component tree.
+	 */
+	public enum Type
+	{
+		/** Tree of upper threshold sets, used for openings */
+		MAX_TREE,
+		/** Tree of lower threshold sets, used for closings */
+		MIN_TREE;
+	}
+	
+	
+	// ==================================================
+	// Class variables
+
+	/**
+	 * The type of tree.
+	 */
+	Type type;
+	
+	/**
+	 * The size of the image in the X direction.
+	 */
+	int sizeX;
+
+	/**
+	 * The size of the image in the Y direction.
+	 */
+	int sizeY;
+
+	/**
+	 * The size of the image in the Z direction (1 for planar images).
+	 */
+	int sizeZ;
+	
+	/**
+	 * The connectivity used to build the tree.
+	 */
+	int connectivity;
+
+	/**
+	 * The level of each element. For min-trees, the levels are negated, such
+	 * that the tree can be processed like a max-tree.
+	 */
+	float[] levels;
+
+	/**
+	 * The index of the parent of each element.
+	 */
+	int[] parent;
+
+	/**
+	 * The indices of the elements, sorted by decreasing levels. Each element
+	 * appears before its parent.
+	 */
+	int[] sorted;
+
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Builds the component tree of a planar image.
+	 * 
+	 * @param image
+	 *            the grayscale image
+	 * @param connectivity
+	 *            the connectivity of the components (4 or 8)
+	 * @param type
+	 *            the type of tree (max-tree or min-tree)
+	 */
+	public ComponentTree(ImageProcessor image, int connectivity, Type type)
+	{
+		if (connectivity != 4 && connectivity != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be either 4 or 8, not " + connectivity);
+		}
+		
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = 1;
+		this.connectivity = connectivity;
+		this.type = type;
+
+		int n = sizeX * sizeY;
+		this.levels = new float[n];
+		float sign = type == Type.MAX_TREE ? 1 : -1;
+		for (int i = 0; i < n; i++)
+		{
+			levels[i] = sign * image.getf(i);
+		}
+		
+		int bitDepth = image.getBitDepth();
+		build(bitDepth == 8 || bitDepth == 16);
+	}
+	
+	/**
+	 * Builds the component tree of a 3D image.
+	 * 
+	 * @param image
+	 *            the 3D grayscale image
+	 * @param connectivity
+	 *            the connectivity of the components (6 or 26)
+	 * @param type
+	 *            the type of tree (max-tree or min-tree)
+	 */
+	public ComponentTree(ImageStack image, int connectivity, Type type)
+	{
+		if (connectivity != 6 && connectivity != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be either 6 or 26, not " + connectivity);
+		}
+		
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = image.getSize();
+		this.connectivity = connectivity;
+		this.type = type;
+		
+		long nElements = (long) sizeX * sizeY * sizeZ;
+		if (nElements >= Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Image is too large for computing component tree");
+		}
+		
+		int sliceSize = sizeX * sizeY;
+		this.levels = new float[(int) nElements];
+		float sign = type == Type.MAX_TREE ? 1 : -1;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			int offset = z * sliceSize;
+			for (int i = 0; i < sliceSize; i++)
+			{
+				levels[offset + i] = sign * slice.getf(i);
+			}
+		}
+		
+		int bitDepth = image.getBitDepth();
+		build(bitDepth == 8 || bitDepth == 16);
+	}
+
+	
+	// ==================================================
+	// Construction of the tree
+	
+	private void build(boolean integerLevels)
+	{
+		int n = levels.length;
+		
+		// sort elements by decreasing levels
+		this.sorted = integerLevels ? sortIntegerLevels() : sortLevels();
+		
+		// compute parent of each element using union-find, starting from
+		// elements with highest level
+		this.parent = new int[n];
+		int[] zpar = new int[n];
+		Arrays.fill(zpar, -1);
+		int[][] shifts = neighborShifts();
+		int sliceSize = sizeX * sizeY;
+		for (int i = 0; i < n; i++)
+		{
+			int p = sorted[i];
+			parent[p] = p;
+			zpar[p] = p;
+			
+			int z = p / sliceSize;
+			int rem = p - z * sliceSize;
+			int y = rem / sizeX;
+			int x = rem - y * sizeX;
+			
+			for (int[] shift : shifts)
+			{
+				int x2 = x + shift[0];
+				int y2 = y + shift[1];
+				int z2 = z + shift[2];
+				if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0 || z2 >= sizeZ)
+					continue;
+				
+				int q = (z2 * sizeY + y2) * sizeX + x2;
+				if (zpar[q] == -1)
+					continue;
+				
+				int r = findRoot(zpar, q);
+				if (r != p)
+				{
+					parent[r] = p;
+					zpar[r] = p;
+				}
+			}
+		}
+		
+		// make each element point to the canonical element of its component,
+		// starting from the root
+		for (int i = n - 1; i >= 0; i--)
+		{
+			int p = sorted[i];
+			int q = parent[p];
+			if (levels[parent[q]] == levels[q])
+			{
+				parent[p] = parent[q];
+			}
+		}
+	}
+	
+	/**
+	 * Sorts the elements by decreasing levels, using counting sort. Requires
+	 * integer levels between -65535 and 65535.
+	 */
+	private int[] sortIntegerLevels()
+	{
+		int n = levels.length;
+		
+		// compute histogram of negated levels, shifted to positive values
+		int offset = 65535;
+		int[] counts = new int[2 * 65535 + 2];
+		for (int i = 0; i < n; i++)
+		{
+			counts[offset - (int) levels[i] + 1]++;
+		}
+		for (int k = 1; k < counts.length; k++)
+		{
+			counts[k] += counts[k - 1];
+		}
+		
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			indices[counts[offset - (int) levels[i]]++] = i;
+		}
+		return indices;
+	}
+
+	/**
+	 * Sorts the elements by decreasing levels, by sorting keys that combine
+	 * the level and the element index.
+	 */
+	private int[] sortLevels()
+	{
+		int n = levels.length;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			// convert float to int with the same ordering, then reverse order
+			int bits = Float.floatToIntBits(levels[i]);
+			bits ^= (bits >> 31) & 0x7fffffff;
+			keys[i] = ((long) ~bits) << 32 | i;
+		}
+		Arrays.sort(keys);
+		
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			indices[i] = (int) keys[i];
+		}
+		return indices;
+	}
+
+	private int[][] neighborShifts()
+	{
+		int[][] shifts;
+		switch (connectivity)
+		{
+		case 4:
+		case 6:
+			shifts = new int[][] { { -1, 0, 0 }, { 1, 0, 0 }, { 0, -1, 0 },
+					{ 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 } };
+			break;
+		default:
+			shifts = new int[26][];
+			int k = 0;
+			for (int dz = -1; dz <= 1; dz++)
+			{
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dx = -1; dx <= 1; dx++)
+					{
+						if (dx != 0 || dy != 0 || dz != 0)
+							shifts[k++] = new int[] { dx, dy, dz };
+					}
+				}
+			}
+		}
+		return shifts;
+	}
+
+	private static final int findRoot(int[] zpar, int p)
+	{
+		while (zpar[p] != p)
+		{
+			int q = zpar[zpar[p]];
+			zpar[p] = q;
+			p = q;
+		}
+		return p;
+	}
+	
+	
+	// ==================================================
+	// Tree filtering
+
+	/**
+	 * Computes the value of an attribute for each node of the tree. After the
+	 * call, the value of the attribute for a node can be obtained with the
+	 * getValue() method of the attribute.
+	 * 
+	 * @param attribute
+	 *            the attribute to compute
+	 */
+	public void computeAttribute(ComponentTreeAttribute attribute)
+	{
+		attribute.initialize(this);
+		int root = getRoot();
+		for (int i = 0; i < sorted.length; i++)
+		{
+			int p = sorted[i];
+			if (p != root)
+				attribute.merge(parent[p], p);
+		}
+	}
+
+	/**
+	 * Filters the tree by removing the nodes whose attribute value is lower
+	 * than the specified threshold, and returns the level of each element
+	 * after filtering. The elements of a removed node are associated to the
+	 * level of the nearest preserved ancestor. The root is always preserved.
+	 * 
+	 * For increasing attributes (like size or box diagonal), the result
+	 * corresponds to an attribute opening for max-trees, and to an attribute
+	 * closing for min-trees. For other attributes, it corresponds to the
+	 * "direct" filtering rule.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering nodes
+	 * @param minValue
+	 *            the minimum value of the attribute for a node to be
+	 *            preserved
+	 * @return the level of each element after filtering
+	 */
+	public float[] filter(ComponentTreeAttribute attribute, double minValue)
+	{
+		computeAttribute(attribute);
+		return filterComputed(attribute, minValue);
+	}
+
+	/**
+	 * Filters the tree using an attribute that was already computed on this
+	 * tree, and returns the level of each element after filtering.
+	 * 
+	 * @see #filter(ComponentTreeAttribute, double)
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering nodes, previously computed
+	 *            with the computeAttribute() method
+	 * @param minValue
+	 *            the minimum value of the attribute for a node to be
+	 *            preserved
+	 * @return the level of each element after filtering
+	 */
+	public float[] filterComputed(ComponentTreeAttribute attribute, double minValue)
+	{
+		int n = sorted.length;
+		float[] result = new float[n];
+		
+		// process elements from the root to the leaves
+		int root = getRoot();
+		result[root] = levels[root];
+		for (int i = n - 2; i >= 0; i--)
+		{
+			int p = sorted[i];
+			int q = parent[p];
+			if (levels[q] != levels[p] && attribute.getValue(p) >= minValue)
+			{
+				result[p] = levels[p];
+			}
+			else
+			{
+				result[p] = result[q];
+			}
+		}
+		
+		// restore original levels
+		if (type == Type.MIN_TREE)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				result[i] = -result[i];
+			}
+		}
+		return result;
+	}
+
+	
+	// ==================================================
+	// Accessors
+
+	/**
+	 * @return the type of this tree
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return the connectivity used to build the tree
+	 */
+	public int getConnectivity()
+	{
+		return connectivity;
+	}
+	
+	/**
+	 * @return the size of the image in the X direction
+	 */
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+	
+	/**
+	 * @return the size of the image in the Y direction
+	 */
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+	
+	/**
+	 * @return the size of the image in the Z direction (1 for planar images)
+	 */
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/**
+	 * @return the number of elements (pixels or voxels) within the tree
+	 */
+	public int getElementNumber()
+	{
+		return levels.length;
+	}
+	
+	/**
+	 * Returns the level of an element, as given in the original image.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @return the level of the element
+	 */
+	public float getLevel(int index)
+	{
+		return type == Type.MAX_TREE ? levels[index] : -levels[index];
+	}
+	
+	/**
+	 * Returns the index of the parent of an element. The parent of an element
+	 * that is not canonical is the canonical element of its node. The parent
+	 * of a canonical element is the canonical element of the parent node. The
+	 * parent of the root is the root itself.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @return the index of the parent of the element
+	 */
+	public int getParent(int index)
+	{
+		return parent[index];
+	}
+	
+	/**
+	 * Checks whether an element is the canonical element of a node.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @return true if the element represents a node of the tree
+	 */
+	public boolean isNode(int index)
+	{
+		int p = parent[index];
+		return p == index || levels[p] != levels[index];
+	}
+	
+	/**
+	 * @return the index of the element corresponding to the root of the tree
+	 */
+	public int getRoot()
+	{
+		return sorted[sorted.length - 1];
+	}
+	
+	/**
+	 * Returns the indices of the elements, sorted such that each element
+	 * appears before its parent. The returned array must not be modified.
+	 * 
+	 * @return the indices of the elements, from the leaves to the root
+	 */
+	public int[] getSortedIndices()
+	{
+		return sorted;
+	}
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+/**
+ * An attribute that can be computed incrementally on the nodes of a
+ * component tree.
+ * 
+ * Implementations store the attribute data in primitive arrays indexed by the
+ * elements of the tree. The attribute is first initialized from each single
+ * element, then the attribute of each node is merged into the attribute of
+ * its parent, from the leaves to the root.
+ * 
+ * @see ComponentTree
+ * 
+ * @author dlegland
+ */
+public interface ComponentTreeAttribute
+{
+	/**
+	 * Allocates the data of the attribute, and initializes the attribute of
+	 * each element of the tree as if it was a single-element component.
+	 * 
+	 * @param tree
+	 *            the tree the attribute will be computed on
+	 */
+	public void initialize(ComponentTree tree);
+
+	/**
+	 * Merges the attribute of a child element into the attribute of its
+	 * parent.
+	 * 
+	 * @param parent
+	 *            the index of the parent element
+	 * @param child
+	 *            the index of the child element
+	 */
+	public void merge(int parent, int child);
+
+	/**
+	 * Returns the value of the attribute for the specified node, once the
+	 * attribute has been computed for all the nodes of the tree.
+	 * 
+	 * @param node
+	 *            the index of the canonical element of the node
+	 * @return the value of the attribute for the node
+	 */
+	public double getValue(int node);
+
+	/**
+	 * Returns a key that identifies the attribute together with the
+	 * parameters used to compute it. Two attributes with the same key must
+	 * return the same values once computed on the same tree, such that one
+	 * can be used in place of the other.
+	 * 
+	 * @return the key of the attribute
+	 */
+	public String getKey();
+}
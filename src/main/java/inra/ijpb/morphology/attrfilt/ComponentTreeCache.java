@@ -0,0 +1,282 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+/**
+ * Keeps the component tree of the last processed image, together with the
+ * last computed attribute, such that filtering the same image with another
+ * threshold only requires a single pass over the elements of the tree.
+ * 
+ * <p>
+ * The cache is invalidated when the image is modified, by comparing a
+ * fingerprint of the image content, or when the connectivity or the type of
+ * tree changes. The attribute is recomputed on the cached tree when an
+ * attribute with another key is requested, that is an attribute of another
+ * type or computed with other parameters. Trees whose estimated memory
+ * footprint exceeds the memory budget are not cached.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ComponentTreeCache cache = new ComponentTreeCache();
+ *	ComponentTreeFiltering algo = new ComponentTreeFiltering(new SizeAttribute());
+ *	algo.setCache(cache);
+ *	ImageProcessor res1 = algo.process(image, 100);
+ *	// much faster, as the tree is not computed again
+ *	ImageProcessor res2 = algo.process(image, 200);
+ *}</pre>
+ * 
+ * @see ComponentTree
+ * @see ComponentTreeFiltering
+ * 
+ * @author dlegland
+ */
+public class ComponentTreeCache
+{
+	// ==================================================
+	// Static variables
+
+	/**
+	 * The estimated number of bytes required for each element of the tree
+	 * (level, parent and sorted index), and for a typical attribute.
+	 */
+	private static final int BYTES_PER_ELEMENT = 12 + 12;
+
+	
+	// ==================================================
+	// Class variables
+
+	/**
+	 * The maximum number of bytes the cached data can use.
+	 */
+	long memoryBudget;
+
+	/**
+	 * The cached tree, or null if no tree is cached.
+	 */
+	ComponentTree tree = null;
+
+	/**
+	 * The fingerprint of the image used to build the cached tree.
+	 */
+	long fingerprint;
+
+	/**
+	 * The attribute computed on the cached tree, or null.
+	 */
+	ComponentTreeAttribute attribute = null;
+
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new cache, whose memory budget is a quarter of the maximum
+	 * memory of the virtual machine.
+	 */
+	public ComponentTreeCache()
+	{
+		this(Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Creates a new cache with the specified memory budget.
+	 * 
+	 * @param memoryBudget
+	 *            the maximum number of bytes the cached data can use
+	 */
+	public ComponentTreeCache(long memoryBudget)
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	
+	// ==================================================
+	// Methods
+
+	/**
+	 * Filters the component tree of the image, reusing the cached tree and
+	 * attribute if possible, and returns the level of each element after
+	 * filtering.
+	 * 
+	 * @see ComponentTree#filter(ComponentTreeAttribute, double)
+	 * 
+	 * @param image
+	 *            the planar image to filter
+	 * @param connectivity
+	 *            the connectivity of the components (4 or 8)
+	 * @param type
+	 *            the type of tree
+	 * @param attribute
+	 *            the attribute used for filtering. If an attribute with the
+	 *            same key was already computed on the cached tree, the
+	 *            cached attribute is used instead.
+	 * @param minValue
+	 *            the minimum value of the attribute for a node to be
+	 *            preserved
+	 * @return the level of each element after filtering
+	 */
+	public synchronized float[] filter(ImageProcessor image, int connectivity,
+			ComponentTree.Type type, ComponentTreeAttribute attribute,
+			double minValue)
+	{
+		long hash = fingerprint(image);
+		if (!isValid(image.getWidth(), image.getHeight(), 1, connectivity, type, hash))
+		{
+			clear();
+			ComponentTree tree = new ComponentTree(image, connectivity, type);
+			if (!fitsBudget(tree))
+				return tree.filter(attribute, minValue);
+			this.tree = tree;
+			this.fingerprint = hash;
+		}
+		return filterCachedTree(attribute, minValue);
+	}
+
+	/**
+	 * Filters the component tree of the 3D image, reusing the cached tree and
+	 * attribute if possible, and returns the level of each element after
+	 * filtering.
+	 * 
+	 * @see ComponentTree#filter(ComponentTreeAttribute, double)
+	 * 
+	 * @param image
+	 *            the 3D image to filter
+	 * @param connectivity
+	 *            the connectivity of the components (6 or 26)
+	 * @param type
+	 *            the type of tree
+	 * @param attribute
+	 *            the attribute used for filtering. If an attribute with the
+	 *            same key was already computed on the cached tree, the
+	 *            cached attribute is used instead.
+	 * @param minValue
+	 *            the minimum value of the attribute for a node to be
+	 *            preserved
+	 * @return the level of each element after filtering
+	 */
+	public synchronized float[] filter(ImageStack image, int connectivity,
+			ComponentTree.Type type, ComponentTreeAttribute attribute,
+			double minValue)
+	{
+		long hash = fingerprint(image);
+		if (!isValid(image.getWidth(), image.getHeight(), image.getSize(), connectivity, type, hash))
+		{
+			clear();
+			ComponentTree tree = new ComponentTree(image, connectivity, type);
+			if (!fitsBudget(tree))
+				return tree.filter(attribute, minValue);
+			this.tree = tree;
+			this.fingerprint = hash;
+		}
+		return filterCachedTree(attribute, minValue);
+	}
+
+	/**
+	 * Removes the cached tree and attribute, in order to release memory.
+	 */
+	public synchronized void clear()
+	{
+		this.tree = null;
+		this.attribute = null;
+	}
+
+	/**
+	 * @return true if a tree is currently cached
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return this.tree == null;
+	}
+	
+	/**
+	 * @return the maximum number of bytes the cached data can use
+	 */
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+	
+	private float[] filterCachedTree(ComponentTreeAttribute attribute, double minValue)
+	{
+		if (this.attribute == null || !this.attribute.getKey().equals(attribute.getKey()))
+		{
+			this.attribute = null;
+			tree.computeAttribute(attribute);
+			this.attribute = attribute;
+		}
+		return tree.filterComputed(this.attribute, minValue);
+	}
+
+	private boolean isValid(int sizeX, int sizeY, int sizeZ, int connectivity, ComponentTree.Type type, long hash)
+	{
+		if (tree == null)
+			return false;
+		return tree.getSizeX() == sizeX && tree.getSizeY() == sizeY
+				&& tree.getSizeZ() == sizeZ
+				&& tree.getConnectivity() == connectivity
+				&& tree.getType() == type && this.fingerprint == hash;
+	}
+	
+	private boolean fitsBudget(ComponentTree tree)
+	{
+		return (long) tree.getElementNumber() * BYTES_PER_ELEMENT <= memoryBudget;
+	}
+	
+	/**
+	 * Computes a 64-bit fingerprint of the image content, used to detect
+	 * image modifications.
+	 */
+	private static final long fingerprint(ImageProcessor image)
+	{
+		long hash = 0xcbf29ce484222325L;
+		int n = image.getPixelCount();
+		for (int i = 0; i < n; i++)
+		{
+			hash = (hash ^ Float.floatToIntBits(image.getf(i))) * 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Computes a 64-bit fingerprint of the 3D image content, used to detect
+	 * image modifications.
+	 */
+	private static final long fingerprint(ImageStack image)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int z = 1; z <= image.getSize(); z++)
+		{
+			ImageProcessor slice = image.getProcessor(z);
+			int n = slice.getPixelCount();
+			for (int i = 0; i < n; i++)
+			{
+				hash = (hash ^ Float.floatToIntBits(slice.getf(i))) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,251 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Attribute opening or closing of 2D or 3D grayscale images, computed by
+ * filtering the component tree of the image. The tree is built once, and the
+ * result is obtained in a single pass over the elements of the tree, whatever
+ * the number of regional extrema.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ComponentTreeFiltering algo = new ComponentTreeFiltering(new BoxDiagonalAttribute());
+ *	algo.setConnectivity(8);
+ *	ImageProcessor result = algo.process(image, 20.0);
+ *}</pre>
+ * 
+ * @see ComponentTree
+ * @see AreaOpeningQueue
+ * @see SizeOpening3DQueue
+ * 
+ * @author dlegland
+ */
+public class ComponentTreeFiltering extends AlgoStub implements AreaOpening, SizeOpening3D
+{
+	/**
+	 * The attribute used for filtering components.
+	 */
+	ComponentTreeAttribute attribute;
+
+	/**
+	 * The type of tree, max-tree for opening, min-tree for closing.
+	 */
+	ComponentTree.Type type;
+	
+	/** The connectivity used for planar images, default is 4 */
+	int conn2D = 4;
+
+	/** The connectivity used for 3D images, default is 6 */
+	int conn3D = 6;
+	
+	/**
+	 * An optional cache used to keep the tree between successive calls on
+	 * the same image, or null.
+	 */
+	ComponentTreeCache cache = null;
+	
+	/**
+	 * Creates a new size opening (area opening for planar images, volume
+	 * opening for 3D images).
+	 */
+	public ComponentTreeFiltering()
+	{
+		this(new SizeAttribute());
+	}
+	
+	/**
+	 * Creates a new attribute opening based on the specified attribute.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering components
+	 */
+	public ComponentTreeFiltering(ComponentTreeAttribute attribute)
+	{
+		this(attribute, ComponentTree.Type.MAX_TREE);
+	}
+	
+	/**
+	 * Creates a new attribute filter based on the specified attribute and
+	 * tree type.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering components
+	 * @param type
+	 *            the type of tree: max-tree for attribute opening, min-tree
+	 *            for attribute closing
+	 */
+	public ComponentTreeFiltering(ComponentTreeAttribute attribute, ComponentTree.Type type)
+	{
+		this.attribute = attribute;
+		this.type = type;
+	}
+	
+	/**
+	 * Changes the connectivity of this algorithm. Values 4 and 8 are used for
+	 * planar images, values 6 and 26 are used for 3D images.
+	 * 
+	 * @param connectivity
+	 *            the connectivity to use, either 4 or 8 for planar images, 6
+	 *            or 26 for 3D images
+	 */
+	public void setConnectivity(int connectivity)
+	{
+		switch (connectivity)
+		{
+		case 4:
+		case 8:
+			this.conn2D = connectivity;
+			break;
+		case 6:
+		case 26:
+			this.conn3D = connectivity;
+			break;
+		default:
+			throw new IllegalArgumentException("Connectivity must be either 4, 8, 6 or 26, not " + connectivity);
+		}
+	}
+
+	/**
+	 * Specifies a cache for keeping the component tree between successive
+	 * calls on the same image, for example when the threshold value is
+	 * changed interactively.
+	 * 
+	 * @param cache
+	 *            the cache to use, or null to compute the tree at each call
+	 */
+	public void setCache(ComponentTreeCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.morphology.attrfilt.AreaOpening#process(ij.process.ImageProcessor, int)
+	 */
+	@Override
+	public ImageProcessor process(ImageProcessor image, int minArea)
+	{
+		return process(image, (double) minArea);
+	}
+
+	/**
+	 * Applies attribute filtering on a planar image, by removing the
+	 * components whose attribute value is lower than the specified value.
+	 * 
+	 * @param image
+	 *            the grayscale image to process
+	 * @param minValue
+	 *            the minimum value of the attribute for a component to be
+	 *            preserved
+	 * @return the result of attribute filtering
+	 */
+	public ImageProcessor process(ImageProcessor image, double minValue)
+	{
+		float[] values;
+		if (this.cache != null)
+		{
+			fireStatusChanged(this, "Filter component tree...");
+			values = this.cache.filter(image, this.conn2D, this.type, this.attribute, minValue);
+			fireProgressChanged(this, 2, 3);
+		}
+		else
+		{
+			fireStatusChanged(this, "Compute component tree...");
+			ComponentTree tree = new ComponentTree(image, this.conn2D, this.type);
+			fireProgressChanged(this, 1, 3);
+
+			fireStatusChanged(this, "Filter component tree...");
+			values = tree.filter(this.attribute, minValue);
+			fireProgressChanged(this, 2, 3);
+		}
+		
+		ImageProcessor result = image.duplicate();
+		for (int i = 0; i < values.length; i++)
+		{
+			result.setf(i, values[i]);
+		}
+		fireProgressChanged(this, 3, 3);
+		fireStatusChanged(this, "");
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.morphology.attrfilt.SizeOpening3D#process(ij.ImageStack, int)
+	 */
+	@Override
+	public ImageStack process(ImageStack image, int minVolume)
+	{
+		return process(image, (double) minVolume);
+	}
+
+	/**
+	 * Applies attribute filtering on a 3D image, by removing the components
+	 * whose attribute value is lower than the specified value.
+	 * 
+	 * @param image
+	 *            the 3D grayscale image to process
+	 * @param minValue
+	 *            the minimum value of the attribute for a component to be
+	 *            preserved
+	 * @return the result of attribute filtering
+	 */
+	public ImageStack process(ImageStack image, double minValue)
+	{
+		float[] values;
+		if (this.cache != null)
+		{
+			fireStatusChanged(this, "Filter component tree...");
+			values = this.cache.filter(image, this.conn3D, this.type, this.attribute, minValue);
+			fireProgressChanged(this, 2, 3);
+		}
+		else
+		{
+			fireStatusChanged(this, "Compute component tree...");
+			ComponentTree tree = new ComponentTree(image, this.conn3D, this.type);
+			fireProgressChanged(this, 1, 3);
+
+			fireStatusChanged(this, "Filter component tree...");
+			values = tree.filter(this.attribute, minValue);
+			fireProgressChanged(this, 2, 3);
+		}
+		
+		ImageStack result = image.duplicate();
+		int sliceSize = image.getWidth() * image.getHeight();
+		for (int z = 0; z < image.getSize(); z++)
+		{
+			ImageProcessor slice = result.getProcessor(z + 1);
+			int offset = z * sliceSize;
+			for (int i = 0; i < sliceSize; i++)
+			{
+				slice.setf(i, values[offset + i]);
+			}
+		}
+		fireProgressChanged(this, 3, 3);
+		fireStatusChanged(this, "");
+		return result;
+	}
+}
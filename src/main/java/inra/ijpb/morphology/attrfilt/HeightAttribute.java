@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+/**
+ * The height of the components of a component tree, that is the absolute
+ * difference between the level of the component and the most extreme level
+ * within the component (the maximum for max-trees, the minimum for
+ * min-trees). Filtering by height corresponds to the removal of extrema with
+ * a dynamic lower than the threshold.
+ * 
+ * @see ComponentTree
+ * 
+ * @author dlegland
+ */
+public class HeightAttribute implements ComponentTreeAttribute
+{
+	/**
+	 * The level of each element, oriented such that the extremum is the
+	 * maximum.
+	 */
+	float[] levels;
+	
+	/**
+	 * The oriented extremum of each component.
+	 */
+	float[] extremum;
+	
+	@Override
+	public void initialize(ComponentTree tree)
+	{
+		int n = tree.getElementNumber();
+		float sign = tree.getType() == ComponentTree.Type.MAX_TREE ? 1 : -1;
+		levels = new float[n];
+		extremum = new float[n];
+		for (int i = 0; i < n; i++)
+		{
+			levels[i] = sign * tree.getLevel(i);
+			extremum[i] = levels[i];
+		}
+	}
+
+	@Override
+	public void merge(int parent, int child)
+	{
+		extremum[parent] = Math.max(extremum[parent], extremum[child]);
+	}
+
+	@Override
+	public double getValue(int node)
+	{
+		return extremum[node] - levels[node];
+	}
+	
+	@Override
+	public String getKey()
+	{
+		return "height";
+	}
+}
@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+/**
+ * The moment of inertia of the components of a component tree, computed from
+ * the second order moments of the element coordinates. The value of the
+ * attribute is the mean squared distance of the elements to the centroid of
+ * the component, which equals the trace of the covariance matrix of the
+ * coordinates.
+ * 
+ * As this attribute is not increasing, filtering the tree corresponds to the
+ * "direct" filtering rule.
+ * 
+ * @see ComponentTree
+ * 
+ * @author dlegland
+ */
+public class InertiaAttribute implements ComponentTreeAttribute
+{
+	/**
+	 * The number of elements of each component.
+	 */
+	int[] counts;
+	
+	/**
+	 * The sums of the coordinates of the elements, in each direction.
+	 */
+	double[] sumX;
+	double[] sumY;
+	double[] sumZ;
+	
+	/**
+	 * The sums of the squared coordinates of the elements.
+	 */
+	double[] sumSq;
+	
+	@Override
+	public void initialize(ComponentTree tree)
+	{
+		int sizeX = tree.getSizeX();
+		int sizeY = tree.getSizeY();
+		int sizeZ = tree.getSizeZ();
+		int n = tree.getElementNumber();
+		
+		counts = new int[n];
+		sumX = new double[n];
+		sumY = new double[n];
+		sumZ = new double[n];
+		sumSq = new double[n];
+		
+		int index = 0;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					counts[index] = 1;
+					sumX[index] = x;
+					sumY[index] = y;
+					sumZ[index] = z;
+					sumSq[index] = x * x + y * y + z * z;
+					index++;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void merge(int parent, int child)
+	{
+		counts[parent] += counts[child];
+		sumX[parent] += sumX[child];
+		sumY[parent] += sumY[child];
+		sumZ[parent] += sumZ[child];
+		sumSq[parent] += sumSq[child];
+	}
+
+	@Override
+	public double getValue(int node)
+	{
+		double n = counts[node];
+		double mx = sumX[node] / n;
+		double my = sumY[node] / n;
+		double mz = sumZ[node] / n;
+		return sumSq[node] / n - (mx * mx + my * my + mz * mz);
+	}
+	
+	@Override
+	public String getKey()
+	{
+		return "inertia";
+	}
+}
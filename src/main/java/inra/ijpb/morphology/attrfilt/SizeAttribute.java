@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import java.util.Arrays;
+
+/**
+ * The number of elements within the components of a component tree, that is
+ * the area for planar images, and the number of voxels for 3D images.
+ * 
+ * @see ComponentTree
+ * 
+ * @author dlegland
+ */
+public class SizeAttribute implements ComponentTreeAttribute
+{
+	/**
+	 * The number of elements of each component.
+	 */
+	int[] counts;
+	
+	@Override
+	public void initialize(ComponentTree tree)
+	{
+		counts = new int[tree.getElementNumber()];
+		Arrays.fill(counts, 1);
+	}
+
+	@Override
+	public void merge(int parent, int child)
+	{
+		counts[parent] += counts[child];
+	}
+
+	@Override
+	public double getValue(int node)
+	{
+		return counts[node];
+	}
+	
+	@Override
+	public String getKey()
+	{
+		return "size";
+	}
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+/**
+ * The gray level volume of the components of a component tree, that is the
+ * sum over the elements of the component of the absolute difference between
+ * the level of the element and the level of the component.
+ * 
+ * @see ComponentTree
+ * 
+ * @author dlegland
+ */
+public class VolumeAttribute implements ComponentTreeAttribute
+{
+	/**
+	 * The level of each element, oriented such that the levels within a
+	 * component are greater than the level of the component.
+	 */
+	float[] levels;
+	
+	/**
+	 * The number of elements of each component.
+	 */
+	int[] counts;
+	
+	/**
+	 * The sum of the oriented levels of the elements of each component.
+	 */
+	double[] sums;
+	
+	@Override
+	public void initialize(ComponentTree tree)
+	{
+		int n = tree.getElementNumber();
+		float sign = tree.getType() == ComponentTree.Type.MAX_TREE ? 1 : -1;
+		levels = new float[n];
+		counts = new int[n];
+		sums = new double[n];
+		for (int i = 0; i < n; i++)
+		{
+			levels[i] = sign * tree.getLevel(i);
+			counts[i] = 1;
+			sums[i] = levels[i];
+		}
+	}
+
+	@Override
+	public void merge(int parent, int child)
+	{
+		counts[parent] += counts[child];
+		sums[parent] += sums[child];
+	}
+
+	@Override
+	public double getValue(int node)
+	{
+		return sums[node] - counts[node] * (double) levels[node];
+	}
+	
+	@Override
+	public String getKey()
+	{
+		return "volume";
+	}
+}
@@ -23,5 +23,7 @@
  * Attribute opening and filtering for grayscale images. 
  * Comprises size opening (area opening, volume opening for 3D images), opening by 
  * the length of the bounding box diagonal, and associated closing and top-hats.    
+ * Attribute filtering can also be computed from the component tree (max-tree
+ * or min-tree) of the image, with pluggable attributes.
  */
 package inra.ijpb.morphology.attrfilt;
\ No newline at end of file
@@ -21,12 +21,19 @@
  */
 package inra.ijpb.morphology.directional;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import inra.ijpb.algo.AlgoStub;
-import inra.ijpb.data.border.BorderManager;
 import inra.ijpb.data.border.MirroringBorder;
+import inra.ijpb.data.border.PaddedImage;
 import inra.ijpb.morphology.Strel;
 
 /**
@@ -216,6 +223,12 @@ public class DirectionalFilter extends AlgoStub
 	 * Default is 32.
 	 */
 	int nDirections;
+	
+	/**
+	 * The pool used for processing orientations concurrently. Default is the
+	 * common fork-join pool.
+	 */
+	ForkJoinPool pool = ForkJoinPool.commonPool();
 
 	
 	// =======================================================================
@@ -266,6 +279,31 @@ public class DirectionalFilter extends AlgoStub
 	}
 	
 	
+	// =======================================================================
+	// Setter and getters
+
+	/**
+	 * @return the pool used for processing orientations concurrently
+	 */
+	public ForkJoinPool getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Changes the pool used for processing orientations concurrently. Memory
+	 * usage grows with the parallelism of the pool, as each worker keeps its
+	 * own accumulator image.
+	 * 
+	 * @param pool
+	 *            the pool used for processing orientations concurrently
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	
 	// =======================================================================
 	// Methods
 
@@ -277,9 +315,36 @@ public class DirectionalFilter extends AlgoStub
 	 * @return the result of directional filter
 	 */
 	public ImageProcessor process(ImageProcessor image)
+	{
+		return processOrientations(image, false)[0];
+	}
+	
+	/**
+	 * Apply directional filter with current settings to the specified image,
+	 * and computes in the same pass the orientation that provided the result
+	 * of each pixel.
+	 * 
+	 * @param image
+	 *            a grayscale image
+	 * @return an array containing the result of directional filter, and a
+	 *         FloatProcessor containing for each pixel the orientation (in
+	 *         degrees) of the structuring element that provided the result
+	 */
+	public ImageProcessor[] processWithOrientation(ImageProcessor image)
+	{
+		return processOrientations(image, true);
+	}
+	
+	/**
+	 * Distributes the orientations over the workers of the pool. Each worker
+	 * combines the results of its orientations into its own accumulator, and
+	 * the accumulators are merged at the end. Ties are resolved by keeping
+	 * the smallest orientation, as in a sequential processing.
+	 */
+	private ImageProcessor[] processOrientations(final ImageProcessor image, final boolean computeOrientation)
 	{
 		// determine the sign of min/max computation
-		int sign = this.type == Type.MAX ? 1 : -1;
+		final int sign = this.type == Type.MAX ? 1 : -1;
 		
 		// initialize result
 		ImageProcessor result = image.duplicate();
@@ -293,41 +358,111 @@ public class DirectionalFilter extends AlgoStub
 		}
 		result.fill();
 		
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
+		final int nPixels = image.getPixelCount();
+		final float initValue = nPixels > 0 ? result.getf(0) : 0;
 		
 		fireStatusChanged(this, "Directional Filter...");
 
-		// Iterate over the set of directions
-		for (int i = 0; i < nDirections; i++)
+		// Iterate over the set of directions within each worker
+		final int nWorkers = Math.max(Math.min(pool.getParallelism(), nDirections), 1);
+		final float[][] values = new float[nWorkers][];
+		final int[][] indices = new int[nWorkers][];
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nWorkers);
+		for (int w = 0; w < nWorkers; w++)
 		{
-			fireProgressChanged(this, i, nDirections);
-			
-			// Create the structuring element for current orientation
-			double theta = ((double) i) * 180.0 / nDirections;
-			Strel strel = this.strelFactory.createStrel(theta);
-
-			// Apply oriented filter
-			ImageProcessor oriented = this.operation.apply(image, strel);
-
-			// combine current result with global result
-			for (int y = 0; y < sizeY; y++)
+			final int worker = w;
+			futures.add(pool.submit(new Runnable()
 			{
-				for (int x = 0; x < sizeX; x++)
+				public void run()
 				{
-					float value = oriented.getf(x, y);
-					if (value * sign > result.getf(x, y) * sign)
+					float[] accum = new float[nPixels];
+					Arrays.fill(accum, initValue);
+					int[] argIndex = computeOrientation ? new int[nPixels] : null;
+					
+					for (int i = worker; i < nDirections; i += nWorkers)
 					{
-						result.setf(x, y, value);
+						// Create the structuring element for current orientation
+						double theta = ((double) i) * 180.0 / nDirections;
+						Strel strel = strelFactory.createStrel(theta);
+
+						// Apply oriented filter
+						ImageProcessor oriented = operation.apply(image, strel);
+
+						// combine current result with worker result
+						for (int j = 0; j < nPixels; j++)
+						{
+							float value = oriented.getf(j);
+							if (value * sign > accum[j] * sign)
+							{
+								accum[j] = value;
+								if (argIndex != null)
+									argIndex[j] = i;
+							}
+						}
 					}
+					
+					values[worker] = accum;
+					indices[worker] = argIndex;
 				}
-			}
+			}));
 		}
+		waitForCompletion(futures);
 		
-		fireProgressChanged(this, 1, 1);
+		// merge the results of the workers
+		ImageProcessor orientMap = computeOrientation ? new FloatProcessor(image.getWidth(), image.getHeight()) : null;
+		for (int j = 0; j < nPixels; j++)
+		{
+			float value = values[0][j];
+			int index = computeOrientation ? indices[0][j] : 0;
+			for (int w = 1; w < nWorkers; w++)
+			{
+				float value2 = values[w][j];
+				if (value2 * sign > value * sign 
+						|| (computeOrientation && value2 == value && indices[w][j] < index))
+				{
+					value = value2;
+					if (computeOrientation)
+						index = indices[w][j];
+				}
+			}
+			
+			result.setf(j, value);
+			if (computeOrientation)
+			{
+				orientMap.setf(j, (float) (index * 180.0 / nDirections));
+			}
+		}
 		
 		// return the min or max value computed over all orientations
-		return result;
+		return new ImageProcessor[] { result, orientMap };
+	}
+	
+	/**
+	 * Waits for all the workers to finish, and notifies progress.
+	 */
+	private void waitForCompletion(ArrayList<Future<?>> futures)
+	{
+		int n = futures.size();
+		try
+		{
+			for (int i = 0; i < n; i++)
+			{
+				fireProgressChanged(this, i, n);
+				futures.get(i).get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			for (Future<?> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		fireProgressChanged(this, n, n);
 	}
 	
 	
@@ -336,28 +471,39 @@ public class DirectionalFilter extends AlgoStub
 
 	/**
 	 * Computes the average value among the neighbors.
+	 * 
+	 * For integer images and oriented line structuring elements, the sum of
+	 * neighbor values is updated incrementally along the traversal direction
+	 * of the line.
+	 * 
 	 * @param image input image
 	 * @param strel structuring element
 	 * @return result image
 	 */
 	public static ImageProcessor mean(ImageProcessor image, Strel strel) {
+		if (strel instanceof OrientedLineStrel && isIntegerImage(image))
+		{
+			return slidingFilter(image, (OrientedLineStrel) strel, new RunningSum());
+		}
+		
 		// Allocate memory for result
 		ImageProcessor result = image.duplicate();
 		
-		BorderManager bm = new MirroringBorder(image);
-		
 		int[][] shifts = strel.getShifts();
+		PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), shifts);
+		int[] offsets = padded.offsets(shifts);
 		double accum;
 		
 		// Iterate on image pixels
 		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
+			int index = padded.index(0, y);
+			for (int x = 0; x < image.getWidth(); x++, index++) {
 				// reset accumulator
 				accum = 0;
 				
 				// iterate on neighbors
-				for (int i = 0; i < shifts.length; i++) {
-					accum += bm.getf(x + shifts[i][0], y + shifts[i][1]);
+				for (int i = 0; i < offsets.length; i++) {
+					accum += padded.getf(index + offsets[i]);
 				}
 				
 				// compute result
@@ -371,30 +517,42 @@ public class DirectionalFilter extends AlgoStub
 
 	/**
 	 * Computes the median value among the neighbors.
+	 * 
+	 * For integer images and oriented line structuring elements, the median
+	 * is obtained from a histogram of neighbor values, updated incrementally
+	 * along the traversal direction of the line.
+	 * 
 	 * @param image input image
 	 * @param strel structuring element
 	 * @return result image
 	 */
 	public static ImageProcessor median(ImageProcessor image, Strel strel)
 	{
+		if (strel instanceof OrientedLineStrel && isIntegerImage(image))
+		{
+			int nBins = image instanceof ByteProcessor ? 256 : 65536;
+			return slidingFilter(image, (OrientedLineStrel) strel, new RunningHistogram(nBins));
+		}
+		
 		// Allocate memory for result
 		ImageProcessor result = image.duplicate();
 
-		BorderManager bm = new MirroringBorder(image);
-
 		int[][] shifts = strel.getShifts();
+		PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), shifts);
+		int[] offsets = padded.offsets(shifts);
 		int n = shifts.length;
 		double[] buffer = new double[n];
 
 		// Iterate on image pixels
 		for (int y = 0; y < image.getHeight(); y++)
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			int index = padded.index(0, y);
+			for (int x = 0; x < image.getWidth(); x++, index++)
 			{
 				// iterate on neighbors
-				for (int i = 0; i < shifts.length; i++)
+				for (int i = 0; i < offsets.length; i++)
 				{
-					buffer[i] = bm.getf(x + shifts[i][0], y + shifts[i][1]);
+					buffer[i] = padded.getf(index + offsets[i]);
 				}
 
 				// compute result
@@ -406,6 +564,268 @@ public class DirectionalFilter extends AlgoStub
 		return result;
 	}
 
+	/**
+	 * Checks if the image stores integer values that can be used as histogram
+	 * bins, i.e. if it is a 8-bits or 16-bits image.
+	 */
+	private static boolean isIntegerImage(ImageProcessor image)
+	{
+		return image instanceof ByteProcessor || image instanceof ShortProcessor;
+	}
+	
+	/**
+	 * Applies a filter defined by a sliding window along each line of the
+	 * image parallel to the traversal direction of the structuring element.
+	 * The window is initialized with all the neighbors of the first pixel of
+	 * each line, then updated with one removal and one insertion per run of
+	 * the structuring element. At the end of each line, the values remaining
+	 * in the window are removed, such that it is empty for the next line.
+	 * 
+	 * @param image
+	 *            the 8-bits or 16-bits image to filter
+	 * @param strel
+	 *            the oriented line structuring element
+	 * @param window
+	 *            the window used to compute the statistic of the neighborhood
+	 * @return the filtered image
+	 */
+	private static ImageProcessor slidingFilter(ImageProcessor image,
+			OrientedLineStrel strel, SlidingWindow window)
+	{
+		// Allocate memory for result
+		ImageProcessor result = image.duplicate();
+
+		PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), strel.getShifts());
+
+		int[][] runs = strel.getRuns();
+		int[] dir = strel.getTraversalDirection();
+		int ux = dir[0];
+		int uy = dir[1];
+		
+		// offset between consecutive positions along the traversal direction
+		int step = padded.index(ux, uy) - padded.index(0, 0);
+		
+		// offsets of the first pixel of each run, and of the pixel following the run
+		int nRuns = runs.length;
+		int[] firstOffsets = new int[nRuns];
+		int[] nextOffsets = new int[nRuns];
+		for (int r = 0; r < nRuns; r++)
+		{
+			firstOffsets[r] = padded.index(runs[r][0], runs[r][1]) - padded.index(0, 0);
+			nextOffsets[r] = firstOffsets[r] + runs[r][2] * step;
+		}
+		
+		// size of image along and across the traversal direction
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int nLines = ux == 1 ? sizeY : sizeX;
+		int lineLength = ux == 1 ? sizeX : sizeY;
+
+		// Iterate on lines parallel to the traversal direction
+		for (int line = 0; line < nLines; line++)
+		{
+			int x = ux == 1 ? 0 : line;
+			int y = ux == 1 ? line : 0;
+			int index = padded.index(x, y);
+			
+			// initialize window with the neighbors of the first pixel
+			for (int r = 0; r < nRuns; r++)
+			{
+				for (int k = 0; k < runs[r][2]; k++)
+				{
+					window.add(padded.get(index + firstOffsets[r] + k * step));
+				}
+			}
+			result.setf(x, y, (float) window.value());
+			
+			for (int t = 1; t < lineLength; t++)
+			{
+				// update each run with the pixels leaving and entering the window
+				for (int r = 0; r < nRuns; r++)
+				{
+					window.remove(padded.get(index + firstOffsets[r]));
+					window.add(padded.get(index + nextOffsets[r]));
+				}
+				x += ux;
+				y += uy;
+				index += step;
+				result.setf(x, y, (float) window.value());
+			}
+			
+			// empty the window with the neighbors of the last pixel
+			for (int r = 0; r < nRuns; r++)
+			{
+				for (int k = 0; k < runs[r][2]; k++)
+				{
+					window.remove(padded.get(index + firstOffsets[r] + k * step));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * A statistic over a collection of integer values, that can be updated by
+	 * inserting or removing values.
+	 */
+	private interface SlidingWindow
+	{
+		void add(int value);
+		void remove(int value);
+		double value();
+	}
+	
+	/**
+	 * Computes the mean of the values within the window from their sum.
+	 */
+	private static final class RunningSum implements SlidingWindow
+	{
+		long sum = 0;
+		int count = 0;
+		
+		public void add(int value)
+		{
+			sum += value;
+			count++;
+		}
+		
+		public void remove(int value)
+		{
+			sum -= value;
+			count--;
+		}
+		
+		public double value()
+		{
+			return ((double) sum) / count;
+		}
+	}
+	
+	/**
+	 * Computes the median of the values within the window from their
+	 * histogram. The position of the median is kept between updates together
+	 * with the number of values below it, so that it only has to be moved by
+	 * a few bins after each update. A coarse histogram counting the values
+	 * within blocks of 256 bins allows to skip empty or irrelevant blocks
+	 * when the median moves over a large range of values, as with 16-bits
+	 * images.
+	 */
+	private static final class RunningHistogram implements SlidingWindow
+	{
+		/** the number of bits of the bin index within a block */
+		static final int BLOCK_BITS = 8;
+		
+		/** the number of bins within a block */
+		static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+		
+		final int[] histo;
+		
+		/** the number of values within each block of bins */
+		final int[] blocks;
+		
+		int count = 0;
+		
+		/** the bin containing the (lower) median */
+		int median = 0;
+		
+		/** the number of values strictly lower than the median bin */
+		int below = 0;
+		
+		RunningHistogram(int nBins)
+		{
+			this.histo = new int[nBins];
+			this.blocks = new int[(nBins + BLOCK_SIZE - 1) >> BLOCK_BITS];
+		}
+		
+		public void add(int value)
+		{
+			histo[value]++;
+			blocks[value >> BLOCK_BITS]++;
+			count++;
+			if (value < median)
+				below++;
+		}
+		
+		public void remove(int value)
+		{
+			histo[value]--;
+			blocks[value >> BLOCK_BITS]--;
+			count--;
+			if (value < median)
+				below--;
+		}
+		
+		public double value()
+		{
+			// rank of the (lower) median value, starting from 0
+			int rank = (count - 1) / 2;
+			int bin = findBin(rank);
+			if (count % 2 == 1)
+			{
+				return bin;
+			}
+			
+			// even number of values: average with the following value
+			int bin2 = below + histo[bin] > rank + 1 ? bin : findNextBin(bin);
+			return (bin + bin2) / 2.0;
+		}
+		
+		/**
+		 * Moves the median bin such that it contains the value with the
+		 * specified rank, and returns it. Whole blocks are skipped when the
+		 * median bin is at a block boundary.
+		 */
+		private int findBin(int rank)
+		{
+			while (below > rank)
+			{
+				int block = (median >> BLOCK_BITS) - 1;
+				if ((median & (BLOCK_SIZE - 1)) == 0 && below - blocks[block] > rank)
+				{
+					median -= BLOCK_SIZE;
+					below -= blocks[block];
+				}
+				else
+				{
+					median--;
+					below -= histo[median];
+				}
+			}
+			while (below + histo[median] <= rank)
+			{
+				int block = median >> BLOCK_BITS;
+				if ((median & (BLOCK_SIZE - 1)) == 0 && below + blocks[block] <= rank)
+				{
+					below += blocks[block];
+					median += BLOCK_SIZE;
+				}
+				else
+				{
+					below += histo[median];
+					median++;
+				}
+			}
+			return median;
+		}
+		
+		/**
+		 * Returns the first non empty bin after the specified one.
+		 */
+		private int findNextBin(int bin)
+		{
+			bin++;
+			while (histo[bin] == 0)
+			{
+				if ((bin & (BLOCK_SIZE - 1)) == 0 && blocks[bin >> BLOCK_BITS] == 0)
+					bin += BLOCK_SIZE;
+				else
+					bin++;
+			}
+			return bin;
+		}
+	}
+
 	/**
 	 * Sorts the array, and returns its median value.
 	 * @param values array of values
@@ -22,9 +22,12 @@
 package inra.ijpb.morphology.directional;
 
 import static java.lang.Math.*;
+
+import java.util.Arrays;
+
 import ij.process.ImageProcessor;
-import inra.ijpb.data.border.BorderManager;
 import inra.ijpb.data.border.MirroringBorder;
+import inra.ijpb.data.border.PaddedImage;
 import inra.ijpb.morphology.Strel;
 import inra.ijpb.morphology.strel.AbstractStrel;
 
@@ -48,6 +51,12 @@ public class OrientedLineStrel extends AbstractStrel implements Strel
 	 * The array has N-by-2 elements, where N is the number of pixels composing the strel.
 	 */
 	int[][] shifts;
+	
+	/**
+	 * Specifies whether the line is closer to the horizontal direction than to
+	 * the vertical one. In that case, the shifts are ordered by increasing x.
+	 */
+	boolean horizontal;
 
 	/**
 	 * Creates an new instance of linear structuring element. The number of
@@ -90,7 +99,8 @@ public class OrientedLineStrel extends AbstractStrel implements Strel
 		this.shifts = new int[n][2];
 
 		// compute position of line pixels
-		if (abs(dx) >= abs(dy))
+		this.horizontal = abs(dx) >= abs(dy);
+		if (this.horizontal)
 		{
 			// process horizontal lines
 			for (int i = -n2; i <= n2; i++)
@@ -163,26 +173,76 @@ public class OrientedLineStrel extends AbstractStrel implements Strel
 		return this.shifts;
 	}
 
+	/**
+	 * Returns the direction used for traversing the image when the
+	 * neighborhood is updated incrementally: (1,0) for lines closer to the
+	 * horizontal, and (0,1) for lines closer to the vertical.
+	 * 
+	 * @return the shift between two consecutive positions of the traversal
+	 * @see #getRuns()
+	 */
+	public int[] getTraversalDirection()
+	{
+		return this.horizontal ? new int[] {1, 0} : new int[] {0, 1};
+	}
+	
+	/**
+	 * Decomposes this structuring element into runs of consecutive pixels
+	 * aligned with the traversal direction. Each run is given as an array
+	 * {dx, dy, length}, where (dx, dy) is the shift of the first pixel of the
+	 * run.
+	 * 
+	 * When the structuring element is moved by one step along the traversal
+	 * direction, each run loses its first pixel and gains the pixel following
+	 * its last one. This makes it possible to update neighborhood statistics
+	 * with one removal and one insertion per run.
+	 * 
+	 * @return the runs of pixels that compose this structuring element
+	 * @see #getTraversalDirection()
+	 */
+	public int[][] getRuns()
+	{
+		// the coordinate orthogonal to the traversal direction
+		int across = this.horizontal ? 1 : 0;
+		
+		int n = this.shifts.length;
+		int[][] runs = new int[n][];
+		int nRuns = 0;
+		int start = 0;
+		for (int i = 1; i <= n; i++)
+		{
+			if (i == n || this.shifts[i][across] != this.shifts[start][across])
+			{
+				runs[nRuns++] = new int[] { this.shifts[start][0], this.shifts[start][1], i - start };
+				start = i;
+			}
+		}
+		return Arrays.copyOf(runs, nRuns);
+	}
+
 	@Override
 	public ImageProcessor dilation(ImageProcessor image)
 	{
 		// Allocate memory for result
 		ImageProcessor result = image.duplicate();
 
-		BorderManager bm = new MirroringBorder(image);
-
+		// compute values within border once
+		PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), shifts);
+		int[] offsets = padded.offsets(shifts);
+		
 		// Iterate on image pixels
 		for (int y = 0; y < image.getHeight(); y++)
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			int index = padded.index(0, y);
+			for (int x = 0; x < image.getWidth(); x++, index++)
 			{
 				// reset accumulator
 				double res = Double.MIN_VALUE;
 	
 				// iterate on neighbors
-				for (int i = 0; i < shifts.length; i++) 
+				for (int i = 0; i < offsets.length; i++) 
 				{
-					double value = bm.getf(x + shifts[i][0], y + shifts[i][1]);
+					double value = padded.getf(index + offsets[i]);
 					res = Math.max(res, value);
 				}
 				
@@ -200,20 +260,23 @@ public class OrientedLineStrel extends AbstractStrel implements Strel
 		// Allocate memory for result
 		ImageProcessor result = image.duplicate();
 		
-		BorderManager bm = new MirroringBorder(image);
+		// compute values within border once
+		PaddedImage padded = new PaddedImage(image, new MirroringBorder(image), shifts);
+		int[] offsets = padded.offsets(shifts);
 		
 		// Iterate on image pixels
 		for (int y = 0; y < image.getHeight(); y++)
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			int index = padded.index(0, y);
+			for (int x = 0; x < image.getWidth(); x++, index++)
 			{
 				// reset accumulator
 				double res = Double.MAX_VALUE;
-
+	
 				// iterate on neighbors
-				for (int i = 0; i < shifts.length; i++)
+				for (int i = 0; i < offsets.length; i++) 
 				{
-					double value = bm.getf(x + shifts[i][0], y + shifts[i][1]);
+					double value = padded.getf(index + offsets[i]);
 					res = Math.min(res, value);
 				}
 				
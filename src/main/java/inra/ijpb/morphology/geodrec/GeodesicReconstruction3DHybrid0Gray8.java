@@ -24,12 +24,9 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
-import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.LongRingBuffer;
 import inra.ijpb.data.image.Images3D;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-
 
 /**
  * <p>
@@ -75,8 +72,11 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 	/** image depth */
 	int sizeZ = 0;
 
-	/** the queue containing the positions that need update */
-	Deque<Cursor3D> queue;
+	/**
+	 * the queue containing the positions that need update, packed as
+	 * (z << 32) | (y * sizeX + x)
+	 */
+	LongRingBuffer queue;
 	
 	/**
 	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
@@ -178,7 +178,7 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 							+ connectivity);
 		}
 
-		queue = new ArrayDeque<Cursor3D>();
+		queue = new LongRingBuffer();
 		
 		long t0 = System.currentTimeMillis();
 		trace("Initialize result ");
@@ -483,11 +483,11 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 					
 					// eventually add lower-right neighbors to queue
 					if (x < sizeX - 1) 
-						updateQueue(x + 1, y, z, maxValue, sign);
+						updateQueue(index + 1, z, maxValue, sign);
 					if (y < sizeY - 1) 
-						updateQueue(x, y + 1, z, maxValue, sign);
+						updateQueue(index + sizeX, z, maxValue, sign);
 					if (z < sizeZ - 1) {
-						updateQueue(x, y, z + 1, maxValue, sign);
+						updateQueue(index, z + 1, maxValue, sign);
 					}
 				}
 			}
@@ -556,10 +556,11 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 						int ymin = z2 == z ? y : max(y - 1, 0); 
 						for (int y2 = min(y + 1, sizeY - 1); y2 >= ymin; y2--) 
 						{
+							int offset2 = y2 * sizeX;
 							int xmin = (z2 == z && y2 == y) ? x : max(x - 1, 0); 
 							for (int x2 = min(x + 1, sizeX - 1); x2 >= xmin; x2--)
 							{
-								updateQueue(x2, y2, z2, maxValue, sign);
+								updateQueue(offset2 + x2, z2, maxValue, sign);
 							}
 						}
 					}
@@ -596,12 +597,12 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long packed = queue.poll();
+			int z = (int) (packed >>> 32);
+			int index = (int) packed;
+			int y = index / sizeX;
+			int x = index - y * sizeX;
 			byte[] slice = resultSlices[z];
-			int index = y * sizeX + x;
 			value = (slice[index] & 0x00FF) * sign;
 			
 			// compare with each one of the neighbors
@@ -630,17 +631,17 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 
 			// Eventually add each neighbor
 			if (x > 0)
-				updateQueue(x - 1, y, z, value, sign);
+				updateQueue(index - 1, z, value, sign);
 			if (x < sizeX - 1)
-				updateQueue(x + 1, y, z, value, sign);
+				updateQueue(index + 1, z, value, sign);
 			if (y > 0)
-				updateQueue(x, y - 1, z, value, sign);
+				updateQueue(index - sizeX, z, value, sign);
 			if (y < sizeY - 1)
-				updateQueue(x, y + 1, z, value, sign);
+				updateQueue(index + sizeX, z, value, sign);
 			if (z > 0)
-				updateQueue(x, y, z - 1, value, sign);
+				updateQueue(index, z - 1, value, sign);
 			if (z < sizeZ - 1)
-				updateQueue(x, y, z + 1, value, sign);
+				updateQueue(index, z + 1, value, sign);
 		}
 		
 	}
@@ -659,12 +660,12 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long packed = queue.poll();
+			int z = (int) (packed >>> 32);
+			int index = (int) packed;
+			int y = index / sizeX;
+			int x = index - y * sizeX;
 			byte[] slice = resultSlices[z];
-			int index = y * sizeX + x;
 			value = (slice[index] & 0x00FF) * sign;
 			
 			// compute bounds of neighborhood
@@ -702,9 +703,10 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 			{
 				for (int y2 = ymin; y2 <= ymax; y2++) 
 				{
+					int offset2 = y2 * sizeX;
 					for (int x2 = xmin; x2 <= xmax; x2++) 
 					{
-						updateQueue(x2, y2, z2, value, sign);
+						updateQueue(offset2 + x2, z2, value, sign);
 					}
 				}
 			}
@@ -712,24 +714,25 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 	}
 
 	/**
-	 * Adds the current position to the queue if and only if the value 
-	 * <code>value<value> is greater than the value of the mask.
-	 * @param i column index
-	 * @param j row index
-	 * @param value value at (i,j) position
+	 * Adds the specified position to the queue if and only if the value 
+	 * <code>value</code> is greater than the value of the result at this
+	 * position, once bounded by the mask.
+	 * 
+	 * @param index linear index of the position within the slice
+	 * @param k slice index
+	 * @param value value propagated to the position
 	 * @param sign integer +1 or -1 to manage both erosions and dilations
 	 */
-	private void updateQueue(int i, int j, int k, int value, int sign)
+	private void updateQueue(int index, int k, int value, int sign)
 	{
 		// update current value only if value is strictly greater
-		int maskValue = (maskSlices[k][sizeX * j + i] & 0x00FF) * sign;
+		int maskValue = (maskSlices[k][index] & 0x00FF) * sign;
 		value = Math.min(value, maskValue);
 		
-		int resultValue = (resultSlices[k][sizeX * j + i] & 0x00FF) * sign; 
+		int resultValue = (resultSlices[k][index] & 0x00FF) * sign; 
 		if (value > resultValue) 
 		{
-			Cursor3D position = new Cursor3D(i, j, k);
-			queue.add(position);
+			queue.add(((long) k << 32) | index);
 		}
 	}
 
@@ -46,7 +46,10 @@ import java.util.ArrayDeque;
  * 
  * <p>
  * Uses specialized class to access the values in 3D image stacks, by avoiding
- * to check bounds at each access. Process all type of images by using double
+ * to check bounds at each access. Forward and backward scans read and write
+ * whole rows through buffers, avoiding one interface call per neighbor
+ * access. Maxima are computed with explicit comparisons, as Math.max is
+ * slower for double values. Process all type of images by using double
  * precision computation.
  * </p>
  * 
@@ -249,7 +252,8 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	
 	/** 
 	 * Initialize the result image with the minimum value of marker and mask
-	 * images.
+	 * images for reconstruction by dilation, or with the maximum value for
+	 * reconstruction by erosion.
 	 */
 	private void initializeResult()
 	{
@@ -257,70 +261,21 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		this.resultStack = ImageStack.create(sizeX, sizeY, sizeZ, maskStack.getBitDepth());
 		this.result = Images3D.createWrapper(this.resultStack);
 
-		if (this.reconstructionType == GeodesicReconstructionType.BY_DILATION) 
-		{
-			// Initialize the result image with the minimum value of marker and mask
-			// images
-			if (this.maskStack.getBitDepth() == 32)
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-			else
-			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-		}
-		else 
+		// process row by row, using the sign to manage both min and max
+		final int sign = this.reconstructionType.getSign();
+		double[] markerRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++) 
 		{
-			// Initialize the result image with the maximum value of marker and mask
-			// images
-			if (this.maskStack.getBitDepth() == 32)
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++)
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			} 
-			else 
+			for (int y = 0; y < sizeY; y++)
 			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
+				marker.getRow(y, z, markerRow);
+				mask.getRow(y, z, maskRow);
+				for (int x = 0; x < sizeX; x++)
 				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
+					markerRow[x] = sign * min(markerRow[x] * sign, maskRow[x] * sign);
 				}
+				result.setRow(y, z, markerRow);
 			}
 		}
 	}
@@ -339,42 +294,61 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 6-adjacency, assuming pixels are stored in bytes.
+	 * the 6-adjacency. Rows are read and written in buffers of signed values.
 	 */
 	private void forwardScanC6() 
 	{
 		final int sign = this.reconstructionType.getSign();
 		
-		// the maximal value around current pixel
-		double maxValue;
-
-		// Iterate over pixels
+		// the buffers for current row, previous row and row in previous slice
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[] sliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+		double[] tmp = new double[sizeX];
+
+		// Iterate over rows
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z, sizeZ);
 			
 			for (int y = 0; y < sizeY; y++) 
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				if (z > 0)
+					readRow(result, y, z - 1, sign, sliceRow);
+				
+				boolean modified = false;
 				for (int x = 0; x < sizeX; x++) 
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
 					
 					// Iterate over the 3 'upper' neighbors of current pixel
 					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
+						if (row[x - 1] > maxValue) maxValue = row[x - 1];
 					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+						if (prevRow[x] > maxValue) maxValue = prevRow[x];
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
-					
+						if (sliceRow[x] > maxValue) maxValue = sliceRow[x];
 					
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
-					if (maxValue > currentValue) {
-						result.setValue(x, y, z, maxValue * sign);
+					maxValue = min(maxValue, maskRow[x]);
+					if (maxValue > currentValue) 
+					{
+						row[x] = maxValue;
+						modified = true;
 					}
 				}
+				
+				if (modified)
+					writeRow(result, y, z, sign, row, tmp);
+				
+				// current row becomes previous row
+				double[] swap = prevRow;
+				prevRow = row;
+				row = swap;
 			}
 		} // end of pixel iteration
 
@@ -384,48 +358,82 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency, assuming pixels are stored using integer data types.
+	 * the 26-adjacency. Rows are read and written in buffers of signed values.
 	 */
 	private void forwardScanC26()
 	{
 		final int sign = this.reconstructionType.getSign();
-		// the maximal value around current pixel
-		double maxValue;
 
-		// Iterate over pixels
+		// the buffers for current row, previous row, and rows in previous slice
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[][] sliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
+		double[] tmp = new double[sizeX];
+
+		// Iterate over rows
 		for (int z = 0; z < sizeZ; z++) 
 		{
 			showProgress(z, sizeZ, "z = " + z);
 			
 			for (int y = 0; y < sizeY; y++)
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z > 0)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						readRow(result, y2, z - 1, sign, sliceRows[y2 - ymin]);
+				}
+				
+				boolean modified = false;
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
 
-					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					// neighbors in previous slice
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						for (int i = 0; i <= ymax - ymin; i++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++) 
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] sliceRow = sliceRows[i];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								if (sliceRow[x2] > maxValue) maxValue = sliceRow[x2];
 						}
 					}
+					
+					// neighbors in previous row
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							if (prevRow[x2] > maxValue) maxValue = prevRow[x2];
+					}
+					
+					// neighbor in current row
+					if (x > 0)
+						if (row[x - 1] > maxValue) maxValue = row[x - 1];
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x]);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue;
+						modified = true;
 					}
 				}
+				
+				if (modified)
+					writeRow(result, y, z, sign, row, tmp);
+				
+				// current row becomes previous row
+				double[] swap = prevRow;
+				prevRow = row;
+				row = swap;
 			}
 		}
 
@@ -447,42 +455,61 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	}
 	/**
 	 * Update result image using pixels in the lower right neighborhood, using
-	 * the 6-adjacency.
+	 * the 6-adjacency. Rows are read and written in buffers of signed values.
 	 */
 	private void backwardScanC6() 
 	{
 		final int sign = this.reconstructionType.getSign();
-		// the maximal value around current pixel
-		double maxValue;
 
-		// Iterate over voxels
+		// the buffers for current row, next row and row in next slice
+		double[] row = new double[sizeX];
+		double[] nextRow = new double[sizeX];
+		double[] sliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+		double[] tmp = new double[sizeX];
+
+		// Iterate over rows
 		for (int z = sizeZ - 1; z >= 0; z--) 
 		{
 			showProgress(sizeZ - 1 - z, sizeZ, "z = " + z);
 
 			for (int y = sizeY - 1; y >= 0; y--) 
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				if (z < sizeZ - 1)
+					readRow(result, y, z + 1, sign, sliceRow);
+				
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
 					
 					// Iterate over the 3 'lower' neighbors of current voxel
 					if (x < sizeX - 1)
-						maxValue = max(maxValue, result.getValue(x + 1, y, z) * sign);
+						if (row[x + 1] > maxValue) maxValue = row[x + 1];
 					if (y < sizeY - 1)
-						maxValue = max(maxValue, result.getValue(x, y + 1, z) * sign);
+						if (nextRow[x] > maxValue) maxValue = nextRow[x];
 					if (z < sizeZ - 1)
-						maxValue = max(maxValue, result.getValue(x, y, z + 1) * sign);
-					
+						if (sliceRow[x] > maxValue) maxValue = sliceRow[x];
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x]);
 					if (maxValue > currentValue) 
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue;
+						modified = true;
 					}
 				}
+				
+				if (modified)
+					writeRow(result, y, z, sign, row, tmp);
+				
+				// current row becomes next row
+				double[] swap = nextRow;
+				nextRow = row;
+				row = swap;
 			}
 		}	
 
@@ -491,50 +518,99 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	}
 	
 	/**
-	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency.
+	 * Update result image using pixels in the lower right neighborhood, using
+	 * the 26-adjacency. The neighborhood also contains the voxels in the
+	 * previous slice. Rows are read and written in buffers of signed values.
 	 */
 	private void backwardScanC26() 
 	{
 		final int sign = this.reconstructionType.getSign();
-		// the maximal value around current pixel
-		double maxValue;
+
+		// the buffers for current row, next row, and rows in adjacent slices
+		double[] row = new double[sizeX];
+		double[] nextRow = new double[sizeX];
+		double[][] nextSliceRows = new double[3][sizeX];
+		double[][] prevSliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
+		double[] tmp = new double[sizeX];
 	
-		// Iterate over voxels
+		// Iterate over rows
 		for (int z = sizeZ - 1; z >= 0; z--)
 		{
 			showProgress(sizeZ - 1 - z, sizeZ, "z = " + z);
 	
 			for (int y = sizeY - 1; y >= 0; y--)
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z < sizeZ - 1)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						readRow(result, y2, z + 1, sign, nextSliceRows[y2 - ymin]);
+				}
+				if (z > 0)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						readRow(result, y2, z - 1, sign, prevSliceRows[y2 - ymin]);
+				}
+				
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
 	
-					// Iterate over neighbors of current voxel
-					int zmin = max(z - 1, 0);
-					for (int z2 = min(z + 1, sizeZ - 1); z2 >= zmin; z2--) 
+					// neighbors in adjacent slices
+					if (z < sizeZ - 1)
 					{
-	
-						int ymin = z2 == z ? y : max(y - 1, 0); 
-						for (int y2 = min(y + 1, sizeY - 1); y2 >= ymin; y2--) 
+						for (int i = 0; i <= ymax - ymin; i++)
 						{
-							int xmin = (z2 == z && y2 == y) ? x : max(x - 1, 0); 
-							for (int x2 = min(x + 1, sizeX - 1); x2 >= xmin; x2--) 
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] sliceRow = nextSliceRows[i];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								if (sliceRow[x2] > maxValue) maxValue = sliceRow[x2];
 						}
 					}
+					if (z > 0)
+					{
+						for (int i = 0; i <= ymax - ymin; i++)
+						{
+							double[] sliceRow = prevSliceRows[i];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								if (sliceRow[x2] > maxValue) maxValue = sliceRow[x2];
+						}
+					}
+					
+					// neighbors in next row
+					if (y < sizeY - 1)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							if (nextRow[x2] > maxValue) maxValue = nextRow[x2];
+					}
+					
+					// neighbor in current row
+					if (x < sizeX - 1)
+						if (row[x + 1] > maxValue) maxValue = row[x + 1];
 	
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x]);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue;
+						modified = true;
 					}
 				}
+				
+				if (modified)
+					writeRow(result, y, z, sign, row, tmp);
+				
+				// current row becomes next row
+				double[] swap = nextRow;
+				nextRow = row;
+				row = swap;
 			}
 		}	
 
@@ -563,34 +639,48 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
-		// the maximal value around current pixel
-		double maxValue;
+		// the buffers for current row, previous row and row in previous slice
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[] sliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
 				
 		queue = new ArrayDeque<Cursor3D>();
 		
-		// Iterate over pixels
+		// Iterate over rows
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z + 1, sizeZ);
 			
 			for (int y = 0; y < sizeY; y++)
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				if (z > 0)
+					readRow(result, y, z - 1, sign, sliceRow);
+				
 				for (int x = 0; x < sizeX; x++) 
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
 					
 					// Iterate over the 3 'upper' neighbors of current pixel
 					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
+						if (row[x - 1] > maxValue) maxValue = row[x - 1];
 					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+						if (prevRow[x] > maxValue) maxValue = prevRow[x];
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
+						if (sliceRow[x] > maxValue) maxValue = sliceRow[x];
 					
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+					// add to queue if the voxel needs update
+					if (min(maxValue, maskRow[x]) > currentValue)
+						queue.add(new Cursor3D(x, y, z));
 				}
+				
+				// current row becomes previous row
+				double[] swap = prevRow;
+				prevRow = row;
+				row = swap;
 			}
 		} // end of pixel iteration
 
@@ -605,45 +695,104 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
-		// the maximal value around current pixel
-		double maxValue;
+		// the buffers for current row, previous row, and rows in previous slice
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[][] sliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
 				
 		queue = new ArrayDeque<Cursor3D>();
 		
-		// Iterate over pixels
+		// Iterate over rows
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z + 1, sizeZ);
 			
 			for (int y = 0; y < sizeY; y++) 
 			{
+				readRow(result, y, z, sign, row);
+				readRow(mask, y, z, sign, maskRow);
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z > 0)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						readRow(result, y2, z - 1, sign, sliceRows[y2 - ymin]);
+				}
+
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
-					maxValue = currentValue;
+					double currentValue = row[x];
+					double maxValue = currentValue;
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
 					
-					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					// neighbors in previous slice
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						for (int i = 0; i <= ymax - ymin; i++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++)
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] sliceRow = sliceRows[i];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								if (sliceRow[x2] > maxValue) maxValue = sliceRow[x2];
 						}
 					}
+					
+					// neighbors in previous row
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							if (prevRow[x2] > maxValue) maxValue = prevRow[x2];
+					}
+					
+					// neighbor in current row
+					if (x > 0)
+						if (row[x - 1] > maxValue) maxValue = row[x - 1];
 
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+					// add to queue if the voxel needs update
+					if (min(maxValue, maskRow[x]) > currentValue)
+						queue.add(new Cursor3D(x, y, z));
 				}
+				
+				// current row becomes previous row
+				double[] swap = prevRow;
+				prevRow = row;
+				row = swap;
 			}
 		} // end of pixel iteration
 
 	}
+	
+	/**
+	 * Reads the values of a row, multiplied by the sign.
+	 */
+	private static final void readRow(Image3D image, int y, int z, int sign, double[] buffer)
+	{
+		image.getRow(y, z, buffer);
+		if (sign < 0)
+		{
+			for (int x = 0; x < buffer.length; x++)
+				buffer[x] = -buffer[x];
+		}
+	}
+
+	/**
+	 * Writes the values of a row given as signed values, using the temporary
+	 * buffer to revert the sign.
+	 */
+	private static final void writeRow(Image3D image, int y, int z, int sign, double[] values, double[] tmp)
+	{
+		if (sign < 0)
+		{
+			for (int x = 0; x < values.length; x++)
+				tmp[x] = -values[x];
+			image.setRow(y, z, tmp);
+		}
+		else
+		{
+			image.setRow(y, z, values);
+		}
+	}
 
 	private void processQueue()
 	{
@@ -659,15 +808,16 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using next pixel in the queue,
-	 * using the 6-adjacency.
+	 * using the 6-adjacency. The values of the neighbors are read once, and
+	 * are used both for computing the new value and for updating the queue.
 	 */
 	private void processQueueC6()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
-		// the maximal value around current pixel
-		double value;
+		// the signed result values of the neighbors, or -INF outside image
+		double[] values = new double[6];
 		
 		while (!queue.isEmpty())
 		{
@@ -675,60 +825,60 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			int x = p.getX();
 			int y = p.getY();
 			int z = p.getZ();
-			value = result.getValue(x, y, z) * sign;
+			double currentValue = result.getValue(x, y, z) * sign;
+			
+			// read the values of the neighbors
+			values[0] = x > 0 ? result.getValue(x - 1, y, z) * sign : Double.NEGATIVE_INFINITY;
+			values[1] = x < sizeX - 1 ? result.getValue(x + 1, y, z) * sign : Double.NEGATIVE_INFINITY;
+			values[2] = y > 0 ? result.getValue(x, y - 1, z) * sign : Double.NEGATIVE_INFINITY;
+			values[3] = y < sizeY - 1 ? result.getValue(x, y + 1, z) * sign : Double.NEGATIVE_INFINITY;
+			values[4] = z > 0 ? result.getValue(x, y, z - 1) * sign : Double.NEGATIVE_INFINITY;
+			values[5] = z < sizeZ - 1 ? result.getValue(x, y, z + 1) * sign : Double.NEGATIVE_INFINITY;
 			
 			// compare with each one of the neighbors
-			if (x > 0) 
-				value = max(value, result.getValue(x - 1, y, z) * sign);
-			if (x < sizeX - 1) 
-				value = max(value, result.getValue(x + 1, y, z) * sign);
-			if (y > 0) 
-				value = max(value, result.getValue(x, y - 1, z) * sign);
-			if (y < sizeY - 1) 
-				value = max(value, result.getValue(x, y + 1, z) * sign);
-			if (z > 0) 
-				value = max(value, result.getValue(x, y, z - 1) * sign);
-			if (z < sizeZ - 1) 
-				value = max(value, result.getValue(x, y, z + 1) * sign);
+			double value = currentValue;
+			for (int i = 0; i < 6; i++)
+				if (values[i] > value) value = values[i];
 
 			// bound with mask value
 			value = min(value, mask.getValue(x, y, z) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.getValue(x, y, z) * sign) 
+			if (value <= currentValue) 
 				continue;
 			
 			// update result for current position
 			result.setValue(x, y, z, value * sign);
 
 			// Eventually add each neighbor
-			if (x > 0)
-				updateQueue(x - 1, y, z, value, sign);
-			if (x < sizeX - 1)
-				updateQueue(x + 1, y, z, value, sign);
-			if (y > 0)
-				updateQueue(x, y - 1, z, value, sign);
-			if (y < sizeY - 1)
-				updateQueue(x, y + 1, z, value, sign);
-			if (z > 0)
-				updateQueue(x, y, z - 1, value, sign);
-			if (z < sizeZ - 1)
-				updateQueue(x, y, z + 1, value, sign);
+			if (x > 0 && values[0] < value)
+				updateQueue(x - 1, y, z, value, values[0], sign);
+			if (x < sizeX - 1 && values[1] < value)
+				updateQueue(x + 1, y, z, value, values[1], sign);
+			if (y > 0 && values[2] < value)
+				updateQueue(x, y - 1, z, value, values[2], sign);
+			if (y < sizeY - 1 && values[3] < value)
+				updateQueue(x, y + 1, z, value, values[3], sign);
+			if (z > 0 && values[4] < value)
+				updateQueue(x, y, z - 1, value, values[4], sign);
+			if (z < sizeZ - 1 && values[5] < value)
+				updateQueue(x, y, z + 1, value, values[5], sign);
 		}
 		
 	}
 
 	/**
 	 * Update result image using next pixel in the queue,
-	 * using the 26-adjacency.
+	 * using the 26-adjacency. The values of the neighbors are read once, and
+	 * are used both for computing the new value and for updating the queue.
 	 */
 	private void processQueueC26()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
-		// the maximal value around current pixel
-		double value;
+		// the signed result values within the neighborhood
+		double[] values = new double[27];
 		
 		while (!queue.isEmpty()) 
 		{
@@ -736,7 +886,7 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			int x = p.getX();
 			int y = p.getY();
 			int z = p.getZ();
-			value = result.getValue(x, y, z) * sign;
+			double currentValue = result.getValue(x, y, z) * sign;
 			
 			// compute bounds of neighborhood
 			int xmin = max(x - 1, 0);
@@ -747,13 +897,17 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			int zmax = min(z + 1, sizeZ - 1);
 
 			// compare with each one of the neighbors
+			double value = currentValue;
+			int n = 0;
 			for (int z2 = zmin; z2 <= zmax; z2++) 
 			{
 				for (int y2 = ymin; y2 <= ymax; y2++) 
 				{
 					for (int x2 = xmin; x2 <= xmax; x2++) 
 					{
-						value = max(value, result.getValue(x2, y2, z2) * sign);
+						double neighborValue = result.getValue(x2, y2, z2) * sign;
+						values[n++] = neighborValue;
+						if (neighborValue > value) value = neighborValue;
 					}
 				}
 			}
@@ -762,20 +916,24 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			value = min(value, mask.getValue(x, y, z) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.getValue(x, y, z) * sign) 
+			if (value <= currentValue) 
 				continue;
 			
 			// update result for current position
 			result.setValue(x, y, z, value * sign);
 
-			// compare with each one of the neighbors
+			// compare with each one of the neighbors, the current voxel
+			// being skipped as its value is now equal to the new value
+			n = 0;
 			for (int z2 = zmin; z2 <= zmax; z2++) 
 			{
 				for (int y2 = ymin; y2 <= ymax; y2++) 
 				{
 					for (int x2 = xmin; x2 <= xmax; x2++) 
 					{
-						updateQueue(x2, y2, z2, value, sign);
+						double neighborValue = values[n++];
+						if (neighborValue < value && (x2 != x || y2 != y || z2 != z))
+							updateQueue(x2, y2, z2, value, neighborValue, sign);
 					}
 				}
 			}
@@ -783,18 +941,22 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	}
 
 	/**
-	 * Adds the current position to the queue if and only if the value 
-	 * <code>value<value> is greater than the value of the mask.
+	 * Adds the specified position to the queue if and only if the value 
+	 * <code>value</code>, bounded by the mask, is greater than the current
+	 * value of the result.
+	 * 
 	 * @param i column index
 	 * @param j row index
-	 * @param value value at (i,j) position
+	 * @param k slice index
+	 * @param value the signed value propagated to the position
+	 * @param resultValue the signed value of the result at the position
 	 * @param sign integer +1 or -1 to manage both erosions and dilations
 	 */
-	private void updateQueue(int i, int j, int k, double value, double sign) 
+	private void updateQueue(int i, int j, int k, double value, double resultValue, double sign) 
 	{
 		// update current value only if value is strictly greater
 		value = Math.min(value, mask.getValue(i, j, k) * sign);
-		if (value > result.getValue(i, j, k) * sign)
+		if (value > resultValue)
 		{
 			Cursor3D position = new Cursor3D(i, j, k);
 			queue.add(position);
@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import java.util.concurrent.ForkJoinPool;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Images3D;
+
+/**
+ * <p>
+ * Geodesic reconstruction for 3D stacks of any type, using several threads.
+ * </p>
+ * 
+ * <p>
+ * The stack is split into slabs of slices, or into bands of rows when the
+ * stack does not contain enough slices. Each slab is reconstructed
+ * concurrently using the hybrid algorithm restricted to the slab. Then
+ * boundary updates are exchanged between neighbor slabs, and propagated within
+ * each slab, until no slab is modified any more. The result is identical to
+ * the one obtained with {@link GeodesicReconstruction3DHybrid1Image3D}.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	GeodesicReconstruction3DAlgo algo = new GeodesicReconstruction3DParallel(
+ *			GeodesicReconstructionType.BY_DILATION, 26);
+ *	ImageStack result = algo.applyTo(marker, mask);
+ *}</pre>
+ * 
+ * @see GeodesicReconstruction3DHybrid1Image3D
+ * @see GeodesicReconstructionParallel
+ * @author dlegland
+ *
+ */
+public class GeodesicReconstruction3DParallel extends GeodesicReconstruction3DAlgoStub
+{
+	// ==================================================
+	// Class variables 
+	
+	GeodesicReconstructionType reconstructionType = GeodesicReconstructionType.BY_DILATION;
+	
+	/**
+	 * The pool used for processing slabs concurrently.
+	 */
+	ForkJoinPool pool;
+	
+
+	// ==================================================
+	// Constructors 
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
+	 * using the default connectivity 6 and the common pool.
+	 */
+	public GeodesicReconstruction3DParallel()
+	{
+		this(GeodesicReconstructionType.BY_DILATION, 6);
+	}
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and using the connectivity 6.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 */
+	public GeodesicReconstruction3DParallel(GeodesicReconstructionType type) 
+	{
+		this(type, 6);
+	}
+
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and the connectivity to use.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 3D connectivity to use (either 6 or 26)
+	 */
+	public GeodesicReconstruction3DParallel(GeodesicReconstructionType type, int connectivity) 
+	{
+		this(type, connectivity, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, the connectivity, and the pool
+	 * used for concurrent processing.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 3D connectivity to use (either 6 or 26)
+	 * @param pool
+	 *            the pool used for processing slabs concurrently
+	 */
+	public GeodesicReconstruction3DParallel(GeodesicReconstructionType type,
+			int connectivity, ForkJoinPool pool)
+	{
+		this.reconstructionType = type;
+		this.connectivity = connectivity;
+		this.pool = pool;
+	}
+
+	
+	// ==================================================
+	// Accesors and mutators
+	
+	/**
+	 * @return the reconstructionType
+	 */
+	public GeodesicReconstructionType getReconstructionType()
+	{
+		return reconstructionType;
+	}
+
+	/**
+	 * @param reconstructionType the reconstructionType to set
+	 */
+	public void setReconstructionType(GeodesicReconstructionType reconstructionType) 
+	{
+		this.reconstructionType = reconstructionType;
+	}
+
+	
+	// ==================================================
+	// Methods implementing the GeodesicReconstruction3DAlgo interface
+	
+	/**
+	 * Run the geodesic reconstruction algorithm using the specified images
+	 * as argument.
+	 */
+	public ImageStack applyTo(ImageStack marker, ImageStack mask)
+	{
+		return applyTo(marker, mask, null);
+	}
+
+	/**
+	 * Run the geodesic reconstruction algorithm using the specified images
+	 * as argument. As in {@link GeodesicReconstructionByDilation3DGray8},
+	 * voxels outside of the binary mask are set to 0 in the result, and are
+	 * not used to update their neighbors.
+	 */
+	public ImageStack applyTo(ImageStack marker, ImageStack mask, ImageStack binaryMask)
+	{
+		// Check sizes are consistent
+		int sizeX = marker.getWidth();
+		int sizeY = marker.getHeight();
+		int sizeZ = marker.getSize();
+		if (!Images3D.isSameSize(marker, mask)) 
+		{
+			throw new IllegalArgumentException("Marker and Mask images must have the same size");
+		}
+		if (binaryMask != null && !Images3D.isSameSize(marker, binaryMask)) 
+		{
+			throw new IllegalArgumentException("Marker and binary mask images must have the same size");
+		}
+		
+		// Check connectivity has a correct value
+		if (connectivity != 6 && connectivity != 26)
+		{
+			throw new RuntimeException(
+					"Connectivity for stacks must be either 6 or 26, not "
+							+ connectivity);
+		}
+
+		// Initialize the result with the minimum value of marker and mask,
+		// after multiplication by the sign of the reconstruction. Voxels
+		// outside of the binary mask are set to negative infinity in both
+		// arrays, such that they never change nor propagate.
+		showStatus("Geod. Rec. Init");
+		float sign = this.reconstructionType.getSign();
+		int nPixels = sizeX * sizeY;
+		float[][] resultArray = new float[sizeZ][nPixels];
+		float[][] maskArray = new float[sizeZ][nPixels];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor markerSlice = marker.getProcessor(z + 1);
+			ImageProcessor maskSlice = mask.getProcessor(z + 1);
+			ImageProcessor binarySlice = binaryMask != null ? binaryMask.getProcessor(z + 1) : null;
+			float[] res = resultArray[z];
+			float[] msk = maskArray[z];
+			for (int i = 0; i < nPixels; i++)
+			{
+				if (binarySlice != null && binarySlice.getf(i) == 0)
+				{
+					msk[i] = Float.NEGATIVE_INFINITY;
+					res[i] = Float.NEGATIVE_INFINITY;
+					continue;
+				}
+				msk[i] = maskSlice.getf(i) * sign;
+				res[i] = Math.min(markerSlice.getf(i) * sign, msk[i]);
+			}
+		}
+		
+		showStatus("Geod. Rec. Tiles");
+		TiledReconstruction algo = new TiledReconstruction(resultArray,
+				maskArray, sizeX, sizeY, connectivity);
+		int nSteps = algo.run(pool, pool.getParallelism());
+		trace("Number of exchange steps: " + nSteps);
+		
+		// Convert to a stack with the same type as the mask
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, mask.getBitDepth());
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor resultSlice = result.getProcessor(z + 1);
+			ImageProcessor binarySlice = binaryMask != null ? binaryMask.getProcessor(z + 1) : null;
+			float[] res = resultArray[z];
+			for (int i = 0; i < nPixels; i++)
+			{
+				if (binarySlice != null && binarySlice.getf(i) == 0)
+					continue;
+				resultSlice.setf(i, res[i] * sign);
+			}
+		}
+		return result;
+	}
+}
@@ -24,10 +24,9 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import inra.ijpb.data.LongRingBuffer;
 import inra.ijpb.data.image.Images3D;
 
-import java.util.LinkedList;
-
 
 /**
  * Geodesic reconstruction by dilation for 3D stacks of byte processors, using
@@ -50,7 +49,11 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 	/** image depth */
 	int size3 = 0;
 
-	LinkedList<int[]> queue;
+	/**
+	 * the queue containing the positions that need update, packed as
+	 * (z << 32) | (y * size1 + x)
+	 */
+	LongRingBuffer queue;
 	
 	/**
 	 * The flag indicating whether the result image has been modified during
@@ -610,7 +613,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 		byte[] slice2;
 		byte[] maskSlice;
 
-		this.queue = new LinkedList<int[]>();
+		this.queue = new LongRingBuffer();
 
 		// Iterate over pixels
 		for (int z = 0; z < size3; z++)
@@ -678,8 +681,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 								if (neighborValue < maxValue
 										&& neighborValue < maskValue)
 								{
-									int[] pos = {x2, y2, z2};
-									queue.addLast(pos);
+									queue.add(((long) z2 << 32) | index);
 								}
 							}
 						}
@@ -856,7 +858,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 		byte[] slice2;
 		byte[] maskSlice;
 
-		this.queue = new LinkedList<int[]>();
+		this.queue = new LongRingBuffer();
 
 		// Iterate over voxels
 		for (int z = size3 - 1; z >= 0; z--)
@@ -930,8 +932,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 								int maskValue = maskSlice[index] & 0x00FF;
 								if (neighborValue < maxValue && neighborValue < maskValue)
 								{
-									int[] pos = {x2, y2, z2};
-									queue.addLast(pos);
+									queue.add(((long) z2 << 32) | index);
 								}
 							}
 						}
@@ -957,12 +958,16 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 		while (!this.queue.isEmpty())
 		{
 			showProgress(iter, total);
-			trace("iter " + (iter++) + " over " + total);
+			if (verbose)
+			{
+				trace("iter " + iter + " over " + total);
+			}
+			iter++;
 			
-			int[] p = this.queue.pollFirst();
-			int x = p[0];
-			int y = p[1];
-			int z = p[2];
+			long packed = this.queue.poll();
+			int z = (int) (packed >>> 32);
+			int y = ((int) packed) / size1;
+			int x = ((int) packed) - y * size1;
 
 			slice = (byte[]) stack[z];
 			maskSlice = (byte[]) maskStack[z];
@@ -1013,8 +1018,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 
 						if (value < maxValue && value < maskValue)
 						{
-							int[] pos = { x2, y2, z2 };
-							queue.addLast(pos);
+							queue.add(((long) z2 << 32) | index);
 							total++;
 						}
 					}
@@ -1040,12 +1044,16 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 		while (!this.queue.isEmpty())
 		{
 			showProgress(iter, total);
-			trace("iter " + (iter++) + " over " + total);
+			if (verbose)
+			{
+				trace("iter " + iter + " over " + total);
+			}
+			iter++;
 			
-			int[] p = this.queue.pollFirst();
-			int x = p[0];
-			int y = p[1];
-			int z = p[2];
+			long packed = this.queue.poll();
+			int z = (int) (packed >>> 32);
+			int y = ((int) packed) / size1;
+			int x = ((int) packed) - y * size1;
 			
 			if ( binaryMask.getVoxel(x, y, z) == 0 )
 				continue;
@@ -1099,8 +1107,7 @@ public class GeodesicReconstructionByDilation3DGray8 extends GeodesicReconstruct
 
 						if (value < maxValue && value < maskValue)
 						{
-							int[] pos = {x2, y2, z2};
-							queue.addLast(pos);
+							queue.add(((long) z2 << 32) | index);
 							total++;
 						}
 					}
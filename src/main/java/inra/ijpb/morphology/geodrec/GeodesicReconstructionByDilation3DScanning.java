@@ -210,33 +210,20 @@ public class GeodesicReconstructionByDilation3DScanning extends GeodesicReconstr
 		this.result = Images3D.createWrapper(this.resultStack);
 
 		// Initialize the result image with the minimum value of marker and mask
-		// images
-		if (this.maskStack.getBitDepth() == 32)
-		{
-			// Initialize float result stack
-			for (int z = 0; z < sizeZ; z++) 
-			{
-				for (int y = 0; y < sizeY; y++)
-				{
-					for (int x = 0; x < sizeX; x++)
-					{
-						result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-					}
-				}
-			}
-		}
-		else
+		// images, row by row
+		double[] markerRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++) 
 		{
-			// Initialize integer result stack
-			for (int z = 0; z < sizeZ; z++) 
+			for (int y = 0; y < sizeY; y++)
 			{
-				for (int y = 0; y < sizeY; y++) 
+				marker.getRow(y, z, markerRow);
+				mask.getRow(y, z, maskRow);
+				for (int x = 0; x < sizeX; x++)
 				{
-					for (int x = 0; x < sizeX; x++) 
-					{
-						result.set(x, y, z, min(marker.get(x, y, z), mask.get(x, y, z)));
-					}
+					markerRow[x] = min(markerRow[x], maskRow[x]);
 				}
+				result.setRow(y, z, markerRow);
 			}
 		}
 	}
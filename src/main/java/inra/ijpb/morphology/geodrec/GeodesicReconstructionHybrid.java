@@ -24,13 +24,10 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-
 import ij.IJ;
 import ij.process.ImageProcessor;
 import ij.process.FloatProcessor;
-import inra.ijpb.data.Cursor2D;
+import inra.ijpb.data.LongRingBuffer;
 
 /**
  * <p>
@@ -65,8 +62,8 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 	/** image height */
 	int sizeY = 0;
 
-	/** the queue containing the positions that need update */
-	Deque<Cursor2D> queue;
+	/** the queue containing the linear indices of pixels that need update */
+	LongRingBuffer queue;
 
 	
 	// ==================================================
@@ -168,7 +165,7 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 							+ connectivity);
 		}
 
-		queue = new ArrayDeque<Cursor2D>();
+		queue = new LongRingBuffer();
 		
 		boolean isInteger = !(mask instanceof FloatProcessor);
 
@@ -756,30 +753,30 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 		
 		while (!queue.isEmpty())
 		{
-			Cursor2D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			value = result.get(x, y) * sign;
+			int index = (int) queue.poll();
+			int y = index / sizeX;
+			int x = index - y * sizeX;
+			value = result.get(index) * sign;
 			
 			// compare with each one of the four neighbors
 			if (x > 0) 
-				value = max(value, result.get(x - 1, y) * sign);
+				value = max(value, result.get(index - 1) * sign);
 			if (x < this.sizeX - 1) 
-				value = max(value, result.get(x + 1, y) * sign);
+				value = max(value, result.get(index + 1) * sign);
 			if (y > 0) 
-				value = max(value, result.get(x, y - 1) * sign);
+				value = max(value, result.get(index - sizeX) * sign);
 			if (y < this.sizeY - 1) 
-				value = max(value, result.get(x, y + 1) * sign);
+				value = max(value, result.get(index + sizeX) * sign);
 
 			// bound with mask value
-			value = min(value, mask.get(x, y) * sign);
+			value = min(value, mask.get(index) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.get(x, y) * sign) 
+			if (value <= result.get(index) * sign) 
 				continue;
 			
 			// update result for current position
-			result.set(x, y, value * sign);
+			result.set(index, value * sign);
 
 			// Eventually add each neighbor
 			if (x > 0)
@@ -807,30 +804,30 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor2D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			value = result.getf(x, y) * sign;
+			int index = (int) queue.poll();
+			int y = index / sizeX;
+			int x = index - y * sizeX;
+			value = result.getf(index) * sign;
 			
 			// compare with each one of the four neighbors
 			if (x > 0) 
-				value = max(value, result.getf(x - 1, y) * sign);
+				value = max(value, result.getf(index - 1) * sign);
 			if (x < this.sizeX - 1) 
-				value = max(value, result.getf(x + 1, y) * sign);
+				value = max(value, result.getf(index + 1) * sign);
 			if (y > 0) 
-				value = max(value, result.getf(x, y - 1) * sign);
+				value = max(value, result.getf(index - sizeX) * sign);
 			if (y < this.sizeY - 1) 
-				value = max(value, result.getf(x, y + 1) * sign);
+				value = max(value, result.getf(index + sizeX) * sign);
 
 			// bound with mask value
-			value = min(value, mask.getf(x, y) * sign);
+			value = min(value, mask.getf(index) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.getf(x, y) * sign) 
+			if (value <= result.getf(index) * sign) 
 				continue;
 			
 			// update result for current position
-			result.setf(x, y, value * sign);
+			result.setf(index, value * sign);
 
 			// Eventually add each neighbor
 			if (x > 0)
@@ -860,10 +857,10 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 		{
 //			System.out.println("  queue size: " + queue.size());
 			
-			Cursor2D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			value = result.get(x, y) * sign;
+			int index = (int) queue.poll();
+			int y = index / sizeX;
+			int x = index - y * sizeX;
+			value = result.get(index) * sign;
 			
 			// compute bounds of neighborhood
 			int xmin = max(x - 1, 0);
@@ -876,19 +873,19 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 			{
 				for (int x2 = xmin; x2 <= xmax; x2++)
 				{
-					value = max(value, result.get(x2, y2) * sign);
+					value = max(value, result.get(y2 * sizeX + x2) * sign);
 				}
 			}
 			
 			// bound with mask value
-			value = min(value, mask.get(x, y) * sign);
+			value = min(value, mask.get(index) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.get(x, y) * sign) 
+			if (value <= result.get(index) * sign) 
 				continue;
 			
 			// update result for current position
-			result.set(x, y, value * sign);
+			result.set(index, value * sign);
 
 			// compare with each one of the neighbors
 			for (int y2 = ymin; y2 <= ymax; y2++) 
@@ -917,10 +914,10 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 		{
 //			System.out.println("  queue size: " + queue.size());
 			
-			Cursor2D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			value = result.getf(x, y) * sign;
+			int index = (int) queue.poll();
+			int y = index / sizeX;
+			int x = index - y * sizeX;
+			value = result.getf(index) * sign;
 			
 			// compute bounds of neighborhood
 			int xmin = max(x - 1, 0);
@@ -933,19 +930,19 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 			{
 				for (int x2 = xmin; x2 <= xmax; x2++)
 				{
-					value = max(value, result.getf(x2, y2) * sign);
+					value = max(value, result.getf(y2 * sizeX + x2) * sign);
 				}
 			}
 			
 			// bound with mask value
-			value = min(value, mask.getf(x, y) * sign);
+			value = min(value, mask.getf(index) * sign);
 			
 			// if no update is needed, continue to next item in queue
-			if (value <= result.getf(x, y) * sign) 
+			if (value <= result.getf(index) * sign) 
 				continue;
 			
 			// update result for current position
-			result.setf(x, y, value * sign);
+			result.setf(index, value * sign);
 
 			// compare with each one of the neighbors
 			for (int y2 = ymin; y2 <= ymax; y2++) 
@@ -968,13 +965,13 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 	 */
 	private void updateQueue(int x, int y, int value, int sign) {
 		// update current value only if value is strictly greater
-		int maskValue = mask.get(x, y) * sign;
+		int index = y * sizeX + x;
+		int maskValue = mask.get(index) * sign;
 		value = Math.min(value, maskValue);
 		
-		int resultValue = result.get(x, y) * sign; 
+		int resultValue = result.get(index) * sign; 
 		if (value > resultValue) {
-			Cursor2D position = new Cursor2D(x, y);
-			queue.add(position);
+			queue.add(index);
 		}
 	}
 
@@ -988,13 +985,13 @@ public class GeodesicReconstructionHybrid extends GeodesicReconstructionAlgoStub
 	 */
 	private void updateQueue(int x, int y, float value, float sign) {
 		// update current value only if value is strictly greater
-		float maskValue = mask.getf(x, y) * sign;
+		int index = y * sizeX + x;
+		float maskValue = mask.getf(index) * sign;
 		value = Math.min(value, maskValue);
 		
-		float resultValue = result.getf(x, y) * sign; 
+		float resultValue = result.getf(index) * sign; 
 		if (value > resultValue) {
-			Cursor2D position = new Cursor2D(x, y);
-			queue.add(position);
+			queue.add(index);
 		}
 	}
 
@@ -0,0 +1,210 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import java.util.concurrent.ForkJoinPool;
+
+import ij.process.ImageProcessor;
+
+/**
+ * <p>
+ * Geodesic reconstruction for planar images, using several threads.
+ * </p>
+ * 
+ * <p>
+ * The image is split into horizontal bands of rows. Each band is reconstructed
+ * concurrently using the hybrid algorithm (forward scan, backward scan and
+ * processing queue) restricted to the band. Then boundary updates are
+ * exchanged between neighbor bands, and propagated within each band, until no
+ * band is modified any more. The result is identical to the one obtained with
+ * {@link GeodesicReconstructionHybrid}, for 8-bit, 16-bit and floating point
+ * images.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	GeodesicReconstructionAlgo algo = new GeodesicReconstructionParallel(
+ *			GeodesicReconstructionType.BY_DILATION, 8);
+ *	ImageProcessor result = algo.applyTo(marker, mask);
+ *}</pre>
+ * 
+ * @see GeodesicReconstructionHybrid
+ * @see GeodesicReconstruction3DParallel
+ * @author dlegland
+ *
+ */
+public class GeodesicReconstructionParallel extends GeodesicReconstructionAlgoStub 
+{
+	// ==================================================
+	// Class variables 
+	
+	GeodesicReconstructionType reconstructionType = GeodesicReconstructionType.BY_DILATION;
+
+	/**
+	 * The pool used for processing bands concurrently.
+	 */
+	ForkJoinPool pool;
+	
+
+	// ==================================================
+	// Constructors 
+		
+	/**
+	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
+	 * using the default connectivity 4 and the common pool.
+	 */
+	public GeodesicReconstructionParallel()
+	{
+		this(GeodesicReconstructionType.BY_DILATION, 4);
+	}
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and using the connectivity 4.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 */
+	public GeodesicReconstructionParallel(GeodesicReconstructionType type) 
+	{
+		this(type, 4);
+	}
+
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and the connectivity to use.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 2D connectivity to use (either 4 or 8)
+	 */
+	public GeodesicReconstructionParallel(GeodesicReconstructionType type, int connectivity) 
+	{
+		this(type, connectivity, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, the connectivity, and the pool
+	 * used for concurrent processing.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 2D connectivity to use (either 4 or 8)
+	 * @param pool
+	 *            the pool used for processing bands concurrently
+	 */
+	public GeodesicReconstructionParallel(GeodesicReconstructionType type,
+			int connectivity, ForkJoinPool pool)
+	{
+		this.reconstructionType = type;
+		this.connectivity = connectivity;
+		this.pool = pool;
+	}
+
+	
+	// ==================================================
+	// Accesors and mutators
+	
+	/**
+	 * @return the reconstructionType
+	 */
+	public GeodesicReconstructionType getReconstructionType()
+	{
+		return reconstructionType;
+	}
+
+	/**
+	 * @param reconstructionType the reconstructionType to set
+	 */
+	public void setReconstructionType(GeodesicReconstructionType reconstructionType) 
+	{
+		this.reconstructionType = reconstructionType;
+	}
+
+	
+	// ==================================================
+	// Methods implementing the GeodesicReconstruction interface
+	
+	/**
+	 * Run the geodesic reconstruction algorithm using the specified images
+	 * as argument.
+	 */
+	public ImageProcessor applyTo(ImageProcessor marker, ImageProcessor mask)
+	{
+		// Check sizes are consistent
+		int sizeX = marker.getWidth();
+		int sizeY = marker.getHeight();
+		if (sizeX != mask.getWidth() || sizeY != mask.getHeight()) 
+		{
+			throw new IllegalArgumentException("Marker and Mask images must have the same size");
+		}
+		
+		// Check connectivity has a correct value
+		if (connectivity != 4 && connectivity != 8)
+		{
+			throw new RuntimeException(
+					"Connectivity for planar images must be either 4 or 8, not "
+							+ connectivity);
+		}
+
+		// Initialize the result with the minimum value of marker and mask,
+		// after multiplication by the sign of the reconstruction
+		if (showStatus)
+		{
+			this.fireStatusChanged(this, "Geod. Rec. Init");
+		}
+		float sign = this.reconstructionType.getSign();
+		int nPixels = sizeX * sizeY;
+		float[] resultArray = new float[nPixels];
+		float[] maskArray = new float[nPixels];
+		for (int i = 0; i < nPixels; i++)
+		{
+			maskArray[i] = mask.getf(i) * sign;
+			resultArray[i] = Math.min(marker.getf(i) * sign, maskArray[i]);
+		}
+		
+		if (showStatus)
+		{
+			this.fireStatusChanged(this, "Geod. Rec. Tiles");
+		}
+		TiledReconstruction algo = new TiledReconstruction(
+				new float[][] { resultArray }, new float[][] { maskArray },
+				sizeX, sizeY, connectivity);
+		int nSteps = algo.run(pool, pool.getParallelism());
+		if (verbose)
+		{
+			System.out.println("Number of exchange steps: " + nSteps);
+		}
+		
+		// Convert to an image with the same type as the mask
+		ImageProcessor result = mask.createProcessor(sizeX, sizeY);
+		for (int i = 0; i < nPixels; i++)
+		{
+			result.setf(i, resultArray[i] * sign);
+		}
+		return result;
+	}
+}
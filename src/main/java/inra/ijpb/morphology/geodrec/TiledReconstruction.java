@@ -0,0 +1,559 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import inra.ijpb.data.LongRingBuffer;
+
+/**
+ * Computes a geodesic reconstruction by dilation on an image split into
+ * tiles, the tiles being processed concurrently.
+ * 
+ * The image is split into slabs along the y or the z axis. Each tile is first
+ * reconstructed independently, using a forward scan, a backward scan that
+ * initializes a processing queue, and the processing of the queue, neighbors
+ * outside the tile being ignored. Then the algorithm alternates exchange
+ * steps, that collect the boundary elements of each tile that can be updated
+ * from the neighbor tiles, and propagation steps, that process the queue of
+ * each tile from these elements. The iterations stop when no tile can be
+ * updated from its neighbors. As each tile only writes its own elements, and
+ * neighbor elements are only read during exchange steps, no synchronization
+ * is required within a step.
+ * 
+ * Values are stored as floats, the mask and the result being multiplied by -1
+ * beforehand to compute reconstructions by erosion. Elements can be kept
+ * unchanged by setting their mask value equal to their initial value.
+ * 
+ * @see GeodesicReconstructionParallel
+ * @see GeodesicReconstruction3DParallel
+ * @author dlegland
+ */
+class TiledReconstruction
+{
+	/** The minimal size of a tile along the split axis. */
+	private static final int MIN_TILE_SIZE = 16;
+	
+	/** The result array, modified in place, indexed by slice then by y * sizeX + x. */
+	final float[][] result;
+	
+	/** The mask array, with the same layout as the result. */
+	final float[][] mask;
+	
+	final int sizeX;
+	final int sizeY;
+	final int sizeZ;
+	
+	/** true for planar neighborhoods, that do not need to check z bounds */
+	final boolean planar;
+	
+	/**
+	 * The shifts of the neighbors. The first half contains the neighbors that
+	 * precede the reference element in raster order, the second half contains
+	 * the opposite shifts, in the same order.
+	 */
+	final int[] dx;
+	final int[] dy;
+	final int[] dz;
+	
+	/** The shifts of the neighbors within a slice, equal to dy * sizeX + dx */
+	final int[] offsets;
+
+	/**
+	 * Creates a new tiled reconstruction.
+	 * 
+	 * @param result
+	 *            the array of marker values, that will contain the
+	 *            reconstruction
+	 * @param mask
+	 *            the array of mask values
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param connectivity
+	 *            the connectivity, either 4 or 8 for planar images, or 6 or 26
+	 *            for 3D images
+	 */
+	TiledReconstruction(float[][] result, float[][] mask, int sizeX, int sizeY, int connectivity)
+	{
+		this.result = result;
+		this.mask = mask;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = result.length;
+		this.planar = connectivity == 4 || connectivity == 8;
+		
+		// keep the neighbors that precede the reference element in raster order
+		int[] shifts = new int[13 * 3];
+		int nShifts = 0;
+		for (int z = planar ? 0 : -1; z <= 0; z++)
+		{
+			for (int y = -1; y <= 1; y++)
+			{
+				for (int x = -1; x <= 1; x++)
+				{
+					boolean before = z < 0 || (z == 0 && (y < 0 || (y == 0 && x < 0)));
+					int norm = Math.abs(x) + Math.abs(y) + Math.abs(z);
+					boolean adjacent = connectivity == 8 || connectivity == 26 || norm == 1;
+					if (before && adjacent)
+					{
+						shifts[nShifts * 3] = x;
+						shifts[nShifts * 3 + 1] = y;
+						shifts[nShifts * 3 + 2] = z;
+						nShifts++;
+					}
+				}
+			}
+		}
+		
+		// append opposite shifts
+		this.dx = new int[nShifts * 2];
+		this.dy = new int[nShifts * 2];
+		this.dz = new int[nShifts * 2];
+		this.offsets = new int[nShifts * 2];
+		for (int i = 0; i < nShifts; i++)
+		{
+			dx[i] = shifts[i * 3];
+			dy[i] = shifts[i * 3 + 1];
+			dz[i] = shifts[i * 3 + 2];
+			dx[i + nShifts] = -dx[i];
+			dy[i + nShifts] = -dy[i];
+			dz[i + nShifts] = -dz[i];
+		}
+		for (int i = 0; i < nShifts * 2; i++)
+		{
+			offsets[i] = dy[i] * sizeX + dx[i];
+		}
+	}
+	
+	/**
+	 * Computes the reconstruction, using at most the specified number of
+	 * tiles.
+	 * 
+	 * @param pool
+	 *            the pool used for processing tiles concurrently
+	 * @param maxTileNumber
+	 *            the maximal number of tiles
+	 * @return the number of exchange steps that were performed
+	 */
+	int run(ForkJoinPool pool, int maxTileNumber)
+	{
+		final Tile[] tiles = createTiles(maxTileNumber);
+		
+		// reconstruct each tile independently
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(tiles.length);
+		for (final Tile tile : tiles)
+		{
+			tasks.add(new Callable<Object>()
+			{
+				public Object call()
+				{
+					tile.reconstruct();
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, tasks);
+		if (tiles.length == 1)
+		{
+			return 0;
+		}
+		
+		// alternate exchanges between tiles and propagations within tiles
+		int nSteps = 0;
+		while (true)
+		{
+			tasks.clear();
+			for (final Tile tile : tiles)
+			{
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						tile.collectSeeds();
+						return null;
+					}
+				});
+			}
+			invokeAll(pool, tasks);
+			nSteps++;
+
+			tasks.clear();
+			for (final Tile tile : tiles)
+			{
+				if (tile.nSeeds == 0)
+				{
+					continue;
+				}
+				tasks.add(new Callable<Object>()
+				{
+					public Object call()
+					{
+						tile.propagateSeeds();
+						return null;
+					}
+				});
+			}
+			if (tasks.isEmpty())
+			{
+				return nSteps;
+			}
+			invokeAll(pool, tasks);
+		}
+	}
+	
+	/**
+	 * Splits the image into slabs along the z axis if it contains enough
+	 * slices, along the y axis otherwise.
+	 */
+	private Tile[] createTiles(int maxTileNumber)
+	{
+		maxTileNumber = Math.max(maxTileNumber, 1);
+		boolean alongZ = !planar && sizeZ >= MIN_TILE_SIZE * maxTileNumber;
+		int size = alongZ ? sizeZ : sizeY;
+		int nTiles = Math.max(Math.min(maxTileNumber, size / MIN_TILE_SIZE), 1);
+		
+		Tile[] tiles = new Tile[nTiles];
+		for (int i = 0; i < nTiles; i++)
+		{
+			int start = (int) ((long) size * i / nTiles);
+			int end = (int) ((long) size * (i + 1) / nTiles);
+			if (alongZ)
+			{
+				tiles[i] = new Tile(0, sizeY, start, end);
+			}
+			else
+			{
+				tiles[i] = new Tile(start, end, 0, sizeZ);
+			}
+		}
+		return tiles;
+	}
+	
+	/**
+	 * Runs the tasks within the pool, and waits for their completion.
+	 */
+	private static void invokeAll(ForkJoinPool pool, List<Callable<Object>> tasks)
+	{
+		try
+		{
+			for (Future<Object> future : pool.invokeAll(tasks))
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+	
+	/**
+	 * A box of the image that contains full rows, and its processing queue.
+	 * Positions are packed as (z << 32) | (y * sizeX + x).
+	 */
+	private final class Tile
+	{
+		final int y0;
+		final int y1;
+		final int z0;
+		final int z1;
+		
+		final LongRingBuffer queue = new LongRingBuffer();
+		
+		/** the positions and values collected from neighbor tiles */
+		long[] seeds = new long[0];
+		float[] seedValues = new float[0];
+		int nSeeds = 0;
+		
+		Tile(int y0, int y1, int z0, int z1)
+		{
+			this.y0 = y0;
+			this.y1 = y1;
+			this.z0 = z0;
+			this.z1 = z1;
+		}
+		
+		/**
+		 * Reconstructs the tile independently of its neighbors.
+		 */
+		void reconstruct()
+		{
+			forwardScan();
+			backwardScan();
+			processQueue();
+		}
+		
+		/**
+		 * Collects the boundary elements of the tile whose value can be
+		 * increased by a neighbor from another tile.
+		 */
+		void collectSeeds()
+		{
+			nSeeds = 0;
+			if (y0 > 0)
+				collectSeeds(y0, z0, z1);
+			if (y1 < sizeY)
+				collectSeeds(y1 - 1, z0, z1);
+			if (z0 > 0)
+				collectSlice(z0);
+			if (z1 < sizeZ)
+				collectSlice(z1 - 1);
+		}
+		
+		private void collectSlice(int z)
+		{
+			for (int y = y0; y < y1; y++)
+			{
+				collectSeeds(y, z, z + 1);
+			}
+		}
+
+		private void collectSeeds(int y, int zmin, int zmax)
+		{
+			final int nNeighbors = dx.length;
+			for (int z = zmin; z < zmax; z++)
+			{
+				float[] resSlice = result[z];
+				float[] maskSlice = mask[z];
+				for (int x = 0; x < sizeX; x++)
+				{
+					int index = y * sizeX + x;
+					float value = resSlice[index];
+					float maskValue = maskSlice[index];
+					if (value >= maskValue)
+					{
+						continue;
+					}
+					
+					// maximum over neighbors within image but outside tile
+					float maxValue = value;
+					for (int i = 0; i < nNeighbors; i++)
+					{
+						int x2 = x + dx[i];
+						int y2 = y + dy[i];
+						int z2 = z + dz[i];
+						if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0 || z2 >= sizeZ)
+							continue;
+						if (contains(x2, y2, z2))
+							continue;
+						maxValue = Math.max(maxValue, result[z2][index + offsets[i]]);
+					}
+					
+					maxValue = Math.min(maxValue, maskValue);
+					if (maxValue > value)
+					{
+						addSeed(((long) z << 32) | index, maxValue);
+					}
+				}
+			}
+		}
+		
+		private void addSeed(long position, float value)
+		{
+			if (nSeeds == seeds.length)
+			{
+				int newSize = Math.max(nSeeds * 2, 16);
+				seeds = Arrays.copyOf(seeds, newSize);
+				seedValues = Arrays.copyOf(seedValues, newSize);
+			}
+			seeds[nSeeds] = position;
+			seedValues[nSeeds] = value;
+			nSeeds++;
+		}
+		
+		/**
+		 * Updates the collected boundary elements, and propagates the new
+		 * values within the tile.
+		 */
+		void propagateSeeds()
+		{
+			for (int i = 0; i < nSeeds; i++)
+			{
+				long position = seeds[i];
+				int z = (int) (position >>> 32);
+				int index = (int) position;
+				if (seedValues[i] > result[z][index])
+				{
+					result[z][index] = seedValues[i];
+					queue.add(position);
+				}
+			}
+			nSeeds = 0;
+			processQueue();
+		}
+		
+		/**
+		 * Updates each element from the neighbors that precede it in raster
+		 * order.
+		 */
+		private void forwardScan()
+		{
+			final int nNeighbors = dx.length / 2;
+			for (int z = z0; z < z1; z++)
+			{
+				float[] resSlice = result[z];
+				float[] maskSlice = mask[z];
+				for (int y = y0; y < y1; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int index = y * sizeX + x;
+						boolean interior = isInterior(x, y, z);
+						
+						float value = resSlice[index];
+						for (int i = 0; i < nNeighbors; i++)
+						{
+							if (interior || contains(x + dx[i], y + dy[i], z + dz[i]))
+							{
+								value = Math.max(value, result[z + dz[i]][index + offsets[i]]);
+							}
+						}
+						
+						value = Math.min(value, maskSlice[index]);
+						if (value > resSlice[index])
+						{
+							resSlice[index] = value;
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Updates each element from the neighbors that follow it in raster
+		 * order, and adds to the queue the elements that can update one of
+		 * their following neighbors.
+		 */
+		private void backwardScan()
+		{
+			final int nNeighbors = dx.length;
+			final int start = nNeighbors / 2;
+			for (int z = z1 - 1; z >= z0; z--)
+			{
+				float[] resSlice = result[z];
+				float[] maskSlice = mask[z];
+				for (int y = y1 - 1; y >= y0; y--)
+				{
+					for (int x = sizeX - 1; x >= 0; x--)
+					{
+						int index = y * sizeX + x;
+						boolean interior = isInterior(x, y, z);
+						
+						float value = resSlice[index];
+						for (int i = start; i < nNeighbors; i++)
+						{
+							if (interior || contains(x + dx[i], y + dy[i], z + dz[i]))
+							{
+								value = Math.max(value, result[z + dz[i]][index + offsets[i]]);
+							}
+						}
+						
+						value = Math.min(value, maskSlice[index]);
+						if (value > resSlice[index])
+						{
+							resSlice[index] = value;
+						}
+						value = resSlice[index];
+						
+						// enqueue the current element if it can update a following neighbor
+						for (int i = start; i < nNeighbors; i++)
+						{
+							if (interior || contains(x + dx[i], y + dy[i], z + dz[i]))
+							{
+								int z2 = z + dz[i];
+								int index2 = index + offsets[i];
+								float value2 = result[z2][index2];
+								if (value2 < value && value2 < mask[z2][index2])
+								{
+									queue.add(((long) z << 32) | index);
+									break;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Propagates the values of the elements in the queue to their
+		 * neighbors within the tile, until the queue is empty.
+		 */
+		private void processQueue()
+		{
+			final int nNeighbors = dx.length;
+			while (!queue.isEmpty())
+			{
+				long position = queue.poll();
+				int z = (int) (position >>> 32);
+				int index = (int) position;
+				int y = index / sizeX;
+				int x = index - y * sizeX;
+				boolean interior = isInterior(x, y, z);
+				float value = result[z][index];
+				
+				for (int i = 0; i < nNeighbors; i++)
+				{
+					if (interior || contains(x + dx[i], y + dy[i], z + dz[i]))
+					{
+						int z2 = z + dz[i];
+						int index2 = index + offsets[i];
+						float value2 = result[z2][index2];
+						float maskValue = mask[z2][index2];
+						if (value2 < value && value2 < maskValue)
+						{
+							result[z2][index2] = Math.min(value, maskValue);
+							queue.add(((long) z2 << 32) | index2);
+						}
+					}
+				}
+			}
+		}
+		
+		private boolean contains(int x, int y, int z)
+		{
+			return x >= 0 && x < sizeX && y >= y0 && y < y1 && z >= z0 && z < z1;
+		}
+		
+		/**
+		 * Checks if all the neighbors of the specified position are within
+		 * the tile.
+		 */
+		private boolean isInterior(int x, int y, int z)
+		{
+			return x > 0 && x < sizeX - 1 && y > y0 && y < y1 - 1
+					&& (planar || (z > z0 && z < z1 - 1));
+		}
+	}
+}
@@ -22,7 +22,7 @@
 package inra.ijpb.morphology.strel;
 
 import ij.ImageStack;
-import inra.ijpb.morphology.Strel;
+import ij.process.ImageProcessor;
 
 /**
  * An horizontal linear structuring element of a given length.
@@ -114,104 +114,7 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			return;
 		}
 		
-		if (stack.getBitDepth() == 8)
-			inPlaceDilationGray8(stack);
-		else
-			inPlaceDilationFloat(stack);
-	}
-
-	/* (non-Javadoc)
-	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceDilation(ij.process.ImageStack)
-	 */
-	private void inPlaceDilationGray8(ImageStack stack) {
-		// get image size
-		int width 	= stack.getWidth(); 
-		int height 	= stack.getHeight();
-		int depth 	= stack.getSize();
-			
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(
-				this.length, LocalExtremum.Type.MAXIMUM);		
-		
-		// Iterate on image z-columns
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMax.fill(Strel.BACKGROUND);
-
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMax.add((int) stack.getVoxel(x, y, z));
-				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMax.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMax.add(Strel.BACKGROUND);
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
-			}
-		}
-
-		// clear the progress bar
-		fireProgressChanged(this, height, height);		
-	}
-
-	/* (non-Javadoc)
-	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceDilation(ij.process.ImageStack)
-	 */
-	private void inPlaceDilationFloat(ImageStack stack) {
-		// get image size
-		int width 	= stack.getWidth(); 
-		int height 	= stack.getHeight();
-		int depth 	= stack.getSize();
-			
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(
-				this.length, LocalExtremum.Type.MAXIMUM);		
-		
-		// Iterate on image z-columns
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMax.fill(Float.NEGATIVE_INFINITY);
-
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMax.add((float) stack.getVoxel(x, y, z));
-				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMax.add((float) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMax.add(Float.NEGATIVE_INFINITY);
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
-			}
-		}
-
-		// clear the progress bar
-		fireProgressChanged(this, height, height);		
+		inPlaceFilter(stack, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/* (non-Javadoc)
@@ -223,105 +126,49 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 		if (length <= 1) { 
 			return;
 		}
-
-		if (stack.getBitDepth() == 8)
-			inPlaceErosionGray8(stack);
-		else
-			inPlaceErosionFloat(stack);
 		
+		inPlaceFilter(stack, LocalExtremum.Type.MINIMUM);
 	}
-	
-	/* (non-Javadoc)
-	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceErosion(ij.process.ImageStack)
-	 */
-	private void inPlaceErosionGray8(ImageStack stack) {
-		// get image size
-		int width 	= stack.getWidth(); 
-		int height 	= stack.getHeight();
-		int depth 	= stack.getSize();
-		
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(this.length,
-				LocalExtremum.Type.MINIMUM);
-		
-		
-		// Iterate on image z-columns
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMin.fill(Strel.FOREGROUND);
 
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMin.add((int) stack.getVoxel(x, y, z));
-				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMin.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMin.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMin.add(Strel.FOREGROUND);
-					stack.setVoxel(x, y, z, localMin.getMax());
-				}
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);		
-	}
-
-	/* (non-Javadoc)
-	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceErosion(ij.process.ImageStack)
+	/**
+	 * Replaces each voxel by the extremum of the voxels within the strel, by
+	 * applying the van Herk/Gil-Werman algorithm on each z-column.
 	 */
-	private void inPlaceErosionFloat(ImageStack stack) {
+	private void inPlaceFilter(ImageStack stack, LocalExtremum.Type type) {
 		// get image size
 		int width 	= stack.getWidth(); 
 		int height 	= stack.getHeight();
 		int depth 	= stack.getSize();
 		
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
+		// retrieve slices once, to avoid a lookup for each voxel
+		ImageProcessor[] slices = new ImageProcessor[depth];
+		for (int z = 0; z < depth; z++) {
+			slices[z] = stack.getProcessor(z + 1);
+		}
 		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(
-				this.length, LocalExtremum.Type.MINIMUM);
+		// create the line filter, and the buffer of z-column values
+		VanHerkGilWermanFilter filter = new VanHerkGilWermanFilter(
+				this.length, this.offset, type);
+		float[] line = new float[depth];
 		
 		// Iterate on image z-columns
 		for (int y = 0; y < height; y++) {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMin.fill(Float.POSITIVE_INFINITY);
-
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMin.add((float) stack.getVoxel(x, y, z));
+				int index = y * width + x;
+				
+				for (int z = 0; z < depth; z++) {
+					line[z] = slices[z].getf(index);
 				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMin.add((float) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMin.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMin.add(Float.POSITIVE_INFINITY);
-					stack.setVoxel(x, y, z, localMin.getMax());
+				
+				filter.process(line, depth);
+				
+				for (int z = 0; z < depth; z++) {
+					slices[z].setf(index, line[z]);
 				}
 			}
 		}
-		
+
 		// clear the progress bar
 		fireProgressChanged(this, height, height);		
 	}
@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A diagonal linear structuring element of a given length, with direction
@@ -118,136 +116,7 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
-		else
-			inPlaceDilationFloat(image);
-	}
-	
-	private void inPlaceDilationGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,+1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
-		// Need to identify bounds for d
-		int dmin = -(width - 1);
-		int dmax = height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-				
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
-			
-			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.get(t, t + d));
-				t++;
-			}
-			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMax.add(image.get(t, t + d));
-				int t2 = t - this.offset;
-				image.set(t2, t2 + d, localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Strel.BACKGROUND);
-				int x = t - this.offset;
-				int y = t + d - this.offset;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMax.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, dmax - dmin, dmax - dmin);
-	}
-
-	private void inPlaceDilationFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,+1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
-		// Need to identify bounds for d
-		int dmin = -(width - 1);
-		int dmax = height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-				
-			// reset local histogram
-			localMax.fill(Float.NEGATIVE_INFINITY);
-			
-			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.getf(t, t + d));
-				t++;
-			}
-			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMax.add(image.getf(t, t + d));
-				int t2 = t - this.offset;
-				image.setf(t2, t2 + d, (float) localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Float.NEGATIVE_INFINITY);
-				int x = t - this.offset;
-				int y = t + d - this.offset;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.setf(x, y, (float) localMax.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, dmax - dmin, dmax - dmin);
+		inPlaceFilter(image, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/* (non-Javadoc)
@@ -260,13 +129,14 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
-		else
-			inPlaceErosionFloat(image);
+		inPlaceFilter(image, LocalExtremum.Type.MINIMUM);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
+	/**
+	 * Replaces each pixel by the extremum of the pixels within the strel, by
+	 * applying the van Herk/Gil-Werman algorithm on each diagonal line.
+	 */
+	private void inPlaceFilter(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
@@ -275,55 +145,34 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
 		// Need to identify bounds for d
 		int dmin = -(width - 1);
-		int dmax = height - 1;
+		int dmax = height;
 		
-		// compute shifts
-		int dt0 = this.offset;
+		// create the line filter, and the buffer of line values. 
+		// Along a line, the reference pixel is preceded by (size-offset-1)
+		// pixels of the strel.
+		VanHerkGilWermanFilter filter = new VanHerkGilWermanFilter(size,
+				size - offset - 1, type);
+		float[] line = new float[Math.min(width, height)];
 		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-
 		// Iterate on diagonal lines
 		for (int d = dmin; d < dmax; d++) {
 			fireProgressChanged(this, d - dmin, dmax - dmin);
 			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
+			// range of positions on the line
+			int tmin = Math.max(0, -d);
+			int tmax = Math.min(width, height - d);
+			int n = tmax - tmin;
 			
-			// position on the line
-			int t = tmin;
-			
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + dt0, tmax)) {
-				localMin.add(image.get(t, t + d));
-				t++;
+			for (int i = 0; i < n; i++) {
+				int t = tmin + i;
+				line[i] = image.getf(t, t + d);
 			}
 			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMin.add(image.get(t, t + d));
-				image.set(t - dt0, t + d - dt0, localMin.getMax());
-				t++;
-			}
+			filter.process(line, n);
 			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + dt0) {
-				localMin.add(Strel.FOREGROUND);
-				int x = t - dt0;
-				int y = t + d - dt0;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMin.getMax());
-				t++;
+			for (int i = 0; i < n; i++) {
+				int t = tmin + i;
+				image.setf(t, t + d, line[i]);
 			}
 		}
 		
@@ -331,71 +180,7 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 		fireProgressChanged(this, dmax - dmin, dmax - dmin);
 	}
 
-	private void inPlaceErosionFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
 	
-		// Consider all diagonal lines with direction vector (+1,+1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
-		// Need to identify bounds for d
-		int dmin = -(width - 1);
-		int dmax = height - 1;
-		
-		// compute shifts
-		int dt0 = this.offset;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MINIMUM);
-
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMin.fill(Float.POSITIVE_INFINITY);
-			
-			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
-			
-			// position on the line
-			int t = tmin;
-			
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + dt0, tmax)) {
-				localMin.add(image.getf(t, t + d));
-				t++;
-			}
-			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMin.add(image.getf(t, t + d));
-				image.setf(t - dt0, t + d - dt0, (float) localMin.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + dt0) {
-				localMin.add(Float.POSITIVE_INFINITY);
-				int x = t - dt0;
-				int y = t + d - dt0;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.setf(x, y, (float) localMin.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, dmax - dmin, dmax - dmin);
-	}
-
 	/* (non-Javadoc)
 	 * @see ijt.morphology.Strel#getMask()
 	 */
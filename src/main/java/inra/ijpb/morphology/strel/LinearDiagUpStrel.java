@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 import ij.IJ;
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A diagonal linear structuring element of a given length, with direction
@@ -117,148 +115,7 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
-		else
-			inPlaceDilationFloat(image);
-	}
-	
-	private void inPlaceDilationGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,-1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (+1,+1)
-		// Need to identify bounds for d
-		int dmin = 0;
-		int dmax = width + height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			if (this.showProgress()) {
-				IJ.showProgress(d, dmax - dmin);
-			}
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
-			
-			int xmin = Math.max(0, d + 1 - height);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d + 1 - width);
-			int ymax = Math.min(height, d + 1);
-			
-			int tmin = Math.max(xmin, d + 1 - ymax);
-			int tmax = Math.min(xmax, d + 1 - ymin);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.get(t, d - t));
-				t++;
-			}
-			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMax.add(image.get(t, d - t));
-				int t2 = t - this.offset;
-				image.set(t2, d - t2, localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Strel.BACKGROUND);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMax.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		if (this.showProgress()) {
-			IJ.showProgress(1);
-		}
-	}
-
-	private void inPlaceDilationFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,-1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (+1,+1)
-		// Need to identify bounds for d
-		int dmin = 0;
-		int dmax = width + height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			if (this.showProgress()) {
-				IJ.showProgress(d, dmax - dmin);
-			}
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMax.fill(Float.NEGATIVE_INFINITY);
-			
-			int xmin = Math.max(0, d + 1 - height);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d + 1 - width);
-			int ymax = Math.min(height, d + 1);
-			
-			int tmin = Math.max(xmin, d + 1 - ymax);
-			int tmax = Math.min(xmax, d + 1 - ymin);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.getf(t, d - t));
-				t++;
-			}
-			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMax.add(image.getf(t, d - t));
-				int t2 = t - this.offset;
-				image.setf(t2, d - t2, (float) localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Float.NEGATIVE_INFINITY);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.setf(x, y, (float) localMax.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		if (this.showProgress()) {
-			IJ.showProgress(1);
-		}
+		inPlaceFilter(image, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/* (non-Javadoc)
@@ -271,13 +128,14 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
-		else
-			inPlaceErosionFloat(image);
+		inPlaceFilter(image, LocalExtremum.Type.MINIMUM);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
+	/**
+	 * Replaces each pixel by the extremum of the pixels within the strel, by
+	 * applying the van Herk/Gil-Werman algorithm on each diagonal line.
+	 */
+	private void inPlaceFilter(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
@@ -288,9 +146,12 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 		int dmin = 0;
 		int dmax = width + height - 1;
 	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
+		// create the line filter, and the buffer of line values. 
+		// Along a line, the reference pixel is preceded by (size-offset-1)
+		// pixels of the strel.
+		VanHerkGilWermanFilter filter = new VanHerkGilWermanFilter(size,
+				size - offset - 1, type);
+		float[] line = new float[Math.min(width, height)];
 		
 		// Iterate on diagonal lines
 		for (int d = dmin; d < dmax; d++) {
@@ -299,44 +160,21 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 			}
 			fireProgressChanged(this, d - dmin, dmax - dmin);
 			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			int xmin = Math.max(0, d - height - 1);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d - width - 1);
-			int ymax = Math.min(height, d + 1);
+			// range of positions on the line
+			int tmin = Math.max(0, d + 1 - height);
+			int tmax = Math.min(width, d + 1);
+			int n = tmax - tmin;
 			
-			int tmin = Math.max(xmin, d - ymax + 1);
-			int tmax = Math.min(xmax, d - ymin + 1);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMin.add(image.get(t, d - t));
-				t++;
+			for (int i = 0; i < n; i++) {
+				int t = tmin + i;
+				line[i] = image.getf(t, d - t);
 			}
 			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMin.add(image.get(t, d - t));
-				int t2 = t - this.offset;
-				image.set(t2, d - t2, localMin.getMax());
-				t++;
-			}
+			filter.process(line, n);
 			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMin.add(Strel.FOREGROUND);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMin.getMax());
-				t++;
+			for (int i = 0; i < n; i++) {
+				int t = tmin + i;
+				image.setf(t, d - t, line[i]);
 			}
 		}
 		
@@ -346,75 +184,7 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 		}
 	}
 
-	private void inPlaceErosionFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
 	
-		// Consider all diagonal lines with direction vector (+1,-1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (+1,+1)
-		// Need to identify bounds for d
-		int dmin = 0;
-		int dmax = width + height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MINIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			if (this.showProgress()) {
-				IJ.showProgress(d, dmax - dmin);
-			}
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMin.fill(Float.POSITIVE_INFINITY);
-			
-			int xmin = Math.max(0, d - height - 1);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d - width - 1);
-			int ymax = Math.min(height, d + 1);
-			
-			int tmin = Math.max(xmin, d - ymax + 1);
-			int tmax = Math.min(xmax, d - ymin + 1);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMin.add(image.getf(t, d - t));
-				t++;
-			}
-			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMin.add(image.getf(t, d - t));
-				int t2 = t - this.offset;
-				image.setf(t2, d - t2, (float) localMin.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMin.add(Float.POSITIVE_INFINITY);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.setf(x, y, (float) localMin.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		if (this.showProgress()) {
-			IJ.showProgress(1);
-		}
-	}
-
 	/* (non-Javadoc)
 	 * @see ijt.morphology.Strel#getMask()
 	 */
@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * An horizontal linear structuring element of a given length.
@@ -115,94 +113,8 @@ public class LinearHorizontalStrel extends AbstractInPlaceStrel  {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
-		else
-			inPlaceDilationFloat(image);
+		inPlaceFilter(image, LocalExtremum.Type.MAXIMUM);
 	}
-	
-	private void inPlaceDilationGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-			
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on image rows
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			
-			// init local histogram with background values
-			localMax.fill(Strel.BACKGROUND);
-			
-			// add neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMax.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMax.add(image.get(x + shift, y));
-				image.set(x, y, localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMax.add(Strel.BACKGROUND);
-				image.set(x, y, localMax.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);
-	}
-
-	private void inPlaceDilationFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-			
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on image rows
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			
-			// init local histogram with background values
-			localMax.fill(Float.NEGATIVE_INFINITY);
-			
-			// add neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMax.add(image.getf(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMax.add(image.getf(x + shift, y));
-				image.setf(x, y, (float) localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMax.add(Float.NEGATIVE_INFINITY);
-				image.setf(x, y, (float) localMax.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);
-	}
-
 
 	/* (non-Javadoc)
 	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceErosion(ij.process.ImageProcessor)
@@ -214,87 +126,35 @@ public class LinearHorizontalStrel extends AbstractInPlaceStrel  {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
-		else
-			inPlaceErosionFloat(image);
+		inPlaceFilter(image, LocalExtremum.Type.MINIMUM);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-		
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-		
-		// Iterate on image rows
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			// init local histogram with neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMin.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMin.add(image.get(x + shift, y));
-				image.set(x, y, localMin.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMin.add(Strel.FOREGROUND);
-				image.set(x, y, localMin.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);
-	}
-
-	private void inPlaceErosionFloat(ImageProcessor image) {
+	/**
+	 * Replaces each pixel by the extremum of the pixels within the strel, by
+	 * applying the van Herk/Gil-Werman algorithm on each row.
+	 */
+	private void inPlaceFilter(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
 		
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MINIMUM);
+		// create the line filter, and the buffer of row values
+		VanHerkGilWermanFilter filter = new VanHerkGilWermanFilter(size,
+				offset, type);
+		float[] line = new float[width];
 		
 		// Iterate on image rows
 		for (int y = 0; y < height; y++) {
 			fireProgressChanged(this, y, height);
 			
-			// reset local histogram
-			localMin.fill(Float.POSITIVE_INFINITY);
-			
-			// init local histogram with neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMin.add(image.getf(x, y));
+			for (int x = 0; x < width; x++) {
+				line[x] = image.getf(x, y);
 			}
 			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMin.add(image.getf(x + shift, y));
-				image.setf(x, y, (float) localMin.getMax());
-			}
+			filter.process(line, width);
 			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMin.add(Float.POSITIVE_INFINITY);
-				image.setf(x, y, (float) localMin.getMax());
+			for (int x = 0; x < width; x++) {
+				image.setf(x, y, line[x]);
 			}
 		}
 		
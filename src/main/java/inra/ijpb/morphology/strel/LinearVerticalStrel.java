@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A vertical linear structuring element of a given length.
@@ -115,93 +113,7 @@ public class LinearVerticalStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
-		else
-			inPlaceDilationFloat(image);
-	}
-	
-	private void inPlaceDilationGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
-
-		// Iterate on image columns
-		for (int x = 0; x < width; x++) {
-			fireProgressChanged(this, x, width);
-			
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMax.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMax.add(image.get(x, y + shift));
-				image.set(x, y, (int) localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMax.add(Strel.BACKGROUND);
-				image.set(x, y, (int) localMax.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, width, width);
-	}
-
-	
-	private void inPlaceDilationFloat(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MAXIMUM);
-		
-		// Iterate on image columns
-		for (int x = 0; x < width; x++) {
-			fireProgressChanged(this, x, width);
-			
-			// reset local histogram
-			localMax.fill(Float.NEGATIVE_INFINITY);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMax.add(image.getf(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMax.add(image.getf(x, y + shift));
-				image.setf(x, y, (float) localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMax.add(Float.NEGATIVE_INFINITY);
-				image.setf(x, y, (float) localMax.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, width, width);
+		inPlaceFilter(image, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/* (non-Javadoc)
@@ -214,89 +126,35 @@ public class LinearVerticalStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
-		else
-			inPlaceErosionFloat(image);
+		inPlaceFilter(image, LocalExtremum.Type.MINIMUM);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-
-
-		// Iterate on image columns
-		for (int x = 0; x < width; x++) {
-			fireProgressChanged(this, x, width);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMin.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMin.add(image.get(x, y + shift));
-				image.set(x, y, localMin.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMin.add(Strel.FOREGROUND);
-				image.set(x, y, localMin.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, width, width);
-	}
-
-	private void inPlaceErosionFloat(ImageProcessor image) {
+	/**
+	 * Replaces each pixel by the extremum of the pixels within the strel, by
+	 * applying the van Herk/Gil-Werman algorithm on each column.
+	 */
+	private void inPlaceFilter(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
 	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(size,
-				LocalExtremum.Type.MINIMUM);
+		// create the line filter, and the buffer of column values
+		VanHerkGilWermanFilter filter = new VanHerkGilWermanFilter(size,
+				offset, type);
+		float[] line = new float[height];
 
-		
 		// Iterate on image columns
 		for (int x = 0; x < width; x++) {
 			fireProgressChanged(this, x, width);
 			
-			// reset local histogram
-			localMin.fill(Float.POSITIVE_INFINITY);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMin.add(image.getf(x, y));
+			for (int y = 0; y < height; y++) {
+				line[y] = image.getf(x, y);
 			}
 			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMin.add(image.getf(x, y + shift));
-				image.setf(x, y, (float) localMin.getMax());
-			}
+			filter.process(line, height);
 			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMin.add(Float.POSITIVE_INFINITY);
-				image.setf(x, y, (float) localMin.getMax());
+			for (int y = 0; y < height; y++) {
+				image.setf(x, y, line[y]);
 			}
 		}
 		
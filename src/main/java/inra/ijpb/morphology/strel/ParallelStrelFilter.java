@@ -0,0 +1,329 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.Strel3D;
+
+/**
+ * Multi-threaded execution of erosion and dilation by any structuring element.
+ * 
+ * 3D images are split into slabs of consecutive slices, and planar images are
+ * split into bands of consecutive rows. Each block is extended by a halo whose
+ * thickness is computed from the size and the offset of the structuring
+ * element, and the blocks are processed concurrently by the structuring
+ * element on a fork-join pool. As the result within a block only depends on
+ * input values within the structuring element footprint, the result is
+ * identical to the one obtained by calling the strel directly.
+ * 
+ * <pre><code>
+ * ImageStack image = IJ.getImage().getStack();
+ * Strel3D strel = CubeStrel.fromDiameter(7);
+ * ParallelStrelFilter filter = new ParallelStrelFilter(new ForkJoinPool(8));
+ * ImageStack dilated = filter.dilation(image, strel);
+ * </code></pre>
+ * 
+ * @author David Legland
+ */
+public class ParallelStrelFilter extends AlgoStub
+{
+	// ===================================================================
+	// Class variables
+
+	/**
+	 * The pool used to run the tasks.
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * The number of blocks each image is split into. Default is the
+	 * parallelism of the pool.
+	 */
+	int blockNumber;
+
+	
+	// ===================================================================
+	// Constructors
+
+	/**
+	 * Creates a new filter that runs on the common fork-join pool.
+	 */
+	public ParallelStrelFilter()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new filter that runs on the specified pool.
+	 * 
+	 * @param pool
+	 *            the pool used to process the blocks
+	 */
+	public ParallelStrelFilter(ForkJoinPool pool)
+	{
+		this.pool = pool;
+		this.blockNumber = pool.getParallelism();
+	}
+
+	
+	// ===================================================================
+	// Setter and getters
+
+	/**
+	 * @return the number of blocks each image is split into
+	 */
+	public int getBlockNumber()
+	{
+		return blockNumber;
+	}
+
+	/**
+	 * Changes the number of blocks each image is split into.
+	 * 
+	 * @param blockNumber
+	 *            the number of blocks, greater than or equal to 1
+	 */
+	public void setBlockNumber(int blockNumber)
+	{
+		if (blockNumber < 1)
+		{
+			throw new IllegalArgumentException("Number of blocks must be at least 1");
+		}
+		this.blockNumber = blockNumber;
+	}
+
+	
+	// ===================================================================
+	// Processing methods
+
+	/**
+	 * Computes the dilation of a planar image, by splitting the image into
+	 * bands of rows processed in parallel.
+	 * 
+	 * @param image
+	 *            the planar image to process (grayscale)
+	 * @param strel
+	 *            the structuring element used for dilation
+	 * @return the result of the dilation
+	 */
+	public ImageProcessor dilation(ImageProcessor image, Strel strel)
+	{
+		return process(image, strel, true);
+	}
+
+	/**
+	 * Computes the erosion of a planar image, by splitting the image into
+	 * bands of rows processed in parallel.
+	 * 
+	 * @param image
+	 *            the planar image to process (grayscale)
+	 * @param strel
+	 *            the structuring element used for erosion
+	 * @return the result of the erosion
+	 */
+	public ImageProcessor erosion(ImageProcessor image, Strel strel)
+	{
+		return process(image, strel, false);
+	}
+
+	/**
+	 * Computes the dilation of a 3D image, by splitting the image into slabs
+	 * of slices processed in parallel.
+	 * 
+	 * @param image
+	 *            the 3D image to process (grayscale)
+	 * @param strel
+	 *            the structuring element used for dilation
+	 * @return the result of the dilation
+	 */
+	public ImageStack dilation(ImageStack image, Strel3D strel)
+	{
+		return process(image, strel, true);
+	}
+
+	/**
+	 * Computes the erosion of a 3D image, by splitting the image into slabs
+	 * of slices processed in parallel.
+	 * 
+	 * @param image
+	 *            the 3D image to process (grayscale)
+	 * @param strel
+	 *            the structuring element used for erosion
+	 * @return the result of the erosion
+	 */
+	public ImageStack erosion(ImageStack image, Strel3D strel)
+	{
+		return process(image, strel, false);
+	}
+
+	private ImageProcessor process(final ImageProcessor image, final Strel strel,
+			final boolean dilation)
+	{
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+
+		final int halo = haloSize(strel, 1);
+		final int nBlocks = Math.min(blockNumber, sizeY);
+		if (nBlocks <= 1)
+		{
+			return dilation ? strel.dilation(image) : strel.erosion(image);
+		}
+
+		final ImageProcessor result = image.duplicate();
+		final Object pixels = image.getPixels();
+		final Object resPixels = result.getPixels();
+
+		boolean flag = strel.showProgress();
+		strel.showProgress(false);
+
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nBlocks);
+		for (int b = 0; b < nBlocks; b++)
+		{
+			final int y0 = (int) ((long) sizeY * b / nBlocks);
+			final int y1 = (int) ((long) sizeY * (b + 1) / nBlocks);
+			futures.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					// extract the band of rows, including halo
+					int yh0 = Math.max(y0 - halo, 0);
+					int yh1 = Math.min(y1 + halo, sizeY);
+					ImageProcessor band = image.createProcessor(sizeX, yh1 - yh0);
+					System.arraycopy(pixels, yh0 * sizeX, band.getPixels(), 0, (yh1 - yh0) * sizeX);
+
+					// process band, and copy the rows without halo into result
+					band = dilation ? strel.dilation(band) : strel.erosion(band);
+					System.arraycopy(band.getPixels(), (y0 - yh0) * sizeX, resPixels, y0 * sizeX, (y1 - y0) * sizeX);
+				}
+			}));
+		}
+
+		waitForCompletion(futures);
+		strel.showProgress(flag);
+		return result;
+	}
+
+	private ImageStack process(final ImageStack image, final Strel3D strel,
+			final boolean dilation)
+	{
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+
+		final int halo = haloSize(strel, 2);
+		final int nBlocks = Math.min(blockNumber, sizeZ);
+		if (nBlocks <= 1)
+		{
+			return dilation ? strel.dilation(image) : strel.erosion(image);
+		}
+
+		final ImageStack result = new ImageStack(sizeX, sizeY, sizeZ);
+		result.setColorModel(image.getColorModel());
+
+		boolean flag = strel.showProgress();
+		strel.showProgress(false);
+
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(nBlocks);
+		for (int b = 0; b < nBlocks; b++)
+		{
+			final int z0 = (int) ((long) sizeZ * b / nBlocks);
+			final int z1 = (int) ((long) sizeZ * (b + 1) / nBlocks);
+			futures.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					// create a slab that shares the slices of the input image
+					int zh0 = Math.max(z0 - halo, 0);
+					int zh1 = Math.min(z1 + halo, sizeZ);
+					ImageStack slab = new ImageStack(sizeX, sizeY, image.getColorModel());
+					for (int z = zh0; z < zh1; z++)
+					{
+						slab.addSlice(image.getSliceLabel(z + 1), image.getPixels(z + 1));
+					}
+
+					// process slab, and keep the slices without halo
+					slab = dilation ? strel.dilation(slab) : strel.erosion(slab);
+					for (int z = z0; z < z1; z++)
+					{
+						result.setPixels(slab.getPixels(z - zh0 + 1), z + 1);
+						result.setSliceLabel(image.getSliceLabel(z + 1), z + 1);
+					}
+				}
+			}));
+		}
+
+		waitForCompletion(futures);
+		strel.showProgress(flag);
+		return result;
+	}
+
+	/**
+	 * Computes the number of pixels the strel can reach along the specified
+	 * dimension, in either direction. One pixel is added to the maximum extent
+	 * to account for strels whose implementation rounds the size of their
+	 * neighborhood differently from their reported size.
+	 */
+	private static final int haloSize(Strel3D strel, int dim)
+	{
+		int[] size = strel.getSize();
+		int[] offset = strel.getOffset();
+		if (size.length <= dim)
+			return 0;
+		return Math.max(offset[dim], size[dim] - 1 - offset[dim]) + 1;
+	}
+
+	/**
+	 * Waits for all the tasks to finish, and notifies progress.
+	 */
+	private void waitForCompletion(ArrayList<Future<?>> futures)
+	{
+		int n = futures.size();
+		try
+		{
+			for (int i = 0; i < n; i++)
+			{
+				fireProgressChanged(this, i, n);
+				futures.get(i).get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			for (Future<?> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Parallel processing was interrupted", ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException(ex.getCause());
+		}
+		fireProgressChanged(this, n, n);
+	}
+}
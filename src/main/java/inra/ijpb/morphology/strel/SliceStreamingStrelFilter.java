@@ -0,0 +1,733 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.io.FileSaver;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.morphology.Strel3D;
+
+/**
+ * Out-of-core erosion, dilation, opening and closing of 3D images by
+ * separable structuring elements, processing the image slice by slice.
+ * 
+ * <p>
+ * The structuring element is decomposed into planar linear structuring
+ * elements, applied independently on each slice, and into a linear structuring
+ * element along the z direction. Slices of the input image are read only once,
+ * in increasing order, such that the input can be a virtual stack. The
+ * extremum along the z direction is computed with a streaming version of the
+ * van Herk/Gil-Werman algorithm, that keeps only about twice the depth of the
+ * structuring element of slices in memory. Each result slice is sent to the
+ * output as soon as it is computed, either in an in-memory stack or as a TIFF
+ * file within a directory. For opening and closing, the two passes are
+ * chained, and the intermediate image is never stored.
+ * </p>
+ * 
+ * <p>
+ * The results are identical to those obtained with the methods of the
+ * structuring element on an in-memory stack. Supported structuring elements
+ * are {@link LinearDepthStrel3D}, planar in-place structuring elements, and
+ * separable structuring elements whose decomposition contains only planar
+ * in-place structuring elements and at most one {@link LinearDepthStrel3D},
+ * like {@link CubeStrel} or {@link CuboidStrel}.
+ * </p>
+ * 
+ * <pre><code>
+ * ImageStack image = IJ.getImage().getStack(); // possibly virtual
+ * SliceStreamingStrelFilter filter = new SliceStreamingStrelFilter(CubeStrel.fromRadius(3));
+ * VirtualStack result = filter.dilation(image, new File("/data/dilated"));
+ * </code></pre>
+ * 
+ * @see VanHerkGilWermanFilter
+ * @see ParallelStrelFilter
+ * 
+ * @author David Legland
+ */
+public class SliceStreamingStrelFilter extends AlgoStub
+{
+	// ===================================================================
+	// Class variables
+
+	/**
+	 * The structuring element used for filtering.
+	 */
+	Strel3D strel;
+	
+	
+	// ===================================================================
+	// Constructors
+
+	/**
+	 * Creates a new streaming filter for the specified structuring element.
+	 * 
+	 * @param strel
+	 *            the structuring element used for filtering
+	 * @throws IllegalArgumentException
+	 *             if the structuring element can not be processed slice by
+	 *             slice
+	 */
+	public SliceStreamingStrelFilter(Strel3D strel)
+	{
+		if (!isSupported(strel))
+		{
+			throw new IllegalArgumentException("Structuring element can not be processed slice by slice: " 
+					+ strel.getClass().getName());
+		}
+		this.strel = strel;
+	}
+
+	
+	// ===================================================================
+	// Static methods
+
+	/**
+	 * Checks if a structuring element can be used with this filter, i.e. if it
+	 * can be decomposed into planar in-place structuring elements and at most
+	 * one linear structuring element along the z direction.
+	 * 
+	 * @param strel
+	 *            the structuring element to check
+	 * @return true if the structuring element can be processed slice by slice
+	 */
+	public static final boolean isSupported(Strel3D strel)
+	{
+		Collection<InPlaceStrel3D> strels = decompose(strel);
+		if (strels == null)
+		{
+			return false;
+		}
+		
+		int nDepth = 0;
+		for (InPlaceStrel3D elem : strels)
+		{
+			if (elem instanceof LinearDepthStrel3D)
+			{
+				nDepth++;
+			}
+			else if (!(elem instanceof InPlaceStrel))
+			{
+				return false;
+			}
+		}
+		return nDepth <= 1;
+	}
+	
+	
+	// ===================================================================
+	// Processing methods returning in-memory stacks
+
+	/**
+	 * Computes the dilation of a 3D image, and stores the result in memory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @return the result of the dilation
+	 */
+	public ImageStack dilation(ImageStack image)
+	{
+		StackWriter writer = new StackWriter(image.getWidth(), image.getHeight());
+		process(image, new Pass[]{ new Pass(this.strel, LocalExtremum.Type.MAXIMUM) }, writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the erosion of a 3D image, and stores the result in memory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @return the result of the erosion
+	 */
+	public ImageStack erosion(ImageStack image)
+	{
+		StackWriter writer = new StackWriter(image.getWidth(), image.getHeight());
+		process(image, new Pass[]{ new Pass(this.strel, LocalExtremum.Type.MINIMUM) }, writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the opening of a 3D image, and stores the result in memory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @return the result of the opening
+	 */
+	public ImageStack opening(ImageStack image)
+	{
+		StackWriter writer = new StackWriter(image.getWidth(), image.getHeight());
+		process(image, openingPasses(), writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the closing of a 3D image, and stores the result in memory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @return the result of the closing
+	 */
+	public ImageStack closing(ImageStack image)
+	{
+		StackWriter writer = new StackWriter(image.getWidth(), image.getHeight());
+		process(image, closingPasses(), writer);
+		return writer.result;
+	}
+
+	
+	// ===================================================================
+	// Processing methods returning disk-backed stacks
+
+	/**
+	 * Computes the dilation of a 3D image, and saves each slice of the result
+	 * as a TIFF file within the specified directory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @param directory
+	 *            the directory used to store result slices
+	 * @return a virtual stack that reads the result slices from the directory
+	 */
+	public VirtualStack dilation(ImageStack image, File directory)
+	{
+		DiskWriter writer = new DiskWriter(image.getWidth(), image.getHeight(), directory);
+		process(image, new Pass[]{ new Pass(this.strel, LocalExtremum.Type.MAXIMUM) }, writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the erosion of a 3D image, and saves each slice of the result
+	 * as a TIFF file within the specified directory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @param directory
+	 *            the directory used to store result slices
+	 * @return a virtual stack that reads the result slices from the directory
+	 */
+	public VirtualStack erosion(ImageStack image, File directory)
+	{
+		DiskWriter writer = new DiskWriter(image.getWidth(), image.getHeight(), directory);
+		process(image, new Pass[]{ new Pass(this.strel, LocalExtremum.Type.MINIMUM) }, writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the opening of a 3D image, and saves each slice of the result
+	 * as a TIFF file within the specified directory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @param directory
+	 *            the directory used to store result slices
+	 * @return a virtual stack that reads the result slices from the directory
+	 */
+	public VirtualStack opening(ImageStack image, File directory)
+	{
+		DiskWriter writer = new DiskWriter(image.getWidth(), image.getHeight(), directory);
+		process(image, openingPasses(), writer);
+		return writer.result;
+	}
+
+	/**
+	 * Computes the closing of a 3D image, and saves each slice of the result
+	 * as a TIFF file within the specified directory.
+	 * 
+	 * @param image
+	 *            the 3D image to process, possibly virtual
+	 * @param directory
+	 *            the directory used to store result slices
+	 * @return a virtual stack that reads the result slices from the directory
+	 */
+	public VirtualStack closing(ImageStack image, File directory)
+	{
+		DiskWriter writer = new DiskWriter(image.getWidth(), image.getHeight(), directory);
+		process(image, closingPasses(), writer);
+		return writer.result;
+	}
+
+	
+	// ===================================================================
+	// Private methods
+
+	/**
+	 * Returns the in-place structuring elements the strel is composed of, or
+	 * null if the strel is neither separable nor in-place.
+	 */
+	private static final Collection<InPlaceStrel3D> decompose(Strel3D strel)
+	{
+		if (strel instanceof SeparableStrel3D)
+		{
+			return ((SeparableStrel3D) strel).decompose();
+		}
+		if (strel instanceof InPlaceStrel3D)
+		{
+			ArrayList<InPlaceStrel3D> strels = new ArrayList<InPlaceStrel3D>(1);
+			strels.add((InPlaceStrel3D) strel);
+			return strels;
+		}
+		return null;
+	}
+
+	private Pass[] openingPasses()
+	{
+		return new Pass[]{ 
+				new Pass(this.strel, LocalExtremum.Type.MINIMUM), 
+				new Pass(this.strel.reverse(), LocalExtremum.Type.MAXIMUM) };
+	}
+	
+	private Pass[] closingPasses()
+	{
+		return new Pass[]{ 
+				new Pass(this.strel, LocalExtremum.Type.MAXIMUM), 
+				new Pass(this.strel.reverse(), LocalExtremum.Type.MINIMUM) };
+	}
+	
+	/**
+	 * Reads the slices of the input image, and sends them through the chain
+	 * of passes, the last one sending result slices to the writer.
+	 */
+	private void process(ImageStack image, Pass[] passes, SliceWriter writer)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+		
+		// build the chain of consumers, from the writer to the first pass
+		SliceConsumer consumer = new OutputConsumer(writer);
+		for (int i = passes.length - 1; i >= 0; i--)
+		{
+			consumer = passes[i].createConsumer(sizeX, sizeY, sizeZ, consumer);
+		}
+		
+		// read each slice once, and send a copy through the chain
+		fireStatusChanged(this, "Process slices");
+		for (int z = 0; z < sizeZ; z++)
+		{
+			fireProgressChanged(this, z, sizeZ);
+			ImageProcessor slice = image.getProcessor(z + 1);
+			if (slice.getBitDepth() == 24)
+			{
+				throw new IllegalArgumentException("Color images are not supported");
+			}
+			writer.setTemplate(slice);
+			
+			float[] values = new float[sizeX * sizeY];
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = slice.getf(i);
+			}
+			consumer.accept(values);
+		}
+		consumer.finish();
+		
+		fireProgressChanged(this, sizeZ, sizeZ);
+		fireStatusChanged(this, "");
+	}
+	
+	
+	// ===================================================================
+	// Inner classes and interfaces
+
+	/**
+	 * Receives the slices of an image, in increasing z order.
+	 */
+	private interface SliceConsumer
+	{
+		/**
+		 * Processes the next slice. The array can be modified.
+		 */
+		public void accept(float[] values);
+		
+		/**
+		 * Called once all the slices have been sent.
+		 */
+		public void finish();
+	}
+	
+	/**
+	 * Writes result slices, in increasing z order.
+	 */
+	private interface SliceWriter
+	{
+		/**
+		 * Keeps a slice of the input image, used to create result slices with
+		 * the same type.
+		 */
+		public void setTemplate(ImageProcessor slice);
+		
+		public void write(int z, float[] values);
+	}
+	
+	/**
+	 * An erosion or a dilation by a separable structuring element, split into
+	 * planar strels and a linear strel along the z direction.
+	 */
+	private static class Pass
+	{
+		ArrayList<InPlaceStrel> planarStrels = new ArrayList<InPlaceStrel>();
+		LinearDepthStrel3D depthStrel = null;
+		LocalExtremum.Type type;
+		
+		public Pass(Strel3D strel, LocalExtremum.Type type)
+		{
+			Collection<InPlaceStrel3D> strels = decompose(strel);
+			for (InPlaceStrel3D elem : strels)
+			{
+				if (elem instanceof LinearDepthStrel3D)
+				{
+					this.depthStrel = (LinearDepthStrel3D) elem;
+				}
+				else
+				{
+					this.planarStrels.add((InPlaceStrel) elem);
+				}
+			}
+			this.type = type;
+		}
+		
+		public SliceConsumer createConsumer(int sizeX, int sizeY, int sizeZ, SliceConsumer next)
+		{
+			SliceConsumer consumer = next;
+			if (depthStrel != null && depthStrel.length > 1)
+			{
+				consumer = new DepthConsumer(depthStrel.length, depthStrel.offset, 
+						type, sizeX * sizeY, sizeZ, consumer);
+			}
+			if (!planarStrels.isEmpty())
+			{
+				consumer = new PlanarConsumer(planarStrels, type, sizeX, sizeY, consumer);
+			}
+			return consumer;
+		}
+	}
+	
+	/**
+	 * Applies planar structuring elements on each slice.
+	 */
+	private static class PlanarConsumer implements SliceConsumer
+	{
+		ArrayList<InPlaceStrel> strels;
+		LocalExtremum.Type type;
+		int sizeX;
+		int sizeY;
+		SliceConsumer next;
+		
+		public PlanarConsumer(ArrayList<InPlaceStrel> strels, LocalExtremum.Type type, 
+				int sizeX, int sizeY, SliceConsumer next)
+		{
+			this.strels = strels;
+			this.type = type;
+			this.sizeX = sizeX;
+			this.sizeY = sizeY;
+			this.next = next;
+		}
+
+		@Override
+		public void accept(float[] values)
+		{
+			FloatProcessor slice = new FloatProcessor(sizeX, sizeY, values);
+			for (InPlaceStrel strel : strels)
+			{
+				if (type == LocalExtremum.Type.MAXIMUM)
+				{
+					strel.inPlaceDilation(slice);
+				}
+				else
+				{
+					strel.inPlaceErosion(slice);
+				}
+			}
+			next.accept(values);
+		}
+
+		@Override
+		public void finish()
+		{
+			next.finish();
+		}
+	}
+	
+	/**
+	 * Computes the extremum within a window of slices, using the van
+	 * Herk/Gil-Werman algorithm on the stream of slices padded with the
+	 * neutral element. The padded stream is split into blocks with the size of
+	 * the window. The prefix extremum of the current block is updated for each
+	 * new slice, and the suffix extremum of a block is computed when the block
+	 * is complete. A window ending within the current block is the
+	 * combination of the suffix extremum of the previous block and of the
+	 * prefix extremum of the current block.
+	 */
+	private static class DepthConsumer implements SliceConsumer
+	{
+		int length;
+		int offset;
+		boolean maximum;
+		int sliceSize;
+		int sizeZ;
+		SliceConsumer next;
+		
+		/** The values of the slices of the current block */
+		float[][] block;
+		/** The suffix extrema of the slices of the previous block */
+		float[][] suffix;
+		/** The prefix extremum of the current block */
+		float[] prefix;
+		/** A slice filled with the neutral element */
+		float[] neutral;
+		
+		/** The number of slices received, including padding slices */
+		int count = 0;
+		/** The number of slices sent to the next consumer */
+		int nSent = 0;
+		
+		public DepthConsumer(int length, int offset, LocalExtremum.Type type, 
+				int sliceSize, int sizeZ, SliceConsumer next)
+		{
+			this.length = length;
+			this.offset = offset;
+			this.maximum = type == LocalExtremum.Type.MAXIMUM;
+			this.sliceSize = sliceSize;
+			this.sizeZ = sizeZ;
+			this.next = next;
+			
+			this.block = new float[length][];
+			this.suffix = new float[length][];
+			this.prefix = new float[sliceSize];
+			this.neutral = new float[sliceSize];
+			Arrays.fill(this.neutral, maximum ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY);
+		}
+		
+		@Override
+		public void accept(float[] values)
+		{
+			// pad the beginning of the stream
+			while (count < offset)
+			{
+				add(neutral);
+			}
+			add(values);
+		}
+
+		@Override
+		public void finish()
+		{
+			// pad the end of the stream until all slices are computed
+			while (nSent < sizeZ)
+			{
+				add(neutral);
+			}
+			next.finish();
+		}
+		
+		private void add(float[] values)
+		{
+			int pos = count % length;
+			
+			// store slice values, and update the prefix extremum
+			block[pos] = values;
+			if (pos == 0)
+			{
+				System.arraycopy(values, 0, prefix, 0, sliceSize);
+			}
+			else
+			{
+				extremum(prefix, values, prefix);
+			}
+			
+			// the window ending at current slice is complete
+			if (count >= length - 1)
+			{
+				float[] res = new float[sliceSize];
+				if (pos == length - 1)
+				{
+					System.arraycopy(prefix, 0, res, 0, sliceSize);
+				}
+				else
+				{
+					extremum(suffix[pos + 1], prefix, res);
+				}
+				next.accept(res);
+				nSent++;
+			}
+			
+			// at the end of the block, compute the suffix extrema
+			if (pos == length - 1)
+			{
+				float[][] tmp = suffix;
+				suffix = block;
+				block = tmp;
+				
+				float[] last = new float[sliceSize];
+				System.arraycopy(suffix[length - 1], 0, last, 0, sliceSize);
+				suffix[length - 1] = last;
+				for (int i = length - 2; i >= 0; i--)
+				{
+					float[] current = new float[sliceSize];
+					extremum(suffix[i], suffix[i + 1], current);
+					suffix[i] = current;
+				}
+			}
+			count++;
+		}
+		
+		private void extremum(float[] values1, float[] values2, float[] res)
+		{
+			if (maximum)
+			{
+				for (int i = 0; i < sliceSize; i++)
+				{
+					res[i] = Math.max(values1[i], values2[i]);
+				}
+			}
+			else
+			{
+				for (int i = 0; i < sliceSize; i++)
+				{
+					res[i] = Math.min(values1[i], values2[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sends the final slices to the writer, with their index.
+	 */
+	private static class OutputConsumer implements SliceConsumer
+	{
+		SliceWriter writer;
+		int z = 0;
+		
+		public OutputConsumer(SliceWriter writer)
+		{
+			this.writer = writer;
+		}
+		
+		@Override
+		public void accept(float[] values)
+		{
+			writer.write(z++, values);
+		}
+
+		@Override
+		public void finish()
+		{
+		}
+	}
+	
+	/**
+	 * Creates the result slices from float values, with the type of the input
+	 * slices.
+	 */
+	private static abstract class TypedWriter implements SliceWriter
+	{
+		int sizeX;
+		int sizeY;
+		ImageProcessor template = null;
+		
+		public TypedWriter(int sizeX, int sizeY)
+		{
+			this.sizeX = sizeX;
+			this.sizeY = sizeY;
+		}
+		
+		@Override
+		public void setTemplate(ImageProcessor slice)
+		{
+			if (this.template == null)
+			{
+				this.template = slice;
+			}
+		}
+		
+		protected ImageProcessor createSlice(float[] values)
+		{
+			ImageProcessor slice = template.createProcessor(sizeX, sizeY);
+			for (int i = 0; i < values.length; i++)
+			{
+				slice.setf(i, values[i]);
+			}
+			return slice;
+		}
+	}
+	
+	/**
+	 * Adds result slices to an in-memory stack.
+	 */
+	private static class StackWriter extends TypedWriter
+	{
+		ImageStack result;
+		
+		public StackWriter(int sizeX, int sizeY)
+		{
+			super(sizeX, sizeY);
+			this.result = new ImageStack(sizeX, sizeY);
+		}
+		
+		@Override
+		public void write(int z, float[] values)
+		{
+			result.addSlice(createSlice(values));
+		}
+	}
+	
+	/**
+	 * Saves result slices as TIFF files within a directory.
+	 */
+	private static class DiskWriter extends TypedWriter
+	{
+		File directory;
+		VirtualStack result;
+		
+		public DiskWriter(int sizeX, int sizeY, File directory)
+		{
+			super(sizeX, sizeY);
+			if (!directory.isDirectory() && !directory.mkdirs())
+			{
+				throw new RuntimeException("Could not create directory: " + directory.getPath());
+			}
+			this.directory = directory;
+			this.result = new VirtualStack(sizeX, sizeY, null, directory.getPath() + File.separator);
+		}
+		
+		@Override
+		public void write(int z, float[] values)
+		{
+			String fileName = String.format("slice%05d.tif", z + 1);
+			ImagePlus imagePlus = new ImagePlus(fileName, createSlice(values));
+			String path = new File(directory, fileName).getPath();
+			if (!new FileSaver(imagePlus).saveAsTiff(path))
+			{
+				throw new RuntimeException("Could not save slice: " + path);
+			}
+			result.addSlice(fileName);
+		}
+	}
+}
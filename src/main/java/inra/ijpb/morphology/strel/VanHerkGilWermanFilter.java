@@ -0,0 +1,220 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+/**
+ * <p>
+ * Computes the minimum or the maximum within a sliding window along a line
+ * of values, using the algorithm of van Herk and Gil-Werman.
+ * </p>
+ * 
+ * <p>
+ * The padded line is split into blocks with the size of the window. For each
+ * block, the cumulative extremum is computed from the end of the block
+ * (suffix) and from the beginning of the block (prefix). The extremum within
+ * a window is obtained by combining the suffix value at the beginning of the
+ * window and the prefix value at the end of the window. This requires about
+ * three comparisons per value, whatever the size of the window.
+ * </p>
+ * 
+ * <p>
+ * Values outside of the line are ignored, which is equivalent to padding the
+ * line with the neutral element of the extremum.
+ * </p>
+ * 
+ * References:
+ * <ul>
+ * <li>van Herk, M. (1992). A fast algorithm for local minimum and maximum
+ * filters on rectangular and octagonal kernels. Pattern Recognition Letters,
+ * 13(7), 517-521.</li>
+ * <li>Gil, J., &amp; Werman, M. (1993). Computing 2-D min, median, and max
+ * filters. IEEE Transactions on Pattern Analysis and Machine Intelligence,
+ * 15(5), 504-507.</li>
+ * </ul>
+ * 
+ * @see LocalExtremumBufferDouble
+ * @author David Legland
+ */
+public class VanHerkGilWermanFilter implements LocalExtremum
+{
+	/**
+	 * The number of values within the sliding window.
+	 */
+	int size;
+
+	/**
+	 * The number of values within the window located before the current
+	 * position.
+	 */
+	int before;
+
+	/**
+	 * The type of extremum to compute.
+	 */
+	Type type;
+
+	/**
+	 * Buffer containing the padded line values.
+	 */
+	float[] buffer = new float[0];
+
+	/**
+	 * Buffer containing the cumulative extremum from the end of each block.
+	 */
+	float[] suffix = new float[0];
+
+	/**
+	 * Creates a new filter.
+	 * 
+	 * @param size
+	 *            the number of values within the sliding window
+	 * @param before
+	 *            the number of values within the window located before the
+	 *            current position (between 0 and size-1)
+	 * @param type
+	 *            the type of extremum to compute (minimum or maximum)
+	 */
+	public VanHerkGilWermanFilter(int size, int before, Type type)
+	{
+		if (size < 1)
+		{
+			throw new IllegalArgumentException("Requires a positive size");
+		}
+		if (before < 0 || before >= size)
+		{
+			throw new IllegalArgumentException("Number of values before current position must be between 0 and size-1");
+		}
+		this.size = size;
+		this.before = before;
+		this.type = type;
+	}
+
+	/**
+	 * Replaces each value of the line by the extremum of the values within
+	 * the window around it.
+	 * 
+	 * @param values
+	 *            the array containing the values of the line
+	 * @param length
+	 *            the number of values of the line
+	 */
+	public void process(float[] values, int length)
+	{
+		if (length == 0 || size == 1)
+			return;
+
+		// length of the padded line
+		int n = length + size - 1;
+		if (buffer.length < n)
+		{
+			buffer = new float[n];
+			suffix = new float[n];
+		}
+
+		// fill buffer with line values, and padding values
+		float pad = type == Type.MAXIMUM ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+		for (int i = 0; i < before; i++)
+			buffer[i] = pad;
+		System.arraycopy(values, 0, buffer, before, length);
+		for (int i = before + length; i < n; i++)
+			buffer[i] = pad;
+
+		if (type == Type.MAXIMUM)
+			processMax(values, length, n);
+		else
+			processMin(values, length, n);
+	}
+
+	private void processMax(float[] values, int length, int n)
+	{
+		// compute cumulative maximum from the end of each block
+		for (int b0 = 0; b0 < n; b0 += size)
+		{
+			int i = Math.min(b0 + size, n) - 1;
+			float v = buffer[i];
+			suffix[i] = v;
+			for (i--; i >= b0; i--)
+			{
+				float v2 = buffer[i];
+				if (v2 > v)
+					v = v2;
+				suffix[i] = v;
+			}
+		}
+
+		// compute cumulative maximum from the beginning of each block, and
+		// combine with the suffix value at the beginning of the window
+		float prefix = buffer[0];
+		int k = 0;
+		for (int i = 0; i < n; i++)
+		{
+			float v = buffer[i];
+			if (k == 0 || v > prefix)
+				prefix = v;
+			if (++k == size)
+				k = 0;
+			int i0 = i - size + 1;
+			if (i0 >= 0)
+			{
+				float s = suffix[i0];
+				values[i0] = s > prefix ? s : prefix;
+			}
+		}
+	}
+
+	private void processMin(float[] values, int length, int n)
+	{
+		// compute cumulative minimum from the end of each block
+		for (int b0 = 0; b0 < n; b0 += size)
+		{
+			int i = Math.min(b0 + size, n) - 1;
+			float v = buffer[i];
+			suffix[i] = v;
+			for (i--; i >= b0; i--)
+			{
+				float v2 = buffer[i];
+				if (v2 < v)
+					v = v2;
+				suffix[i] = v;
+			}
+		}
+
+		// compute cumulative minimum from the beginning of each block, and
+		// combine with the suffix value at the beginning of the window
+		float prefix = buffer[0];
+		int k = 0;
+		for (int i = 0; i < n; i++)
+		{
+			float v = buffer[i];
+			if (k == 0 || v < prefix)
+				prefix = v;
+			if (++k == size)
+				k = 0;
+			int i0 = i - size + 1;
+			if (i0 >= 0)
+			{
+				float s = suffix[i0];
+				values[i0] = s < prefix ? s : prefix;
+			}
+		}
+	}
+}
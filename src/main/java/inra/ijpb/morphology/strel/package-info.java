@@ -39,6 +39,8 @@
  * <li>Utility classes that manage local extremum: {@link inra.ijpb.morphology.strel.LocalExtremum}, 
  * 	{@link inra.ijpb.morphology.strel.LocalExtremumBufferGray8},
  * {@link inra.ijpb.morphology.strel.LocalExtremumBufferDouble}</li> 
+ * <li>Alternative execution strategies: {@link inra.ijpb.morphology.strel.ParallelStrelFilter}, 
+ * 	{@link inra.ijpb.morphology.strel.SliceStreamingStrelFilter}</li>
  * </ul>
  */
 package inra.ijpb.morphology.strel;
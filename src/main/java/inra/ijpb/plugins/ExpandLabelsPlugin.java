@@ -21,7 +21,6 @@
  */
 package inra.ijpb.plugins;
 
-import java.util.HashMap;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -30,6 +29,7 @@ import ij.gui.GenericDialog;
 import ij.plugin.PlugIn;
 import ij.process.ImageProcessor;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 import inra.ijpb.measure.GeometricMeasures2D;
 import inra.ijpb.measure.GeometricMeasures3D;
 
@@ -144,11 +144,7 @@ public class ExpandLabelsPlugin implements PlugIn
 		}
 		
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < nLabels; i++) 
-        {
-        	labelIndices.put(labels[i], i);
-        }
+		LabelIndex labelIndices = new LabelIndex(labels);
 
 		for (int y = 0; y < sizeY; y++)
 		{
@@ -158,7 +154,7 @@ public class ExpandLabelsPlugin implements PlugIn
 				if ( Float.compare( label, 0f ) == 0 )
 					continue;
 
-				int index = labelIndices.get((int)label);
+				int index = labelIndices.indexOf((int) label);
 				int x2 = x + shifts[index][0];
 				int y2 = y + shifts[index][1];
 				result.setf( x2, y2, label );
@@ -206,11 +202,7 @@ public class ExpandLabelsPlugin implements PlugIn
 		}
 		
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < nLabels; i++) 
-        {
-        	labelIndices.put(labels[i], i);
-        }
+		LabelIndex labelIndices = new LabelIndex(labels);
 
         for (int z = 0; z < sizeZ; z++)
         {
@@ -222,7 +214,7 @@ public class ExpandLabelsPlugin implements PlugIn
         			if ( Double.compare( label,  0 ) == 0 )
         				continue;
 
-        			int index = labelIndices.get( (int) label );
+        			int index = labelIndices.indexOf( (int) label );
         			int x2 = x + shifts[index][0];
         			int y2 = y + shifts[index][1];
         			int z2 = z + shifts[index][2];
@@ -29,6 +29,8 @@ import ij.plugin.PlugIn;
 import ij.process.ImageProcessor;
 import inra.ijpb.data.border.BorderManager;
 import inra.ijpb.data.border.BorderManager3D;
+import inra.ijpb.data.border.PaddedImage;
+import inra.ijpb.data.border.PaddedImage3D;
 
 
 /**
@@ -145,25 +147,7 @@ public class ExtendBordersPlugin implements PlugIn
 	public static final ImageProcessor process(ImageProcessor image, 
 			int left, int right, int top, int bottom, BorderManager border)
 	{
-		// get image dimensions
-		int width = image.getWidth(); 
-		int height = image.getHeight(); 
-		
-		// compute result dimensions
-		int width2 = width + left + right;
-		int height2 = height + top + bottom;
-		ImageProcessor result = image.createProcessor(width2 , height2);
-		
-		// fill result image
-		for (int x = 0; x < width2; x++)
-		{
-			for (int y = 0; y < height2; y++)
-			{
-				result.set(x, y, border.get(x - left, y - top));
-			}
-		}
-		
-		return result;
+		return PaddedImage.extend(image, left, right, top, bottom, border);
 	}
 	/**
 	 * Adds the specified number of pixels around the input image, and returns
@@ -191,28 +175,6 @@ public class ExtendBordersPlugin implements PlugIn
 	public static final ImageStack process(ImageStack image, 
 			int left, int right, int top, int bottom, int front, int back, BorderManager3D border)
 	{
-		// get image dimensions
-		int width = image.getWidth(); 
-		int height = image.getHeight(); 
-		int depth = image.getSize(); 
-		
-		// compute result dimensions
-		int width2 = width + left + right;
-		int height2 = height + top + bottom;
-		int depth2 = depth + front + back;
-		ImageStack result = ImageStack.create(width2 , height2, depth2, image.getBitDepth());
-		
-		// fill result image
-		for (int z = 0; z < depth2; z++)
-		{
-			for (int y = 0; y < height2; y++)
-			{
-				for (int x = 0; x < width2; x++)
-				{
-					result.setVoxel(x, y, z, border.get(x - left, y - top, z - front));
-				}
-			}
-		}
-		return result;
+		return PaddedImage3D.extend(image, left, right, top, bottom, front, back, border);
 	}
 }
@@ -31,6 +31,7 @@ import ij.plugin.PlugIn;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.ChamferWeights3D;
 import inra.ijpb.binary.geodesic.GeodesicDiameter3DFloat;
+import inra.ijpb.binary.geodesic.LabelGeodesicDiameter;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.util.IJUtils;
 
@@ -99,9 +100,11 @@ public class GeodesicDiameter3DPlugin implements PlugIn
 		// extract label ImageProcessor
 		ImageStack labelImage = labelPlus.getStack();
 		
-		// Compute geodesic diameters, using floating-point calculations
+		// Compute geodesic diameters of all regions in parallel
 		long start = System.nanoTime();
-		ResultsTable table = process(labelImage, weights.getFloatWeights());
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(weights.getFloatWeights());
+		DefaultAlgoListener.monitor(algo);
+		ResultsTable table = algo.process(labelImage).createTable();
 		long finalTime = System.nanoTime();
 		
 		// Final time, displayed in milliseconds
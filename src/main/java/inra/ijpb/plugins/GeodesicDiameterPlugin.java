@@ -38,6 +38,7 @@ import ij.process.ImageProcessor;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.geodesic.GeodesicDiameterFloat;
 import inra.ijpb.binary.geodesic.GeodesicDiameterShort;
+import inra.ijpb.binary.geodesic.LabelGeodesicDiameter;
 import inra.ijpb.binary.ChamferWeights;
 import inra.ijpb.label.LabelImages;
 
@@ -114,9 +115,13 @@ public class GeodesicDiameterPlugin implements PlugIn
 		}
 		ImageProcessor labelImage = labelPlus.getProcessor();
 		
-		// Compute geodesic diameters, using floating-point calculations
+		// Compute geodesic diameters of all regions in parallel
 		long start = System.nanoTime();
-		ResultsTable table = process(labelImage, weights.getFloatWeights());
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(weights.getFloatWeights());
+		algo.setComputePaths(overlayPaths || createPathRois);
+		DefaultAlgoListener.monitor(algo);
+		LabelGeodesicDiameter.Result result = algo.process(labelImage);
+		ResultsTable table = result.createTable();
 		long finalTime = System.nanoTime();
 		
 		// Final time, displayed in milli-sseconds
@@ -143,18 +148,8 @@ public class GeodesicDiameterPlugin implements PlugIn
 		
 		if (validPaths)
 		{
-			// compute the path that is associated to each label
-			Map<Integer, List<Point>> pathMap = null;
-			try
-			{
-				pathMap = computePaths(labelImage, weights.getFloatWeights());
-			}
-			catch (Exception ex)
-			{
-				IJ.error("Geodesic Diameter Error", 
-						"Could not compute geodesic paths.\nTry using Borgefors weights.");
-				return;
-			}
+			// the path that is associated to each label
+			Map<Integer, List<Point>> pathMap = result.getPathMap();
 			
 			// Check if results must be displayed on an image
 			if (overlayPaths) 
@@ -282,20 +277,6 @@ public class GeodesicDiameterPlugin implements PlugIn
 		return table;
 	}
 
-//	private Map<Integer, List<Point>> computePaths(ImageProcessor labels, short[] weights)
-//	{
-//		GeodesicDiameterShort algo = new GeodesicDiameterShort(weights);
-//		DefaultAlgoListener.monitor(algo);
-//		return algo.longestGeodesicPaths(labels);
-//	}
-
-	private Map<Integer, List<Point>> computePaths(ImageProcessor labels, float[] weights)
-	{
-		GeodesicDiameterFloat algo = new GeodesicDiameterFloat(weights);
-		DefaultAlgoListener.monitor(algo);
-		return algo.longestGeodesicPaths(labels);
-	}
-
 	// ====================================================
 	// Computing functions 
 	
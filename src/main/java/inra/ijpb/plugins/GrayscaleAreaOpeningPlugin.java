@@ -27,7 +27,9 @@ import ij.gui.GenericDialog;
 import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.AttributeFiltering;
+import inra.ijpb.algo.DefaultAlgoListener;
+import inra.ijpb.morphology.attrfilt.ComponentTreeCache;
+import inra.ijpb.morphology.attrfilt.ComponentTreeFiltering;
 
 import java.awt.AWTEvent;
 
@@ -57,6 +59,12 @@ public class GrayscaleAreaOpeningPlugin implements ExtendedPlugInFilter, DialogL
 	/** Keep instance of result image */
 	private ImageProcessor result;
 
+	/**
+	 * Keeps the component tree of the image between successive previews, such
+	 * that changing the pixel number only requires to filter the tree.
+	 */
+	private ComponentTreeCache treeCache = new ComponentTreeCache();
+
 	int minPixelCount = 100;
 	
 	
@@ -70,6 +78,7 @@ public class GrayscaleAreaOpeningPlugin implements ExtendedPlugInFilter, DialogL
 			// replace the preview image by the original image 
 			imagePlus.setProcessor(baseImage);
 			imagePlus.draw();
+			treeCache.clear();
 			
 			// Create a new ImagePlus with the result
 			String newName = imagePlus.getShortTitle() + "-areaOpen";
@@ -103,7 +112,10 @@ public class GrayscaleAreaOpeningPlugin implements ExtendedPlugInFilter, DialogL
         previewing = false;
         
         if (gd.wasCanceled())
+        {
+        	treeCache.clear();
         	return DONE;
+        }
 			
     	parseDialogParameters(gd);
 			
@@ -115,7 +127,10 @@ public class GrayscaleAreaOpeningPlugin implements ExtendedPlugInFilter, DialogL
 	@Override
 	public void run(ImageProcessor image)
 	{
-		this.result = AttributeFiltering.areaOpening(image, this.minPixelCount); 
+		ComponentTreeFiltering algo = new ComponentTreeFiltering();
+		algo.setCache(this.treeCache);
+		DefaultAlgoListener.monitor(algo);
+		this.result = algo.process(image, this.minPixelCount); 
 		
 		if (previewing)
 		{
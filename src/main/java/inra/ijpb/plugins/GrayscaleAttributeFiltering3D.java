@@ -24,21 +24,31 @@ package inra.ijpb.plugins;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.gui.DialogListener;
 import ij.gui.GenericDialog;
 import ij.plugin.PlugIn;
 import inra.ijpb.data.image.Images3D;
+import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.morphology.AttributeFiltering;
+import inra.ijpb.morphology.attrfilt.ComponentTreeCache;
+import inra.ijpb.morphology.attrfilt.ComponentTreeFiltering;
+
+import java.awt.AWTEvent;
 
 /**
  * Plugin to perform between attribute opening, closing, and black or white
  * top-hat on a 3D grayscale image. The size criterion is the number of voxels. 
+ * 
+ * A preview of the result is available. When the component tree is used, it
+ * is computed once and kept while the dialog is displayed, such that changing
+ * the number of voxels only requires to filter the tree.
  *
  * @see AreaOpeningPlugin
  *
  * @author David Legland, Ignacio Arganda-Carreras
  *
  */
-public class GrayscaleAttributeFiltering3D implements PlugIn
+public class GrayscaleAttributeFiltering3D implements PlugIn, DialogListener
 {
 	/**
 	 * Morphological operations that can be done using this plugin
@@ -155,6 +165,35 @@ public class GrayscaleAttributeFiltering3D implements PlugIn
 	static Attribute attribute = Attribute.VOLUME;
     static int nPixelMin = 100;
     static int connectivityChoice = 0; // 0 -> 6 connectivity
+    static boolean useComponentTree = true;
+
+	/** The image to process */
+	ImagePlus imagePlus;
+	
+	/** The original stack of the image, restored after the preview */
+	ImageStack baseStack;
+	
+	/** The display range of the original image, used for inversion */
+	double baseMin;
+	double baseMax;
+	
+	/**
+	 * The stack the filter is applied to: the original stack, or its
+	 * inverse for closing and bottom-hat. Computed on first use, and kept
+	 * while the dialog is displayed.
+	 */
+	ImageStack filterInput = null;
+	
+	/** Whether the filter input is the inverse of the original stack */
+	boolean filterInputInverted;
+
+	/**
+	 * Keeps the component tree of the filter input while the dialog is
+	 * displayed, such that a new threshold only requires to filter the tree.
+	 * The cache rebuilds the tree when the connectivity or the content of the
+	 * filter input changes, and is cleared when the dialog is closed.
+	 */
+	private ComponentTreeCache treeCache = new ComponentTreeCache();
 
 	/**
 	 * Plugin run method
@@ -162,7 +201,7 @@ public class GrayscaleAttributeFiltering3D implements PlugIn
 	@Override
 	public void run(String arg0)
 	{
-		ImagePlus imagePlus = IJ.getImage();
+		imagePlus = IJ.getImage();
 
 		if( imagePlus.getImageStackSize() < 2 )
 		{
@@ -170,6 +209,9 @@ public class GrayscaleAttributeFiltering3D implements PlugIn
 					"Input image must be 3D" );
 			return;
 		}
+		baseStack = imagePlus.getStack();
+		baseMin = imagePlus.getDisplayRangeMin();
+		baseMax = imagePlus.getDisplayRangeMax();
 
         // create the dialog, with operator options
 		String title = "Attribute Filtering 3D";
@@ -182,36 +224,137 @@ public class GrayscaleAttributeFiltering3D implements PlugIn
         gd.addNumericField( label, nPixelMin, 0 );
         gd.addChoice( "Connectivity", connectivityLabels,
         					connectivityLabels[ connectivityChoice ] );
+        gd.addCheckbox( "Use Component Tree", useComponentTree );
+        gd.addPreviewCheckbox( null );
+        gd.addDialogListener( this );
         gd.showDialog();
 
+        // restore the original image in case of preview
+        removePreview();
+
         // If cancel was clicked, do nothing
         if (gd.wasCanceled())
+        {
+        	clearFilterData();
             return;
+        }
 
         // read options
+        parseDialogParameters( gd );
+        ImageStack result = computeResult();
+        clearFilterData();
+
+        // show result
+        String newName = imagePlus.getShortTitle() + "-attrFilt";
+        ImagePlus resultPlus = new ImagePlus( newName, result );
+        resultPlus.copyScale( imagePlus );
+		Images3D.optimizeDisplayRange( resultPlus );
+		resultPlus.updateAndDraw();
+        resultPlus.show();
+        resultPlus.setSlice( imagePlus.getCurrentSlice() );
+	}// end run method
+
+	@Override
+	public boolean dialogItemChanged( GenericDialog gd, AWTEvent evt )
+	{
+		parseDialogParameters( gd );
+		if( evt == null )
+			return true;
+		if( gd.getPreviewCheckbox().getState() )
+			updatePreview();
+		else
+			removePreview();
+		return true;
+	}
+
+	private void parseDialogParameters( GenericDialog gd )
+	{
         operation = Operation.fromLabel( gd.getNextChoice() );
         attribute = Attribute.fromLabel( gd.getNextChoice() );
         nPixelMin = (int) gd.getNextNumber();
         connectivityChoice = gd.getNextChoiceIndex();
-        int connectivity = connectivityValues[ connectivityChoice ];
+        useComponentTree = gd.getNextBoolean();
+	}
 
-        ImagePlus resultPlus;
-        String newName = imagePlus.getShortTitle() + "-attrFilt";
+	private void updatePreview()
+	{
+		ImageStack result = computeResult();
+		int slice = imagePlus.getCurrentSlice();
+		imagePlus.setStack( result );
+		imagePlus.setSlice( slice );
+		Images3D.optimizeDisplayRange( imagePlus );
+		imagePlus.updateAndDraw();
+	}
+
+	private void removePreview()
+	{
+		if( imagePlus.getStack() == baseStack )
+			return;
+		int slice = imagePlus.getCurrentSlice();
+		imagePlus.setStack( baseStack );
+		imagePlus.setSlice( slice );
+		imagePlus.setDisplayRange( baseMin, baseMax );
+		imagePlus.updateAndDraw();
+	}
+
+	/**
+	 * Releases the filter input and the cached component tree.
+	 */
+	private void clearFilterData()
+	{
+		filterInput = null;
+		treeCache.clear();
+	}
+
+	/**
+	 * Returns the stack to filter, inverted for closing and bottom-hat. The
+	 * stack is computed again only when the inversion changes.
+	 */
+	private ImageStack getFilterInput( boolean inverted )
+	{
+		if( filterInput == null || filterInputInverted != inverted )
+		{
+			ImagePlus image2 = new ImagePlus( "", baseStack.duplicate() );
+			if( inverted )
+			{
+				image2.setDisplayRange( baseMin, baseMax );
+				IJ.run( image2, "Invert", "stack" );
+			}
+			filterInput = image2.getStack();
+			filterInputInverted = inverted;
+			treeCache.clear();
+		}
+		return filterInput;
+	}
+
+	/**
+	 * Applies the operation selected in the dialog to the original stack.
+	 */
+	private ImageStack computeResult()
+	{
+		int connectivity = connectivityValues[ connectivityChoice ];
 
         // Identify image to process (original, or inverted)
-        ImagePlus image2 = imagePlus.duplicate();
-        if( operation == Operation.CLOSING ||
-        		operation == Operation.BOTTOM_HAT )        	
-        {        	
-        	IJ.run( image2, "Invert", "stack" );
-        }
+		boolean inverted = operation == Operation.CLOSING ||
+        		operation == Operation.BOTTOM_HAT;
+        final ImageStack image = getFilterInput( inverted );
 
         // apply volume opening
-        final ImageStack image = image2.getStack();
-        final ImageStack result =
-        		AttributeFiltering.volumeOpening(
+        final ImageStack result;
+        if( useComponentTree )
+        {
+        	ComponentTreeFiltering algo = new ComponentTreeFiltering();
+        	algo.setConnectivity( connectivity );
+        	algo.setCache( treeCache );
+        	DefaultAlgoListener.monitor( algo );
+        	result = algo.process( image, nPixelMin );
+        }
+        else
+        {
+        	treeCache.clear();
+        	result = AttributeFiltering.volumeOpening(
         				image, nPixelMin, connectivity );
-        resultPlus = new ImagePlus( newName, result );
+        }
 
         // For top-hat and bottom-hat, we consider the difference with the
         // original image
@@ -230,13 +373,8 @@ public class GrayscaleAttributeFiltering3D implements PlugIn
 
         // For closing, invert back the result
         else if( operation == Operation.CLOSING )
-        	IJ.run( resultPlus, "Invert", "stack" );
+        	IJ.run( new ImagePlus( "", result ), "Invert", "stack" );
 
-        // show result
-        resultPlus.copyScale( imagePlus );
-		Images3D.optimizeDisplayRange( resultPlus );
-		resultPlus.updateAndDraw();
-        resultPlus.show();
-        resultPlus.setSlice( imagePlus.getCurrentSlice() );
-	}// end run method
+        return result;
+	}
 } // end class
@@ -30,7 +30,12 @@ import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.morphology.attrfilt.AreaOpeningQueue;
+import inra.ijpb.morphology.attrfilt.BoxDiagonalAttribute;
 import inra.ijpb.morphology.attrfilt.BoxDiagonalOpeningQueue;
+import inra.ijpb.morphology.attrfilt.ComponentTreeAttribute;
+import inra.ijpb.morphology.attrfilt.ComponentTreeCache;
+import inra.ijpb.morphology.attrfilt.ComponentTreeFiltering;
+import inra.ijpb.morphology.attrfilt.SizeAttribute;
 
 import java.awt.AWTEvent;
 
@@ -161,11 +166,17 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 	/** Keep instance of result image */
 	private ImageProcessor result;
 
+	/**
+	 * Keeps the component tree of the image between successive previews, such
+	 * that changing the minimum value only requires to filter the tree.
+	 */
+	private ComponentTreeCache treeCache = new ComponentTreeCache();
 	
 	Operation operation = Operation.OPENING;
 	Attribute attribute = Attribute.AREA; 
 	int minimumValue = 100;
 	int connectivity = 4;
+	boolean useComponentTree = true;
 	
 	
 	@Override
@@ -177,6 +188,7 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 			// replace the preview image by the original image 
 			resetPreview();
 			imagePlus.updateAndDraw();
+			treeCache.clear();
 			
 			// Create a new ImagePlus with the result
 			String newName = imagePlus.getShortTitle() + "-attrFilt";
@@ -206,6 +218,7 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 		gd.addChoice("Attribute", Attribute.getAllLabels(), Attribute.AREA.label);
 		gd.addNumericField("Minimum Value", 100, 0, 10, "pixels");
 		gd.addChoice("Connectivity", connectivityLabels, connectivityLabels[0]);
+		gd.addCheckbox("Use Component Tree", true);
 		
 		gd.addPreviewCheckbox(pfr);
 		gd.addDialogListener(this);
@@ -216,6 +229,7 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
         if (gd.wasCanceled())
         {
         	resetPreview();
+        	treeCache.clear();
         	return DONE;
         }	
         parseDialogParameters(gd);
@@ -236,8 +250,17 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 			image2.invert();
 		}
 		
-		// switch depending on attribute to use
-		if (attribute == Attribute.AREA)
+		// switch depending on algorithm and attribute to use
+		if (this.useComponentTree)
+		{
+			ComponentTreeAttribute attr = attribute == Attribute.AREA ? new SizeAttribute() : new BoxDiagonalAttribute();
+			ComponentTreeFiltering algo = new ComponentTreeFiltering(attr);
+			algo.setConnectivity(this.connectivity);
+			algo.setCache(this.treeCache);
+			DefaultAlgoListener.monitor(algo);
+			this.result = algo.process(image2, this.minimumValue);
+		}
+		else if (attribute == Attribute.AREA)
 		{
 			AreaOpeningQueue algo = new AreaOpeningQueue();
 			algo.setConnectivity(this.connectivity);
@@ -325,6 +348,7 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 		this.attribute 		= Attribute.fromLabel(gd.getNextChoice());
 		this.minimumValue	= (int) gd.getNextNumber();
 		this.connectivity 	= connectivityValues[gd.getNextChoiceIndex()];
+		this.useComponentTree = gd.getNextBoolean();
 		this.previewing 	= gd.getPreviewCheckbox().getState();
     }
 
@@ -24,6 +24,7 @@ package inra.ijpb.plugins;
 import java.awt.AWTEvent;
 import java.awt.event.ActionEvent;
 import java.awt.image.IndexColorModel;
+import java.util.Arrays;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -41,11 +42,7 @@ import ij.process.LUT;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.binary.ChamferWeights;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransform;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat5x5;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort5x5;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformQueue;
 import inra.ijpb.util.ColorMaps;
 import inra.ijpb.util.IJUtils;
 
@@ -83,6 +80,13 @@ DialogListener
 	private static boolean resultAsFloat = true;
 	/** flag to select to normalize the weights */
 	private static boolean normalize = true;
+	/** flag to select fast marching instead of chamfer weights */
+	private static boolean fastMarching = false;
+
+	/** distance transform kept between previews for incremental updates */
+	private GeodesicDistanceTransformQueue algo = null;
+	/** description of the options used to create the distance transform */
+	private String algoOptions = null;
 	/**
 	 * Called at the beginning of the process to know if the plugin can be run
 	 * with current image, and at the end to finalize.
@@ -159,6 +163,7 @@ DialogListener
 		gd.addChoice( "Output Type", outputTypes,
 				outputTypes[ resultAsFloat ? 0:1 ] );
 		gd.addCheckbox( "Normalize weights", normalize );
+		gd.addCheckbox( "Fast marching", fastMarching );
 		gd.addPreviewCheckbox( pfr );
 		gd.addDialogListener(this);
 		previewing = true;
@@ -174,6 +179,7 @@ DialogListener
 				gd.getNextChoice());
 		resultAsFloat = gd.getNextChoiceIndex() == 0;
 		normalize = gd.getNextBoolean();
+		fastMarching = gd.getNextBoolean();
 
 		return flags;
 	}
@@ -188,6 +194,7 @@ DialogListener
 		weights = ChamferWeights.fromLabel( gd.getNextChoice() );
 		resultAsFloat = gd.getNextChoiceIndex() == 0;
 		normalize = gd.getNextBoolean();
+		fastMarching = gd.getNextBoolean();
 		return true;
 	}
 
@@ -287,17 +294,19 @@ DialogListener
 		marker.setColor( java.awt.Color.WHITE );
 		marker.draw( roi );
 
-		// Initialize calculator
-		GeodesicDistanceTransform algo;
-		if( weights.length == 2 )
-			algo = new GeodesicDistanceTransformFloat( weights, normalize );
-		else
-			algo = new GeodesicDistanceTransformFloat5x5( weights, normalize );
-
-		DefaultAlgoListener.monitor( algo );
+		// Initialize calculator, unless options are unchanged
+		String options = "float" + Arrays.toString( weights ) + normalize
+				+ fastMarching;
+		if( algo == null || !options.equals( algoOptions ) )
+		{
+			algo = new GeodesicDistanceTransformQueue( weights, normalize );
+			algo.setFastMarching( fastMarching );
+			DefaultAlgoListener.monitor( algo );
+			algoOptions = options;
+		}
 
-		// Compute distance on specified images
-		ImageProcessor result = algo.geodesicDistanceMap( marker, mask );
+		// Update distance from the markers modified since last call
+		ImageProcessor result = algo.updateDistanceMap( marker, mask );
 
 		// setup display options
 		double maxVal = result.getMax();
@@ -349,17 +358,19 @@ DialogListener
 		marker.setColor( java.awt.Color.WHITE );
 		marker.draw( roi );
 
-		// Initialize calculator
-		GeodesicDistanceTransform algo;
-		if( weights.length == 2 )
-			algo = new GeodesicDistanceTransformShort( weights, normalize );
-		else
-			algo = new GeodesicDistanceTransformShort5x5( weights, normalize );
-
-		DefaultAlgoListener.monitor( algo );
+		// Initialize calculator, unless options are unchanged
+		String options = "short" + Arrays.toString( weights ) + normalize
+				+ fastMarching;
+		if( algo == null || !options.equals( algoOptions ) )
+		{
+			algo = new GeodesicDistanceTransformQueue( weights, normalize );
+			algo.setFastMarching( fastMarching );
+			DefaultAlgoListener.monitor( algo );
+			algoOptions = options;
+		}
 
-		// Compute distance on specified images
-		ImageProcessor result = algo.geodesicDistanceMap( marker, mask );
+		// Update distance from the markers modified since last call
+		ImageProcessor result = algo.updateDistanceMap( marker, mask );
 
 		// setup display options
 		double maxVal = result.getMax();
@@ -34,7 +34,6 @@ import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
 import ij.process.ImageProcessor;
-import inra.ijpb.binary.ChamferWeights;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.measure.GeometricMeasures2D;
 
@@ -54,9 +53,7 @@ public class MaxInscribedCirclePlugin implements PlugIn
 	@Override
 	public void run(String arg0) 
 	{
-		// Open a dialog to choose:
-		// - a label image
-		// - a set of weights
+		// Open a dialog to choose a label image
 		int[] indices = WindowManager.getIDList();
 		if (indices==null)
 		{
@@ -77,9 +74,6 @@ public class MaxInscribedCirclePlugin implements PlugIn
 		// create the dialog
 		GenericDialog gd = new GenericDialog("Max. Inscribed Circle");
 		gd.addChoice("Label Image:", imageNames, selectedImageName);
-		// Set Chessknight weights as default
-		gd.addChoice("Distances", ChamferWeights.getAllLabels(), 
-				ChamferWeights.CHESSKNIGHT.toString());
 		gd.addCheckbox("Show Overlay Result", true);
 		gd.addChoice("Image to overlay:", imageNames, selectedImageName);
 		gd.showDialog();
@@ -90,7 +84,6 @@ public class MaxInscribedCirclePlugin implements PlugIn
 		// set up current parameters
 		int labelImageIndex = gd.getNextChoiceIndex();
 		ImagePlus labelImage = WindowManager.getImage(labelImageIndex+1);
-		ChamferWeights weights = ChamferWeights.fromLabel(gd.getNextChoice());
 		boolean showOverlay = gd.getNextBoolean();
 		int resultImageIndex = gd.getNextChoiceIndex();
 		
@@ -102,7 +95,7 @@ public class MaxInscribedCirclePlugin implements PlugIn
         }
         
 		// Execute the plugin
-		ResultsTable table = process(labelImage, weights.getShortWeights());
+		ResultsTable table = process(labelImage);
        
         // Display plugin result
 		String tableName = labelImage.getShortTitle() + "-MaxInscribedCircle"; 
@@ -123,12 +116,28 @@ public class MaxInscribedCirclePlugin implements PlugIn
 	 * @param imagePlus
 	 *            the image to process
 	 * @param weights
-	 *            the set of weights for propagating distances
+	 *            ignored, as distances are computed with the exact Euclidean
+	 *            distance transform
 	 * @return an array of objects with results
-	 * @deprecated replaced by process method
+	 * @deprecated the weights are ignored, use the {@link #process(ImagePlus)}
+	 *             method instead
 	 */
 	@Deprecated
     public Object[] exec(ImagePlus imagePlus, short[] weights) 
+    {
+        return exec(imagePlus);
+    }
+    
+    /**
+	 * Main body of the plugin.
+	 * 
+	 * @param imagePlus
+	 *            the image to process
+	 * @return an array of objects with results
+	 * @deprecated replaced by the {@link #process(ImagePlus)} method
+	 */
+	@Deprecated
+    public Object[] exec(ImagePlus imagePlus) 
     {
         // Check validity of parameters
         if (imagePlus==null) 
@@ -152,10 +161,26 @@ public class MaxInscribedCirclePlugin implements PlugIn
 	 * @param imagePlus
 	 *            the image to process
 	 * @param weights
-	 *            the set of weights for propagating distances
+	 *            ignored, as distances are computed with the exact Euclidean
+	 *            distance transform
 	 * @return an array of objects with results
+	 * @deprecated the weights are ignored, use the {@link #process(ImagePlus)}
+	 *             method instead
 	 */
+	@Deprecated
     public ResultsTable process(ImagePlus imagePlus, short[] weights) 
+    {
+        return process(imagePlus);
+    }
+    
+    /**
+	 * Main body of the plugin.
+	 * 
+	 * @param imagePlus
+	 *            the image to process
+	 * @return an array of objects with results
+	 */
+    public ResultsTable process(ImagePlus imagePlus) 
     {
         // Check validity of parameters
         if (imagePlus==null) 
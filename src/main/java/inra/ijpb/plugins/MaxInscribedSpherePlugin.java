@@ -30,7 +30,6 @@ import ij.gui.GenericDialog;
 import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
-import inra.ijpb.binary.ChamferWeights3D;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.measure.GeometricMeasures3D;
 
@@ -48,9 +47,7 @@ public class MaxInscribedSpherePlugin implements PlugIn
 	@Override
 	public void run(String arg0) 
 	{
-		// Open a dialog to choose:
-		// - a label image
-		// - a set of weights
+		// Open a dialog to choose a label image
 		int[] indices = WindowManager.getIDList();
 		if (indices==null)
 		{
@@ -71,9 +68,6 @@ public class MaxInscribedSpherePlugin implements PlugIn
 		// create the dialog
 		GenericDialog gd = new GenericDialog("Max. Inscribed Sphere");
 		gd.addChoice("Label Image:", imageNames, selectedImageName);
-		// Set Borgefors weights as default
-		gd.addChoice("Distances", ChamferWeights3D.getAllLabels(), 
-				ChamferWeights3D.BORGEFORS.toString());
 		gd.showDialog();
 		
 		if (gd.wasCanceled())
@@ -82,7 +76,6 @@ public class MaxInscribedSpherePlugin implements PlugIn
 		// set up current parameters
 		int labelImageIndex = gd.getNextChoiceIndex();
 		ImagePlus labelImage = WindowManager.getImage(labelImageIndex+1);
-		ChamferWeights3D weights = ChamferWeights3D.fromLabel(gd.getNextChoice());
 		
 		// check if image is a 3D label image
 		if (labelImage.getStackSize() <= 1) 
@@ -99,7 +92,7 @@ public class MaxInscribedSpherePlugin implements PlugIn
         }
         
 		// Execute the plugin
-		ResultsTable table = process(labelImage, weights.getShortWeights());
+		ResultsTable table = process(labelImage);
         
         // Display plugin result
 		String tableName = labelImage.getShortTitle() + "-MaxInscribedSphere"; 
@@ -112,12 +105,28 @@ public class MaxInscribedSpherePlugin implements PlugIn
 	 * @param imagePlus
 	 *            the image to analyze
 	 * @param weights
-	 *            the set of weights for propagating distances
+	 *            ignored, as distances are computed with the exact Euclidean
+	 *            distance transform
 	 * @return an array of objects containing the results
-	 * @deprecated replaced by process method
+	 * @deprecated the weights are ignored, use the {@link #process(ImagePlus)}
+	 *             method instead
 	 */
 	@Deprecated
     public Object[] exec(ImagePlus imagePlus, short[] weights) 
+    {
+        return exec(imagePlus);
+    }
+    
+    /**
+	 * Main body of the plugin.
+	 * 
+	 * @param imagePlus
+	 *            the image to analyze
+	 * @return an array of objects containing the results
+	 * @deprecated replaced by the {@link #process(ImagePlus)} method
+	 */
+	@Deprecated
+    public Object[] exec(ImagePlus imagePlus) 
     {
         // Check validity of parameters
         if (imagePlus==null) 
@@ -141,10 +150,26 @@ public class MaxInscribedSpherePlugin implements PlugIn
 	 * @param imagePlus
 	 *            the image to analyze
 	 * @param weights
-	 *            the set of weights for propagating distances
+	 *            ignored, as distances are computed with the exact Euclidean
+	 *            distance transform
 	 * @return an array of objects containing the results
+	 * @deprecated the weights are ignored, use the {@link #process(ImagePlus)}
+	 *             method instead
 	 */
+	@Deprecated
     public ResultsTable process(ImagePlus imagePlus, short[] weights) 
+    {
+        return process(imagePlus);
+    }
+    
+    /**
+	 * Main body of the plugin.
+	 * 
+	 * @param imagePlus
+	 *            the image to analyze
+	 * @return an array of objects containing the results
+	 */
+    public ResultsTable process(ImagePlus imagePlus) 
     {
         // Check validity of parameters
         if (imagePlus==null) 
@@ -36,6 +36,7 @@ import ij.plugin.PlugIn;
 import ij.plugin.frame.Recorder;
 import ij.process.ImageProcessor;
 import ij.process.LUT;
+import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.data.image.ColorImages;
 import inra.ijpb.data.image.Images3D;
@@ -46,6 +47,8 @@ import inra.ijpb.morphology.Strel;
 import inra.ijpb.morphology.Strel3D;
 import inra.ijpb.util.ColorMaps;
 import inra.ijpb.util.ColorMaps.CommonLabelMaps;
+import inra.ijpb.watershed.RegionMergeTree;
+import inra.ijpb.watershed.RegionMerging;
 import inra.ijpb.watershed.Watershed;
 
 import java.awt.Color;
@@ -80,8 +83,11 @@ import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * Plugin to perform automatic segmentation of 2D and 3D images 
@@ -221,6 +227,8 @@ public class MorphologicalSegmentation implements PlugIn {
 	JCheckBox damsCheckBox;
 	/** flag to select/deselect the calculation of watershed dams */
 	private boolean calculateDams = true;
+	/** connectivity used by the last segmentation */
+	private int mergeConnectivity = 6;
 
 	/** connectivity choice */
 	JPanel connectivityPanel = new JPanel();
@@ -287,6 +295,21 @@ public class MorphologicalSegmentation implements PlugIn {
 	JButton mergeButton = null;
 	/** button to shuffle LUT of display image */
 	JButton shuffleColorsButton = null;
+	/** label for the region merging criterion combo box */
+	JLabel mergeCriterionLabel = null;
+	/** combo box with the criteria used to merge regions */
+	JComboBox<String> mergeCriterionList = null;
+	/** label displaying the current merge level */
+	JLabel mergeLevelLabel = null;
+	/** slider to select the number of region merges */
+	JSlider mergeLevelSlider = null;
+
+	/** watershed result before region merging */
+	ImageStack watershedStack = null;
+	/** image used to compute the watershed (gradient or input image) */
+	ImageStack floodedStack = null;
+	/** hierarchy of merges of the watershed regions */
+	RegionMergeTree mergeTree = null;
 
 	/** thread to run the segmentation */
 	private Thread segmentationThread = null;
@@ -329,6 +352,10 @@ public class MorphologicalSegmentation implements PlugIn {
 	public static String MERGE_LABELS = "mergeLabels";
 	/** name of the macro method to shuffle color labels */
 	public static String SHUFFLE_COLORS = "shuffleColors";
+	/** name of the macro method to set the region merging criterion */
+	public static String SET_MERGE_CRITERION = "setMergeCriterion";
+	/** name of the macro method to set the number of region merges */
+	public static String SET_MERGE_LEVEL = "setMergeLevel";
 
 	/** opacity to display overlays */
 	double opacity = 1.0/3.0;
@@ -426,6 +453,16 @@ public class MorphologicalSegmentation implements PlugIn {
 						{
 							shuffleColors();
 						}
+						else if( e.getSource() == mergeCriterionList )
+						{
+							setParamsEnabled( false );
+							resetMergeTree();
+							setMergeLevel( 0 );
+							setParamsEnabled( true );
+							// Macro recording
+							String[] arg = new String[] { (String) mergeCriterionList.getSelectedItem() };
+							record( SET_MERGE_CRITERION, arg );
+						}
 					}
 
 					
@@ -435,6 +472,32 @@ public class MorphologicalSegmentation implements PlugIn {
 
 		};
 
+		/**
+		 * Listener for the merge level slider
+		 */
+		private ChangeListener mergeLevelListener = new ChangeListener() {
+
+			@Override
+			public void stateChanged( final ChangeEvent e )
+			{
+				// wait for the user to release the slider
+				if( mergeLevelSlider.getValueIsAdjusting() )
+					return;
+
+				final int nMerges = mergeLevelSlider.getValue();
+				exec.submit(new Runnable() {
+
+					public void run()
+					{
+						setMergeLevel( nMerges );
+						// Macro recording
+						String[] arg = new String[] { String.valueOf( nMerges ) };
+						record( SET_MERGE_LEVEL, arg );
+					}
+				});
+			}
+		};
+
 
 		/**
 		 * Construct the plugin window
@@ -695,6 +758,24 @@ public class MorphologicalSegmentation implements PlugIn {
 			shuffleColorsButton.setToolTipText( "Shuffle color labels" );
 			shuffleColorsButton.addActionListener( listener );
 
+			mergeCriterionLabel = new JLabel( "Merge criterion" );
+			mergeCriterionLabel.setEnabled( false );
+			mergeCriterionList = new JComboBox<String>( RegionMerging.Criterion.getAllLabels() );
+			mergeCriterionList.setEnabled( false );
+			mergeCriterionList.setToolTipText( "Saliency of the boundaries used to merge regions" );
+			mergeCriterionList.addActionListener( listener );
+			JPanel mergeCriterionPanel = new JPanel();
+			mergeCriterionPanel.add( mergeCriterionLabel );
+			mergeCriterionPanel.add( mergeCriterionList );
+
+			mergeLevelLabel = new JLabel( "Merged regions: 0" );
+			mergeLevelLabel.setEnabled( false );
+			mergeLevelSlider = new JSlider( 0, 0, 0 );
+			mergeLevelSlider.setEnabled( false );
+			mergeLevelSlider.setToolTipText( "Number of adjacent regions to merge, "
+					+ "in the order of increasing boundary saliency" );
+			mergeLevelSlider.addChangeListener( mergeLevelListener );
+
 			GridBagLayout mergingLayout = new GridBagLayout();
 			postProcessPanel.setLayout( mergingLayout );
 
@@ -710,6 +791,12 @@ public class MorphologicalSegmentation implements PlugIn {
 			postProcessPanel.add( mergeButton, ppConstraints );
 			ppConstraints.gridy++;
 			postProcessPanel.add( shuffleColorsButton, ppConstraints );
+			ppConstraints.gridy++;
+			postProcessPanel.add( mergeCriterionPanel, ppConstraints );
+			ppConstraints.gridy++;
+			postProcessPanel.add( mergeLevelLabel, ppConstraints );
+			ppConstraints.gridy++;
+			postProcessPanel.add( mergeLevelSlider, ppConstraints );
 			postProcessPanel.setBorder( BorderFactory.createTitledBorder(
 					"Post-processing" ) );
 
@@ -1189,6 +1276,14 @@ public class MorphologicalSegmentation implements PlugIn {
 
 						final long end = System.currentTimeMillis();
 						IJ.log( "Watershed 3d took " + (end-step3) + " ms.");
+
+						// keep a copy of the watershed result, as the displayed
+						// stack may be modified by merging labels; the hierarchy
+						// of region merges is computed on first merge level change
+						watershedStack = resultStack.duplicate();
+						floodedStack = image;
+						mergeConnectivity = connectivity;
+						resetMergeTree();
 						IJ.log( "Whole plugin took " + (end-start) + " ms.");
 
 						// Adjust min and max values to display
@@ -1334,6 +1429,114 @@ public class MorphologicalSegmentation implements PlugIn {
 			record( MERGE_LABELS );
 		}
 
+		/**
+		 * Discard the hierarchy of merges of the watershed regions, and reset
+		 * the merge level slider. The hierarchy is computed again the next
+		 * time the merge level is changed.
+		 */
+		void resetMergeTree()
+		{
+			mergeTree = null;
+			if( null == watershedStack )
+				return;
+
+			// until the tree is computed, the number of merges is bounded by
+			// the number of regions minus one
+			int nRegions = LabelImages.findAllLabels( watershedStack ).length;
+			mergeLevelSlider.removeChangeListener( mergeLevelListener );
+			mergeLevelSlider.setMaximum( Math.max( nRegions - 1, 0 ) );
+			mergeLevelSlider.setValue( 0 );
+			mergeLevelSlider.addChangeListener( mergeLevelListener );
+			mergeLevelLabel.setText( "Merged regions: 0" );
+		}
+
+		/**
+		 * Compute the hierarchy of merges of the watershed regions, using the
+		 * selected criterion, and update the range of the merge level slider.
+		 */
+		void computeMergeTree()
+		{
+			if( null == watershedStack )
+				return;
+
+			final long start = System.currentTimeMillis();
+			IJ.log( "Computing region merge tree..." );
+
+			RegionMerging.Criterion criterion = RegionMerging.Criterion.fromLabel(
+					(String) mergeCriterionList.getSelectedItem() );
+			RegionMerging algo = new RegionMerging( criterion, mergeConnectivity );
+			DefaultAlgoListener.monitor( algo );
+			mergeTree = algo.process( watershedStack, floodedStack );
+
+			IJ.log( "Region merge tree took " + (System.currentTimeMillis() - start) + " ms." );
+
+			// update slider range without triggering a new merge
+			mergeLevelSlider.removeChangeListener( mergeLevelListener );
+			mergeLevelSlider.setMaximum( mergeTree.mergeCount() );
+			mergeLevelSlider.addChangeListener( mergeLevelListener );
+		}
+
+		/**
+		 * Set the criterion used to merge regions and update the merge tree
+		 *
+		 * @param criterion name of the merge criterion
+		 */
+		void setMergeCriterion( String criterion )
+		{
+			mergeCriterionList.removeActionListener( listener );
+			mergeCriterionList.setSelectedItem(
+					RegionMerging.Criterion.fromLabel( criterion ).toString() );
+			mergeCriterionList.addActionListener( listener );
+			resetMergeTree();
+			setMergeLevel( 0 );
+		}
+
+		/**
+		 * Update the result image with the regions obtained after the
+		 * specified number of merges.
+		 *
+		 * @param nMerges number of merges of adjacent regions
+		 */
+		void setMergeLevel( int nMerges )
+		{
+			if( null == watershedStack )
+			{
+				IJ.error( "You need to run the segmentation before merging "
+						+ "regions!" );
+				return;
+			}
+			// the hierarchy of merges is only needed to merge regions
+			if( null == mergeTree && nMerges > 0 )
+				computeMergeTree();
+			int maxMerges = null == mergeTree ? 0 : mergeTree.mergeCount();
+			nMerges = Math.min( Math.max( nMerges, 0 ), maxMerges );
+			if( mergeLevelSlider.getValue() != nMerges )
+			{
+				mergeLevelSlider.removeChangeListener( mergeLevelListener );
+				mergeLevelSlider.setValue( nMerges );
+				mergeLevelSlider.addChangeListener( mergeLevelListener );
+			}
+
+			String text = "Merged regions: " + nMerges;
+			if( nMerges > 0 )
+				text += " (level " + IJ.d2s( mergeTree.getLevel( nMerges - 1 ), 2 ) + ")";
+			mergeLevelLabel.setText( text );
+
+			// never display the watershed result itself, as merging labels
+			// modifies the displayed stack in place
+			ColorModel cm = resultImage.getImageStack().getColorModel();
+			ImageStack merged = nMerges == 0 ? watershedStack.duplicate()
+					: mergeTree.createLabelImage( watershedStack, nMerges );
+			merged.setColorModel( cm );
+			resultImage.setStack( merged );
+			resultImage.getProcessor().setColorModel( cm );
+			resultImage.setSlice( displayImage.getCurrentSlice() );
+			resultImage.updateAndDraw();
+
+			if ( showColorOverlay )
+				updateResultOverlay();
+		}
+
 		/**
 		 * Shuffle colors of current result image
 		 */
@@ -1595,6 +1798,10 @@ public class MorphologicalSegmentation implements PlugIn {
 			enableGradientOptions( enabled );
 		this.mergeButton.setEnabled( enabled );
 		this.shuffleColorsButton.setEnabled( enabled );
+		this.mergeCriterionLabel.setEnabled( enabled );
+		this.mergeCriterionList.setEnabled( enabled );
+		this.mergeLevelLabel.setEnabled( enabled );
+		this.mergeLevelSlider.setEnabled( enabled );
 	}
 
 	/**
@@ -1794,6 +2001,37 @@ public class MorphologicalSegmentation implements PlugIn {
 		}
 	}
 
+	/**
+	 * Set the criterion used to merge adjacent regions, and compute the
+	 * hierarchy of merges.
+	 * 
+	 * @param criterion name of the criterion ("Min Dam Height", "Mean Dam Height", "Dynamic", "Area")
+	 */
+	public static void setMergeCriterion( String criterion )
+	{
+		final ImageWindow iw = WindowManager.getCurrentImage().getWindow();
+		if( iw instanceof CustomWindow )
+		{
+			final CustomWindow win = (CustomWindow) iw;
+			win.setMergeCriterion( criterion );
+		}
+	}
+
+	/**
+	 * Merge adjacent regions of the current segmentation result
+	 * 
+	 * @param nMerges number of merges, as a string
+	 */
+	public static void setMergeLevel( String nMerges )
+	{
+		final ImageWindow iw = WindowManager.getCurrentImage().getWindow();
+		if( iw instanceof CustomWindow )
+		{
+			final CustomWindow win = (CustomWindow) iw;
+			win.setMergeLevel( Integer.parseInt( nMerges ) );
+		}
+	}
+
 	/**
 	 * Show current result in a new image
 	 */
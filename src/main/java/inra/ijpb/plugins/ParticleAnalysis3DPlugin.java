@@ -22,6 +22,8 @@
 package inra.ijpb.plugins;
 
 
+import java.util.EnumSet;
+
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -29,8 +31,9 @@ import ij.gui.GenericDialog;
 import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
-import inra.ijpb.label.LabelImages;
-import inra.ijpb.measure.GeometricMeasures3D;
+import inra.ijpb.algo.DefaultAlgoListener;
+import inra.ijpb.measure.RegionAnalyzer3D;
+import inra.ijpb.measure.RegionAnalyzer3D.Feature;
 
 /**
  * Plugin for measuring geometric quantities such as volume, surface area,
@@ -199,103 +202,32 @@ public class ParticleAnalysis3DPlugin implements PlugIn
         	resol[2] = calib.pixelDepth;
         }
 
-        // declare arrays for results
-        double[] volumes = null;
-        double[] surfaces = null;
-        double[] eulerNumbers = null;
-        double[] sphericities = null;
-        double[][] ellipsoids = null;
-        double[][] elongations = null;
-        double[][] inscribedBalls = null;
-        
-        
-        // Identifies labels within image
-        int[] labels = LabelImages.findAllLabels(image);
-
-               
-        // compute geometrical quantities
+        // choose the features to compute
+        EnumSet<Feature> features = EnumSet.noneOf(Feature.class);
         if (computeVolume)
-        {
-        	volumes = GeometricMeasures3D.volume(image, labels, resol);
-        }
+        	features.add(Feature.VOLUME);
         if (computeSurface)
-        {
-        	surfaces = GeometricMeasures3D.surfaceAreaCrofton(image, labels, resol, surfaceAreaDirs);
-        }
-        if (computeEulerNumber)
-        {
-        	eulerNumbers = GeometricMeasures3D.eulerNumber(image, labels, connectivity);
-        }
+        	features.add(Feature.SURFACE_AREA);
         if (computeSphericity)
-        {
-        	sphericities = GeometricMeasures3D.computeSphericity(volumes, surfaces);
-        }
-        
-        // compute inertia ellipsoids and their elongations
+        	features.add(Feature.SPHERICITY);
+        if (computeEulerNumber)
+        	features.add(Feature.EULER_NUMBER);
         if (computeEllipsoid)
-        {
-        	ellipsoids = GeometricMeasures3D.inertiaEllipsoid(image, labels, resol);
-        }
+        	features.add(Feature.INERTIA_ELLIPSOID);
         if (computeElongations)
-        {
-        	elongations = GeometricMeasures3D.computeEllipsoidElongations(ellipsoids);
-        }
-        
-        // compute position and radius of maximal inscribed ball
+        	features.add(Feature.ELLIPSOID_ELONGATIONS);
         if (computeInscribedBall)
-        {
-        	inscribedBalls = GeometricMeasures3D.maximumInscribedSphere(image, labels, resol);
-        }
+        	features.add(Feature.INSCRIBED_SPHERE);
         
+        // compute all the features with a single scan of the image
+        RegionAnalyzer3D analyzer = new RegionAnalyzer3D(features);
+        analyzer.setSurfaceAreaDirs(surfaceAreaDirs);
+        analyzer.setConnectivity(connectivity);
+        DefaultAlgoListener.monitor(analyzer);
+        RegionAnalyzer3D.Result result = analyzer.analyze(image, resol);
         
         // Convert to ResultsTable object
-        ResultsTable table = new ResultsTable();
-        for (int i = 0; i < labels.length; i++) 
-        {
-        	table.incrementCounter();
-        	table.addLabel(Integer.toString(labels[i]));
-        	
-        	// geometrical quantities
-        	if (computeVolume)
-        		table.addValue("Volume", volumes[i]);
-        	if (computeSurface)
-        		table.addValue("SurfaceArea", surfaces[i]);
-        	if (computeSphericity)
-        		table.addValue("Sphericity", sphericities[i]);
-        	if (computeEulerNumber)
-        		table.addValue("EulerNumber", eulerNumbers[i]);
-
-        	// inertia ellipsoids
-        	if (computeEllipsoid)
-        	{
-                // add coordinates of origin pixel (IJ coordinate system) 
-                table.addValue("Elli.Center.X", ellipsoids[i][0]);
-            	table.addValue("Elli.Center.Y", ellipsoids[i][1]);
-            	table.addValue("Elli.Center.Z", ellipsoids[i][2]);
-            	// add scaling parameters 
-                table.addValue("Elli.R1", ellipsoids[i][3]);
-            	table.addValue("Elli.R2", ellipsoids[i][4]);
-            	table.addValue("Elli.R3", ellipsoids[i][5]);
-            	// add orientation info
-                table.addValue("Elli.Azim", ellipsoids[i][6]);
-            	table.addValue("Elli.Elev", ellipsoids[i][7]);
-            	table.addValue("Elli.Roll", ellipsoids[i][8]);
-        	}
-        	if (computeElongations)
-        	{
-        		table.addValue("Elli.R1/R2", elongations[i][0]);
-        		table.addValue("Elli.R1/R3", elongations[i][1]);
-        		table.addValue("Elli.R2/R3", elongations[i][2]);            	
-        	}
-        	
-        	if (computeInscribedBall)
-        	{
-        		table.addValue("InscrBall.Center.X", inscribedBalls[i][0]);
-        		table.addValue("InscrBall.Center.Y", inscribedBalls[i][1]);
-        		table.addValue("InscrBall.Center.Z", inscribedBalls[i][2]);
-        		table.addValue("InscrBall.Radius", inscribedBalls[i][3]);
-        	}
-        }
+        ResultsTable table = result.createTable();
         
         return table;
     }
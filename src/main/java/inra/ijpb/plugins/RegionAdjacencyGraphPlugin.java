@@ -31,14 +31,12 @@ import ij.gui.Roi;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
 import ij.process.ImageProcessor;
-import inra.ijpb.label.LabelImages;
+import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.measure.GeometricMeasures2D;
-import inra.ijpb.measure.RegionAdjacencyGraph;
-import inra.ijpb.measure.RegionAdjacencyGraph.LabelPair;
+import inra.ijpb.measure.LabelAdjacencyGraph;
+import inra.ijpb.measure.RegionAdjacencyGraphBuilder;
 
 import java.awt.Color;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * @author dlegland
@@ -59,65 +57,92 @@ public class RegionAdjacencyGraphPlugin implements PlugIn
 		boolean showRAG = false;
 		ImagePlus targetPlus = imagePlus;
 
-		if (isPlanar)
+		// create the list of image names
+		int[] indices = WindowManager.getIDList();
+		String[] imageNames = new String[indices.length];
+		for (int i = 0; i < indices.length; i++)
 		{
-			// create the list of image names
-			int[] indices = WindowManager.getIDList();
-			String[] imageNames = new String[indices.length];
-			for (int i = 0; i < indices.length; i++)
-			{
-				imageNames[i] = WindowManager.getImage(indices[i]).getTitle();
-			}
-			
-			// name of selected image
-			String selectedImageName = IJ.getImage().getTitle();
+			imageNames[i] = WindowManager.getImage(indices[i]).getTitle();
+		}
+		String[] intensityNames = new String[indices.length + 1];
+		intensityNames[0] = "None";
+		System.arraycopy(imageNames, 0, intensityNames, 1, indices.length);
+		
+		// name of selected image
+		String selectedImageName = IJ.getImage().getTitle();
+		
+		String[] connectivities = isPlanar ? new String[] { "4", "8" } : new String[] { "6", "26" };
 
-			GenericDialog gd = new GenericDialog("Create RAG");
+		GenericDialog gd = new GenericDialog("Create RAG");
+		gd.addChoice("Connectivity", connectivities, connectivities[0]);
+		gd.addCheckbox("Watershed lines", true);
+		gd.addChoice("Boundary intensity", intensityNames, intensityNames[0]);
+		if (isPlanar)
+		{
 			gd.addCheckbox("Show RAG", true);
 			gd.addChoice("Image to overaly", imageNames, selectedImageName);
-			
-			gd.showDialog();
-			if (gd.wasCanceled())
+		}
+		
+		gd.showDialog();
+		if (gd.wasCanceled())
+		{
+			return;
+		}
+		
+		int connectivity = Integer.parseInt(gd.getNextChoice());
+		boolean watershedLines = gd.getNextBoolean();
+		int intensityIndex = gd.getNextChoiceIndex();
+		ImagePlus intensityPlus = null;
+		if (intensityIndex > 0)
+		{
+			intensityPlus = WindowManager.getImage(indices[intensityIndex - 1]);
+			if (intensityPlus.getWidth() != imagePlus.getWidth()
+					|| intensityPlus.getHeight() != imagePlus.getHeight()
+					|| intensityPlus.getStackSize() != imagePlus.getStackSize())
 			{
+				IJ.showMessage("Error", "Intensity image must have the same size as label image");
 				return;
 			}
-			
+		}
+		if (isPlanar)
+		{
 			showRAG = gd.getNextBoolean();
 			int targetImageIndex = gd.getNextChoiceIndex();
 			targetPlus = WindowManager.getImage(indices[targetImageIndex]);
 		}
 
-		Set<LabelPair> adjList = RegionAdjacencyGraph.computeAdjacencies(imagePlus);
+		RegionAdjacencyGraphBuilder builder = new RegionAdjacencyGraphBuilder(connectivity);
+		builder.setWatershedLines(watershedLines);
+		DefaultAlgoListener.monitor(builder);
+		LabelAdjacencyGraph graph = builder.process(imagePlus, intensityPlus);
 		
 		if (showRAG)
 		{
-			overlayRAG(adjList, imagePlus, targetPlus);
+			overlayRAG(graph, imagePlus, targetPlus);
 		}
 		
-		ResultsTable table = createTable(adjList);
+		ResultsTable table = graph.createTable();
 		String newName = imagePlus.getShortTitle() + "-RAG";
 		table.show(newName);
 	}
 	
-	private void overlayRAG(Set<LabelPair> adjList, ImagePlus imagePlus, ImagePlus targetPlus)
+	private void overlayRAG(LabelAdjacencyGraph graph, ImagePlus imagePlus, ImagePlus targetPlus)
 	{
 		IJ.log("display RAG");
 		
 		// first compute centroids
 		ImageProcessor image = imagePlus.getProcessor();
-		int[] labels = LabelImages.findAllLabels(image);
-		Map<Integer, Integer> labelMap = LabelImages.mapLabelIndices(labels);
-		double[][] centroids = GeometricMeasures2D.centroids(image, labels);
+		double[][] centroids = GeometricMeasures2D.centroids(image, graph.getLabels());
 		
 		// create an overlay for drawing edges
 		Overlay overlay = new Overlay();
 		
 		// iterate over adjacencies to add edges to overlay
-		for (LabelPair pair : adjList)
+		for (int e = 0; e < graph.edgeCount(); e++)
 		{
 			// first retrieve index in centroid array
-			int ind1 = labelMap.get(pair.label1);
-			int ind2 = labelMap.get(pair.label2);
+			int ind1 = graph.getEdgeNode1(e);
+			int ind2 = graph.getEdgeNode2(e);
 			
 			// coordinates of edge extremities
 			int x1 = (int) centroids[ind1][0];
@@ -135,20 +160,4 @@ public class RegionAdjacencyGraphPlugin implements PlugIn
 		
 		targetPlus.setOverlay(overlay);
 	}
-	
-	private ResultsTable createTable(Set<LabelPair> adjList)
-	{
-		ResultsTable table = new ResultsTable();
-		table.setPrecision(0);
-		
-		// populate the table with the list of adjacencies
-		for (LabelPair pair : adjList)
-		{
-			table.incrementCounter();
-			table.addValue("Label 1", pair.label1);
-			table.addValue("Label 2", pair.label2);
-		}
-		
-		return table;
-	}
 }
@@ -30,12 +30,17 @@ import java.util.PriorityQueue;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import inra.ijpb.data.Cursor2D;
+import inra.ijpb.data.HierarchicalQueue;
+import inra.ijpb.data.IndexPriorityQueue;
 import inra.ijpb.data.Neighborhood2D;
 import inra.ijpb.data.Neighborhood2DC8;
 import inra.ijpb.data.Neighborhood2DC4;
+import inra.ijpb.data.PackedLongHeap;
 import inra.ijpb.data.PixelRecord;
 
 /**
@@ -881,6 +886,239 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	    return new FloatProcessor( tabLabels );
 	}
 
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. This implementation gives the same result as
+	 * applyWithPriorityQueue(), but stores pixels as linear indices
+	 * within a queue of primitive values instead of creating one
+	 * object per pixel: a hierarchical queue (one FIFO per gray level)
+	 * for 8-bit and 16-bit images, and a binary heap of packed long
+	 * keys for other images.
+	 * 
+	 * @see #applyWithPriorityQueue()
+	 * @return watershed domains image (no dams)
+	 */
+	public ImageProcessor applyWithHierarchicalQueue()
+	{
+		final int[] labels = floodWithIndexQueue( false );
+		if ( null == labels )
+			return null;
+
+		final int size1 = inputImage.getWidth();
+		final int size2 = inputImage.getHeight();
+		final float[] pixels = new float[ size1 * size2 ];
+		for( int i = 0; i < pixels.length; i++ )
+			pixels[ i ] = labels[ i ];
+
+		return new FloatProcessor( size1, size2, pixels );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage (optionally). This implementation gives the same 
+	 * result as applyWithPriorityQueueAndDams(), but stores pixels as
+	 * linear indices within a queue of primitive values instead of
+	 * creating one object per pixel.
+	 * 
+	 * @see #applyWithPriorityQueueAndDams()
+	 * @return watershed domains image (with dams)
+	 */
+	public ImageProcessor applyWithHierarchicalQueueAndDams()
+	{
+		final int[] labels = floodWithIndexQueue( true );
+		if ( null == labels )
+			return null;
+
+		// Create result label image
+		ImageProcessor labelProcessor = markerImage.duplicate();
+		for( int i = 0; i < labels.length; i++ )
+		{
+			if( labels[ i ] == INIT ) // set unlabeled pixels to WSHED
+				labelProcessor.setf( i, 0 );
+			else
+				labelProcessor.setf( i, labels[ i ] );
+		}
+		return labelProcessor;
+	}
+
+	/**
+	 * Flood the input image from the markers, using a priority queue of
+	 * linear pixel indices.
+	 * 
+	 * @param dams flag to compute dams between catchment basins
+	 * @return the array of labels, in linear index order, or null if
+	 * the flooding was interrupted
+	 */
+	private int[] floodWithIndexQueue( boolean dams )
+	{
+		final int size1 = inputImage.getWidth();
+		final int size2 = inputImage.getHeight();
+
+		if (size1 != markerImage.getWidth() || size2 != markerImage.getHeight())
+		{
+			throw new IllegalArgumentException("Marker and input images must have the same size");
+		}
+
+		// Check connectivity has a correct value
+		if ( connectivity != 4 && connectivity != 8 ) 
+		{
+			throw new RuntimeException(
+					"Connectivity for 2D images must be either 4 or 8, not "
+							+ connectivity);
+		}
+
+		// neighbor shifts, in the same order as the Neighborhood2D classes
+		final int[] dx = connectivity == 8 ?
+				new int[]{ -1, -1, -1, 0, 0, 1, 1, 1 } : new int[]{ -1, 0, 1, 0 };
+		final int[] dy = connectivity == 8 ?
+				new int[]{ -1, 0, 1, -1, 1, -1, 0, 1 } : new int[]{ 0, -1, 0, 1 };
+		final int nNeighbors = dx.length;
+
+		// output labels, stored by linear index
+		final int[] labels = new int[ size1 * size2 ];
+		// value INIT is assigned to each pixel of the output labels
+		if( null == maskImage || dams )
+			Arrays.fill( labels, INIT );
+		else
+		{
+			for( int i = 0; i < labels.length; i++ )
+				if( maskImage.getf( i ) > 0 )
+					labels[ i ] = INIT;
+		}
+
+		// choose the queue depending on image type
+		final IndexPriorityQueue queue;
+		if( inputImage instanceof ByteProcessor )
+			queue = new HierarchicalQueue( 256 );
+		else if( inputImage instanceof ShortProcessor )
+			queue = new HierarchicalQueue( 65536 );
+		else
+			queue = new PackedLongHeap();
+
+		// Add the neighbors of the markers to the queue
+		IJ.showStatus( "Extracting pixel values..." );
+		if( verbose ) IJ.log("  Extracting pixel values..." );
+		final long t0 = System.currentTimeMillis();
+
+		for( int x = 0; x < size1; ++x )
+			for( int y = 0; y < size2; ++y )
+			{
+				final int index = y * size1 + x;
+				if( null != maskImage && maskImage.getf( index ) <= 0 )
+					continue;
+
+				int label = (int) markerImage.getf( index );
+				if( label > 0 )
+				{
+					// add unlabeled neighbors to priority queue
+					for( int n = 0; n < nNeighbors; n++ )
+					{
+						int u = x + dx[ n ];
+						int v = y + dy[ n ];
+						if ( u >= 0 && u < size1 && v >= 0 && v < size2 )
+						{
+							int index2 = v * size1 + u;
+							if ( (int) markerImage.getf( index2 ) == 0 &&
+									labels[ index2 ] != INQUEUE )
+							{
+								queue.add( index2, inputImage.getf( index2 ) );
+								labels[ index2 ] = INQUEUE;
+							}
+						}
+					}
+					labels[ index ] = label;
+				}
+			}
+
+		final long t1 = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+
+		// Watershed
+		final long start = System.currentTimeMillis();
+
+		final long count = queue.size();
+		if( verbose ) IJ.log( "  Flooding from " + count + " pixels..." );
+		IJ.showStatus("Flooding from " + count + " pixels...");
+
+		// indices of the unlabeled neighbors of current pixel
+		final int[] neighborIndices = new int[ nNeighbors ];
+		final double numPixels = labels.length;
+		long processed = 0;
+
+		while ( queue.isEmpty() == false )
+		{
+			if ( processed % size1 == 0 )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return null;
+				IJ.showProgress( processed / numPixels );
+			}
+			processed++;
+
+			final int index = (int) queue.poll();
+			final int i = index % size1;
+			final int j = index / size1;
+
+			int nCandidates = 0;
+			int label = 0;
+			boolean severalLabels = false;
+
+			for( int n = 0; n < nNeighbors; n++ )
+			{
+				int u = i + dx[ n ];
+				int v = j + dy[ n ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 )
+					continue;
+
+				int index2 = v * size1 + u;
+				int label2 = labels[ index2 ];
+
+				// Unlabeled neighbors go into the queue if they are not
+				// there yet
+				if ( label2 == INIT &&
+						( null == maskImage || maskImage.getf( index2 ) > 0 ) )
+				{
+					neighborIndices[ nCandidates++ ] = index2;
+				}
+				else if ( label2 > 0 )
+				{
+					// keep the first label found in the neighborhood
+					if ( label == 0 )
+						label = label2;
+					else if ( label2 != label )
+						severalLabels = true;
+				}
+			}
+
+			if ( label == 0 )
+				continue;
+
+			if ( dams && severalLabels )
+			{
+				labels[ index ] = WSHED;
+				continue;
+			}
+
+			labels[ index ] = label;
+			// now that we know the pixel is labeled, add unlabeled
+			// neighbors to the queue
+			for( int n = 0; n < nCandidates; n++ )
+			{
+				int index2 = neighborIndices[ n ];
+				labels[ index2 ] = INQUEUE;
+				queue.add( index2, inputImage.getf( index2 ) );
+			}
+		}
+
+		final long end = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		IJ.showProgress( 1.0 );
+
+		return labels;
+	}
+
 	/**
 	 * Get animation of each h-step of the watershed transform 
 	 * on the inputImage, using the labeled 
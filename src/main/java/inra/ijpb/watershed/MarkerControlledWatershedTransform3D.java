@@ -35,9 +35,12 @@ import ij.Prefs;
 import ij.process.ImageProcessor;
 import ij.util.ThreadUtil;
 import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.HierarchicalQueue;
+import inra.ijpb.data.IndexPriorityQueue;
 import inra.ijpb.data.Neighborhood3D;
 import inra.ijpb.data.Neighborhood3DC26;
 import inra.ijpb.data.Neighborhood3DC6;
+import inra.ijpb.data.PackedLongHeap;
 import inra.ijpb.data.VoxelRecord;
 import inra.ijpb.data.image.Images3D;
 
@@ -639,6 +642,330 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 				return ws;
 	}
 
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. This implementation gives the same result as
+	 * applyWithPriorityQueue(), but stores voxels as linear indices
+	 * within a queue of primitive values instead of creating one
+	 * object per voxel: a hierarchical queue (one FIFO per gray level)
+	 * for 8-bit and 16-bit images, and a binary heap of packed long
+	 * keys for other images.
+	 * 
+	 * @see #applyWithPriorityQueue()
+	 * @return watershed domains image (no dams)
+	 */
+	public ImagePlus applyWithHierarchicalQueue()
+	{
+		final int[][] labels = floodWithIndexQueue( false );
+		if ( null == labels )
+			return null;
+
+		final int size1 = inputImage.getWidth();
+		final int size2 = inputImage.getHeight();
+		final int size3 = labels.length;
+
+		// Create result label image
+		ImageStack labelStack = markerImage.duplicate().getStack();
+		for (int k = 0; k < size3; ++k)
+			for (int j = 0; j < size2; ++j)
+				for (int i = 0; i < size1; ++i)
+					labelStack.setVoxel( i, j, k, labels[ k ][ j * size1 + i ] );
+
+		return createResultImage( labelStack );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage (optionally). This implementation gives the same 
+	 * result as applyWithPriorityQueueAndDams(), but stores voxels as
+	 * linear indices within a queue of primitive values instead of
+	 * creating one object per voxel.
+	 * 
+	 * @see #applyWithPriorityQueueAndDams()
+	 * @return watershed domains image (with dams)
+	 */
+	public ImagePlus applyWithHierarchicalQueueAndDams()
+	{
+		final int[][] labels = floodWithIndexQueue( true );
+		if ( null == labels )
+			return null;
+
+		// Create result label image
+		ImageStack labelStack = markerImage.duplicate().getStack();
+		for (int k = 0; k < labels.length; ++k)
+		{
+			ImageProcessor labelProcessor = labelStack.getProcessor( k+1 );
+			final int[] sliceLabels = labels[ k ];
+			for (int i = 0; i < sliceLabels.length; ++i)
+			{
+				if( sliceLabels[ i ] == INIT ) // set unlabeled voxels to WSHED
+					labelProcessor.setf( i, 0 );
+				else
+					labelProcessor.setf( i, sliceLabels[ i ] );
+			}
+		}
+
+		return createResultImage( labelStack );
+	}
+
+	/**
+	 * Create the result image with the title and calibration of the input
+	 * image.
+	 * 
+	 * @param labelStack the stack of labels
+	 * @return the result image
+	 */
+	private ImagePlus createResultImage( ImageStack labelStack )
+	{
+		String title = inputImage.getTitle();
+		String ext = "";
+		int index = title.lastIndexOf( "." );
+		if( index != -1 )
+		{
+			ext = title.substring( index );
+			title = title.substring( 0, index );
+		}
+
+		final ImagePlus ws = new ImagePlus( title + "-watershed" + ext, labelStack );
+		ws.setCalibration( inputImage.getCalibration() );
+		return ws;
+	}
+
+	/**
+	 * Flood the input image from the markers, using a priority queue of
+	 * linear voxel indices.
+	 * 
+	 * @param dams flag to compute dams between catchment basins
+	 * @return the array of labels, indexed by slice and by linear index
+	 * within slice, or null if the flooding was interrupted
+	 */
+	private int[][] floodWithIndexQueue( boolean dams )
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final ImageStack markerStack = markerImage.getStack();
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+
+		if (size1 != markerImage.getWidth() || size2 != markerImage.getHeight()
+				|| size3 != markerImage.getStackSize())
+		{
+			throw new IllegalArgumentException("Marker and input images must have the same size");
+		}
+
+		// Check connectivity has a correct value
+		if ( connectivity != 6 && connectivity != 26 ) 
+		{
+			throw new RuntimeException(
+					"Connectivity for stacks must be either 6 or 26, not "
+							+ connectivity);
+		}
+
+		// neighbor shifts, in the same order as the Neighborhood3D classes
+		final int[] dx, dy, dz;
+		if ( connectivity == 6 )
+		{
+			dx = new int[]{ 0, -1, 0, 0, 1, 0 };
+			dy = new int[]{ 0, 0, -1, 1, 0, 0 };
+			dz = new int[]{ -1, 0, 0, 0, 0, 1 };
+		}
+		else
+		{
+			dx = new int[ 26 ];
+			dy = new int[ 26 ];
+			dz = new int[ 26 ];
+			int n = 0;
+			for ( int z = -1; z <= 1; z++ )
+				for ( int x = -1; x <= 1; x++ )
+					for ( int y = -1; y <= 1; y++ )
+					{
+						if ( x == 0 && y == 0 && z == 0 )
+							continue;
+						dx[ n ] = x;
+						dy[ n ] = y;
+						dz[ n ] = z;
+						n++;
+					}
+		}
+		final int nNeighbors = dx.length;
+
+		// slice processors, to avoid retrieving them for each voxel
+		final ImageProcessor[] inputSlices = new ImageProcessor[ size3 ];
+		final ImageProcessor[] markerSlices = new ImageProcessor[ size3 ];
+		final ImageProcessor[] maskSlices = null != maskImage ?
+				new ImageProcessor[ size3 ] : null;
+		for ( int k = 0; k < size3; k++ )
+		{
+			inputSlices[ k ] = inputStack.getProcessor( k+1 );
+			markerSlices[ k ] = markerStack.getProcessor( k+1 );
+			if ( null != maskSlices )
+				maskSlices[ k ] = maskImage.getStack().getProcessor( k+1 );
+		}
+
+		// output labels, stored by slice and by linear index within slice
+		final int sliceSize = size1 * size2;
+		final int[][] labels = new int[ size3 ][ sliceSize ];
+		// value INIT is assigned to each voxel of the output labels
+		for ( int k = 0; k < size3; k++ )
+			Arrays.fill( labels[ k ], INIT );
+
+		// choose the queue depending on image type
+		final IndexPriorityQueue queue;
+		if( inputStack.getBitDepth() == 8 )
+			queue = new HierarchicalQueue( 256 );
+		else if( inputStack.getBitDepth() == 16 )
+			queue = new HierarchicalQueue( 65536 );
+		else
+			queue = new PackedLongHeap();
+
+		// Add the neighbors of the markers to the queue
+		IJ.showStatus( "Extracting voxel values..." );
+		if( verbose ) IJ.log("  Extracting voxel values..." );
+		final long t0 = System.currentTimeMillis();
+
+		for ( int z = 0; z < size3; ++z )
+		{
+			if ( Thread.currentThread().isInterrupted() )
+			{
+				IJ.showProgress( 1.0 );
+				return null;
+			}
+			IJ.showProgress( z+1, size3 );
+
+			for( int x = 0; x < size1; ++x )
+				for( int y = 0; y < size2; ++y )
+				{
+					final int index = y * size1 + x;
+					if( null != maskSlices && maskSlices[ z ].getf( index ) <= 0 )
+						continue;
+
+					int label = (int) markerSlices[ z ].getf( index );
+					if( label > 0 )
+					{
+						// add unlabeled neighbors to priority queue
+						for( int n = 0; n < nNeighbors; n++ )
+						{
+							int u = x + dx[ n ];
+							int v = y + dy[ n ];
+							int w = z + dz[ n ];
+							if ( u >= 0 && u < size1 && v >= 0 && v < size2 
+									&& w >= 0 && w < size3 )
+							{
+								int index2 = v * size1 + u;
+								if ( (int) markerSlices[ w ].getf( index2 ) == 0 &&
+										labels[ w ][ index2 ] != INQUEUE )
+								{
+									queue.add( (long) w * sliceSize + index2, 
+											inputSlices[ w ].getf( index2 ) );
+									labels[ w ][ index2 ] = INQUEUE;
+								}
+							}
+						}
+						labels[ z ][ index ] = label;
+					}
+				}
+		}
+		IJ.showProgress( 1.0 );
+
+		final long t1 = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+
+		// Watershed
+		final long start = System.currentTimeMillis();
+
+		final long count = queue.size();
+		if( verbose ) IJ.log( "  Flooding from " + count + " voxels..." );
+		IJ.showStatus("Flooding from " + count + " voxels...");
+
+		// indices of the unlabeled neighbors of current voxel
+		final int[] neighborIndices = new int[ nNeighbors ];
+		final int[] neighborSlices = new int[ nNeighbors ];
+		final double numVoxels = (double) sliceSize * size3;
+		long processed = 0;
+
+		while ( queue.isEmpty() == false )
+		{
+			if ( processed % sliceSize == 0 )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return null;
+				IJ.showProgress( processed / numVoxels );
+			}
+			processed++;
+
+			final long linearIndex = queue.poll();
+			final int k = (int) ( linearIndex / sliceSize );
+			final int index = (int) ( linearIndex % sliceSize );
+			final int i = index % size1;
+			final int j = index / size1;
+
+			int nCandidates = 0;
+			int label = 0;
+			boolean severalLabels = false;
+
+			for( int n = 0; n < nNeighbors; n++ )
+			{
+				int u = i + dx[ n ];
+				int v = j + dy[ n ];
+				int w = k + dz[ n ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 
+						|| w < 0 || w >= size3 )
+					continue;
+
+				int index2 = v * size1 + u;
+				int label2 = labels[ w ][ index2 ];
+
+				// Unlabeled neighbors go into the queue if they are not
+				// there yet
+				if ( label2 == INIT && 
+						( null == maskSlices || maskSlices[ w ].getf( index2 ) > 0 ) )
+				{
+					neighborIndices[ nCandidates ] = index2;
+					neighborSlices[ nCandidates ] = w;
+					nCandidates++;
+				}
+				else if ( label2 > 0 )
+				{
+					// keep the first label found in the neighborhood
+					if ( label == 0 )
+						label = label2;
+					else if ( label2 != label )
+						severalLabels = true;
+				}
+			}
+
+			if ( label == 0 )
+				continue;
+
+			if ( dams && severalLabels )
+			{
+				labels[ k ][ index ] = WSHED;
+				continue;
+			}
+
+			labels[ k ][ index ] = label;
+			// now that we know the voxel is labeled, add unlabeled
+			// neighbors to the queue
+			for( int n = 0; n < nCandidates; n++ )
+			{
+				int index2 = neighborIndices[ n ];
+				int w = neighborSlices[ n ];
+				labels[ w ][ index2 ] = INQUEUE;
+				queue.add( (long) w * sliceSize + index2, 
+						inputSlices[ w ].getf( index2 ) );
+			}
+		}
+
+		final long end = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		IJ.showStatus("");
+		IJ.showProgress( 1.0 );
+
+		return labels;
+	}
+
 	/**
 	 * Apply watershed transform on inputImage, using the labeled 
 	 * markers from markerImage and restricted to the white areas 
@@ -0,0 +1,379 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import java.util.Arrays;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.label.LabelIndex;
+
+/**
+ * <p>
+ * The sequence of merges of adjacent regions computed by the RegionMerging
+ * class.</p>
+ * 
+ * <p>
+ * Leaves of the tree correspond to the regions of the initial label image,
+ * and are numbered from 0 to the number of regions minus one. The region
+ * created by the k-th merge has the number <code>leafCount() + k</code>.
+ * Each merge is associated with a level, that never decreases along the
+ * sequence of merges.</p>
+ * 
+ * <p>
+ * Any level of the hierarchy can be materialized as a new label image with
+ * a single pass over the initial label image, without computing the
+ * watershed again. The label of a merged region is the smallest label of
+ * the initial regions it contains.</p>
+ * 
+ * <pre><code>
+ * RegionMergeTree tree = new RegionMerging(RegionMerging.Criterion.DYNAMIC, 6)
+ *     .process(basins, gradient);
+ * ImageStack merged = tree.createLabelImage(basins, 20.0);
+ * </code></pre>
+ * 
+ * @see RegionMerging
+ * 
+ * @author dlegland
+ */
+public class RegionMergeTree
+{
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The labels of the initial regions, in increasing order.
+	 */
+	int[] labels;
+	
+	/**
+	 * The numbers of the two regions merged at each step.
+	 */
+	int[] children1;
+	int[] children2;
+	
+	/**
+	 * The level of each merge, in increasing order.
+	 */
+	double[] levels;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new merge tree.
+	 * 
+	 * @param labels
+	 *            the labels of the initial regions, in increasing order
+	 * @param children1
+	 *            the number of the first region of each merge
+	 * @param children2
+	 *            the number of the second region of each merge
+	 * @param levels
+	 *            the level of each merge, in increasing order
+	 */
+	RegionMergeTree(int[] labels, int[] children1, int[] children2, double[] levels)
+	{
+		this.labels = labels;
+		this.children1 = children1;
+		this.children2 = children2;
+		this.levels = levels;
+	}
+	
+	
+	// ==================================================
+	// Accessors
+	
+	/**
+	 * @return the number of initial regions
+	 */
+	public int leafCount()
+	{
+		return this.labels.length;
+	}
+	
+	/**
+	 * @return the labels of the initial regions
+	 */
+	public int[] getLabels()
+	{
+		return this.labels;
+	}
+	
+	/**
+	 * @return the number of merges. It is lower than the number of regions
+	 *         minus one when the adjacency graph is not connected.
+	 */
+	public int mergeCount()
+	{
+		return this.levels.length;
+	}
+	
+	/**
+	 * Returns the number of the first region of a merge.
+	 * 
+	 * @param merge
+	 *            the index of the merge
+	 * @return the number of the first merged region
+	 */
+	public int getChild1(int merge)
+	{
+		return this.children1[merge];
+	}
+
+	/**
+	 * Returns the number of the second region of a merge.
+	 * 
+	 * @param merge
+	 *            the index of the merge
+	 * @return the number of the second merged region
+	 */
+	public int getChild2(int merge)
+	{
+		return this.children2[merge];
+	}
+	
+	/**
+	 * Returns the level of a merge.
+	 * 
+	 * @param merge
+	 *            the index of the merge
+	 * @return the level of the merge
+	 */
+	public double getLevel(int merge)
+	{
+		return this.levels[merge];
+	}
+	
+	/**
+	 * Returns the number of merges whose level is lower than or equal to the
+	 * given level.
+	 * 
+	 * @param level
+	 *            the merge level
+	 * @return the number of merges performed up to this level
+	 */
+	public int mergeCount(double level)
+	{
+		int n = this.levels.length;
+		int index = Arrays.binarySearch(this.levels, level);
+		if (index < 0)
+			return -index - 1;
+		
+		// skip merges with the same level
+		while (index < n && this.levels[index] == level)
+			index++;
+		return index;
+	}
+	
+	
+	// ==================================================
+	// Materialization of the hierarchy
+	
+	/**
+	 * Computes the new label of each initial region after the specified
+	 * number of merges.
+	 * 
+	 * @param nMerges
+	 *            the number of merges to perform
+	 * @return the new label of each initial region
+	 */
+	public int[] mergedLabels(int nMerges)
+	{
+		int nLeaves = this.labels.length;
+		nMerges = Math.min(Math.max(nMerges, 0), this.levels.length);
+		
+		// the parent of each region, and the smallest label within each region
+		int[] parents = new int[nLeaves + nMerges];
+		int[] minLabels = new int[nLeaves + nMerges];
+		for (int i = 0; i < nLeaves; i++)
+		{
+			parents[i] = i;
+			minLabels[i] = this.labels[i];
+		}
+		for (int k = 0; k < nMerges; k++)
+		{
+			int node = nLeaves + k;
+			parents[node] = node;
+			parents[this.children1[k]] = node;
+			parents[this.children2[k]] = node;
+			minLabels[node] = Math.min(minLabels[this.children1[k]], minLabels[this.children2[k]]);
+		}
+		
+		// find the root of each leaf, compressing paths
+		int[] res = new int[nLeaves];
+		for (int i = 0; i < nLeaves; i++)
+		{
+			int root = i;
+			while (parents[root] != root)
+				root = parents[root];
+			int node = i;
+			while (parents[node] != root)
+			{
+				int next = parents[node];
+				parents[node] = root;
+				node = next;
+			}
+			res[i] = minLabels[root];
+		}
+		return res;
+	}
+	
+	/**
+	 * Creates the label image obtained after merging all regions up to the
+	 * specified level. Watershed lines located between merged regions are
+	 * removed.
+	 * 
+	 * @param labelImage
+	 *            the initial label image
+	 * @param level
+	 *            the merge level
+	 * @return a new label image with merged regions
+	 */
+	public ImageProcessor createLabelImage(ImageProcessor labelImage, double level)
+	{
+		return createLabelImage(labelImage, mergeCount(level));
+	}
+	
+	/**
+	 * Creates the label image obtained after the specified number of merges.
+	 * Watershed lines located between merged regions are removed.
+	 * 
+	 * @param labelImage
+	 *            the initial label image
+	 * @param nMerges
+	 *            the number of merges
+	 * @return a new label image with merged regions
+	 */
+	public ImageProcessor createLabelImage(ImageProcessor labelImage, int nMerges)
+	{
+		ImageStack stack = new ImageStack(labelImage.getWidth(), labelImage.getHeight());
+		stack.addSlice(labelImage);
+		return createLabelImage(stack, nMerges).getProcessor(1);
+	}
+	
+	/**
+	 * Creates the 3D label image obtained after merging all regions up to
+	 * the specified level. Watershed lines located between merged regions
+	 * are removed.
+	 * 
+	 * @param labelImage
+	 *            the initial label image
+	 * @param level
+	 *            the merge level
+	 * @return a new label image with merged regions
+	 */
+	public ImageStack createLabelImage(ImageStack labelImage, double level)
+	{
+		return createLabelImage(labelImage, mergeCount(level));
+	}
+	
+	/**
+	 * Creates the 3D label image obtained after the specified number of
+	 * merges. Watershed lines located between merged regions are removed.
+	 * 
+	 * @param labelImage
+	 *            the initial label image
+	 * @param nMerges
+	 *            the number of merges
+	 * @return a new label image with merged regions
+	 */
+	public ImageStack createLabelImage(ImageStack labelImage, int nMerges)
+	{
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int sizeZ = labelImage.getSize();
+		
+		LabelIndex labelIndex = new LabelIndex(this.labels);
+		int[] newLabels = mergedLabels(nMerges);
+		
+		// relabel the regions
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, labelImage.getBitDepth());
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor plane = labelImage.getProcessor(z + 1);
+			ImageProcessor resPlane = result.getProcessor(z + 1);
+			for (int i = 0; i < sizeX * sizeY; i++)
+			{
+				int index = labelIndex.indexOf((int) plane.getf(i));
+				if (index >= 0)
+					resPlane.setf(i, newLabels[index]);
+			}
+		}
+		
+		// fill the lines between initial regions that were merged together
+		int dz = sizeZ > 1 ? 1 : 0;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor plane = labelImage.getProcessor(z + 1);
+			ImageProcessor resPlane = result.getProcessor(z + 1);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					if (plane.getf(x, y) != 0)
+						continue;
+					
+					int label = 0;
+					int firstLabel = 0;
+					boolean merged = false;
+					boolean unique = true;
+					for (int z2 = Math.max(z - dz, 0); z2 <= Math.min(z + dz, sizeZ - 1) && unique; z2++)
+					{
+						ImageProcessor plane2 = labelImage.getProcessor(z2 + 1);
+						for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, sizeY - 1) && unique; y2++)
+						{
+							for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, sizeX - 1); x2++)
+							{
+								int label0 = (int) plane2.getf(x2, y2);
+								int index = labelIndex.indexOf(label0);
+								if (index < 0)
+									continue;
+								int label2 = newLabels[index];
+								if (label == 0)
+								{
+									label = label2;
+									firstLabel = label0;
+								}
+								else if (label2 != label)
+								{
+									unique = false;
+									break;
+								}
+								else if (label0 != firstLabel)
+								{
+									merged = true;
+								}
+							}
+						}
+					}
+					
+					if (unique && merged)
+						resPlane.setf(x, y, label);
+				}
+			}
+		}
+		
+		return result;
+	}
+}
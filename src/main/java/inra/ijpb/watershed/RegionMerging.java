@@ -0,0 +1,461 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.measure.LabelAdjacencyGraph;
+import inra.ijpb.measure.LabeledIntensityStatistics;
+import inra.ijpb.measure.RegionAdjacencyGraphBuilder;
+
+/**
+ * <p>
+ * Hierarchical merging of the adjacent regions of a label image, typically
+ * to repair the over-segmentation produced by a watershed transform.</p>
+ * 
+ * <p>
+ * The adjacency graph of the regions is computed first, together with the
+ * heights of the dams between adjacent regions within an intensity image
+ * (usually the image the watershed was computed on). Edges are then
+ * processed in a priority queue ordered by a saliency criterion: at each
+ * step, the two regions separated by the least salient boundary are merged,
+ * and the saliencies of the boundaries of the new region are updated.</p>
+ * 
+ * <p>
+ * The result is a RegionMergeTree, from which the label image at any level
+ * of the hierarchy can be obtained without computing the watershed
+ * again.</p>
+ * 
+ * <pre><code>
+ * ImageStack basins = Watershed.computeWatershed(gradient, markers, 6, true);
+ * RegionMerging algo = new RegionMerging(RegionMerging.Criterion.DYNAMIC, 6);
+ * RegionMergeTree tree = algo.process(basins, gradient);
+ * ImageStack merged = tree.createLabelImage(basins, 15.0);
+ * </code></pre>
+ * 
+ * @see RegionMergeTree
+ * @see inra.ijpb.measure.RegionAdjacencyGraphBuilder
+ * 
+ * @author dlegland
+ */
+public class RegionMerging extends AlgoStub
+{
+	// ==================================================
+	// Inner enumeration
+	
+	/**
+	 * The criteria used to sort the boundaries between regions.
+	 */
+	public enum Criterion
+	{
+		/** The lowest intensity along the boundary (pass value). */
+		MIN_DAM_HEIGHT("Min Dam Height"),
+		/** The mean intensity along the boundary. */
+		MEAN_DAM_HEIGHT("Mean Dam Height"),
+		/**
+		 * The difference between the pass value and the highest of the
+		 * minimal intensities of the two regions.
+		 */
+		DYNAMIC("Dynamic"),
+		/** The size of the smallest of the two regions. */
+		AREA("Area");
+		
+		private final String label;
+		
+		private Criterion(String label)
+		{
+			this.label = label;
+		}
+		
+		public String toString()
+		{
+			return this.label;
+		}
+		
+		/**
+		 * @return the list of labels of this enumeration
+		 */
+		public static String[] getAllLabels()
+		{
+			Criterion[] values = Criterion.values();
+			String[] labels = new String[values.length];
+			for (int i = 0; i < values.length; i++)
+				labels[i] = values[i].label;
+			return labels;
+		}
+		
+		/**
+		 * Determines the criterion from its label.
+		 * 
+		 * @param label
+		 *            the label of the criterion
+		 * @return the criterion associated to the label
+		 * @throws IllegalArgumentException
+		 *             if the label does not correspond to any criterion
+		 */
+		public static Criterion fromLabel(String label)
+		{
+			if (label != null)
+				label = label.toLowerCase();
+			for (Criterion criterion : Criterion.values())
+			{
+				if (criterion.label.toLowerCase().equals(label))
+					return criterion;
+			}
+			throw new IllegalArgumentException("Unable to parse Criterion with label: " + label);
+		}
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The criterion used to order the merges.
+	 */
+	Criterion criterion;
+	
+	/**
+	 * The connectivity used to detect adjacent regions.
+	 */
+	int connectivity;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new region merging algorithm.
+	 * 
+	 * @param criterion
+	 *            the criterion used to order the merges
+	 * @param connectivity
+	 *            the connectivity used to detect adjacent regions (4 or 8 for
+	 *            planar images, 6 or 26 for 3D images)
+	 */
+	public RegionMerging(Criterion criterion, int connectivity)
+	{
+		this.criterion = criterion;
+		this.connectivity = connectivity;
+	}
+	
+	
+	// ==================================================
+	// Computation methods
+	
+	/**
+	 * Computes the merge tree of the regions of a 2D or 3D label image.
+	 * 
+	 * @param labelImage
+	 *            the label image, possibly with watershed lines
+	 * @param intensityImage
+	 *            the intensity image used to compute the dam heights. Can be
+	 *            null for the area criterion.
+	 * @return the merge tree of the regions
+	 */
+	public RegionMergeTree process(ImagePlus labelImage, ImagePlus intensityImage)
+	{
+		return process(labelImage.getStack(), intensityImage != null ? intensityImage.getStack() : null);
+	}
+	
+	/**
+	 * Computes the merge tree of the regions of a planar label image.
+	 * 
+	 * @param labelImage
+	 *            the label image, possibly with watershed lines
+	 * @param intensityImage
+	 *            the intensity image used to compute the dam heights. Can be
+	 *            null for the area criterion.
+	 * @return the merge tree of the regions
+	 */
+	public RegionMergeTree process(ImageProcessor labelImage, ImageProcessor intensityImage)
+	{
+		ImageStack labelStack = new ImageStack(labelImage.getWidth(), labelImage.getHeight());
+		labelStack.addSlice(labelImage);
+		ImageStack intensityStack = null;
+		if (intensityImage != null)
+		{
+			intensityStack = new ImageStack(intensityImage.getWidth(), intensityImage.getHeight());
+			intensityStack.addSlice(intensityImage);
+		}
+		return process(labelStack, intensityStack);
+	}
+	
+	/**
+	 * Computes the merge tree of the regions of a 3D label image.
+	 * 
+	 * @param labelImage
+	 *            the label image, possibly with watershed lines
+	 * @param intensityImage
+	 *            the intensity image used to compute the dam heights. Can be
+	 *            null for the area criterion.
+	 * @return the merge tree of the regions
+	 */
+	public RegionMergeTree process(ImageStack labelImage, ImageStack intensityImage)
+	{
+		if (intensityImage == null && this.criterion != Criterion.AREA)
+		{
+			throw new IllegalArgumentException("Criterion " + this.criterion + " requires an intensity image");
+		}
+		
+		// compute adjacencies and dam heights
+		fireStatusChanged(this, "Compute region adjacencies...");
+		RegionAdjacencyGraphBuilder builder = new RegionAdjacencyGraphBuilder(this.connectivity);
+		builder.setWatershedLines(true);
+		LabelAdjacencyGraph graph = builder.process(labelImage, intensityImage);
+		
+		// compute the size and the minimum intensity of each region
+		fireStatusChanged(this, "Compute region statistics...");
+		LabeledIntensityStatistics statsAlgo = new LabeledIntensityStatistics();
+		statsAlgo.setComputeHistograms(false);
+		LabeledIntensityStatistics.Result stats = statsAlgo.process(
+				intensityImage != null ? intensityImage : labelImage, labelImage, graph.getLabels());
+		
+		return process(graph, stats.getVoxelCount(), stats.getMin());
+	}
+	
+	/**
+	 * Computes the merge tree from a region adjacency graph.
+	 * 
+	 * @param graph
+	 *            the adjacency graph of the regions, with boundary
+	 *            intensities if the criterion requires them
+	 * @param areas
+	 *            the number of elements of each region, in the order of the
+	 *            graph nodes
+	 * @param minima
+	 *            the minimal intensity within each region, in the order of
+	 *            the graph nodes
+	 * @return the merge tree of the regions
+	 */
+	public RegionMergeTree process(LabelAdjacencyGraph graph, long[] areas, double[] minima)
+	{
+		int nRegions = graph.nodeCount();
+		
+		// attributes of each region, indexed by the node of its first leaf
+		long[] regionAreas = areas.clone();
+		double[] regionMinima = minima.clone();
+		int[] treeNodes = new int[nRegions];
+		ArrayList<HashMap<Integer, Edge>> neighbors = new ArrayList<HashMap<Integer, Edge>>(nRegions);
+		for (int i = 0; i < nRegions; i++)
+		{
+			treeNodes[i] = i;
+			neighbors.add(new HashMap<Integer, Edge>(graph.degree(i) * 2));
+		}
+		
+		// initialize the queue with the edges of the graph
+		PriorityQueue<Edge> queue = new PriorityQueue<Edge>(Math.max(graph.edgeCount(), 1), new EdgeComparator());
+		boolean useIntensity = graph.hasIntensities();
+		for (int e = 0; e < graph.edgeCount(); e++)
+		{
+			Edge edge = new Edge(graph.getEdgeNode1(e), graph.getEdgeNode2(e));
+			edge.count = graph.getContactArea(e);
+			if (useIntensity)
+			{
+				edge.sum = graph.getMeanIntensity(e) * edge.count;
+				edge.min = graph.getMinIntensity(e);
+			}
+			edge.saliency = saliency(edge, regionAreas, regionMinima);
+			neighbors.get(edge.region1).put(edge.region2, edge);
+			neighbors.get(edge.region2).put(edge.region1, edge);
+			queue.add(edge);
+		}
+		
+		int[] children1 = new int[nRegions];
+		int[] children2 = new int[nRegions];
+		double[] levels = new double[nRegions];
+		int nMerges = 0;
+		double level = Double.NEGATIVE_INFINITY;
+		
+		fireStatusChanged(this, "Merge regions...");
+		while (!queue.isEmpty())
+		{
+			Edge edge = queue.poll();
+			if (!edge.valid)
+				continue;
+			
+			// the region with the largest neighborhood absorbs the other one
+			int source = edge.region1;
+			int target = edge.region2;
+			if (neighbors.get(source).size() > neighbors.get(target).size())
+			{
+				source = edge.region2;
+				target = edge.region1;
+			}
+			HashMap<Integer, Edge> sourceEdges = neighbors.get(source);
+			HashMap<Integer, Edge> targetEdges = neighbors.get(target);
+			sourceEdges.remove(target);
+			targetEdges.remove(source);
+			edge.valid = false;
+			
+			// record the merge
+			level = Math.max(level, edge.saliency);
+			children1[nMerges] = treeNodes[edge.region1];
+			children2[nMerges] = treeNodes[edge.region2];
+			levels[nMerges] = level;
+			treeNodes[target] = nRegions + nMerges;
+			nMerges++;
+			
+			regionAreas[target] += regionAreas[source];
+			regionMinima[target] = Math.min(regionMinima[target], regionMinima[source]);
+			
+			// transfer the boundaries of the source region to the target region
+			for (Map.Entry<Integer, Edge> entry : sourceEdges.entrySet())
+			{
+				int neighbor = entry.getKey();
+				Edge oldEdge = entry.getValue();
+				oldEdge.valid = false;
+				HashMap<Integer, Edge> neighborEdges = neighbors.get(neighbor);
+				neighborEdges.remove(source);
+				
+				Edge newEdge = new Edge(target, neighbor);
+				newEdge.valid = false;
+				newEdge.count = oldEdge.count;
+				newEdge.sum = oldEdge.sum;
+				newEdge.min = oldEdge.min;
+				Edge edge2 = targetEdges.get(neighbor);
+				if (edge2 != null)
+				{
+					edge2.valid = false;
+					newEdge.count += edge2.count;
+					newEdge.sum += edge2.sum;
+					newEdge.min = Math.min(newEdge.min, edge2.min);
+				}
+				targetEdges.put(neighbor, newEdge);
+				neighborEdges.put(target, newEdge);
+			}
+			neighbors.set(source, null);
+			
+			// update the saliency of the boundaries of the target region, and
+			// add new boundaries (not yet valid) to the queue
+			for (Map.Entry<Integer, Edge> entry : targetEdges.entrySet())
+			{
+				Edge edge2 = entry.getValue();
+				double saliency = saliency(edge2, regionAreas, regionMinima);
+				if (edge2.valid && saliency == edge2.saliency)
+					continue;
+				
+				Edge newEdge = edge2;
+				if (edge2.valid)
+				{
+					// the edge is already in the queue: replace it by a copy
+					edge2.valid = false;
+					newEdge = new Edge(edge2.region1, edge2.region2);
+					newEdge.count = edge2.count;
+					newEdge.sum = edge2.sum;
+					newEdge.min = edge2.min;
+					entry.setValue(newEdge);
+					neighbors.get(entry.getKey()).put(target, newEdge);
+				}
+				newEdge.valid = true;
+				newEdge.saliency = saliency;
+				queue.add(newEdge);
+			}
+			
+			fireProgressChanged(this, nMerges, nRegions - 1);
+		}
+		
+		if (nMerges < nRegions)
+		{
+			children1 = Arrays.copyOf(children1, nMerges);
+			children2 = Arrays.copyOf(children2, nMerges);
+			levels = Arrays.copyOf(levels, nMerges);
+		}
+		return new RegionMergeTree(graph.getLabels(), children1, children2, levels);
+	}
+	
+	/**
+	 * Computes the saliency of a boundary according to the current
+	 * criterion.
+	 */
+	private double saliency(Edge edge, long[] areas, double[] minima)
+	{
+		switch (this.criterion)
+		{
+		case MIN_DAM_HEIGHT:
+			return edge.min;
+		case MEAN_DAM_HEIGHT:
+			return edge.sum / edge.count;
+		case DYNAMIC:
+			return edge.min - Math.max(minima[edge.region1], minima[edge.region2]);
+		case AREA:
+			return Math.min(areas[edge.region1], areas[edge.region2]);
+		default:
+			throw new RuntimeException("Unknown criterion: " + this.criterion);
+		}
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * The boundary between two regions, identified by the node of their
+	 * first leaf. Edges whose boundary was modified are invalidated, and
+	 * replaced by new edges within the queue. New edges are flagged as
+	 * invalid until they are added to the queue.
+	 */
+	private static final class Edge
+	{
+		int region1;
+		int region2;
+		int count = 0;
+		double sum = 0;
+		double min = 0;
+		double saliency;
+		boolean valid = true;
+		
+		Edge(int region1, int region2)
+		{
+			this.region1 = region1;
+			this.region2 = region2;
+		}
+	}
+	
+	/**
+	 * Orders edges by increasing saliency, then by region indices to obtain
+	 * a deterministic order.
+	 */
+	private static final class EdgeComparator implements Comparator<Edge>
+	{
+		@Override
+		public int compare(Edge edge1, Edge edge2)
+		{
+			int res = Double.compare(edge1.saliency, edge2.saliency);
+			if (res != 0)
+				return res;
+			res = Integer.compare(Math.min(edge1.region1, edge1.region2), Math.min(edge2.region1, edge2.region2));
+			if (res != 0)
+				return res;
+			return Integer.compare(Math.max(edge1.region1, edge1.region2), Math.max(edge2.region1, edge2.region2));
+		}
+	}
+}
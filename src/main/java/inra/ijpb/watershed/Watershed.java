@@ -192,6 +192,35 @@ public class Watershed
 			int connectivity,
 			boolean getDams,
 			boolean verbose )
+	{
+		return computeWatershed( input, marker, binaryMask, connectivity,
+				getDams, verbose, false );
+	}
+
+	/**
+	 * Compute watershed with markers with an optional binary mask
+	 * to restrict the regions of application, choosing the flooding
+	 * engine. Both engines produce the same labels.
+	 *
+	 * @param input original grayscale image (usually a gradient image)
+	 * @param marker image with labeled markers
+	 * @param binaryMask binary mask to restrict the regions of interest
+	 * @param connectivity voxel connectivity to define neighborhoods (4 or 8 for 2D, 6 or 26 for 3D)
+	 * @param getDams select/deselect the calculation of dams
+	 * @param verbose flag to display messages in the log window
+	 * @param hierarchicalQueue flag to flood using a hierarchical queue of
+	 *            primitive indices instead of a priority queue of pixel
+	 *            records (requires much less memory)
+	 * @return image of labeled catchment basins (labels are 1, 2, ...)
+	 */
+	public static ImagePlus computeWatershed(
+			ImagePlus input,
+			ImagePlus marker,
+			ImagePlus binaryMask,
+			int connectivity,
+			boolean getDams,
+			boolean verbose,
+			boolean hierarchicalQueue )
 	{
 		if( connectivity == 6 || connectivity == 26 )
 		{
@@ -199,6 +228,13 @@ public class Watershed
 					new MarkerControlledWatershedTransform3D( input, marker,
 							binaryMask, connectivity );
 			wt.setVerbose( verbose );
+			if( hierarchicalQueue )
+			{
+				if( getDams )
+					return wt.applyWithHierarchicalQueueAndDams();
+				else 
+					return wt.applyWithHierarchicalQueue();
+			}
 			if( getDams )
 				return wt.applyWithPriorityQueueAndDams();
 			else 
@@ -206,17 +242,10 @@ public class Watershed
 		}
 		else if( connectivity == 4 || connectivity == 8 )
 		{
-			MarkerControlledWatershedTransform2D wt =
-					new MarkerControlledWatershedTransform2D(
-							input.getProcessor(), marker.getProcessor(),
-							null != binaryMask ? binaryMask.getProcessor() :
-								null, connectivity );
-			wt.setVerbose( verbose );
-			ImageProcessor ip;
-			if( getDams )
-				ip = wt.applyWithPriorityQueueAndDams();
-			else 
-				ip = wt.applyWithPriorityQueue();
+			ImageProcessor ip = computeWatershed( input.getProcessor(),
+					marker.getProcessor(),
+					null != binaryMask ? binaryMask.getProcessor() : null,
+					connectivity, getDams, verbose, hierarchicalQueue );
 
 			if( null != ip )
 			{
@@ -281,14 +310,42 @@ public class Watershed
 			boolean getDams,
 			boolean verbose )
 	{
-				
+		return computeWatershed( input, marker, binaryMask, connectivity,
+				getDams, verbose, false );
+	}
+
+	/**
+	 * Compute watershed with markers with an optional binary mask
+	 * to restrict the regions of application, choosing the flooding
+	 * engine. Both engines produce the same labels.
+	 *
+	 * @param input original grayscale image (usually a gradient image)
+	 * @param marker image with labeled markers
+	 * @param binaryMask binary mask to restrict the regions of interest
+	 * @param connectivity voxel connectivity to define neighborhoods
+	 * @param getDams select/deselect the calculation of dams
+	 * @param verbose flag to display messages in the log window
+	 * @param hierarchicalQueue flag to flood using a hierarchical queue of
+	 *            primitive indices instead of a priority queue of voxel
+	 *            records (requires much less memory)
+	 * @return image of labeled catchment basins (labels are 1, 2, ...)
+	 */
+	public static ImageStack computeWatershed(
+			ImageStack input,
+			ImageStack marker,
+			ImageStack binaryMask,
+			int connectivity,
+			boolean getDams,
+			boolean verbose,
+			boolean hierarchicalQueue )
+	{
 		final ImagePlus inputIP = new ImagePlus( "input", input );
 		final ImagePlus markerIP = new ImagePlus( "marker", marker );
 		final ImagePlus binaryMaskIP = ( null != binaryMask ) ?
 				new ImagePlus( "binary mask", binaryMask ) : null;
 
 		ImagePlus ws = computeWatershed( inputIP, markerIP, binaryMaskIP,
-				connectivity, getDams, verbose );
+				connectivity, getDams, verbose, hierarchicalQueue );
 		if ( null != ws )
 			return ws.getImageStack();
 		else 
@@ -335,11 +392,47 @@ public class Watershed
 			int connectivity,
 			boolean getDams,
 			boolean verbose )
+	{
+		return computeWatershed( input, marker, binaryMask, connectivity,
+				getDams, verbose, false );
+	}
+
+	/**
+	 * Compute watershed with markers with an optional binary mask
+	 * to restrict the regions of application, choosing the flooding
+	 * engine. Both engines produce the same labels.
+	 *
+	 * @param input original grayscale image (usually a gradient image)
+	 * @param marker image with labeled markers
+	 * @param binaryMask binary mask to restrict the regions of interest
+	 * @param connectivity pixel connectivity to define neighborhoods (4 or 8)
+	 * @param getDams select/deselect the calculation of dams
+	 * @param verbose flag to display log messages
+	 * @param hierarchicalQueue flag to flood using a hierarchical queue of
+	 *            primitive indices instead of a priority queue of pixel
+	 *            records (requires much less memory)
+	 * @return image of labeled catchment basins (labels are 1, 2, ...)
+	 */
+	public static ImageProcessor computeWatershed(
+			ImageProcessor input,
+			ImageProcessor marker,
+			ImageProcessor binaryMask,
+			int connectivity,
+			boolean getDams,
+			boolean verbose,
+			boolean hierarchicalQueue )
 	{
 		MarkerControlledWatershedTransform2D wt =
 				new MarkerControlledWatershedTransform2D( input, marker,
 						binaryMask, connectivity );
 		wt.setVerbose( verbose );
+		if( hierarchicalQueue )
+		{
+			if( getDams )
+				return wt.applyWithHierarchicalQueueAndDams();
+			else 
+				return wt.applyWithHierarchicalQueue();
+		}
 		if( getDams )
 			return wt.applyWithPriorityQueueAndDams();
 		else 
@@ -30,6 +30,7 @@ import org.junit.runners.Suite;
 	// generic classes
 	inra.ijpb.OpenResourceImage.class, 
 	inra.ijpb.binary.AllTestsRecurse.class,
+	inra.ijpb.data.image.AllTests.class,
 	inra.ijpb.label.AllTests.class,
 	inra.ijpb.measure.AllTests.class,
 	inra.ijpb.morphology.AllTestsRecurse.class,
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class UnionFindComponentsLabeling3DTest
+{
+	/**
+	 * Using 6 connectivity should result in nine connected components.
+	 */
+	@Test
+	public void testComputeLabels_C6()
+	{
+		ImageStack image = createNineCubesImage();
+		
+		UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(6, 0, new ForkJoinPool(3));
+		ImageStack result = algo.computeLabels(image);
+		
+		assertEquals(8, result.getBitDepth());
+		assertEquals(9, result.getVoxel(7, 7, 7), .1);
+	}
+
+	/**
+	 * Using 26 connectivity should result in one connected component.
+	 */
+	@Test
+	public void testComputeLabels_C26_Short()
+	{
+		ImageStack image = createNineCubesImage();
+		
+		UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(26, 16, new ForkJoinPool(3));
+		ImageStack result = algo.computeLabels(image);
+		
+		assertEquals(16, result.getBitDepth());
+		assertEquals(1, result.getVoxel(7, 7, 7), .1);
+		assertEquals(1, result.getVoxel(2, 2, 2), .1);
+	}
+
+	/**
+	 * Compares with the result of flood-fill labeling on random images split
+	 * into several slabs.
+	 */
+	@Test
+	public void testComputeLabels_SameAsFloodFill()
+	{
+		Random random = new Random(42);
+		ImageStack image = ImageStack.create(23, 19, 17, 8);
+		for (int z = 0; z < 17; z++)
+		{
+			for (int y = 0; y < 19; y++)
+			{
+				for (int x = 0; x < 23; x++)
+				{
+					image.setVoxel(x, y, z, random.nextDouble() < 0.3 ? 255 : 0);
+				}
+			}
+		}
+		
+		for (int conn : new int[] { 6, 26 })
+		{
+			for (int nThreads : new int[] { 1, 4, 17 })
+			{
+				ImageStack expected = new FloodFillComponentsLabeling3D(conn, 32).computeLabels(image);
+				ImageStack result = new UnionFindComponentsLabeling3D(conn, 32, new ForkJoinPool(nThreads)).computeLabels(image);
+				
+				for (int z = 0; z < 17; z++)
+				{
+					for (int y = 0; y < 19; y++)
+					{
+						for (int x = 0; x < 23; x++)
+						{
+							assertEquals(expected.getVoxel(x, y, z), result.getVoxel(x, y, z), 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a 10-by-10-by-10 byte stack containing nine squares touching by
+	 * corners.
+	 * 
+	 * Expected number of connected components is nine for 6 (and 18)
+	 * connectivity, and one for 26 connectivity.
+	 * 
+	 * @return an image containing nine cubes touching by corners
+	 */
+	private final static ImageStack createNineCubesImage()
+	{
+		ImageStack image = ImageStack.create(10,  10,  10, 8);
+		for (int z = 0; z < 2; z++)
+		{
+			for (int y = 0; y < 2; y++)
+			{
+				for (int x = 0; x < 2; x++)
+				{
+					image.setVoxel(x + 2, y + 2, z + 2, 255);
+					image.setVoxel(x + 2, y + 6, z + 2, 255);
+					image.setVoxel(x + 6, y + 2, z + 2, 255);
+					image.setVoxel(x + 6, y + 6, z + 2, 255);
+					image.setVoxel(x + 4, y + 4, z + 4, 255);
+					image.setVoxel(x + 2, y + 2, z + 6, 255);
+					image.setVoxel(x + 2, y + 6, z + 6, 255);
+					image.setVoxel(x + 6, y + 2, z + 6, 255);
+					image.setVoxel(x + 6, y + 6, z + 6, 255);
+				}
+			}
+		}
+		return image;
+	}
+}
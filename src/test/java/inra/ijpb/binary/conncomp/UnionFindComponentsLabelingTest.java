@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+public class UnionFindComponentsLabelingTest
+{
+	/**
+	 * Default settings are 4 connectivity, with automatic bit depth.
+	 */
+	@Test
+	public void testComputeLabels_Default()
+	{
+		ImageProcessor image = createFiveSquaresImage();
+		
+		UnionFindComponentsLabeling algo = new UnionFindComponentsLabeling();
+		ImageProcessor result = algo.computeLabels(image);
+		
+		assertEquals(8, result.getBitDepth());
+		assertEquals(5, result.get(7, 7));
+	}
+
+	/**
+	 * Using 8 connectivity should result in one connected component.
+	 */
+	@Test
+	public void testComputeLabels_C8_Float()
+	{
+		ImageProcessor image = createFiveSquaresImage();
+		
+		UnionFindComponentsLabeling algo = new UnionFindComponentsLabeling(8, 32);
+		ImageProcessor result = algo.computeLabels(image);
+		
+		assertEquals(32, result.getBitDepth());
+		assertEquals(1, result.getf(7, 7), .1);
+	}
+
+	/**
+	 * Compares with the result of flood-fill labeling on random images split
+	 * into several bands.
+	 */
+	@Test
+	public void testComputeLabels_SameAsFloodFill()
+	{
+		Random random = new Random(42);
+		ImageProcessor image = new ByteProcessor(47, 39);
+		for (int i = 0; i < 47 * 39; i++)
+		{
+			image.set(i, random.nextDouble() < 0.45 ? 255 : 0);
+		}
+		
+		for (int conn : new int[] { 4, 8 })
+		{
+			for (int nThreads : new int[] { 1, 5, 39 })
+			{
+				ImageProcessor expected = new FloodFillComponentsLabeling(conn, 16).computeLabels(image);
+				ImageProcessor result = new UnionFindComponentsLabeling(conn, 16, new ForkJoinPool(nThreads)).computeLabels(image);
+				
+				for (int i = 0; i < 47 * 39; i++)
+				{
+					assertEquals(expected.get(i), result.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a 10-by-10 byte image containing five squares touching by
+	 * corners.
+	 * 
+	 * Expected number of connected components is five for 4 connectivity, and
+	 * one for 8 connectivity.
+	 * 
+	 * @return an image containing five squares touching by corners
+	 */
+	private final static ImageProcessor createFiveSquaresImage()
+	{
+		ImageProcessor image = new ByteProcessor(10, 10);
+		for (int y = 0; y < 2; y++)
+		{
+			for (int x = 0; x < 2; x++)
+			{
+				image.set(x + 2, y + 2, 255);
+				image.set(x + 6, y + 2, 255);
+				image.set(x + 4, y + 4, 255);
+				image.set(x + 2, y + 6, 255);
+				image.set(x + 6, y + 6, 255);
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.ImageStack;
+
+import org.junit.Test;
+
+public class EuclideanDistanceTransform3DTest
+{
+	@Test
+	public void testDistanceMap_Cube()
+	{
+		// create 3D image containing a cube 
+		ImageStack image = ImageStack.create(20, 20, 20, 8);
+		for (int z = 2; z < 19; z++)
+		{
+			for (int y = 2; y < 19; y++)
+			{
+				for (int x = 2; x < 19; x++)
+				{
+					image.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+
+		DistanceTransform3D algo = new EuclideanDistanceTransform3D();
+		ImageStack result = algo.distanceMap(image);
+
+		assertEquals(32, result.getBitDepth());
+		assertEquals(9, result.getVoxel(10, 10, 10), .001);
+		assertEquals(1, result.getVoxel(2, 10, 10), .001);
+		assertEquals(0, result.getVoxel(1, 10, 10), .001);
+	}
+
+	/**
+	 * Compares distances and features with a brute-force computation on a
+	 * random image with anisotropic voxels.
+	 */
+	@Test
+	public void testDistanceMap_RandomAnisotropic()
+	{
+		int sizeX = 17, sizeY = 13, sizeZ = 11;
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		Random random = new Random(42);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					image.setVoxel(x, y, z, random.nextDouble() < 0.01 ? 0 : 255);
+				}
+			}
+		}
+
+		double[] spacing = new double[] { 0.8, 1.1, 2.5 };
+		EuclideanDistanceTransform3D algo = new EuclideanDistanceTransform3D(spacing);
+		int[] features = new int[sizeX * sizeY * sizeZ];
+		ImageStack result = algo.distanceMap(image, features);
+
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					// brute-force distance to nearest background voxel
+					double minDist = Double.POSITIVE_INFINITY;
+					for (int z2 = 0; z2 < sizeZ; z2++)
+					{
+						for (int y2 = 0; y2 < sizeY; y2++)
+						{
+							for (int x2 = 0; x2 < sizeX; x2++)
+							{
+								if (image.getVoxel(x2, y2, z2) != 0) continue;
+								minDist = Math.min(minDist, dist(x, y, z, x2, y2, z2, spacing));
+							}
+						}
+					}
+					assertEquals(minDist, result.getVoxel(x, y, z), 1e-4);
+
+					// the feature must be a background voxel at the same distance
+					int f = features[(z * sizeY + y) * sizeX + x];
+					assertTrue(f >= 0);
+					int x2 = f % sizeX;
+					int y2 = (f / sizeX) % sizeY;
+					int z2 = f / (sizeX * sizeY);
+					assertEquals(0, image.getVoxel(x2, y2, z2), 0);
+					assertEquals(minDist, dist(x, y, z, x2, y2, z2, spacing), 1e-4);
+				}
+			}
+		}
+	}
+
+	private static final double dist(int x, int y, int z, int x2, int y2, int z2, double[] spacing)
+	{
+		double dx = (x2 - x) * spacing[0];
+		double dy = (y2 - y) * spacing[1];
+		double dz = (z2 - z) * spacing[2];
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+}
@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class EuclideanDistanceTransformTest
+{
+	@Test
+	public void testDistanceMap_FromCenter()
+	{
+		ImageProcessor image = new ByteProcessor(21, 21);
+		image.setValue(255);
+		image.fill();
+		image.set(10, 10, 0);
+
+		DistanceTransform algo = new EuclideanDistanceTransform();
+		ImageProcessor result = algo.distanceMap(image);
+
+		assertEquals(32, result.getBitDepth());
+		assertEquals(0, result.getf(10, 10), .001);
+		assertEquals(10, result.getf(0, 10), .001);
+		assertEquals(Math.hypot(10, 10), result.getf(0, 0), .001);
+		assertEquals(Math.hypot(10, 7), result.getf(20, 3), .001);
+	}
+
+	@Test
+	public void testDistanceMap_NoBackground()
+	{
+		ImageProcessor image = new ByteProcessor(10, 8);
+		image.setValue(255);
+		image.fill();
+
+		EuclideanDistanceTransform algo = new EuclideanDistanceTransform();
+		int[] features = new int[10 * 8];
+		ImageProcessor result = algo.distanceMap(image, features);
+
+		assertEquals(Float.POSITIVE_INFINITY, result.getf(5, 4), 0);
+		assertEquals(-1, features[0]);
+	}
+
+	/**
+	 * Compares distances and features with a brute-force computation on a
+	 * random image with anisotropic pixels.
+	 */
+	@Test
+	public void testDistanceMap_RandomAnisotropic()
+	{
+		int sizeX = 37, sizeY = 29;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		Random random = new Random(42);
+		for (int i = 0; i < sizeX * sizeY; i++)
+		{
+			image.set(i, random.nextDouble() < 0.03 ? 0 : 255);
+		}
+
+		double[] spacing = new double[] { 0.7, 1.9 };
+		EuclideanDistanceTransform algo = new EuclideanDistanceTransform(spacing);
+		int[] features = new int[sizeX * sizeY];
+		ImageProcessor result = algo.distanceMap(image, features);
+
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				// brute-force distance to nearest background pixel
+				double minDist = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < sizeX * sizeY; i++)
+				{
+					if (image.get(i) != 0) continue;
+					double dx = ((i % sizeX) - x) * spacing[0];
+					double dy = ((i / sizeX) - y) * spacing[1];
+					minDist = Math.min(minDist, Math.hypot(dx, dy));
+				}
+				assertEquals(minDist, result.getf(x, y), 1e-4);
+
+				// the feature must be a background pixel at the same distance
+				int f = features[y * sizeX + x];
+				assertTrue(f >= 0);
+				assertEquals(0, image.get(f));
+				double dx = ((f % sizeX) - x) * spacing[0];
+				double dy = ((f / sizeX) - y) * spacing[1];
+				assertEquals(minDist, Math.hypot(dx, dy), 1e-4);
+			}
+		}
+	}
+}
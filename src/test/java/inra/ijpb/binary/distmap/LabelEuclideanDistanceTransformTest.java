@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+public class LabelEuclideanDistanceTransformTest
+{
+	/**
+	 * Two touching squares are processed separately.
+	 */
+	@Test
+	public void testInscribedBalls_TouchingSquares()
+	{
+		ImageProcessor image = new ByteProcessor(20, 10);
+		for (int y = 1; y < 8; y++)
+		{
+			for (int x = 1; x < 8; x++)
+			{
+				image.set(x, y, 3);
+				image.set(x + 7, y, 5);
+			}
+		}
+		
+		LabelEuclideanDistanceTransform algo = new LabelEuclideanDistanceTransform();
+		double[][] circles = algo.inscribedBalls(image, new int[]{3, 5});
+		
+		assertEquals(4, circles[0][0], 1e-10);
+		assertEquals(4, circles[0][1], 1e-10);
+		assertEquals(4, circles[0][2], 1e-10);
+		assertEquals(11, circles[1][0], 1e-10);
+		assertEquals(4, circles[1][1], 1e-10);
+		assertEquals(4, circles[1][2], 1e-10);
+	}
+
+	/**
+	 * Compares the distance map of a random planar label image with the
+	 * distances computed by brute force.
+	 */
+	@Test
+	public void testDistanceMap_RandomImage2D()
+	{
+		int sizeX = 23, sizeY = 17;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		Random random = new Random(3);
+		for (int i = 0; i < 40; i++)
+		{
+			image.setValue(random.nextInt(4));
+			image.fill(new ij.gui.Roi(random.nextInt(sizeX), random.nextInt(sizeY), 1 + random.nextInt(8), 1 + random.nextInt(8)));
+		}
+		double[] spacing = new double[]{0.7, 1.3};
+		
+		FloatProcessor result = new LabelEuclideanDistanceTransform(spacing, new ForkJoinPool(3)).distanceMap(image);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int label = image.get(x, y);
+				double expected = label == 0 ? 0 : Double.POSITIVE_INFINITY;
+				for (int y2 = 0; y2 < sizeY && label != 0; y2++)
+				{
+					for (int x2 = 0; x2 < sizeX; x2++)
+					{
+						if (image.get(x2, y2) != label)
+						{
+							double dx = (x2 - x) * spacing[0], dy = (y2 - y) * spacing[1];
+							expected = Math.min(expected, Math.hypot(dx, dy));
+						}
+					}
+				}
+				assertEquals(expected, result.getf(x, y), 1e-5);
+			}
+		}
+	}
+
+	/**
+	 * Compares the distance map and the inscribed spheres of a random 3D
+	 * label image with the values computed by brute force.
+	 */
+	@Test
+	public void testInscribedBalls_RandomImage3D()
+	{
+		int sizeX = 11, sizeY = 9, sizeZ = 8;
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		Random random = new Random(4);
+		for (int i = 0; i < 30; i++)
+		{
+			int x0 = random.nextInt(sizeX), y0 = random.nextInt(sizeY), z0 = random.nextInt(sizeZ);
+			int label = 1 + random.nextInt(4);
+			for (int z = z0; z < Math.min(z0 + 4, sizeZ); z++)
+				for (int y = y0; y < Math.min(y0 + 5, sizeY); y++)
+					for (int x = x0; x < Math.min(x0 + 6, sizeX); x++)
+						image.setVoxel(x, y, z, label);
+		}
+		double[] spacing = new double[]{1.0, 0.8, 2.5};
+		
+		// compute expected distances
+		double[][][] expected = new double[sizeZ][sizeY][sizeX];
+		double[] maxDist = new double[5];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = (int) image.getVoxel(x, y, z);
+					double dist = label == 0 ? 0 : Double.POSITIVE_INFINITY;
+					for (int z2 = 0; z2 < sizeZ && label != 0; z2++)
+						for (int y2 = 0; y2 < sizeY; y2++)
+							for (int x2 = 0; x2 < sizeX; x2++)
+								if (image.getVoxel(x2, y2, z2) != label)
+								{
+									double dx = (x2 - x) * spacing[0], dy = (y2 - y) * spacing[1], dz = (z2 - z) * spacing[2];
+									dist = Math.min(dist, Math.sqrt(dx * dx + dy * dy + dz * dz));
+								}
+					expected[z][y][x] = dist;
+					if (label != 0)
+						maxDist[label] = Math.max(maxDist[label], dist);
+				}
+			}
+		}
+		
+		LabelEuclideanDistanceTransform algo = new LabelEuclideanDistanceTransform(spacing, new ForkJoinPool(3));
+		ImageStack result = algo.distanceMap(image);
+		for (int z = 0; z < sizeZ; z++)
+			for (int y = 0; y < sizeY; y++)
+				for (int x = 0; x < sizeX; x++)
+					assertEquals(expected[z][y][x], result.getVoxel(x, y, z), 1e-5);
+		
+		int[] labels = new int[]{1, 2, 3, 4};
+		double[][] spheres = algo.inscribedBalls(image, labels);
+		for (int i = 0; i < 4; i++)
+		{
+			int label = labels[i];
+			assertEquals(maxDist[label], spheres[i][3], 1e-5);
+			
+			// center must be within the region, at maximal distance
+			int x = (int) Math.round(spheres[i][0] / spacing[0]);
+			int y = (int) Math.round(spheres[i][1] / spacing[1]);
+			int z = (int) Math.round(spheres[i][2] / spacing[2]);
+			assertEquals(label, (int) image.getVoxel(x, y, z));
+			assertEquals(maxDist[label], expected[z][y][x], 1e-5);
+		}
+	}
+}
@@ -32,8 +32,11 @@ import org.junit.runners.Suite;
 	GeodesicDistanceTransformShortTest.class,
 	GeodesicDistanceTransformFloat5x5Test.class,
 	GeodesicDistanceTransformShort5x5Test.class,
+	GeodesicDistanceTransformQueueTest.class,
+	GeodesicDistanceTransform3DQueueTest.class,
 	GeodesicDiameterFloatTest.class,
 	GeodesicDiameter3DFloatTest.class,
+	LabelGeodesicDiameterTest.class,
 })
 public class AllTests {
   //nothing
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import inra.ijpb.binary.ChamferWeights3D;
+
+public class GeodesicDistanceTransform3DQueueTest
+{
+	/**
+	 * Compares with the iterative algorithm, within a cube with a hole.
+	 */
+	@Test
+	public void testGeodesicDistanceMap_CompareFloat()
+	{
+		ImageStack mask = ImageStack.create(20, 20, 20, 8);
+		for (int z = 1; z < 19; z++)
+		{
+			for (int y = 1; y < 19; y++)
+			{
+				for (int x = 1; x < 19; x++)
+				{
+					boolean hole = x > 4 && x < 15 && y > 4 && y < 15 && z < 17;
+					mask.setVoxel(x, y, z, hole ? 0 : 255);
+				}
+			}
+		}
+		ImageStack marker = ImageStack.create(20, 20, 20, 8);
+		marker.setVoxel(2, 2, 2, 255);
+
+		// the iterative algorithm does not converge with non integer weights
+		ChamferWeights3D[] weightsList = new ChamferWeights3D[] {
+				ChamferWeights3D.CHESSBOARD, ChamferWeights3D.CITY_BLOCK, 
+				ChamferWeights3D.BORGEFORS, ChamferWeights3D.WEIGHTS_3_4_5_7};
+		for (ChamferWeights3D weights : weightsList)
+		{
+			ImageStack expected = new GeodesicDistanceTransform3DFloat(weights, true)
+					.geodesicDistanceMap(marker, mask);
+			ImageStack map = new GeodesicDistanceTransform3DQueue(weights, true)
+					.geodesicDistanceMap(marker, mask);
+			
+			for (int z = 0; z < 20; z++)
+			{
+				for (int y = 0; y < 20; y++)
+				{
+					for (int x = 0; x < 20; x++)
+					{
+						assertEquals(weights.toString(), expected.getVoxel(x, y, z), 
+								map.getVoxel(x, y, z), .001);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fast marching within a block should result in distances close to the
+	 * euclidean distance.
+	 */
+	@Test
+	public void testGeodesicDistanceMap_FastMarching()
+	{
+		ImageStack mask = ImageStack.create(30, 30, 30, 8);
+		for (int z = 0; z < 30; z++)
+		{
+			mask.getProcessor(z + 1).invert();
+		}
+		ImageStack marker = ImageStack.create(30, 30, 30, 8);
+		marker.setVoxel(0, 0, 0, 255);
+
+		GeodesicDistanceTransform3DQueue algo = new GeodesicDistanceTransform3DQueue(
+				ChamferWeights3D.BORGEFORS, true);
+		algo.setFastMarching(true);
+		ImageStack map = algo.geodesicDistanceMap(marker, mask);
+
+		assertEquals(20, map.getVoxel(20, 0, 0), .01);
+		assertEquals(20, map.getVoxel(0, 0, 20), .01);
+		assertEquals(20 * Math.sqrt(3), map.getVoxel(20, 20, 20), 2);
+	}
+}
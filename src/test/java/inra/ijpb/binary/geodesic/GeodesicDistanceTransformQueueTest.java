@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.binary.ChamferWeights;
+
+import org.junit.Test;
+
+public class GeodesicDistanceTransformQueueTest
+{
+	@Test
+	public void testGeodesicDistanceMap_Borgefors()
+	{
+		ImagePlus maskPlus = IJ.openImage(getClass().getResource("/files/circles.tif").getFile());
+		ImageProcessor mask = maskPlus.getProcessor();
+		ImageProcessor marker = mask.duplicate();
+		marker.fill();
+		marker.set(30, 30, 255);
+
+		float[] weights = new float[] { 3, 4 };
+		GeodesicDistanceTransform algo = new GeodesicDistanceTransformQueue(
+				weights, true);
+		ImageProcessor map = algo.geodesicDistanceMap(marker, mask);
+
+		assertEquals(259, map.getf(190, 211), .01);
+	}
+
+	/**
+	 * Compares with iterative algorithms, using integer and non integer
+	 * weights, and 3-by-3 and 5-by-5 neighborhoods.
+	 */
+	@Test
+	public void testGeodesicDistanceMap_CompareFloat()
+	{
+		ImagePlus maskPlus = IJ.openImage(getClass().getResource("/files/circles.tif").getFile());
+		ImageProcessor mask = maskPlus.getProcessor();
+		ImageProcessor marker = mask.duplicate();
+		marker.fill();
+		marker.set(30, 30, 255);
+		marker.set(120, 40, 255);
+		
+		ChamferWeights[] weightsList = new ChamferWeights[] {
+				ChamferWeights.BORGEFORS, ChamferWeights.QUASI_EUCLIDEAN, ChamferWeights.CHESSKNIGHT};
+		for (ChamferWeights weights : weightsList)
+		{
+			float[] floatWeights = weights.getFloatWeights();
+			GeodesicDistanceTransform ref = floatWeights.length == 2 
+					? new GeodesicDistanceTransformFloat(floatWeights, true)
+					: new GeodesicDistanceTransformFloat5x5(floatWeights, true);
+			ImageProcessor expected = ref.geodesicDistanceMap(marker, mask);
+			
+			GeodesicDistanceTransform algo = new GeodesicDistanceTransformQueue(weights, true);
+			ImageProcessor map = algo.geodesicDistanceMap(marker, mask);
+			
+			for (int i = 0; i < map.getPixelCount(); i++)
+			{
+				assertEquals(weights.toString(), expected.getf(i), map.getf(i), .001);
+			}
+		}
+	}
+
+	@Test
+	public void testGeodesicDistanceMap_CompareShort()
+	{
+		ImagePlus maskPlus = IJ.openImage(getClass().getResource("/files/circles.tif").getFile());
+		ImageProcessor mask = maskPlus.getProcessor();
+		ImageProcessor marker = mask.duplicate();
+		marker.fill();
+		marker.set(30, 30, 255);
+
+		short[] weights = ChamferWeights.CHESSKNIGHT.getShortWeights();
+		ImageProcessor expected = new GeodesicDistanceTransformShort5x5(weights, true)
+				.geodesicDistanceMap(marker, mask);
+		ImageProcessor map = new GeodesicDistanceTransformQueue(weights, true)
+				.geodesicDistanceMap(marker, mask);
+
+		assertTrue(map instanceof ShortProcessor);
+		for (int i = 0; i < map.getPixelCount(); i++)
+		{
+			assertEquals(expected.get(i), map.get(i));
+		}
+	}
+
+	/**
+	 * Fast marching within a square should result in distances close to the
+	 * euclidean distance.
+	 */
+	@Test
+	public void testGeodesicDistanceMap_FastMarching()
+	{
+		ImageProcessor mask = new ByteProcessor(50, 50);
+		mask.setValue(255);
+		mask.fill();
+		ImageProcessor marker = new ByteProcessor(50, 50);
+		marker.set(0, 0, 255);
+
+		GeodesicDistanceTransformQueue algo = new GeodesicDistanceTransformQueue(
+				ChamferWeights.BORGEFORS, true);
+		algo.setFastMarching(true);
+		ImageProcessor map = algo.geodesicDistanceMap(marker, mask);
+
+		assertEquals(0, map.getf(0, 0), .01);
+		assertEquals(40, map.getf(40, 0), .01);
+		assertEquals(40, map.getf(0, 40), .01);
+		assertEquals(40 * Math.sqrt(2), map.getf(40, 40), 2);
+		assertEquals(50, map.getf(30, 40), 1.5);
+	}
+
+	/**
+	 * Adds and removes markers, and compares incremental updates with the
+	 * distance maps computed from scratch.
+	 */
+	@Test
+	public void testUpdateDistanceMap()
+	{
+		ImagePlus maskPlus = IJ.openImage(getClass().getResource("/files/circles.tif").getFile());
+		ImageProcessor mask = maskPlus.getProcessor();
+		ImageProcessor marker = mask.duplicate();
+		marker.setValue(0);
+		marker.fill();
+		
+		int[][] edits = new int[][] {
+				{30, 30, 255}, {120, 40, 255}, {200, 200, 255}, 
+				{30, 30, 0}, {35, 30, 255}, {120, 40, 0}, {200, 200, 0}};
+		
+		ChamferWeights[] weightsList = new ChamferWeights[] {
+				ChamferWeights.BORGEFORS, ChamferWeights.QUASI_EUCLIDEAN};
+		for (ChamferWeights weights : weightsList)
+		{
+			GeodesicDistanceTransformQueue algo = new GeodesicDistanceTransformQueue(weights, true);
+			for (int[] edit : edits)
+			{
+				marker.set(edit[0], edit[1], edit[2]);
+				ImageProcessor map = algo.updateDistanceMap(marker, mask);
+				
+				ImageProcessor expected = new GeodesicDistanceTransformQueue(weights, true)
+						.geodesicDistanceMap(marker, mask);
+				for (int i = 0; i < map.getPixelCount(); i++)
+				{
+					assertEquals(weights.toString(), expected.getf(i), map.getf(i), .001);
+				}
+			}
+		}
+	}
+}
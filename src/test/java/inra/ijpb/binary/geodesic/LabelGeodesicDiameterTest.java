@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.ChamferWeights;
+import inra.ijpb.binary.ChamferWeights3D;
+
+/**
+ * @author dlegland
+ *
+ */
+public class LabelGeodesicDiameterTest
+{
+	/**
+	 * Compares with the results of GeodesicDiameterFloat, on an image with
+	 * separated regions.
+	 */
+	@Test
+	public void testProcess_Grains()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/grains-WTH-areaOpen-lbl2.tif").getFile());
+		ImageProcessor image = imagePlus.getProcessor();
+		
+		ResultsTable expected = new GeodesicDiameterFloat(ChamferWeights.BORGEFORS).analyzeImage(image);
+		
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(ChamferWeights.BORGEFORS);
+		ResultsTable table = algo.process(image).createTable();
+		
+		assertEquals(71, table.getCounter());
+		String[] columns = new String[] {"Label", "Geod. Diam", "Radius", "xi", "yi", "x1", "y1", "x2", "y2"};
+		for (int i = 0; i < expected.getCounter(); i++)
+		{
+			// region 43 touches region 53 by a corner, and full-image
+			// propagation shortens its distances through the other region
+			if (expected.getValue("Label", i) == 43)
+			{
+				assertTrue(table.getValue("Geod. Diam", i) >= expected.getValue("Geod. Diam", i));
+				continue;
+			}
+			for (String col : columns)
+			{
+				assertEquals(col, expected.getValue(col, i), table.getValue(col, i), .01);
+			}
+		}
+	}
+
+	/**
+	 * Compares with the results of GeodesicDiameter3DFloat.
+	 */
+	@Test
+	public void testProcess_BatCochlea()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/bat-cochlea-volume.tif").getFile());
+		assertNotNull(imagePlus);
+		ImageStack image = imagePlus.getStack();
+		
+		ResultsTable expected = new GeodesicDiameter3DFloat(ChamferWeights3D.BORGEFORS).process(image);
+
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(ChamferWeights3D.BORGEFORS);
+		ResultsTable table = algo.process(image).createTable();
+
+		assertEquals(1, table.getCounter());
+		String[] columns = new String[] {"Geod. Diam.", "Radius", "xi", "yi", "zi", "x1", "y1", "z1", "x2", "y2", "z2"};
+		for (String col : columns)
+		{
+			assertEquals(col, expected.getValue(col, 0), table.getValue(col, 0), .01);
+		}
+	}
+	
+	/**
+	 * Checks the geodesic path within a L-shaped region, and the diameter of
+	 * a region split into two components.
+	 */
+	@Test
+	public void testProcess_Paths()
+	{
+		ImageProcessor image = new ByteProcessor(12, 10);
+		// L-shape with label 3, from (1,1) to (8,1) and down to (8,8)
+		for (int x = 1; x <= 8; x++)
+			image.set(x, 1, 3);
+		for (int y = 1; y <= 8; y++)
+			image.set(8, y, 3);
+		// two disconnected pixels with label 5
+		image.set(1, 5, 5);
+		image.set(3, 5, 5);
+		
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(new short[] {1, 3});
+		algo.setComputePaths(true);
+		LabelGeodesicDiameter.Result res = algo.process(image);
+		
+		assertEquals(2, res.getLabels().length);
+		assertEquals(14, res.getDiameters()[0], .01);
+		assertTrue(Double.isInfinite(res.getDiameters()[1]));
+		
+		int[][] path = res.getPaths()[0];
+		assertEquals(15, path.length);
+		int[] end1 = res.getFirstExtremities()[0];
+		int[] end2 = res.getSecondExtremities()[0];
+		assertEquals(end2[0], path[0][0]);
+		assertEquals(end2[1], path[0][1]);
+		assertEquals(end1[0], path[14][0]);
+		assertEquals(end1[1], path[14][1]);
+		for (int i = 1; i < path.length; i++)
+		{
+			int dx = Math.abs(path[i][0] - path[i-1][0]);
+			int dy = Math.abs(path[i][1] - path[i-1][1]);
+			assertEquals(1, dx + dy);
+			assertEquals(3, image.get(path[i][0], path[i][1]));
+		}
+		assertEquals(null, res.getPaths()[1]);
+	}
+	
+	/**
+	 * Checks that sparse large labels and negative labels are processed.
+	 */
+	@Test
+	public void testProcess_SparseAndNegativeLabels()
+	{
+		ImageProcessor image = new FloatProcessor(10, 8);
+		// horizontal segment with a negative label
+		for (int x = 1; x <= 5; x++)
+			image.setf(x, 2, -5);
+		// vertical segment with a very large label
+		for (int y = 3; y <= 5; y++)
+			image.setf(8, y, 1000000000);
+		
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(new short[] {1, 3});
+		LabelGeodesicDiameter.Result res = algo.process(image);
+		
+		int[] labels = res.getLabels();
+		assertEquals(2, labels.length);
+		assertEquals(-5, labels[0]);
+		assertEquals(1000000000, labels[1]);
+		assertEquals(4, res.getDiameters()[0], .01);
+		assertEquals(2, res.getDiameters()[1], .01);
+	}
+	
+	/**
+	 * Checks that non-integer weights are not rounded, by computing the
+	 * length of a diagonal segment with quasi-euclidean weights.
+	 */
+	@Test
+	public void testProcess_QuasiEuclidean()
+	{
+		ImageProcessor image = new ByteProcessor(16, 16);
+		// diagonal segment with label 2, from (2,2) to (12,12)
+		for (int i = 2; i <= 12; i++)
+			image.set(i, i, 2);
+		
+		LabelGeodesicDiameter algo = new LabelGeodesicDiameter(ChamferWeights.QUASI_EUCLIDEAN);
+		algo.setComputePaths(true);
+		LabelGeodesicDiameter.Result res = algo.process(image);
+		
+		assertEquals(1, res.getLabels().length);
+		assertEquals(10 * Math.sqrt(2), res.getDiameters()[0], .001);
+		assertEquals(11, res.getPaths()[0].length);
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LongRingBufferTest
+{
+	/**
+	 * Test method for {@link inra.ijpb.data.LongRingBuffer#add(long)}.
+	 */
+	@Test
+	public void testAdd_Growth()
+	{
+		LongRingBuffer queue = new LongRingBuffer(2);
+		for (long i = 0; i < 100; i++)
+		{
+			queue.add(i << 32 | i);
+		}
+		assertEquals(100, queue.size());
+		
+		for (long i = 0; i < 100; i++)
+		{
+			assertEquals(i << 32 | i, queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.data.LongRingBuffer#poll()}.
+	 */
+	@Test
+	public void testPoll_WrapAround()
+	{
+		LongRingBuffer queue = new LongRingBuffer(4);
+		queue.add(1);
+		queue.add(2);
+		queue.add(3);
+		assertEquals(1, queue.poll());
+		assertEquals(2, queue.poll());
+		
+		// the next elements wrap around the end of the buffer
+		queue.add(4);
+		queue.add(5);
+		queue.add(6);
+		assertEquals(4, queue.size());
+		
+		// the buffer is full with a non-zero head, growth must keep the order
+		queue.add(7);
+		for (long i = 3; i <= 7; i++)
+		{
+			assertEquals(i, queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Alternates insertions and removals over many cycles of the buffer.
+	 */
+	@Test
+	public void testAddPoll_ManyCycles()
+	{
+		LongRingBuffer queue = new LongRingBuffer(8);
+		long next = 0;
+		long expected = 0;
+		for (int i = 0; i < 1000; i++)
+		{
+			queue.add(next++);
+			queue.add(next++);
+			assertEquals(expected++, queue.poll());
+		}
+		assertEquals(1000, queue.size());
+		while (!queue.isEmpty())
+		{
+			assertEquals(expected++, queue.poll());
+		}
+		assertEquals(next, expected);
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.data.LongRingBuffer#poll()}.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testPoll_Empty()
+	{
+		LongRingBuffer queue = new LongRingBuffer();
+		queue.add(1);
+		queue.clear();
+		queue.poll();
+	}
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.border;
+
+import static org.junit.Assert.assertEquals;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class PaddedImageTest
+{
+	/**
+	 * Test method for {@link inra.ijpb.data.border.PaddedImage#extend(ImageProcessor, int, int, int, int, BorderManager)}.
+	 */
+	@Test
+	public void testExtend_SameAsBorderManager()
+	{
+		ImageProcessor image = createImage(new ByteProcessor(7, 5));
+		// white border is not representable with 8-bits values
+		BorderManager.Type[] types = new BorderManager.Type[] {
+				BorderManager.Type.REPLICATED, BorderManager.Type.PERIODIC,
+				BorderManager.Type.MIRRORED, BorderManager.Type.BLACK,
+				BorderManager.Type.GRAY };
+		for (BorderManager.Type type : types)
+		{
+			BorderManager border = type.createBorderManager(image);
+			ImageProcessor res = PaddedImage.extend(image, 3, 4, 2, 6, border);
+			
+			assertEquals(14, res.getWidth());
+			assertEquals(13, res.getHeight());
+			for (int y = 0; y < 13; y++)
+			{
+				for (int x = 0; x < 14; x++)
+				{
+					assertEquals(border.get(x - 3, y - 2), res.get(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.data.border.PaddedImage#getf(int)}.
+	 */
+	@Test
+	public void testGetf_Shifts()
+	{
+		ImageProcessor image = createImage(new FloatProcessor(7, 5));
+		BorderManager border = new MirroringBorder(image);
+		int[][] shifts = new int[][] { { -2, 0 }, { 0, 0 }, { 1, 3 } };
+		PaddedImage padded = new PaddedImage(image, border, shifts);
+		int[] offsets = padded.offsets(shifts);
+		
+		for (int y = 0; y < 5; y++)
+		{
+			for (int x = 0; x < 7; x++)
+			{
+				int index = padded.index(x, y);
+				for (int i = 0; i < shifts.length; i++)
+				{
+					float exp = border.getf(x + shifts[i][0], y + shifts[i][1]);
+					assertEquals(exp, padded.getf(index + offsets[i]), 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.data.border.PaddedImage3D#PaddedImage3D(ImageStack, BorderManager3D, int, int, int, int, int)}.
+	 */
+	@Test
+	public void testPaddedImage3D_Slab()
+	{
+		ImageStack image = ImageStack.create(6, 5, 8, 8);
+		for (int z = 0; z < 8; z++)
+		{
+			createImage(image.getProcessor(z + 1));
+			image.getProcessor(z + 1).add(z * 20);
+		}
+		BorderManager3D border = new ReplicatedBorder3D(image);
+		PaddedImage3D slab = new PaddedImage3D(image, border, 5, 8, 2, 1, 2);
+		
+		assertEquals(7, slab.getStack().getSize());
+		for (int z = 3; z < 10; z++)
+		{
+			for (int y = -1; y < 6; y++)
+			{
+				for (int x = -2; x < 8; x++)
+				{
+					assertEquals(border.get(x, y, z), slab.getf(z, slab.index(x, y)), 0);
+				}
+			}
+		}
+	}
+
+	private static ImageProcessor createImage(ImageProcessor image)
+	{
+		for (int y = 0; y < image.getHeight(); y++)
+		{
+			for (int x = 0; x < image.getWidth(); x++)
+			{
+				image.setf(x, y, x + 10 * y);
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class StackWrappersTest
+{
+	/**
+	 * Checks that linear index access is consistent with coordinate access,
+	 * for each data type.
+	 */
+	@Test
+	public void testGetByIndex()
+	{
+		for (int bitDepth : new int[] {8, 16, 32})
+		{
+			ImageStack stack = createStack(bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+			
+			long index = 0;
+			for (int z = 0; z < 4; z++)
+			{
+				for (int y = 0; y < 3; y++)
+				{
+					for (int x = 0; x < 5; x++)
+					{
+						assertEquals(image.getValue(x, y, z), image.getByIndex(index), 0);
+						image.setByIndex(index, 200);
+						assertEquals(200, image.getValue(x, y, z), 0);
+						index++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that row access gives the same result as the default
+	 * implementation, including value clamping.
+	 */
+	@Test
+	public void testGetSetRow()
+	{
+		for (int bitDepth : new int[] {8, 16, 32})
+		{
+			ImageStack stack = createStack(bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+			
+			double[] row = new double[5];
+			image.getRow(2, 3, row);
+			for (int x = 0; x < 5; x++)
+			{
+				assertEquals(image.getValue(x, 2, 3), row[x], 0);
+			}
+			
+			double[] values = new double[] {-10, 0, 12, 300, 70000};
+			image.setRow(1, 2, values);
+			ImageStack stack2 = createStack(bitDepth);
+			Image3D image2 = Images3D.createWrapper(stack2);
+			for (int x = 0; x < 5; x++)
+			{
+				image2.setValue(x, 1, 2, values[x]);
+				assertEquals(image2.getValue(x, 1, 2), image.getValue(x, 1, 2), 0);
+			}
+			
+			image.fillRow(1, 3, 0, 1, 25);
+			assertEquals(25, image.getValue(1, 0, 1), 0);
+			assertEquals(25, image.getValue(3, 0, 1), 0);
+			assertEquals(stack2.getVoxel(4, 0, 1), image.getValue(4, 0, 1), 0);
+		}
+	}
+
+	@Test
+	public void testCopyFrom()
+	{
+		ImageStack source = createStack(8);
+		for (int bitDepth : new int[] {8, 16, 32})
+		{
+			ImageStack target = ImageStack.create(5, 3, 4, bitDepth);
+			Image3D image = Images3D.createWrapper(target);
+			image.copyFrom(Images3D.createWrapper(source));
+			
+			for (int z = 0; z < 4; z++)
+			{
+				for (int y = 0; y < 3; y++)
+				{
+					for (int x = 0; x < 5; x++)
+					{
+						assertEquals(source.getVoxel(x, y, z), target.getVoxel(x, y, z), 0);
+					}
+				}
+			}
+		}
+	}
+	
+	private static final ImageStack createStack(int bitDepth)
+	{
+		ImageStack stack = ImageStack.create(5, 3, 4, bitDepth);
+		for (int z = 0; z < 4; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 5; x++)
+				{
+					stack.setVoxel(x, y, z, x + 10 * y + 50 * z);
+				}
+			}
+		}
+		return stack;
+	}
+}
@@ -31,6 +31,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// generic classes
 	LabelImagesTest.class, 
+	LabelIndexTest.class, 
 	})
 public class AllTests {
   //nothing
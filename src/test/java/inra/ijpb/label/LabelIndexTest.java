@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+public class LabelIndexTest
+{
+	/**
+	 * Labels with a small range of values use a look-up table.
+	 */
+	@Test
+	public final void testIndexOf_Dense()
+	{
+		int[] labels = new int[]{3, 7, 2, 12};
+		LabelIndex index = new LabelIndex(labels);
+		
+		assertTrue(index.isDense());
+		assertEquals(4, index.size());
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertEquals(i, index.indexOf(labels[i]));
+		}
+		assertEquals(-1, index.indexOf(0));
+		assertEquals(-1, index.indexOf(5));
+		assertEquals(-1, index.indexOf(13));
+		assertEquals(-1, index.indexOf(-4));
+	}
+
+	/**
+	 * Labels with a large range of values use a hash table.
+	 */
+	@Test
+	public final void testIndexOf_Sparse()
+	{
+		int[] labels = new int[]{1000000, 5, -200000, 123456789, 77777};
+		LabelIndex index = new LabelIndex(labels);
+		
+		assertFalse(index.isDense());
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertEquals(i, index.indexOf(labels[i]));
+		}
+		assertEquals(-1, index.indexOf(0));
+		assertEquals(-1, index.indexOf(6));
+		assertEquals(-1, index.indexOf(123456788));
+	}
+
+	/**
+	 * Labels of a float stack with large values are found and indexed.
+	 */
+	@Test
+	public final void testFromImage_FloatStack()
+	{
+		ImageStack image = ImageStack.create(6, 5, 4, 32);
+		image.setVoxel(0, 0, 0, 3);
+		image.setVoxel(5, 4, 3, 2000000);
+		image.setVoxel(2, 2, 1, 70000);
+		image.setVoxel(3, 2, 1, 70000);
+		image.setVoxel(1, 3, 2, 3);
+		
+		LabelIndex index = LabelIndex.fromImage(image);
+		assertArrayEquals(new int[]{3, 70000, 2000000}, index.getLabels());
+		assertEquals(1, index.indexOf(70000));
+	}
+
+	/**
+	 * Labels of a float image, with negative values.
+	 */
+	@Test
+	public final void testFindAllLabels_FloatProcessor()
+	{
+		ImageProcessor image = new FloatProcessor(4, 4);
+		image.setf(0, 0, -5);
+		image.setf(1, 0, 2.7f);
+		image.setf(3, 3, 1e6f);
+		
+		assertArrayEquals(new int[]{-5, 2, 1000000}, LabelImages.findAllLabels(image));
+	}
+}
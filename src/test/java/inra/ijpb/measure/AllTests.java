@@ -30,10 +30,14 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	// generic classes
+	BinaryConfigurationsHistogram3DTest.class,
 	GeometricMeasures2DTest.class,
 	GeometricMeasures3DTest.class,
 	GeometryUtilsTest.class,
-	RegionAdjacencyGraphTest.class, 
+	LabeledIntensityStatisticsTest.class,
+	RegionAnalyzer3DTest.class,
+	RegionAdjacencyGraphTest.class,
+	RegionAdjacencyGraphBuilderTest.class,
 	Vector3dTest.class,
 	})
 public class AllTests {
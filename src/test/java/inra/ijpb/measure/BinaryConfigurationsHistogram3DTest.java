@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class BinaryConfigurationsHistogram3DTest
+{
+	/**
+	 * Compares the histograms computed in parallel with the histograms
+	 * computed label by label.
+	 */
+	@Test
+	public void testProcess_CompareWithLabelByLabel()
+	{
+		ImageStack image = ImageStack.create(12, 10, 9, 8);
+		Random random = new Random(7);
+		for (int z = 0; z < 9; z++)
+		{
+			for (int y = 0; y < 10; y++)
+			{
+				for (int x = 0; x < 12; x++)
+				{
+					image.setVoxel(x, y, z, random.nextInt(4) * 2);
+				}
+			}
+		}
+		int[] labels = new int[]{6, 2, 4, 10};
+		
+		BinaryConfigurationsHistogram3D algo = new BinaryConfigurationsHistogram3D(new ForkJoinPool(3));
+		long[][] histograms = algo.process(image, labels);
+		
+		assertEquals(4, histograms.length);
+		for (int i = 0; i < labels.length; i++)
+		{
+			long[] expected = new long[256];
+			for (int z = 0; z < 8; z++)
+			{
+				for (int y = 0; y < 9; y++)
+				{
+					for (int x = 0; x < 11; x++)
+					{
+						int index = 0;
+						for (int k = 0; k < 8; k++)
+						{
+							int x2 = x + (k & 1), y2 = y + ((k >> 1) & 1), z2 = z + (k >> 2);
+							if (image.getVoxel(x2, y2, z2) == labels[i])
+								index += 1 << k;
+						}
+						if (index > 0)
+							expected[index]++;
+					}
+				}
+			}
+			assertArrayEquals(expected, histograms[i]);
+		}
+	}
+
+	/**
+	 * Checks the surface area of a single label is consistent with the
+	 * surface area computed for all labels.
+	 */
+	@Test
+	public void testSurfaceAreaCrofton_SingleLabel()
+	{
+		ImageStack image = ImageStack.create(20, 20, 20, 8);
+		for (int z = 0; z < 20; z++)
+		{
+			for (int y = 0; y < 20; y++)
+			{
+				for (int x = 0; x < 20; x++)
+				{
+					double d2 = (x - 9.5) * (x - 9.5) + (y - 9.5) * (y - 9.5) + (z - 9.5) * (z - 9.5);
+					image.setVoxel(x, y, z, d2 < 36 ? 255 : (x < 4 ? 3 : 0));
+				}
+			}
+		}
+		double[] resol = new double[]{1, 1, 1};
+		
+		double[] surfs = GeometricMeasures3D.surfaceAreaCrofton(image, new int[]{3, 255}, resol, 13);
+		double surf = GeometricMeasures3D.surfaceAreaCrofton(image, 255, resol, 13);
+		assertEquals(surfs[1], surf, 1e-10);
+		
+		// surface area of a ball with radius 6
+		assertEquals(4 * Math.PI * 36, surf, 4 * Math.PI * 36 * .05);
+	}
+}
@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+public class LabeledIntensityStatisticsTest
+{
+	/**
+	 * Compares the statistics computed in a single pass with the statistics
+	 * computed from the explicit list of values of each region.
+	 */
+	@Test
+	public void testProcess_CompareWithValueLists()
+	{
+		for (int bitDepth : new int[]{8, 16, 32})
+		{
+			ImageStack image = ImageStack.create(20, 15, 12, bitDepth);
+			ImageStack labelImage = ImageStack.create(20, 15, 12, 16);
+			Random random = new Random(bitDepth);
+			for (int z = 0; z < 12; z++)
+			{
+				ImageProcessor plane = image.getProcessor(z + 1);
+				ImageProcessor labelPlane = labelImage.getProcessor(z + 1);
+				for (int i = 0; i < 20 * 15; i++)
+				{
+					plane.setf(i, bitDepth == 32 ? random.nextFloat() * 100 : random.nextInt(50));
+					labelPlane.setf(i, random.nextInt(6) * 3);
+				}
+			}
+			int[] labels = new int[]{12, 3, 6, 15, 9};
+			
+			LabeledIntensityStatistics algo = new LabeledIntensityStatistics(new ForkJoinPool(3));
+			LabeledIntensityStatistics.Result res = algo.process(image, labelImage, labels);
+			
+			long[] counts = res.getVoxelCount();
+			double[] means = res.getMean();
+			double[] sds = res.getStdDev();
+			double[] mins = res.getMin();
+			double[] maxs = res.getMax();
+			double[] medians = res.getMedian();
+			double[] modes = res.getMode();
+			double[] skewness = res.getSkewness();
+			double[] kurtosis = res.getKurtosis();
+			
+			for (int i = 0; i < labels.length; i++)
+			{
+				ArrayList<Double> values = new ArrayList<Double>();
+				for (int z = 0; z < 12; z++)
+				{
+					for (int k = 0; k < 20 * 15; k++)
+					{
+						if ((int) labelImage.getProcessor(z + 1).getf(k) == labels[i])
+							values.add((double) image.getProcessor(z + 1).getf(k));
+					}
+				}
+				Collections.sort(values);
+				int n = values.size();
+				
+				double mean = 0;
+				for (double v : values)
+					mean += v;
+				mean /= n;
+				double m2 = 0, m3 = 0, m4 = 0;
+				for (double v : values)
+				{
+					double d = v - mean;
+					m2 += d * d;
+					m3 += d * d * d;
+					m4 += d * d * d * d;
+				}
+				m2 /= n;
+				m3 /= n;
+				m4 /= n;
+				
+				// most frequent value, smallest one in case of ties
+				double mode = values.get(0);
+				int bestCount = 0;
+				for (int k = 0; k < n; )
+				{
+					int k2 = k;
+					while (k2 < n && values.get(k2).equals(values.get(k)))
+						k2++;
+					if (k2 - k > bestCount)
+					{
+						bestCount = k2 - k;
+						mode = values.get(k);
+					}
+					k = k2;
+				}
+				
+				assertEquals(n, counts[i]);
+				assertEquals(mean, means[i], 1e-8);
+				assertEquals(Math.sqrt(m2), sds[i], 1e-6);
+				assertEquals(values.get(0), mins[i], 0);
+				assertEquals(values.get(n - 1), maxs[i], 0);
+				assertEquals(values.get(n / 2), medians[i], 0);
+				assertEquals(mode, modes[i], 0);
+				assertEquals(m3 / Math.pow(m2, 1.5), skewness[i], 1e-6);
+				assertEquals(m4 / (m2 * m2) - 3, kurtosis[i], 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * Checks that central moments remain accurate for values with a large
+	 * offset, which makes the moments computed from raw power sums cancel out.
+	 */
+	@Test
+	public void testProcess_LargeOffset()
+	{
+		// values 1e6 + {0, 1, 2}, in equal proportions within a single region
+		ImageStack image = ImageStack.create(6, 6, 12, 32);
+		ImageStack labelImage = ImageStack.create(6, 6, 12, 8);
+		for (int z = 0; z < 12; z++)
+		{
+			for (int y = 0; y < 6; y++)
+			{
+				for (int x = 0; x < 6; x++)
+				{
+					image.setVoxel(x, y, z, 1e6 + (x + y + z) % 3);
+					labelImage.setVoxel(x, y, z, 1);
+				}
+			}
+		}
+		
+		// use several slabs to also check the merge of partial results
+		LabeledIntensityStatistics algo = new LabeledIntensityStatistics(new ForkJoinPool(4));
+		LabeledIntensityStatistics.Result res = algo.process(image, labelImage, new int[]{1});
+		
+		assertEquals(6 * 6 * 12, res.getVoxelCount()[0]);
+		assertEquals(1e6 + 1, res.getMean()[0], 1e-8);
+		assertEquals(Math.sqrt(2.0 / 3.0), res.getStdDev()[0], 1e-8);
+		assertEquals(0.0, res.getSkewness()[0], 1e-8);
+		assertEquals(-1.5, res.getKurtosis()[0], 1e-8);
+	}
+
+	/**
+	 * Checks that order statistics are not available when histograms are
+	 * disabled.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testProcess_NoHistograms()
+	{
+		ImageStack image = ImageStack.create(5, 5, 5, 8);
+		ImageStack labelImage = ImageStack.create(5, 5, 5, 8);
+		labelImage.setVoxel(2, 2, 2, 1);
+		
+		LabeledIntensityStatistics algo = new LabeledIntensityStatistics();
+		algo.setComputeHistograms(false);
+		LabeledIntensityStatistics.Result res = algo.process(image, labelImage, new int[]{1});
+		assertEquals(1, res.getVoxelCount()[0]);
+		res.getMedian();
+	}
+}
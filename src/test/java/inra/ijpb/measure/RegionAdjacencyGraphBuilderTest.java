@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.measure.RegionAdjacencyGraph.LabelPair;
+
+public class RegionAdjacencyGraphBuilderTest
+{
+	/**
+	 * Checks that the edges are the same as with the RegionAdjacencyGraph
+	 * class when regions are separated by watershed lines.
+	 */
+	@Test
+	public void testProcess_FiveRegionsWatershedLines()
+	{
+		byte[] data = new byte[]{
+				1, 1, 1, 0, 2, 2, 2, 
+				1, 1, 0, 5, 0, 2, 2, 
+				1, 0, 5, 5, 5, 0, 2, 
+				0, 5, 5, 5, 5, 5, 0,
+				3, 0, 5, 5, 5, 0, 4, 
+				3, 3, 0, 5, 0, 4, 4, 
+				3, 3, 3, 0, 4, 4, 4
+		};
+		ImageProcessor image = new ByteProcessor(7, 7, data);
+		
+		RegionAdjacencyGraphBuilder builder = new RegionAdjacencyGraphBuilder(4);
+		builder.setWatershedLines(true);
+		LabelAdjacencyGraph graph = builder.process(image);
+		
+		Set<LabelPair> pairs = RegionAdjacencyGraph.computeAdjacencies(image);
+		assertEquals(pairs.size(), graph.edgeCount());
+		int e = 0;
+		for (LabelPair pair : pairs)
+		{
+			assertEquals(pair.label1, graph.getLabel(graph.getEdgeNode1(e)));
+			assertEquals(pair.label2, graph.getLabel(graph.getEdgeNode2(e)));
+			e++;
+		}
+		
+		// without watershed lines, regions are not adjacent
+		builder.setWatershedLines(false);
+		assertEquals(0, builder.process(image).edgeCount());
+	}
+
+	/**
+	 * Checks contact areas and boundary intensities on regions in direct
+	 * contact.
+	 */
+	@Test
+	public void testProcess_ContactAreaAndIntensity()
+	{
+		byte[] data = new byte[]{
+				1, 1, 2, 2, 
+				1, 1, 2, 2, 
+				1, 1, 2, 2, 
+				3, 3, 3, 3
+		};
+		ImageProcessor image = new ByteProcessor(4, 4, data);
+		ImageProcessor intensity = new FloatProcessor(4, 4);
+		for (int i = 0; i < 16; i++)
+		{
+			intensity.setf(i, i);
+		}
+		
+		LabelAdjacencyGraph graph = new RegionAdjacencyGraphBuilder(4).process(image, intensity);
+		assertEquals(3, graph.nodeCount());
+		assertEquals(3, graph.edgeCount());
+		
+		// edge (1,2): pairs (1,2), (5,6), (9,10)
+		assertEquals(3, graph.getContactArea(0));
+		assertEquals(6, graph.getMeanIntensity(0), 1e-10);
+		assertEquals(2, graph.getMinIntensity(0), 1e-10);
+		// edge (1,3): pairs (8,12), (9,13)
+		assertEquals(2, graph.getContactArea(1));
+		assertEquals(12.5, graph.getMeanIntensity(1), 1e-10);
+		assertEquals(12, graph.getMinIntensity(1), 1e-10);
+		// edge (2,3)
+		assertEquals(2, graph.getContactArea(2));
+		
+		// with 8 connectivity, diagonal contacts are added
+		graph = new RegionAdjacencyGraphBuilder(8).process(image, intensity);
+		assertEquals(7, graph.getContactArea(0));
+		assertEquals(5, graph.getContactArea(1));
+		assertEquals(5, graph.getContactArea(2));
+		
+		// check neighbor arrays
+		int node = graph.nodeIndex(3);
+		assertEquals(2, graph.degree(node));
+		assertEquals(graph.nodeIndex(1), graph.getNeighbor(graph.getNeighborStart(node)));
+		assertEquals(1, graph.getNeighborEdge(graph.getNeighborStart(node)));
+	}
+
+	/**
+	 * Compares the graph of a random 3D image computed in parallel with the
+	 * adjacencies computed by brute force.
+	 */
+	@Test
+	public void testProcess_RandomImage3D()
+	{
+		int sizeX = 9, sizeY = 8, sizeZ = 7;
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		Random random = new Random(5);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					image.setVoxel(x, y, z, random.nextInt(30));
+				}
+			}
+		}
+		
+		for (int conn : new int[]{6, 26})
+		{
+			LabelAdjacencyGraph graph = new RegionAdjacencyGraphBuilder(conn, new ForkJoinPool(3)).process(image);
+			
+			// count contacts by brute force
+			int[][] counts = new int[30][30];
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int label = (int) image.getVoxel(x, y, z);
+						for (int dz = -1; dz <= 1; dz++)
+						{
+							for (int dy = -1; dy <= 1; dy++)
+							{
+								for (int dx = -1; dx <= 1; dx++)
+								{
+									int d = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+									if (d == 0 || (conn == 6 && d > 1))
+										continue;
+									int x2 = x + dx, y2 = y + dy, z2 = z + dz;
+									if (x2 < 0 || y2 < 0 || z2 < 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+										continue;
+									int label2 = (int) image.getVoxel(x2, y2, z2);
+									if (label != 0 && label2 != 0 && label < label2)
+										counts[label][label2]++;
+								}
+							}
+						}
+					}
+				}
+			}
+			
+			int e = 0;
+			for (int l1 = 1; l1 < 30; l1++)
+			{
+				for (int l2 = l1 + 1; l2 < 30; l2++)
+				{
+					if (counts[l1][l2] == 0)
+						continue;
+					assertEquals(l1, graph.getLabel(graph.getEdgeNode1(e)));
+					assertEquals(l2, graph.getLabel(graph.getEdgeNode2(e)));
+					assertEquals(counts[l1][l2], graph.getContactArea(e));
+					e++;
+				}
+			}
+			assertEquals(e, graph.edgeCount());
+		}
+	}
+}
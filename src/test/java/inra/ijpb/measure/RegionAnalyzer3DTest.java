@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.measure.RegionAnalyzer3D.Feature;
+
+public class RegionAnalyzer3DTest
+{
+	/**
+	 * Compares the features computed by the analyzer with the results of
+	 * the individual methods of GeometricMeasures3D.
+	 */
+	@Test
+	public void testAnalyze_CompareWithGeometricMeasures()
+	{
+		ImageStack image = createLabelImage();
+		int[] labels = LabelImages.findAllLabels(image);
+		double[] resol = new double[]{0.5, 0.8, 1.2};
+		
+		RegionAnalyzer3D analyzer = new RegionAnalyzer3D(EnumSet.allOf(Feature.class));
+		analyzer.setConnectivity(26);
+		RegionAnalyzer3D.Result res = analyzer.analyze(image, resol);
+		assertArrayEquals(labels, res.getLabels());
+		
+		assertArrayEquals(GeometricMeasures3D.volume(image, labels, resol), res.getVolumes(), 1e-10);
+		assertArrayEquals(GeometricMeasures3D.surfaceAreaCrofton(image, labels, resol, 13), 
+				res.getSurfaceAreas(), 1e-10);
+		assertArrayEquals(GeometricMeasures3D.eulerNumber(image, labels, 26), res.getEulerNumbers(), 1e-10);
+		
+		double[][] boxes = GeometricMeasures3D.boundingBox(image, labels);
+		double[][] centroids = GeometricMeasures3D.centroids(image, labels);
+		double[][] ellipsoids = GeometricMeasures3D.inertiaEllipsoid(image, labels, resol);
+		double[][] balls = GeometricMeasures3D.maximumInscribedSphere(image, labels, resol);
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertArrayEquals(boxes[i], res.getBoundingBoxes()[i], 0);
+			assertArrayEquals(centroids[i], res.getCentroids()[i], 1e-10);
+			// compare center and radii, as angles of axis-aligned ellipsoids
+			// depend on rounding errors
+			for (int k = 0; k < 6; k++)
+				assertEquals(ellipsoids[i][k], res.getInertiaEllipsoids()[i][k], 1e-8);
+			assertArrayEquals(balls[i], res.getInscribedSpheres()[i], 0);
+		}
+	}
+
+	/**
+	 * Checks that features that were not requested are not returned, even if
+	 * they are required for computing other features.
+	 */
+	@Test
+	public void testAnalyze_IntermediateFeatures()
+	{
+		ImageStack image = createLabelImage();
+		
+		RegionAnalyzer3D analyzer = new RegionAnalyzer3D(EnumSet.of(Feature.SPHERICITY));
+		RegionAnalyzer3D.Result res = analyzer.analyze(image, new double[]{1, 1, 1});
+		
+		assertNull(res.getVolumes());
+		assertNull(res.getSurfaceAreas());
+		assertNotNull(res.getSphericities());
+		
+		ResultsTable table = res.createTable();
+		assertTrue(table.columnExists(table.getColumnIndex("Sphericity")));
+		assertFalse(table.columnExists(table.getColumnIndex("Volume")));
+	}
+
+	/**
+	 * Creates a label image with several overlapping boxes and balls.
+	 */
+	private static final ImageStack createLabelImage()
+	{
+		ImageStack image = ImageStack.create(30, 25, 20, 16);
+		Random random = new Random(42);
+		for (int label = 1; label <= 12; label++)
+		{
+			int xc = random.nextInt(30);
+			int yc = random.nextInt(25);
+			int zc = random.nextInt(20);
+			int r = 2 + random.nextInt(5);
+			boolean ball = label % 2 == 0;
+			for (int z = Math.max(zc - r, 0); z < Math.min(zc + r + 1, 20); z++)
+			{
+				for (int y = Math.max(yc - r, 0); y < Math.min(yc + r + 1, 25); y++)
+				{
+					for (int x = Math.max(xc - r, 0); x < Math.min(xc + r + 1, 30); x++)
+					{
+						int d2 = (x - xc) * (x - xc) + (y - yc) * (y - yc) + (z - zc) * (z - zc);
+						if (!ball || d2 <= r * r)
+							image.setVoxel(x, y, z, 3 * label);
+					}
+				}
+			}
+		}
+		return image;
+	}
+}
@@ -30,6 +30,8 @@ import org.junit.runners.Suite;
 	// generic classes
 	AreaOpeningQueueTest.class,
 	SizeOpening3DQueueTest.class,
+	ComponentTreeTest.class,
+	ComponentTreeCacheTest.class,
 	})
 public class AllTests {
   //nothing
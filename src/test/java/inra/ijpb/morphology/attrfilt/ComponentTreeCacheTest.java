@@ -0,0 +1,192 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class ComponentTreeCacheTest
+{
+	@Test
+	public void testFilter_SameResultAsTree()
+	{
+		ImageProcessor image = loadGrains();
+		ComponentTreeCache cache = new ComponentTreeCache();
+
+		ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+		for (int minArea : new int[]{10, 100, 50})
+		{
+			float[] exp = tree.filter(new SizeAttribute(), minArea);
+			float[] res = cache.filter(image, 4, ComponentTree.Type.MAX_TREE, new SizeAttribute(), minArea);
+			assertEquals(exp.length, res.length);
+			for (int i = 0; i < exp.length; i++)
+			{
+				assertEquals(exp[i], res[i], 0);
+			}
+		}
+		assertFalse(cache.isEmpty());
+		
+		// change attribute on the cached tree
+		float[] exp = tree.filter(new BoxDiagonalAttribute(), 12);
+		float[] res = cache.filter(image, 4, ComponentTree.Type.MAX_TREE, new BoxDiagonalAttribute(), 12);
+		for (int i = 0; i < exp.length; i++)
+		{
+			assertEquals(exp[i], res[i], 0);
+		}
+	}
+
+	@Test
+	public void testFilter_AttributeParameters()
+	{
+		ImageProcessor image = loadGrains();
+		ComponentTreeCache cache = new ComponentTreeCache();
+		ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+		
+		// attributes of the same class, but with different parameters
+		for (int factor : new int[]{1, 4})
+		{
+			float[] exp = tree.filter(new ScaledSizeAttribute(factor), 100);
+			float[] res = cache.filter(image, 4, ComponentTree.Type.MAX_TREE, 
+					new ScaledSizeAttribute(factor), 100);
+			for (int i = 0; i < exp.length; i++)
+			{
+				assertEquals(exp[i], res[i], 0);
+			}
+		}
+	}
+
+	@Test
+	public void testFilter_ModifiedImage()
+	{
+		ImageProcessor image = loadGrains();
+		ComponentTreeCache cache = new ComponentTreeCache();
+		cache.filter(image, 4, ComponentTree.Type.MAX_TREE, new SizeAttribute(), 100);
+		ComponentTree cachedTree = cache.tree;
+		
+		// same content, another instance: the tree is kept
+		cache.filter(image.duplicate(), 4, ComponentTree.Type.MAX_TREE, new SizeAttribute(), 100);
+		assertTrue(cache.tree == cachedTree);
+		
+		// another connectivity: the tree is recomputed
+		cache.filter(image, 8, ComponentTree.Type.MAX_TREE, new SizeAttribute(), 100);
+		assertFalse(cache.tree == cachedTree);
+		cachedTree = cache.tree;
+		
+		// modify the image in place: the tree is recomputed
+		image.set(10, 10, image.get(10, 10) + 1);
+		float[] res = cache.filter(image, 8, ComponentTree.Type.MAX_TREE, new SizeAttribute(), 100);
+		assertFalse(cache.tree == cachedTree);
+
+		float[] exp = new ComponentTree(image, 8, ComponentTree.Type.MAX_TREE).filter(new SizeAttribute(), 100);
+		for (int i = 0; i < exp.length; i++)
+		{
+			assertEquals(exp[i], res[i], 0);
+		}
+	}
+
+	@Test
+	public void testFilter_MemoryBudget()
+	{
+		ImageProcessor image = loadGrains();
+		ComponentTreeCache cache = new ComponentTreeCache(1000);
+		
+		float[] res = cache.filter(image, 4, ComponentTree.Type.MAX_TREE, new SizeAttribute(), 100);
+		assertTrue(cache.isEmpty());
+
+		float[] exp = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE).filter(new SizeAttribute(), 100);
+		for (int i = 0; i < exp.length; i++)
+		{
+			assertEquals(exp[i], res[i], 0);
+		}
+	}
+
+	@Test
+	public void testFilter_Stack()
+	{
+		ImageProcessor slice = loadGrains().resize(64, 64);
+		ImageStack image = new ImageStack(64, 64);
+		for (int z = 0; z < 4; z++)
+		{
+			image.addSlice(slice.duplicate());
+		}
+		ComponentTreeCache cache = new ComponentTreeCache();
+		ComponentTreeFiltering algo = new ComponentTreeFiltering();
+		algo.setConnectivity(26);
+		ImageStack exp = algo.process(image, 200);
+		
+		algo.setCache(cache);
+		algo.process(image, 50);
+		ImageStack res = algo.process(image, 200);
+		assertFalse(cache.isEmpty());
+		for (int z = 0; z < 4; z++)
+		{
+			for (int y = 0; y < 64; y++)
+			{
+				for (int x = 0; x < 64; x++)
+				{
+					assertEquals(exp.getVoxel(x, y, z), res.getVoxel(x, y, z), 0);
+				}
+			}
+		}
+	}
+
+	private ImageProcessor loadGrains()
+	{
+		String fileName = getClass().getResource("/files/grains.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		return imagePlus.getProcessor();
+	}
+	
+	/**
+	 * The size of the components multiplied by a factor, used to check that
+	 * cached attributes take into account their parameters.
+	 */
+	private static final class ScaledSizeAttribute extends SizeAttribute
+	{
+		final int factor;
+		
+		ScaledSizeAttribute(int factor)
+		{
+			this.factor = factor;
+		}
+		
+		@Override
+		public double getValue(int node)
+		{
+			return factor * super.getValue(node);
+		}
+		
+		@Override
+		public String getKey()
+		{
+			return "size*" + factor;
+		}
+	}
+}
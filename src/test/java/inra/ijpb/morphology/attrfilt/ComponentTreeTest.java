@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class ComponentTreeTest
+{
+	@Test
+	public void testFilter_TwoMaxima()
+	{
+		int sizeX = 6;
+		int sizeY = 4;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		image.set(1, 1, 5);
+		image.set(1, 2, 4);
+		image.set(2, 1, 3);
+		image.set(2, 2, 2);
+		image.set(3, 1, 6);
+		image.set(3, 2, 5);
+		
+		ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+		float[] values = tree.filter(new SizeAttribute(), 4);
+		
+		assertEquals(3, values[1 * sizeX + 1], 0);
+		assertEquals(3, values[1 * sizeX + 2], 0);
+		assertEquals(3, values[1 * sizeX + 3], 0);
+		assertEquals(3, values[2 * sizeX + 1], 0);
+		assertEquals(2, values[2 * sizeX + 2], 0);
+		assertEquals(3, values[2 * sizeX + 3], 0);
+	}
+
+	@Test
+	public void testStructure()
+	{
+		ImageProcessor image = new ByteProcessor(5, 1);
+		image.set(0, 0, 2);
+		image.set(1, 0, 5);
+		image.set(2, 0, 2);
+		image.set(3, 0, 7);
+		image.set(4, 0, 1);
+		
+		ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+		
+		// root is the element with the lowest value
+		assertEquals(4, tree.getRoot());
+		// the two elements at level 2 belong to the same node
+		assertEquals(tree.getParent(1), tree.getParent(3));
+		assertTrue(tree.isNode(tree.getParent(1)));
+		assertEquals(4, tree.getParent(tree.getParent(1)));
+		
+		// each element appears before its parent
+		int[] sorted = tree.getSortedIndices();
+		int[] position = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++)
+			position[sorted[i]] = i;
+		for (int i = 0; i < sorted.length; i++)
+		{
+			if (i != tree.getRoot())
+				assertTrue(position[i] < position[tree.getParent(i)]);
+		}
+	}
+	
+	@Test
+	public void testFilter_Height()
+	{
+		ImageProcessor image = new ByteProcessor(5, 1);
+		image.set(0, 0, 2);
+		image.set(1, 0, 5);
+		image.set(2, 0, 2);
+		image.set(3, 0, 7);
+		image.set(4, 0, 1);
+		
+		ComponentTree tree = new ComponentTree(image, 4, ComponentTree.Type.MAX_TREE);
+		
+		// both maxima are flattened to the level of the node that contains
+		// them, whose height is 5
+		float[] values = tree.filter(new HeightAttribute(), 4);
+		assertEquals(2, values[1], 0);
+		assertEquals(2, values[3], 0);
+		assertEquals(1, values[4], 0);
+		
+		// all nodes except root are removed
+		values = tree.filter(new HeightAttribute(), 6);
+		for (int i = 0; i < 5; i++)
+			assertEquals(1, values[i], 0);
+	}
+
+	/**
+	 * Area opening computed with the component tree must be the same as the
+	 * one computed with the priority queue algorithm.
+	 */
+	@Test
+	public void testAreaOpening_SameAsQueue()
+	{
+		ImageProcessor image = readGrainsImage();
+		
+		for (int conn : new int[] { 4, 8 })
+		{
+			for (int minArea : new int[] { 2, 10, 50, 200 })
+			{
+				AreaOpeningQueue queue = new AreaOpeningQueue();
+				queue.setConnectivity(conn);
+				ImageProcessor expected = queue.process(image, minArea);
+				
+				ComponentTreeFiltering algo = new ComponentTreeFiltering();
+				algo.setConnectivity(conn);
+				ImageProcessor result = algo.process(image, minArea);
+				
+				for (int i = 0; i < image.getPixelCount(); i++)
+				{
+					assertEquals(expected.get(i), result.get(i));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Box diagonal opening computed with the component tree must be the same
+	 * as the one computed with the priority queue algorithm.
+	 */
+	@Test
+	public void testBoxDiagonalOpening_SameAsQueue()
+	{
+		ImageProcessor image = readGrainsImage();
+		
+		for (int conn : new int[] { 4, 8 })
+		{
+			BoxDiagonalOpeningQueue queue = new BoxDiagonalOpeningQueue();
+			queue.setConnectivity(conn);
+			ImageProcessor expected = queue.process(image, 10);
+			
+			ComponentTreeFiltering algo = new ComponentTreeFiltering(new BoxDiagonalAttribute());
+			algo.setConnectivity(conn);
+			ImageProcessor result = algo.process(image, 10);
+			
+			for (int i = 0; i < image.getPixelCount(); i++)
+			{
+				assertEquals(expected.get(i), result.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Closing with a min-tree must be the same as opening the inverted image.
+	 */
+	@Test
+	public void testAreaClosing_MinTree()
+	{
+		ImageProcessor image = readGrainsImage();
+		
+		ComponentTreeFiltering algo = new ComponentTreeFiltering(new SizeAttribute(), ComponentTree.Type.MIN_TREE);
+		ImageProcessor result = algo.process(image, 30);
+		
+		ImageProcessor inverted = image.duplicate();
+		inverted.invert();
+		ImageProcessor expected = new ComponentTreeFiltering().process(inverted, 30);
+		expected.invert();
+		
+		for (int i = 0; i < image.getPixelCount(); i++)
+		{
+			assertEquals(expected.get(i), result.get(i));
+		}
+	}
+	
+	/**
+	 * Volume opening computed with the component tree must be the same as the
+	 * one computed with the priority queue algorithm.
+	 */
+	@Test
+	public void testVolumeOpening_SameAsQueue()
+	{
+		Random random = new Random(42);
+		ImageStack image = ImageStack.create(12, 11, 10, 8);
+		for (int z = 0; z < 10; z++)
+		{
+			for (int y = 0; y < 11; y++)
+			{
+				for (int x = 0; x < 12; x++)
+				{
+					image.setVoxel(x, y, z, random.nextInt(20));
+				}
+			}
+		}
+		
+		for (int conn : new int[] { 6, 26 })
+		{
+			SizeOpening3DQueue queue = new SizeOpening3DQueue();
+			queue.setConnectivity(conn);
+			ImageStack expected = queue.process(image, 15);
+			
+			ComponentTreeFiltering algo = new ComponentTreeFiltering();
+			algo.setConnectivity(conn);
+			ImageStack result = algo.process(image, 15);
+			
+			for (int z = 0; z < 10; z++)
+			{
+				for (int y = 0; y < 11; y++)
+				{
+					for (int x = 0; x < 12; x++)
+					{
+						assertEquals(expected.getVoxel(x, y, z), result.getVoxel(x, y, z), 0);
+					}
+				}
+			}
+		}
+	}
+	
+	private ImageProcessor readGrainsImage()
+	{
+		String fileName = getClass().getResource("/files/grains.tif").getFile();
+		ImagePlus imagePlus = IJ.openImage(fileName);
+		assertNotNull(imagePlus);
+		return imagePlus.getProcessor();
+	}
+}
@@ -0,0 +1,229 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.directional;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.data.border.BorderManager;
+import inra.ijpb.data.border.MirroringBorder;
+
+import org.junit.Test;
+
+public class DirectionalFilterTest
+{
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.OrientedLineStrel#getRuns()}.
+	 */
+	@Test
+	public void testGetRuns_CoverShifts()
+	{
+		for (int theta = 0; theta < 180; theta += 15)
+		{
+			OrientedLineStrel strel = new OrientedLineStrel(11, theta);
+			int[] dir = strel.getTraversalDirection();
+			
+			int n = 0;
+			for (int[] run : strel.getRuns())
+			{
+				for (int k = 0; k < run[2]; k++)
+				{
+					int[] shift = strel.getShifts()[n++];
+					assertEquals(run[0] + k * dir[0], shift[0]);
+					assertEquals(run[1] + k * dir[1], shift[1]);
+				}
+			}
+			assertEquals(strel.getShifts().length, n);
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.DirectionalFilter#mean(ImageProcessor, inra.ijpb.morphology.Strel)}.
+	 */
+	@Test
+	public void testMean_Gray8()
+	{
+		ImageProcessor image = createRandomImage(new ByteProcessor(30, 20), 256);
+		for (int theta = 0; theta < 180; theta += 15)
+		{
+			OrientedLineStrel strel = new OrientedLineStrel(9, theta);
+			ImageProcessor result = DirectionalFilter.mean(image, strel);
+			
+			BorderManager bm = new MirroringBorder(image);
+			int[][] shifts = strel.getShifts();
+			for (int y = 0; y < 20; y++)
+			{
+				for (int x = 0; x < 30; x++)
+				{
+					double sum = 0;
+					for (int[] shift : shifts)
+					{
+						sum += bm.getf(x + shift[0], y + shift[1]);
+					}
+					assertEquals((int) (sum / shifts.length), result.get(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.DirectionalFilter#median(ImageProcessor, inra.ijpb.morphology.Strel)}.
+	 */
+	@Test
+	public void testMedian_Gray16()
+	{
+		ImageProcessor image = createRandomImage(new ShortProcessor(30, 20), 65536);
+		for (int theta = 0; theta < 180; theta += 15)
+		{
+			OrientedLineStrel strel = new OrientedLineStrel(9, theta);
+			ImageProcessor result = DirectionalFilter.median(image, strel);
+			
+			BorderManager bm = new MirroringBorder(image);
+			int[][] shifts = strel.getShifts();
+			double[] values = new double[shifts.length];
+			for (int y = 0; y < 20; y++)
+			{
+				for (int x = 0; x < 30; x++)
+				{
+					for (int i = 0; i < shifts.length; i++)
+					{
+						values[i] = bm.getf(x + shifts[i][0], y + shifts[i][1]);
+					}
+					Arrays.sort(values);
+					assertEquals(values[values.length / 2], result.getf(x, y), 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.DirectionalFilter#median(ImageProcessor, inra.ijpb.morphology.Strel)},
+	 * on a 16-bits image with a sharp high-contrast oblique edge, such that
+	 * the median jumps over a large range of values.
+	 */
+	@Test
+	public void testMedian_Gray16_SharpEdge()
+	{
+		ImageProcessor image = new ShortProcessor(30, 20);
+		for (int y = 0; y < 20; y++)
+		{
+			for (int x = 0; x < 30; x++)
+			{
+				image.set(x, y, x + y < 25 ? 100 : 40000);
+			}
+		}
+		
+		for (int length : new int[] {8, 9})
+		{
+			for (int theta = 0; theta < 180; theta += 15)
+			{
+				OrientedLineStrel strel = new OrientedLineStrel(length, theta);
+				ImageProcessor result = DirectionalFilter.median(image, strel);
+				
+				BorderManager bm = new MirroringBorder(image);
+				int[][] shifts = strel.getShifts();
+				int n = shifts.length;
+				double[] values = new double[n];
+				for (int y = 0; y < 20; y++)
+				{
+					for (int x = 0; x < 30; x++)
+					{
+						for (int i = 0; i < n; i++)
+						{
+							values[i] = bm.getf(x + shifts[i][0], y + shifts[i][1]);
+						}
+						Arrays.sort(values);
+						double median = n % 2 == 1 ? values[n / 2]
+								: (values[n / 2 - 1] + values[n / 2]) / 2;
+						assertEquals((int) median, result.get(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.DirectionalFilter#process(ImageProcessor)}.
+	 */
+	@Test
+	public void testProcess_SameResultForAnyParallelism()
+	{
+		ImageProcessor image = createRandomImage(new ByteProcessor(30, 20), 256);
+		for (DirectionalFilter.Type type : DirectionalFilter.Type.values())
+		{
+			DirectionalFilter filter = new DirectionalFilter(type,
+					DirectionalFilter.Operation.OPENING, 7, 8);
+			ForkJoinPool pool1 = new ForkJoinPool(1);
+			filter.setPool(pool1);
+			ImageProcessor[] exp = filter.processWithOrientation(image);
+			ForkJoinPool pool3 = new ForkJoinPool(3);
+			filter.setPool(pool3);
+			ImageProcessor[] res = filter.processWithOrientation(image);
+			pool1.shutdown();
+			pool3.shutdown();
+
+			for (int i = 0; i < image.getPixelCount(); i++)
+			{
+				assertEquals(exp[0].getf(i), res[0].getf(i), 0);
+				assertEquals(exp[1].getf(i), res[1].getf(i), 0);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link inra.ijpb.morphology.directional.DirectionalFilter#processWithOrientation(ImageProcessor)}.
+	 */
+	@Test
+	public void testProcessWithOrientation_VerticalLine()
+	{
+		// a bright vertical line on a dark background
+		ImageProcessor image = new ByteProcessor(30, 30);
+		for (int y = 0; y < 30; y++)
+		{
+			image.set(15, y, 200);
+		}
+		
+		DirectionalFilter filter = new DirectionalFilter(DirectionalFilter.Type.MAX,
+				DirectionalFilter.Operation.OPENING, 11, 4);
+		ImageProcessor[] res = filter.processWithOrientation(image);
+		
+		assertEquals(200, res[0].get(15, 15));
+		assertEquals(0, res[0].get(5, 15));
+		assertEquals(90, res[1].getf(15, 15), 0);
+	}
+
+	private static ImageProcessor createRandomImage(ImageProcessor image, int maxValue)
+	{
+		Random random = new Random(42);
+		for (int i = 0; i < image.getPixelCount(); i++)
+		{
+			image.set(i, random.nextInt(maxValue));
+		}
+		return image;
+	}
+}
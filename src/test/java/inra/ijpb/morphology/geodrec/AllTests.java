@@ -33,6 +33,8 @@ import org.junit.runners.Suite;
 	GeodesicReconstruction3DHybrid0Gray8Test.class,
 	GeodesicReconstruction3DHybrid0Gray16Test.class,
 	GeodesicReconstruction3DHybrid1Image3DTest.class,
+	GeodesicReconstructionParallelTest.class,
+	GeodesicReconstructionHybridQueueTest.class,
 	GeodesicReconstructionByDilation3DGray8Test.class,
 	GeodesicReconstructionByDilation3DScanningGray8Test.class,
 	GeodesicReconstructionByDilation3DScanningTest.class,
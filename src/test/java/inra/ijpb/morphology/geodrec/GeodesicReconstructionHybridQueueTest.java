@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Test;
+
+/**
+ * Checks that the hybrid algorithms, that propagate values through a queue,
+ * give the same results as the scanning algorithms, that repeat forward and
+ * backward scans until stability.
+ */
+public class GeodesicReconstructionHybridQueueTest
+{
+	/**
+	 * Compares GeodesicReconstructionHybrid with GeodesicReconstructionScanning
+	 * for each planar image type, connectivity and reconstruction type.
+	 */
+	@Test
+	public void testHybrid2D_SameAsScanning()
+	{
+		ImageProcessor[] masks = new ImageProcessor[] {
+				new ByteProcessor(40, 30), new ShortProcessor(40, 30), new FloatProcessor(40, 30) };
+		for (ImageProcessor mask : masks)
+		{
+			int maxValue = mask instanceof ByteProcessor ? 255 : 4000;
+			Random random = new Random(42);
+			ImageProcessor marker = mask.createProcessor(40, 30);
+			for (int i = 0; i < 40 * 30; i++)
+			{
+				mask.setf(i, random.nextInt(maxValue));
+				marker.setf(i, random.nextInt(30) == 0 ? maxValue : 0);
+			}
+			
+			for (GeodesicReconstructionType type : GeodesicReconstructionType.values())
+			{
+				ImageProcessor marker2 = marker;
+				if (type == GeodesicReconstructionType.BY_EROSION)
+				{
+					marker2 = marker.duplicate();
+					for (int i = 0; i < 40 * 30; i++)
+					{
+						marker2.setf(i, maxValue - marker.getf(i));
+					}
+				}
+				
+				for (int conn : new int[] { 4, 8 })
+				{
+					ImageProcessor exp = new GeodesicReconstructionScanning(type, conn).applyTo(marker2, mask);
+					ImageProcessor res = new GeodesicReconstructionHybrid(type, conn).applyTo(marker2, mask);
+					for (int i = 0; i < 40 * 30; i++)
+					{
+						assertEquals(exp.getf(i), res.getf(i), 0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares the 3D hybrid algorithms for 8-bits, 16-bits and floating point
+	 * stacks with the scanning algorithms.
+	 */
+	@Test
+	public void testHybrid3D_SameAsScanning()
+	{
+		for (int bitDepth : new int[] { 8, 16, 32 })
+		{
+			ImageStack mask = createRandomStack(bitDepth, 12, false);
+			ImageStack marker = createRandomStack(bitDepth, 12, true);
+			ImageStack markerInv = createRandomStack(bitDepth, 12, true);
+			int maxValue = bitDepth == 8 ? 255 : 4000;
+			for (int z = 0; z < 12; z++)
+			{
+				for (int y = 0; y < 12; y++)
+				{
+					for (int x = 0; x < 12; x++)
+					{
+						markerInv.setVoxel(x, y, z, maxValue - marker.getVoxel(x, y, z));
+					}
+				}
+			}
+			
+			for (int conn : new int[] { 6, 26 })
+			{
+				ImageStack expDil = new GeodesicReconstructionByDilation3DScanning(conn).applyTo(marker, mask);
+				ImageStack expEro = new GeodesicReconstructionByErosion3DScanning(conn).applyTo(markerInv, mask);
+				
+				ImageStack resDil = createHybrid(bitDepth, GeodesicReconstructionType.BY_DILATION, conn).applyTo(marker, mask);
+				ImageStack resEro = createHybrid(bitDepth, GeodesicReconstructionType.BY_EROSION, conn).applyTo(markerInv, mask);
+				assertSameStacks(expDil, resDil);
+				assertSameStacks(expEro, resEro);
+			}
+		}
+	}
+	
+	private static GeodesicReconstruction3DAlgo createHybrid(int bitDepth,
+			GeodesicReconstructionType type, int conn)
+	{
+		switch (bitDepth)
+		{
+		case 8: return new GeodesicReconstruction3DHybrid0Gray8(type, conn);
+		case 16: return new GeodesicReconstruction3DHybrid0Gray16(type, conn);
+		default: return new GeodesicReconstruction3DHybrid0Float(type, conn);
+		}
+	}
+	
+	private static ImageStack createRandomStack(int bitDepth, int size, boolean sparse)
+	{
+		int maxValue = bitDepth == 8 ? 255 : 4000;
+		Random random = new Random(sparse ? 17 : 42);
+		ImageStack stack = ImageStack.create(size, size, size, bitDepth);
+		for (int z = 0; z < size; z++)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				for (int x = 0; x < size; x++)
+				{
+					int value = sparse ? (random.nextInt(50) == 0 ? maxValue : 0) : random.nextInt(maxValue);
+					stack.setVoxel(x, y, z, value);
+				}
+			}
+		}
+		return stack;
+	}
+	
+	private static void assertSameStacks(ImageStack exp, ImageStack res)
+	{
+		for (int z = 0; z < exp.getSize(); z++)
+		{
+			for (int y = 0; y < exp.getHeight(); y++)
+			{
+				for (int x = 0; x < exp.getWidth(); x++)
+				{
+					assertEquals(exp.getVoxel(x, y, z), res.getVoxel(x, y, z), 0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class GeodesicReconstructionParallelTest
+{
+	/**
+	 * Compares with the hybrid algorithm on a random image, the image being
+	 * split into several bands.
+	 */
+	@Test
+	public void testApplyTo_SameAsHybrid_Gray8()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(42);
+		ImageProcessor mask = new ByteProcessor(120, 100);
+		ImageProcessor marker = new ByteProcessor(120, 100);
+		for (int i = 0; i < 120 * 100; i++)
+		{
+			mask.set(i, random.nextInt(256));
+			marker.set(i, random.nextInt(50) == 0 ? 255 : 0);
+		}
+		
+		for (int conn : new int[] { 4, 8 })
+		{
+			for (GeodesicReconstructionType type : GeodesicReconstructionType.values())
+			{
+				ImageProcessor marker2 = marker;
+				if (type == GeodesicReconstructionType.BY_EROSION)
+				{
+					marker2 = marker.duplicate();
+					marker2.invert();
+				}
+				ImageProcessor exp = new GeodesicReconstructionHybrid(type, conn).applyTo(marker2, mask);
+				ImageProcessor res = new GeodesicReconstructionParallel(type, conn, pool).applyTo(marker2, mask);
+				for (int i = 0; i < 120 * 100; i++)
+				{
+					assertEquals(exp.get(i), res.get(i));
+				}
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Checks a reconstruction that must cross all the bands several times.
+	 */
+	@Test
+	public void testReconstructByDilation_Spiral_Float()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		int size = 80;
+		ImageProcessor mask = new FloatProcessor(size, size);
+		// vertical walls with alternating openings at top and bottom
+		for (int x = 0; x < size; x += 2)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				mask.setf(x, y, 10.5f + x);
+			}
+			int y = (x % 4 == 0) ? size - 1 : 0;
+			mask.setf(x + 1, y, 10.5f + x);
+		}
+		ImageProcessor marker = new FloatProcessor(size, size);
+		marker.setf(0, 0, 1000f);
+		
+		ImageProcessor exp = new GeodesicReconstructionHybrid(
+				GeodesicReconstructionType.BY_DILATION, 4).applyTo(marker, mask);
+		ImageProcessor res = new GeodesicReconstructionParallel(
+				GeodesicReconstructionType.BY_DILATION, 4, pool).applyTo(marker, mask);
+		for (int i = 0; i < size * size; i++)
+		{
+			assertEquals(exp.getf(i), res.getf(i), 0);
+		}
+		assertEquals(mask.getf(size - 2, size - 1), res.getf(size - 2, size - 1), 0);
+		pool.shutdown();
+	}
+
+	/**
+	 * Compares with the hybrid algorithm on random stacks, split either into
+	 * slabs of slices or into bands of rows.
+	 */
+	@Test
+	public void testApplyTo3D_SameAsHybrid()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(42);
+		for (int sizeZ : new int[] { 10, 70 })
+		{
+			int sizeX = 30;
+			int sizeY = 70;
+			ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+			ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						mask.setVoxel(x, y, z, random.nextInt(1000));
+						marker.setVoxel(x, y, z, random.nextInt(200) == 0 ? 1000 : 0);
+					}
+				}
+			}
+			
+			for (int conn : new int[] { 6, 26 })
+			{
+				ImageStack exp = new GeodesicReconstruction3DHybrid1Image3D(
+						GeodesicReconstructionType.BY_DILATION, conn).applyTo(marker, mask);
+				ImageStack res = new GeodesicReconstruction3DParallel(
+						GeodesicReconstructionType.BY_DILATION, conn, pool).applyTo(marker, mask);
+				for (int z = 0; z < sizeZ; z++)
+				{
+					for (int y = 0; y < sizeY; y++)
+					{
+						for (int x = 0; x < sizeX; x++)
+						{
+							assertEquals(exp.getVoxel(x, y, z), res.getVoxel(x, y, z), 0);
+						}
+					}
+				}
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Compares with the reconstruction by dilation of 8-bits stacks
+	 * restricted to a binary mask, and checks that reconstruction by erosion
+	 * is consistent with the reconstruction by dilation of the complemented
+	 * stacks.
+	 */
+	@Test
+	public void testApplyTo3D_BinaryMask()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Random random = new Random(42);
+		for (int sizeZ : new int[] { 10, 70 })
+		{
+			int sizeX = 30;
+			int sizeY = 70;
+			ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+			ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+			ImageStack binaryMask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						mask.setVoxel(x, y, z, random.nextInt(256));
+						marker.setVoxel(x, y, z, random.nextInt(200) == 0 ? 255 : 0);
+						binaryMask.setVoxel(x, y, z, random.nextInt(5) == 0 ? 0 : 255);
+					}
+				}
+			}
+			
+			ImageStack exp = new GeodesicReconstructionByDilation3DGray8(26)
+					.applyTo(marker, mask, binaryMask);
+			ImageStack res = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_DILATION, 26, pool)
+					.applyTo(marker, mask, binaryMask);
+			
+			// reconstruction by erosion of the complemented stacks
+			ImageStack marker2 = marker.duplicate();
+			ImageStack mask2 = mask.duplicate();
+			for (int z = 0; z < sizeZ; z++)
+			{
+				marker2.getProcessor(z + 1).invert();
+				mask2.getProcessor(z + 1).invert();
+			}
+			ImageStack res2 = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_EROSION, 26, pool)
+					.applyTo(marker2, mask2, binaryMask);
+			
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						assertEquals(exp.getVoxel(x, y, z), res.getVoxel(x, y, z), 0);
+						if (binaryMask.getVoxel(x, y, z) == 0)
+							assertEquals(0, res2.getVoxel(x, y, z), 0);
+						else
+							assertEquals(255 - exp.getVoxel(x, y, z), res2.getVoxel(x, y, z), 0);
+					}
+				}
+			}
+		}
+		pool.shutdown();
+	}
+}
@@ -32,6 +32,7 @@ import org.junit.runners.Suite;
 	LinearVerticalStrelTest.class,
 	LinearDiagDownStrelTest.class, 
 	LinearDiagUpStrelTest.class,
+	VanHerkGilWermanFilterTest.class,
 	// compound of linear 
 	SquareStrelTest.class, 
 	OctagonStrelTest.class,
@@ -42,6 +43,9 @@ import org.junit.runners.Suite;
 	DiamondStrelTest.class,
 	// Also Disk strel, based on rank filters
 	DiskStrelTest.class,
+	// parallel processing of any strel
+	ParallelStrelFilterTest.class,
+	SliceStreamingStrelFilterTest.class,
 })
 public class AllTests {
   //nothing
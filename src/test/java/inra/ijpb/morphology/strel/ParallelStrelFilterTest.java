@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.Strel3D;
+
+public class ParallelStrelFilterTest
+{
+	/**
+	 * Compares parallel and serial results for each planar strel shape.
+	 */
+	@Test
+	public void testDilationErosion_Planar()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/grains.tif").getFile());
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ParallelStrelFilter filter = new ParallelStrelFilter(pool);
+		// use more blocks than threads to get thin bands
+		filter.setBlockNumber(7);
+
+		for (Strel.Shape shape : Strel.Shape.values())
+		{
+			for (int radius : new int[] {1, 4})
+			{
+				Strel strel = shape.fromRadius(radius);
+				assertEquals(shape.toString(), 0, countDifferences(strel.dilation(image), filter.dilation(image, strel)));
+				assertEquals(shape.toString(), 0, countDifferences(strel.erosion(image), filter.erosion(image, strel)));
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Compares parallel and serial results for each 3D strel shape.
+	 */
+	@Test
+	public void testDilationErosion_3D()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/bat-cochlea-volume.tif").getFile());
+		assertNotNull(imagePlus);
+		ImageStack image = imagePlus.getStack();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ParallelStrelFilter filter = new ParallelStrelFilter(pool);
+		filter.setBlockNumber(9);
+
+		for (Strel3D.Shape shape : Strel3D.Shape.values())
+		{
+			Strel3D strel = shape.fromRadius(2);
+			assertEquals(shape.toString(), 0, countDifferences(strel.dilation(image), filter.dilation(image, strel)));
+			assertEquals(shape.toString(), 0, countDifferences(strel.erosion(image), filter.erosion(image, strel)));
+		}
+		pool.shutdown();
+	}
+
+	private static final int countDifferences(ImageProcessor image1, ImageProcessor image2)
+	{
+		int count = 0;
+		for (int i = 0; i < image1.getPixelCount(); i++)
+		{
+			if (image1.getf(i) != image2.getf(i))
+				count++;
+		}
+		return count;
+	}
+
+	private static final int countDifferences(ImageStack image1, ImageStack image2)
+	{
+		int count = 0;
+		for (int z = 1; z <= image1.getSize(); z++)
+			count += countDifferences(image1.getProcessor(z), image2.getProcessor(z));
+		return count;
+	}
+}
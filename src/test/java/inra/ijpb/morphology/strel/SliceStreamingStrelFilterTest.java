@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Strel3D;
+
+public class SliceStreamingStrelFilterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * Compares streaming and in-memory results for several separable strels,
+	 * including strels with non-centered offsets.
+	 */
+	@Test
+	public void testMorphologicalFilters_InMemory()
+	{
+		ImageStack image = loadImage();
+		
+		Strel3D[] strels = new Strel3D[] {
+				CubeStrel.fromRadius(2), 
+				CuboidStrel.fromRadiusList(1, 2, 3),
+				CuboidStrel.fromDiameterList(2, 3, 4),
+				new LinearDepthStrel3D(4, 1),
+				new LinearHorizontalStrel(3),
+		};
+		
+		for (Strel3D strel : strels)
+		{
+			String name = strel.getClass().getSimpleName();
+			SliceStreamingStrelFilter filter = new SliceStreamingStrelFilter(strel);
+			assertEquals(name, 0, countDifferences(strel.dilation(image), filter.dilation(image)));
+			assertEquals(name, 0, countDifferences(strel.erosion(image), filter.erosion(image)));
+			assertEquals(name, 0, countDifferences(strel.opening(image), filter.opening(image)));
+			assertEquals(name, 0, countDifferences(strel.closing(image), filter.closing(image)));
+		}
+	}
+	
+	/**
+	 * Checks that the strel can be deeper than the image.
+	 */
+	@Test
+	public void testDilation_ThinImage()
+	{
+		ImageStack image = loadImage();
+		ImageStack thin = image.crop(0, 0, 10, image.getWidth(), image.getHeight(), 3);
+		
+		Strel3D strel = CuboidStrel.fromDiameterList(3, 3, 8);
+		SliceStreamingStrelFilter filter = new SliceStreamingStrelFilter(strel);
+		assertEquals(0, countDifferences(strel.dilation(thin), filter.dilation(thin)));
+		assertEquals(0, countDifferences(strel.closing(thin), filter.closing(thin)));
+	}
+
+	/**
+	 * Writes the result on disk, then uses the virtual stack as input.
+	 */
+	@Test
+	public void testDilationErosion_VirtualStack() throws IOException
+	{
+		ImageStack image = loadImage();
+		Strel3D strel = CubeStrel.fromDiameter(5);
+		SliceStreamingStrelFilter filter = new SliceStreamingStrelFilter(strel);
+		
+		File dir1 = folder.newFolder("dilation");
+		VirtualStack dilated = filter.dilation(image, dir1);
+		assertEquals(image.getSize(), dilated.getSize());
+		assertEquals(image.getSize(), dir1.list().length);
+		ImageStack expDilated = strel.dilation(image);
+		assertEquals(0, countDifferences(expDilated, dilated));
+		
+		File dir2 = folder.newFolder("closing");
+		VirtualStack closed = filter.erosion(dilated, dir2);
+		assertEquals(0, countDifferences(strel.erosion(expDilated), closed));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedStrel()
+	{
+		new SliceStreamingStrelFilter(BallStrel.fromRadius(2));
+	}
+
+	private ImageStack loadImage()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/bat-cochlea-volume.tif").getFile());
+		assertNotNull(imagePlus);
+		return imagePlus.getStack();
+	}
+	
+	private static final int countDifferences(ImageProcessor image1, ImageProcessor image2)
+	{
+		int count = 0;
+		for (int i = 0; i < image1.getPixelCount(); i++)
+		{
+			if (image1.getf(i) != image2.getf(i))
+				count++;
+		}
+		return count;
+	}
+
+	private static final int countDifferences(ImageStack image1, ImageStack image2)
+	{
+		assertEquals(image1.getSize(), image2.getSize());
+		int count = 0;
+		for (int z = 1; z <= image1.getSize(); z++)
+			count += countDifferences(image1.getProcessor(z), image2.getProcessor(z));
+		return count;
+	}
+}
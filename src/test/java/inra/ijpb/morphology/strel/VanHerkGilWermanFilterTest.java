@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Strel;
+
+import org.junit.Test;
+
+public class VanHerkGilWermanFilterTest
+{
+	/**
+	 * Compares the result on random lines with a brute-force computation,
+	 * for various window sizes and offsets.
+	 */
+	@Test
+	public void testProcess_RandomLines()
+	{
+		Random random = new Random(42);
+		for (int length = 1; length < 30; length++)
+		{
+			float[] values = new float[length];
+			for (int i = 0; i < length; i++)
+				values[i] = random.nextInt(100);
+
+			for (int size = 1; size < 12; size++)
+			{
+				for (int before = 0; before < size; before++)
+				{
+					for (LocalExtremum.Type type : LocalExtremum.Type.values())
+					{
+						float[] res = values.clone();
+						new VanHerkGilWermanFilter(size, before, type).process(res, length);
+						
+						for (int i = 0; i < length; i++)
+						{
+							float exp = bruteForce(values, i - before, i - before + size - 1, type);
+							assertEquals(exp, res[i], 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static final float bruteForce(float[] values, int i0, int i1, LocalExtremum.Type type)
+	{
+		boolean max = type == LocalExtremum.Type.MAXIMUM;
+		float res = max ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+		for (int i = Math.max(i0, 0); i <= Math.min(i1, values.length - 1); i++)
+		{
+			res = max ? Math.max(res, values[i]) : Math.min(res, values[i]);
+		}
+		return res;
+	}
+
+	/**
+	 * Checks that the linear strels give the same result as a brute-force
+	 * computation of the extremum along the line.
+	 */
+	@Test
+	public void testLinearStrels_RandomImages()
+	{
+		Random random = new Random(42);
+		ImageProcessor image8 = new ByteProcessor(23, 17);
+		ImageProcessor image32 = new FloatProcessor(23, 17);
+		for (int i = 0; i < 23 * 17; i++)
+		{
+			image8.set(i, random.nextInt(256));
+			image32.setf(i, (float) random.nextGaussian());
+		}
+
+		for (int size = 1; size < 8; size++)
+		{
+			for (int offset = 0; offset < size; offset++)
+			{
+				// the reference pixel of orthogonal strels is located at the
+				// offset position, whereas it is located at (size-1-offset)
+				// for diagonal strels
+				int k0 = -offset;
+				int k1 = size - 1 - offset;
+				for (ImageProcessor image : new ImageProcessor[] { image8, image32 })
+				{
+					checkStrel(new LinearHorizontalStrel(size, offset), image, 1, 0, k0, k1);
+					checkStrel(new LinearVerticalStrel(size, offset), image, 0, 1, k0, k1);
+					checkStrel(new LinearDiagUpStrel(size, offset), image, 1, -1, -k1, -k0);
+					checkStrel(new LinearDiagDownStrel(size, offset), image, 1, 1, -k1, -k0);
+				}
+			}
+		}
+	}
+
+	private static final void checkStrel(Strel strel, ImageProcessor image, int dx, int dy, int k0, int k1)
+	{
+		assertSameImage(bruteForce(image, dx, dy, k0, k1, true), strel.dilation(image));
+		assertSameImage(bruteForce(image, dx, dy, k0, k1, false), strel.erosion(image));
+	}
+
+	private static final ImageProcessor bruteForce(ImageProcessor image, int dx, int dy, int k0, int k1, boolean dilation)
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ImageProcessor result = image.duplicate();
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				float res = dilation ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+				for (int k = k0; k <= k1; k++)
+				{
+					int x2 = x + k * dx;
+					int y2 = y + k * dy;
+					if (x2 < 0 || y2 < 0 || x2 >= width || y2 >= height)
+						continue;
+					float v = image.getf(x2, y2);
+					res = dilation ? Math.max(res, v) : Math.min(res, v);
+				}
+				result.setf(x, y, res);
+			}
+		}
+		return result;
+	}
+
+	private static final void assertSameImage(ImageProcessor expected, ImageProcessor result)
+	{
+		for (int i = 0; i < expected.getPixelCount(); i++)
+		{
+			assertEquals(expected.getf(i), result.getf(i), 0);
+		}
+	}
+}
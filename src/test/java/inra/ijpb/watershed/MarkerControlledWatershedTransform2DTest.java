@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.BinaryImages;
+import inra.ijpb.morphology.MinimaAndMaxima;
+
+public class MarkerControlledWatershedTransform2DTest
+{
+	/**
+	 * Checks that flooding with the hierarchical queue gives the same result
+	 * as flooding with the priority queue, for 8, 16 and 32-bit images.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue()
+	{
+		ImagePlus imagePlus = IJ.openImage(getClass().getResource("/files/grains.tif").getFile());
+		assertNotNull(imagePlus);
+		ImageProcessor image = imagePlus.getProcessor();
+
+		ImageProcessor minima = MinimaAndMaxima.extendedMinima(image, 10, 4);
+		ImageProcessor markers = BinaryImages.componentsLabeling(minima, 4, 16);
+		ImageProcessor mask = createRandomMask(image.getWidth(), image.getHeight());
+
+		ImageProcessor[] inputs = new ImageProcessor[] { image,
+				image.convertToShort(false), image.convertToFloat() };
+		// add small fractional values to test ordering of float values
+		for (int i = 0; i < inputs[2].getPixelCount(); i++)
+			inputs[2].setf(i, inputs[2].getf(i) + (i % 7) * 0.1f);
+
+		for (ImageProcessor input : inputs)
+		{
+			for (int conn : new int[] { 4, 8 })
+			{
+				for (ImageProcessor maskImage : new ImageProcessor[] { null, mask })
+				{
+					MarkerControlledWatershedTransform2D wt = new MarkerControlledWatershedTransform2D(
+							input, markers, maskImage, conn);
+					wt.setVerbose(false);
+
+					assertEquals(0, countDifferences(wt.applyWithPriorityQueue(),
+							wt.applyWithHierarchicalQueue()));
+					assertEquals(0, countDifferences(wt.applyWithPriorityQueueAndDams(),
+							wt.applyWithHierarchicalQueueAndDams()));
+				}
+			}
+		}
+	}
+
+	private static final ImageProcessor createRandomMask(int sizeX, int sizeY)
+	{
+		ImageProcessor mask = new ByteProcessor(sizeX, sizeY);
+		long seed = 1;
+		for (int i = 0; i < sizeX * sizeY; i++)
+		{
+			seed ^= (seed << 21);
+			seed ^= (seed >>> 35);
+			seed ^= (seed << 4);
+			// keep approximately 7 pixels over 8
+			mask.set(i, (seed & 7) != 0 ? 255 : 0);
+		}
+		return mask;
+	}
+
+	private static final int countDifferences(ImageProcessor image1, ImageProcessor image2)
+	{
+		int count = 0;
+		for (int i = 0; i < image1.getPixelCount(); i++)
+		{
+			if (image1.getf(i) != image2.getf(i))
+				count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import inra.ijpb.binary.BinaryImages;
+import inra.ijpb.morphology.Morphology;
+import inra.ijpb.morphology.Strel3D;
+
+public class MarkerControlledWatershedTransform3DTest
+{
+	/**
+	 * Checks that flooding with the hierarchical queue gives the same result
+	 * as flooding with the priority queue, for 8, 16 and 32-bit images.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue()
+	{
+		ImagePlus volume = IJ.openImage(getClass().getResource("/files/bat-cochlea-volume.tif").getFile());
+		assertNotNull(volume);
+		ImagePlus marker = IJ.openImage(getClass().getResource("/files/bat-cochlea-marker.tif").getFile());
+		assertNotNull(marker);
+
+		// compute input as the morphological gradient of the volume
+		ImageStack gradient = Morphology.gradient(volume.getStack(), 
+				Strel3D.Shape.CUBE.fromRadius(1));
+		ImagePlus input = new ImagePlus("gradient", gradient);
+		ImagePlus labels = new ImagePlus("labels",
+				BinaryImages.componentsLabeling(marker.getStack(), 6, 16));
+
+		ImageStack gradient16 = new ImageStack(gradient.getWidth(), gradient.getHeight());
+		ImageStack gradient32 = new ImageStack(gradient.getWidth(), gradient.getHeight());
+		for (int z = 1; z <= gradient.getSize(); z++)
+		{
+			gradient16.addSlice(gradient.getProcessor(z).convertToShort(false));
+			gradient32.addSlice(gradient.getProcessor(z).convertToFloat());
+		}
+		ImagePlus input16 = new ImagePlus("gradient16", gradient16);
+		ImagePlus input32 = new ImagePlus("gradient32", gradient32);
+
+		for (ImagePlus image : new ImagePlus[] { input, input16, input32 })
+		{
+			for (int conn : new int[] { 6, 26 })
+			{
+				for (ImagePlus mask : new ImagePlus[] { null, volume })
+				{
+					MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D(
+							image, labels, mask, conn);
+					wt.setVerbose(false);
+
+					assertEquals(0, countDifferences(wt.applyWithPriorityQueue(),
+							wt.applyWithHierarchicalQueue()));
+					assertEquals(0, countDifferences(wt.applyWithPriorityQueueAndDams(),
+							wt.applyWithHierarchicalQueueAndDams()));
+				}
+			}
+		}
+	}
+
+	private static final int countDifferences(ImagePlus image1, ImagePlus image2)
+	{
+		ImageStack stack1 = image1.getStack();
+		ImageStack stack2 = image2.getStack();
+		int count = 0;
+		for (int z = 0; z < stack1.getSize(); z++)
+			for (int y = 0; y < stack1.getHeight(); y++)
+				for (int x = 0; x < stack1.getWidth(); x++)
+				{
+					if (stack1.getVoxel(x, y, z) != stack2.getVoxel(x, y, z))
+						count++;
+				}
+		return count;
+	}
+}
@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+public class RegionMergingTest
+{
+	/**
+	 * Creates a label image with three regions separated by vertical lines.
+	 */
+	private static final ImageProcessor createLabelImage()
+	{
+		ImageProcessor image = new ByteProcessor(11, 3);
+		for (int y = 0; y < 3; y++)
+		{
+			for (int x = 0; x < 3; x++)
+			{
+				image.set(x, y, 1);
+				image.set(x + 4, y, 2);
+				image.set(x + 8, y, 3);
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates an intensity image with minima 0, 5 and 2 within the regions,
+	 * and with dam heights 10 and 50.
+	 */
+	private static final ImageProcessor createIntensityImage()
+	{
+		ImageProcessor image = new ByteProcessor(11, 3);
+		image.setValue(8);
+		image.fill();
+		for (int y = 0; y < 3; y++)
+		{
+			image.set(3, y, 10);
+			image.set(7, y, 50);
+		}
+		image.set(1, 1, 0);
+		image.set(5, 1, 5);
+		image.set(9, 1, 2);
+		return image;
+	}
+	
+	@Test
+	public void testProcess_MinDamHeight()
+	{
+		ImageProcessor labels = createLabelImage();
+		RegionMerging algo = new RegionMerging(RegionMerging.Criterion.MIN_DAM_HEIGHT, 4);
+		RegionMergeTree tree = algo.process(labels, createIntensityImage());
+		
+		assertEquals(3, tree.leafCount());
+		assertEquals(2, tree.mergeCount());
+		assertEquals(10, tree.getLevel(0), 1e-10);
+		assertEquals(50, tree.getLevel(1), 1e-10);
+		assertEquals(3, tree.getChild1(1));
+		assertEquals(2, tree.getChild2(1));
+		
+		assertEquals(0, tree.mergeCount(5.0));
+		assertEquals(1, tree.mergeCount(10.0));
+		assertEquals(2, tree.mergeCount(60.0));
+		
+		// regions 1 and 2 are merged, and the line between them is removed
+		ImageProcessor merged = tree.createLabelImage(labels, 20.0);
+		for (int y = 0; y < 3; y++)
+		{
+			for (int x = 0; x < 7; x++)
+			{
+				assertEquals(1, merged.get(x, y));
+			}
+			assertEquals(0, merged.get(7, y));
+			assertEquals(3, merged.get(8, y));
+		}
+		
+		// all regions are merged
+		merged = tree.createLabelImage(labels, 50.0);
+		for (int i = 0; i < 33; i++)
+		{
+			assertEquals(1, merged.get(i));
+		}
+	}
+	
+	@Test
+	public void testProcess_Dynamic()
+	{
+		RegionMerging algo = new RegionMerging(RegionMerging.Criterion.DYNAMIC, 4);
+		RegionMergeTree tree = algo.process(createLabelImage(), createIntensityImage());
+		
+		assertEquals(2, tree.mergeCount());
+		assertEquals(5, tree.getLevel(0), 1e-10);
+		assertEquals(48, tree.getLevel(1), 1e-10);
+		assertArrayEquals(new int[]{1, 1, 3}, tree.mergedLabels(1));
+	}
+	
+	@Test
+	public void testProcess_AreaWithoutIntensity()
+	{
+		ImageProcessor labels = createLabelImage();
+		for (int x = 8; x < 11; x++)
+		{
+			labels.set(x, 0, 0);
+		}
+		RegionMerging algo = new RegionMerging(RegionMerging.Criterion.AREA, 4);
+		RegionMergeTree tree = algo.process(labels, null);
+		
+		// the smallest region is merged first
+		assertEquals(2, tree.mergeCount());
+		assertEquals(6, tree.getLevel(0), 1e-10);
+		assertArrayEquals(new int[]{1, 2, 2}, tree.mergedLabels(1));
+		assertArrayEquals(new int[]{1, 1, 1}, tree.mergedLabels(2));
+	}
+}